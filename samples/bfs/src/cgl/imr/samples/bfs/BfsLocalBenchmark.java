@@ -0,0 +1,155 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.bfs;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.safehaus.uuid.UUIDGenerator;
+
+import cgl.imr.base.TwisterMonitor;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.client.TwisterDriver;
+import cgl.imr.script.BenchmarkResults;
+import cgl.imr.script.LocalCluster;
+
+/**
+ * Runs the breadth-first search end to end in a single process: starts a
+ * <code>LocalCluster</code> with an embedded broker, generates a graph with
+ * <code>GraphGen</code>, searches it till every vertex is reached (or the
+ * given number of iterations) and appends the latency and throughput
+ * (vertices per second) of the iterations to a results file.
+ * 
+ */
+public class BfsLocalBenchmark {
+
+	private static UUIDGenerator uuidGen = UUIDGenerator.getInstance();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 7) {
+			System.out
+					.println("Usage: [num daemons][workers per daemon][map task number][reduce task number]"
+							+ "[the number of nodes][max iterations][results file]");
+			System.exit(-1);
+		}
+		int numDaemons = Integer.parseInt(args[0]);
+		int workersPerDaemon = Integer.parseInt(args[1]);
+		int numMapTasks = Integer.parseInt(args[2]);
+		int numReduceTasks = Integer.parseInt(args[3]);
+		int numNodes = Integer.parseInt(args[4]);
+		int maxIterations = Integer.parseInt(args[5]);
+		File resultsFile = new File(args[6]);
+
+		File workDir = File.createTempFile("bfs-benchmark", "");
+		workDir.delete();
+		LocalCluster cluster = null;
+		try {
+			cluster = new LocalCluster(numDaemons, workersPerDaemon, workDir);
+			// The ratio suggested for 100000 nodes in GraphGen, scaled.
+			double ratio = Math.max(1, numNodes / 100);
+			String graphFile = new File(workDir, "graph").getAbsolutePath();
+			new GraphGen(numNodes, ratio).generateGraph(graphFile);
+			Graph graph = new Graph();
+			graph.loadFromFile(graphFile);
+			graph.setRoot(1);
+
+			BenchmarkResults results = new BenchmarkResults("bfs", numDaemons,
+					numNodes);
+			search(graph, numMapTasks, numReduceTasks, maxIterations, results);
+			results.write(resultsFile);
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			if (cluster != null) {
+				cluster.close();
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the search as <code>GraphSearch</code> does, timing each
+	 * iteration.
+	 */
+	private static void search(Graph graph, int numMapTasks,
+			int numReduceTasks, int maxIterations, BenchmarkResults results)
+			throws Exception {
+		JobConf jobConf = new JobConf("graph-bfs-local-benchmark"
+				+ uuidGen.generateTimeBasedUUID());
+		jobConf.setMapperClass(BFSMapTask.class);
+		jobConf.setReducerClass(BFSReduceTask.class);
+		jobConf.setCombinerClass(BFSCombiner.class);
+		jobConf.setNumMapTasks(numMapTasks);
+		jobConf.setNumReduceTasks(numReduceTasks);
+
+		TwisterDriver driver = new TwisterDriver(jobConf);
+		driver.configureMaps();
+
+		GraphSearch search = new GraphSearch(graph);
+		TwisterMonitor monitor = null;
+		for (int i = 0; i < maxIterations; i++) {
+			results.beginIteration();
+			monitor = driver.runMapReduce(search
+					.getKeyValuesForMap(numMapTasks));
+			monitor.monitorTillCompletion();
+			HashMap<Integer, Node> newGraph = ((BFSCombiner) driver
+					.getCurrentCombiner()).getResults();
+			results.endIteration();
+			if (search.checkCompleteness(newGraph)) {
+				break;
+			}
+			graph.setNodes(newGraph);
+		}
+		driver.close();
+	}
+}
@@ -126,7 +126,7 @@ public class GraphSearch {
 	 * @param nodes
 	 * @return
 	 */
-	private boolean checkCompleteness(HashMap<Integer, Node> nodes) {
+	boolean checkCompleteness(HashMap<Integer, Node> nodes) {
 		for (Node n : nodes.values()) {
 			if (n.getColor() != 2) {
 				return false;
@@ -199,7 +199,7 @@ public class GraphSearch {
 	 * @param numMaps
 	 * @return
 	 */
-	private List<KeyValuePair> getKeyValuesForMap(int numMaps) {
+	List<KeyValuePair> getKeyValuesForMap(int numMaps) {
 		List<KeyValuePair> keyValues = new ArrayList<KeyValuePair>();
 		List<Graph> subgraphs = graph.getSubGraphs(numMaps);
 
@@ -200,7 +200,7 @@ public class KmeansClustering {
 		driver.close();
 	}
 
-	private double getError(DoubleVectorData cData, DoubleVectorData newCData) {
+	static double getError(DoubleVectorData cData, DoubleVectorData newCData) {
 		double totalError = 0;
 		int numCentroids = cData.getNumData();
 
@@ -228,7 +228,7 @@ public class KmeansClustering {
 	 *            - Length of the vectors.
 	 * @return - Square of the Euclidean distances.
 	 */
-	private double getEuclidean(double[] v1, double[] v2, int vecLen) {
+	private static double getEuclidean(double[] v1, double[] v2, int vecLen) {
 		double sum = 0;
 		for (int i = 0; i < vecLen; i++) {
 			sum += ((v1[i] - v2[i]) * (v1[i] - v2[i]));
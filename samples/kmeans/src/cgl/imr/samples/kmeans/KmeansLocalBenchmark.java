@@ -0,0 +1,162 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.kmeans;
+
+import java.io.File;
+
+import org.safehaus.uuid.UUIDGenerator;
+
+import cgl.imr.base.TwisterMonitor;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.client.TwisterDriver;
+import cgl.imr.script.BenchmarkResults;
+import cgl.imr.script.LocalCluster;
+import cgl.imr.types.DoubleVectorData;
+
+/**
+ * Runs K-means clustering end to end in a single process: starts a
+ * <code>LocalCluster</code> with an embedded broker, generates the data with
+ * <code>KmeansDataGen</code>, runs a fixed number of iterations and appends
+ * their latency and throughput (data points per second) to a results file.
+ * 
+ */
+public class KmeansLocalBenchmark {
+
+	private static UUIDGenerator uuidGen = UUIDGenerator.getInstance();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 8) {
+			String errorReport = "KmeansLocalBenchmark: the Correct arguments are \n"
+					+ "java cgl.imr.samples.kmeans.KmeansLocalBenchmark "
+					+ "<num daemons> <workers per daemon> <num map tasks> <num data points> "
+					+ "<num centroids> <vector length> <num iterations> <results file>";
+			System.out.println(errorReport);
+			System.exit(0);
+		}
+		int numDaemons = Integer.parseInt(args[0]);
+		int workersPerDaemon = Integer.parseInt(args[1]);
+		int numMapTasks = Integer.parseInt(args[2]);
+		long numDataPoints = Long.parseLong(args[3]);
+		String numCentroids = args[4];
+		String vecLength = args[5];
+		int numIterations = Integer.parseInt(args[6]);
+		File resultsFile = new File(args[7]);
+		if (numDataPoints % numMapTasks != 0) {
+			System.out
+					.println("Number of data points are not equally divisable to map tasks ");
+			System.exit(0);
+		}
+
+		File workDir = File.createTempFile("kmeans-benchmark", "");
+		workDir.delete();
+		LocalCluster cluster = null;
+		try {
+			cluster = new LocalCluster(numDaemons, workersPerDaemon, workDir);
+			cluster.mkdir("kmeans");
+			String centroidFile = new File(workDir, "init_clusters.txt")
+					.getAbsolutePath();
+			KmeansDataGen.generateInitClusterCenters(centroidFile, Integer
+					.parseInt(numCentroids), Integer.parseInt(vecLength));
+			new KmeansDataGen().driveMapReduce(new String[] { centroidFile,
+					numCentroids, vecLength, "kmeans", "km_data",
+					String.valueOf(numMapTasks), String.valueOf(numDataPoints) });
+			String partitionFile = new File(workDir, "kmeans.pf")
+					.getAbsolutePath();
+			cluster.createPartitionFile("kmeans", "km_data", partitionFile);
+
+			BenchmarkResults results = new BenchmarkResults("kmeans",
+					numDaemons, numDataPoints);
+			runKmeans(partitionFile, numMapTasks, centroidFile,
+					numIterations, results);
+			results.write(resultsFile);
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			if (cluster != null) {
+				cluster.close();
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the given number of K-means iterations, timing each of them.
+	 */
+	private static void runKmeans(String partitionFile, int numMapTasks,
+			String centroidFile, int numIterations, BenchmarkResults results)
+			throws Exception {
+		JobConf jobConf = new JobConf("kmeans-local-benchmark"
+				+ uuidGen.generateTimeBasedUUID());
+		jobConf.setMapperClass(KMeansMapTask.class);
+		jobConf.setReducerClass(KMeansReduceTask.class);
+		jobConf.setCombinerClass(KMeansCombiner.class);
+		jobConf.setNumMapTasks(numMapTasks);
+		jobConf.setNumReduceTasks(1);
+
+		TwisterDriver driver = new TwisterDriver(jobConf);
+		driver.configureMaps(partitionFile);
+
+		DoubleVectorData cData = new DoubleVectorData();
+		cData.loadDataFromTextFile(centroidFile);
+
+		TwisterMonitor monitor = null;
+		for (int i = 0; i < numIterations; i++) {
+			results.beginIteration();
+			monitor = driver.runMapReduceBCast(cData);
+			monitor.monitorTillCompletion();
+			cData = ((KMeansCombiner) driver.getCurrentCombiner()).getResults();
+			results.endIteration();
+		}
+		driver.close();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.kmeans;
+
+import org.safehaus.uuid.UUIDGenerator;
+
+import cgl.imr.base.TwisterMonitor;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.client.TwisterDriver;
+import cgl.imr.types.DoubleVectorData;
+
+/**
+ * Compares the time to convergence of K-means clustering in the BSP mode and
+ * in the stale synchronous mode when one map task is a straggler.
+ * 
+ */
+public class KmeansSSPBenchmark {
+
+	private static UUIDGenerator uuidGen = UUIDGenerator.getInstance();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 6) {
+			String errorReport = "KmeansSSPBenchmark: the Correct arguments are \n"
+					+ "java cgl.imr.samples.kmeans.KmeansSSPBenchmark "
+					+ "<centroid file> <num map tasks> <partition file> "
+					+ "<staleness bound> <straggler map task> <straggler delay(ms)>";
+			System.out.println(errorReport);
+			System.exit(0);
+		}
+		String centroidFile = args[0];
+		int numMapTasks = Integer.parseInt(args[1]);
+		String partitionFile = args[2];
+		int stalenessBound = Integer.parseInt(args[3]);
+		int stragglerTask = Integer.parseInt(args[4]);
+		long stragglerDelay = Long.parseLong(args[5]);
+
+		try {
+			double[] bsp = runKmeans(partitionFile, numMapTasks, centroidFile,
+					0, stragglerTask, stragglerDelay);
+			double[] ssp = runKmeans(partitionFile, numMapTasks, centroidFile,
+					stalenessBound, stragglerTask, stragglerDelay);
+			System.out
+					.println("------------------------------------------------------");
+			System.out.println("mode\tstaleness\tseconds\tloops\terror");
+			System.out.println("BSP\t0\t" + bsp[0] + "\t" + (int) bsp[1] + "\t"
+					+ bsp[2]);
+			System.out.println("SSP\t" + stalenessBound + "\t" + ssp[0] + "\t"
+					+ (int) ssp[1] + "\t" + ssp[2]);
+			System.out
+					.println("------------------------------------------------------");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs K-means clustering till convergence.
+	 * 
+	 * @return time to convergence in seconds, number of loops and the final
+	 *         error.
+	 */
+	private static double[] runKmeans(String partitionFile, int numMapTasks,
+			String centroidFile, int stalenessBound, int stragglerTask,
+			long stragglerDelay) throws Exception {
+		JobConf jobConf = new JobConf("kmeans-ssp-benchmark"
+				+ uuidGen.generateTimeBasedUUID());
+		jobConf.setMapperClass(KmeansStragglerMapTask.class);
+		jobConf.setReducerClass(KMeansReduceTask.class);
+		jobConf.setCombinerClass(KMeansCombiner.class);
+		jobConf.setNumMapTasks(numMapTasks);
+		jobConf.setNumReduceTasks(1);
+		jobConf.setStalenessBound(stalenessBound);
+		jobConf.addProperty(KmeansStragglerMapTask.PROP_STRAGGLER_TASK, String
+				.valueOf(stragglerTask));
+		jobConf.addProperty(KmeansStragglerMapTask.PROP_STRAGGLER_DELAY,
+				String.valueOf(stragglerDelay));
+
+		TwisterDriver driver = new TwisterDriver(jobConf);
+		driver.configureMaps(partitionFile);
+
+		DoubleVectorData cData = new DoubleVectorData();
+		cData.loadDataFromTextFile(centroidFile);
+
+		long beginTime = System.currentTimeMillis();
+		double totalError = 0;
+		int loopCount = 0;
+		TwisterMonitor monitor = null;
+		boolean complete = false;
+		while (!complete && loopCount < KmeansClustering.NUM_LOOPS * 10) {
+			monitor = driver.runMapReduceBCast(cData);
+			monitor.monitorTillCompletion();
+			DoubleVectorData newCData = ((KMeansCombiner) driver
+					.getCurrentCombiner()).getResults();
+			totalError = KmeansClustering.getError(cData, newCData);
+			cData = newCData;
+			loopCount++;
+			if (totalError < KmeansClustering.THRESHOLD) {
+				complete = true;
+			}
+		}
+		double timeInSeconds = ((double) (System.currentTimeMillis() - beginTime)) / 1000;
+		driver.close();
+		return new double[] { timeInSeconds, loopCount, totalError };
+	}
+}
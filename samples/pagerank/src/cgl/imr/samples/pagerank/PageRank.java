@@ -189,7 +189,7 @@ public class PageRank {
 		this.numReduceTasks = numReduceTasks;
 	}
 
-	private DoubleVectorData decompress(DoubleVectorData compressedData) {
+	static DoubleVectorData decompress(DoubleVectorData compressedData) {
 		double[][] comData = compressedData.getData();
 		int numData = compressedData.getNumData();
 		int numUrls = (int) comData[0][0];
@@ -302,7 +302,7 @@ public class PageRank {
 		driver.close();
 	}
 
-	private double getError(DoubleVectorData tmpDvd, DoubleVectorData newDvd) {
+	static double getError(DoubleVectorData tmpDvd, DoubleVectorData newDvd) {
 		double totalError = 0;
 		int numData = tmpDvd.getNumData();
 		double[][] tmpData = tmpDvd.getData();
@@ -0,0 +1,169 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.samples.pagerank;
+
+import org.safehaus.uuid.UUIDGenerator;
+
+import cgl.imr.base.TwisterMonitor;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.client.TwisterDriver;
+import cgl.imr.types.BytesValue;
+import cgl.imr.types.DoubleVectorData;
+
+/**
+ * Compares the time to convergence of pagerank in the BSP mode and in the
+ * stale synchronous mode when one map task is a straggler.
+ * 
+ */
+public class PageRankSSPBenchmark {
+
+	private static int MAX_LOOPS = 1000;
+	private static double TOLERANCE = 1E-8;
+
+	private static UUIDGenerator uuidGen = UUIDGenerator.getInstance();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 7) {
+			String errorReport = "PageRankSSPBenchmark: the Correct arguments are \n"
+					+ "java cgl.imr.samples.pagerank.PageRankSSPBenchmark "
+					+ "[num urls][num map tasks][num reduce tasks][partition file]"
+					+ "[staleness bound][straggler map task][straggler delay(ms)]";
+			System.out.println(errorReport);
+			System.exit(0);
+		}
+		int numUrls = Integer.parseInt(args[0]);
+		int numMapTasks = Integer.parseInt(args[1]);
+		int numReduceTasks = Integer.parseInt(args[2]);
+		String partitionFile = args[3];
+		int stalenessBound = Integer.parseInt(args[4]);
+		int stragglerTask = Integer.parseInt(args[5]);
+		long stragglerDelay = Long.parseLong(args[6]);
+
+		try {
+			double[] bsp = runPageRank(numUrls, numMapTasks, numReduceTasks,
+					partitionFile, 0, stragglerTask, stragglerDelay);
+			double[] ssp = runPageRank(numUrls, numMapTasks, numReduceTasks,
+					partitionFile, stalenessBound, stragglerTask,
+					stragglerDelay);
+			System.out
+					.println("------------------------------------------------------");
+			System.out.println("mode\tstaleness\tseconds\tloops\terror");
+			System.out.println("BSP\t0\t" + bsp[0] + "\t" + (int) bsp[1] + "\t"
+					+ bsp[2]);
+			System.out.println("SSP\t" + stalenessBound + "\t" + ssp[0] + "\t"
+					+ (int) ssp[1] + "\t" + ssp[2]);
+			System.out
+					.println("------------------------------------------------------");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs pagerank till the rank values converge.
+	 * 
+	 * @return time to convergence in seconds, number of loops and the final
+	 *         error.
+	 */
+	private static double[] runPageRank(int numUrls, int numMapTasks,
+			int numReduceTasks, String partitionFile, int stalenessBound,
+			int stragglerTask, long stragglerDelay) throws Exception {
+		JobConf jobConf = new JobConf("pagerank-ssp-benchmark"
+				+ uuidGen.generateTimeBasedUUID());
+		jobConf.setMapperClass(PageRankStragglerMapTask.class);
+		jobConf.setReducerClass(PageRankReduceTask.class);
+		jobConf.setCombinerClass(PageRankCombiner.class);
+		jobConf.setNumMapTasks(numMapTasks);
+		jobConf.setNumReduceTasks(numReduceTasks);
+		jobConf.setStalenessBound(stalenessBound);
+		jobConf.addProperty(PageRankStragglerMapTask.PROP_STRAGGLER_TASK,
+				String.valueOf(stragglerTask));
+		jobConf.addProperty(PageRankStragglerMapTask.PROP_STRAGGLER_DELAY,
+				String.valueOf(stragglerDelay));
+
+		TwisterDriver driver = new TwisterDriver(jobConf);
+		driver.configureMaps(partitionFile);
+
+		double[][] initPageRanks = new double[1][2];
+		initPageRanks[0][0] = numUrls;
+		initPageRanks[0][1] = 1.0;
+		DoubleVectorData tmpCompressedDvd = new DoubleVectorData(
+				initPageRanks, 1, 2);
+		DoubleVectorData newCompressedDvd;
+
+		long beginTime = System.currentTimeMillis();
+		double totalError = 0;
+		int loopCount = 0;
+		TwisterMonitor monitor = null;
+		boolean complete = false;
+		while (!complete && loopCount < MAX_LOOPS) {
+			monitor = driver.runMapReduceBCast(new BytesValue(tmpCompressedDvd
+					.getBytes()));
+			monitor.monitorTillCompletion();
+			newCompressedDvd = ((PageRankCombiner) driver.getCurrentCombiner())
+					.getResults();
+			totalError = PageRank.getError(PageRank
+					.decompress(tmpCompressedDvd), PageRank
+					.decompress(newCompressedDvd));
+			tmpCompressedDvd = newCompressedDvd;
+			loopCount++;
+			if (totalError < TOLERANCE) {
+				complete = true;
+			}
+		}
+		double timeInSeconds = ((double) (System.currentTimeMillis() - beginTime)) / 1000;
+		driver.close();
+		return new double[] { timeInSeconds, loopCount, totalError };
+	}
+}
@@ -1,7 +1,7 @@
 #!/bin/bash
 
-if [ $# -ne 4 ]; then
-    echo Usage: [partition File][output file][num maps][num reducers]
+if [ $# -lt 4 ] || [ $# -gt 6 ]; then
+    echo Usage: [partition File][output file][num maps][num reducers][combine fan-in - optional][spill directory - optional]
     exit -1
 fi
 
@@ -16,4 +16,4 @@ for i in ${TWISTER_HOME}/apps/*.jar;
   do cp=$i:${cp}
 done
 
-java -Xmx1024m -Xms512m -XX:SurvivorRatio=10 -classpath $cp cgl.imr.samples.wordcount.WCMapReduce $1 $2 $3 $4
+java -Xmx1024m -Xms512m -XX:SurvivorRatio=10 -classpath $cp cgl.imr.samples.wordcount.WCMapReduce $1 $2 $3 $4 $5 $6
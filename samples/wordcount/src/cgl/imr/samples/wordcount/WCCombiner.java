@@ -56,7 +56,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
-import cgl.imr.base.Combiner;
+import cgl.imr.base.AssociativeCombiner;
 import cgl.imr.base.Key;
 import cgl.imr.base.TwisterException;
 import cgl.imr.base.Value;
@@ -71,7 +71,7 @@ import cgl.imr.types.StringKey;
  * 
  */
 
-public class WCCombiner implements Combiner {
+public class WCCombiner implements AssociativeCombiner {
 
 	private Map<String, Integer> words = new HashMap<String, Integer>();
 
@@ -94,6 +94,29 @@ public class WCCombiner implements Combiner {
 
 	}
 
+	/**
+	 * Adds the counts of the second group of words to the first one. Used by
+	 * the intermediate combiners of the combine tree.
+	 */
+	@Override
+	public Map<Key, Value> merge(Map<Key, Value> first, Map<Key, Value> second)
+			throws TwisterException {
+		Iterator<Key> ite = second.keySet().iterator();
+		Key key;
+		IntValue count;
+		while (ite.hasNext()) {
+			key = ite.next();
+			count = (IntValue) first.get(key);
+			if (count == null) {
+				first.put(key, second.get(key));
+			} else {
+				first.put(key, new IntValue(count.getVal()
+						+ ((IntValue) second.get(key)).getVal()));
+			}
+		}
+		return first;
+	}
+
 	public Map<String, Integer> getResults() {
 		return words;
 	}
@@ -54,15 +54,20 @@ package cgl.imr.samples.wordcount;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
 
 import org.safehaus.uuid.UUIDGenerator;
 
+import cgl.imr.base.KeyValuePair;
 import cgl.imr.base.TwisterException;
 import cgl.imr.base.impl.JobConf;
+import cgl.imr.base.impl.SpillingCombiner;
 import cgl.imr.client.TwisterDriver;
 import cgl.imr.base.TwisterMonitor;
+import cgl.imr.types.IntValue;
+import cgl.imr.types.StringKey;
 
 /**
  * Count the number of occurrences of words of a set of documents using
@@ -77,8 +82,8 @@ public class WCMapReduce {
 	public static String DATA_FILE = "DATA_FILE";
 	public static void main(String[] args) throws Exception {
 
-		if (args.length != 4) {
-			System.out.println("Usage:[partition File][output file][num maps][num reducers]");
+		if (args.length < 4 || args.length > 6) {
+			System.out.println("Usage:[partition File][output file][num maps][num reducers][combine fan-in - optional][spill directory - optional]");
 			System.exit(-1);
 		}
 
@@ -86,12 +91,27 @@ public class WCMapReduce {
 		String outputFile = args[1];
 		int numMaps = Integer.parseInt(args[2]);
 		int numReducers = Integer.parseInt(args[3]);
+		int combineFanIn = 0;
+		if (args.length >= 5) {
+			combineFanIn = Integer.parseInt(args[4]);
+		}
 		
 		WCMapReduce wc = new WCMapReduce();
+		if (args.length == 6) {
+			double beginTime = System.currentTimeMillis();
+			long numWords = wc.wordCountSpilling(partitionFile, outputFile,
+					numMaps, numReducers, args[5]);
+			double endTime = System.currentTimeMillis();
+			System.out.println("------------------------------------------------------");
+			System.out.println("Word Count of " + numWords + " words took "
+					+ (endTime - beginTime) / 1000 + " seconds.");
+			System.out.println("------------------------------------------------------");
+			System.exit(0);
+		}
 
 		double beginTime = System.currentTimeMillis();
 		Map<String, Integer> result = wc.wordCountMapReduce(partitionFile,
-				outputFile, numMaps, numReducers);
+				outputFile, numMaps, numReducers, combineFanIn);
 		double endTime = System.currentTimeMillis();
 		BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile,true));
 		//writer.write(System.getProperty("line.separator"));
@@ -121,8 +141,8 @@ public class WCMapReduce {
 	private UUIDGenerator uuidGen = UUIDGenerator.getInstance();
 
 	private Map<String, Integer> wordCountMapReduce(String partitionFile,
-			String outputFile, int numMapTasks, int numReduceTasks)
-			throws TwisterException {
+			String outputFile, int numMapTasks, int numReduceTasks,
+			int combineFanIn) throws TwisterException {
 
 		// JobConfigurations
 		JobConf jobConf = new JobConf("word-count-map-reduce"
@@ -132,6 +152,7 @@ public class WCMapReduce {
 		jobConf.setCombinerClass(WCCombiner.class);
 		jobConf.setNumMapTasks(numMapTasks);
 		jobConf.setNumReduceTasks(numReduceTasks);
+		jobConf.setCombineFanIn(combineFanIn);
 		//jobConf.setFaultTolerance();
 
 		TwisterDriver driver = new TwisterDriver(jobConf);
@@ -144,4 +165,49 @@ public class WCMapReduce {
 		return wordCounts;
 	}
 
+	/**
+	 * Counts the words using a <code>SpillingCombiner</code>, which keeps
+	 * only a bounded number of words in memory and spills the rest to a file
+	 * in the given directory. The counts are streamed into the output file.
+	 * The spilling combiner does not merge, hence no combine tree is used.
+	 * 
+	 * @return the number of distinct words.
+	 */
+	private long wordCountSpilling(String partitionFile, String outputFile,
+			int numMapTasks, int numReduceTasks, String spillDir)
+			throws TwisterException, IOException {
+		JobConf jobConf = new JobConf("word-count-map-reduce"
+				+ uuidGen.generateTimeBasedUUID());
+		jobConf.setMapperClass(WCMapTask.class);
+		jobConf.setReducerClass(WCReduceTask.class);
+		jobConf.setCombinerClass(SpillingCombiner.class);
+		jobConf.addProperty(SpillingCombiner.SPILL_DIR, spillDir);
+		jobConf.setNumMapTasks(numMapTasks);
+		jobConf.setNumReduceTasks(numReduceTasks);
+
+		TwisterDriver driver = new TwisterDriver(jobConf);
+		driver.configureMaps(partitionFile);
+		TwisterMonitor monitor = driver.runMapReduce();
+		monitor.monitorTillCompletion();
+		SpillingCombiner combiner = (SpillingCombiner) driver
+				.getCurrentCombiner();
+
+		BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile,
+				true));
+		try {
+			Iterator<KeyValuePair> ite = combiner.iterator();
+			KeyValuePair pair;
+			while (ite.hasNext()) {
+				pair = ite.next();
+				writer.write(((StringKey) pair.getKey()).getString() + " , "
+						+ ((IntValue) pair.getValue()).getVal() + "\n");
+			}
+			return combiner.getNumRecords();
+		} finally {
+			writer.close();
+			combiner.close();
+			driver.close();
+		}
+	}
+
 }
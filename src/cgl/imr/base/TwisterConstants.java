@@ -106,8 +106,32 @@ public interface TwisterConstants {
 	byte MEMCACHE_CLEAN = 19;
 	byte DAEMON_STATUS = 20;
 	byte START_REDUCE = 21;
+	byte COMBINER_REQUEST = 22;
+	byte TRACE_DATA = 23;
+	byte MAPPER_REMOVAL = 24;
 	// Timings
 	long MONITOR_SLEEP_TIME = 5; // milliseconds.
+	// The monitor waits for the completion of an iteration in slices of this
+	// length, and checks for stragglers in between.
+	long MONITOR_CHECK_INTERVAL = 1000; // milliseconds.
+	long MONITOR_FAULT_CHECK_INTERVAL = 25000; // milliseconds.
+	// Speculative execution of straggling map tasks.
+	int WAIT_COUNT_FOR_STRAGGLERS = 200;
+	// Slowest tasks listed in the report at the end of each iteration. Only
+	// the tasks that took both the given multiple of the median time of
+	// their type and the given time longer than it are listed.
+	int NUM_STRAGGLERS_REPORTED = 5;
+	double STRAGGLER_REPORT_SLOWDOWN = 1.5;
+	long STRAGGLER_REPORT_MIN_GAP = 10; // milliseconds.
+	// Task statuses and iteration times kept for the status server.
+	int NUM_RECENT_TASK_STATUSES = 100;
+	int NUM_RECENT_ITERATIONS = 100;
+	// Deepest stack recorded by the sampling profiler.
+	int PROFILE_MAX_STACK_DEPTH = 128;
+	double SPECULATION_MIN_COMPLETED_FRACTION = 0.75;
+	long SPECULATION_MIN_ELAPSED_TIME = 1000; // milliseconds.
+	// Fraction of the heap of a daemon its data partitions may occupy.
+	double PARTITION_MEMORY_FRACTION = 0.5;
 	byte NEW_JOB_REQUEST = 16;
 	byte NEW_JOB_RESPONSE = 17;
 	String NUM_MAP_TASKS = "num_map_tasks";
@@ -123,6 +147,7 @@ public interface TwisterConstants {
 	byte REDUCE_RESPONSE = 6;
 
 	byte REDUCE_TASK = 1;
+	byte ALL_REDUCE_TASK = 2;
 	byte REDUCE_TASK_REQUEST = 4;
 	String REDUCE_TOPIC_BASE = "/twister/reduce/topic";
 	byte REDUCE_WORKER_REQUEST = 2;
@@ -148,6 +173,15 @@ public interface TwisterConstants {
 	long SEND_RECV_SLEEP_TIME = 2; // milliseconds
 	
 	long MAX_WAIT_TIME_FOR_FAULT = 30000;
+	// A daemon is suspected once the phi value of the time since its last
+	// message exceeds this threshold.
+	double PHI_THRESHOLD = 8.0;
+	int HEARTBEAT_WINDOW_SIZE = 1000;
+	long HEARTBEAT_MIN_STD_DEVIATION = 500;
+	long FAULT_CHECK_INTERVAL = 1000;
+	// A daemon spending this fraction of its time in garbage collection is
+	// avoided when placing speculative and recovered tasks.
+	double GC_OVERLOAD_FRACTION = 0.25;
 
 	byte SUCCESS = 0;
 
@@ -165,5 +199,10 @@ public interface TwisterConstants {
     int indirect_transfer_threashold = 10*1024*1024; // 10MB
 	
 	StringKey fixed_key_R2C = new StringKey("fixed_key_R2C_4a616c697961");
+
+	// Command prefix used to push AllReduce messages to the daemon data port.
+	String ALL_REDUCE_CMD = "allreduce:";
+	// Data cache key prefix of the AllReduce result kept at the first daemon.
+	String ALL_REDUCE_RESULT_KEY = "allreduce_result:";
 	
 }
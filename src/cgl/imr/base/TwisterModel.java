@@ -130,6 +130,27 @@ public interface TwisterModel {
 	public abstract TwisterMonitor runMapReduceBCast(Value val)
 			throws TwisterException;
 
+	/**
+	 * Starts the next iteration of an AllReduce job. Each map task receives
+	 * the result of the previous AllReduce operation, which is already kept
+	 * at its daemon, hence no data is sent from the client. The first
+	 * iteration is started with <code>runMapReduceBCast</code>.
+	 * 
+	 * @return TwisterMonitor - A monitor that allows the user program to
+	 *         asynchronously wait on the progress of the MapReduce computation.
+	 * @throws TwisterException
+	 */
+	public abstract TwisterMonitor runMapReduceAllReduce()
+			throws TwisterException;
+
+	/**
+	 * Fetches the result of the last AllReduce operation from the daemons.
+	 * 
+	 * @return the merged value.
+	 * @throws TwisterException
+	 */
+	public abstract Value getAllReduceResult() throws TwisterException;
+
 	public String addToMemCache(Value value) throws TwisterException;
 
 	public void setMonitoringCompletes();
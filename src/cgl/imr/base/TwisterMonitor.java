@@ -52,6 +52,8 @@
 
 package cgl.imr.base;
 
+import java.util.concurrent.Future;
+
 import cgl.imr.message.CombineInput;
 import cgl.imr.monitor.JobStatus;
 
@@ -76,6 +78,12 @@ public interface TwisterMonitor {
 	public void setMonitoringException(Exception monitoringException);
 
 	public boolean isComplete() throws TwisterException;
+
+	/**
+	 * Returns the completion of the current iteration without blocking, so
+	 * that the caller may overlap its own work with the running iteration.
+	 */
+	public Future<JobStatus> whenComplete();
 	
 	public double getTotalSequentialTimeSeconds();
 
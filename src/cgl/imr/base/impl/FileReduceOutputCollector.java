@@ -0,0 +1,186 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.base.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.ReduceOutputCollector;
+import cgl.imr.base.Value;
+import cgl.imr.data.file.ReduceOutputFile;
+import cgl.imr.data.file.ReduceOutputReader;
+import cgl.imr.message.CombineInput;
+import cgl.imr.types.IntKey;
+
+/**
+ * Writes the output of a Reduce task to a local file instead of passing it to
+ * the CombineTask. The combine input only carries a
+ * <code>ReduceOutputFile</code> describing the file.
+ * 
+ * The file starts with <code>ReduceOutputReader.MAGIC</code> and the class
+ * names of the keys and values, followed by the records, each being the
+ * length and bytes of the key and then of the value. All the keys and all the
+ * values collected by a reduce task must be of the same class as the first
+ * ones. The file can be read using <code>ReduceOutputReader</code>.
+ * 
+ */
+public class FileReduceOutputCollector implements ReduceOutputCollector {
+
+	private static int BUFFER_SIZE = 1024 * 1024;
+
+	private String jobId;
+	private String combineSink;
+	private int iteration;
+	private int reducerNo;
+	private int daemonNo;
+	private String daemonIP;
+	private File file;
+	private DataOutputStream dout;
+	private long numRecords = 0;
+	private Class<?> keyClass;
+	private Class<?> valueClass;
+
+	/**
+	 * @param jobId
+	 *            - id of the job.
+	 * @param combineSink
+	 *            - topic of the combiner.
+	 * @param iteration
+	 *            - current iteration.
+	 * @param reducerNo
+	 *            - the reduce task.
+	 * @param dir
+	 *            - absolute path of the output directory.
+	 * @param daemonNo
+	 *            - daemon running the reduce task.
+	 * @param daemonIP
+	 *            - IP address of the daemon.
+	 */
+	public FileReduceOutputCollector(String jobId, String combineSink,
+			int iteration, int reducerNo, String dir, int daemonNo,
+			String daemonIP) {
+		this.jobId = jobId;
+		this.combineSink = combineSink;
+		this.iteration = iteration;
+		this.reducerNo = reducerNo;
+		this.daemonNo = daemonNo;
+		this.daemonIP = daemonIP;
+		this.file = new File(dir, "reduce_" + reducerNo + "_" + iteration
+				+ ReduceOutputReader.FILE_EXTENSION);
+	}
+
+	private void open(String keyClass, String valueClass) throws IOException {
+		file.getParentFile().mkdirs();
+		dout = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), BUFFER_SIZE));
+		dout.writeInt(ReduceOutputReader.MAGIC);
+		dout.writeUTF(keyClass);
+		dout.writeUTF(valueClass);
+	}
+
+	public void collect(Key key, Value val) {
+		try {
+			if (dout == null) {
+				keyClass = key.getClass();
+				valueClass = val.getClass();
+				open(keyClass.getName(), valueClass.getName());
+			} else if (key.getClass() != keyClass
+					|| val.getClass() != valueClass) {
+				throw new IllegalArgumentException("Record of "
+						+ key.getClass().getName() + ", "
+						+ val.getClass().getName()
+						+ " does not match the classes of the file "
+						+ keyClass.getName() + ", " + valueClass.getName());
+			}
+			byte[] data = key.getBytes();
+			dout.writeInt(data.length);
+			dout.write(data);
+			data = val.getBytes();
+			dout.writeInt(data.length);
+			dout.write(data);
+			numRecords++;
+		} catch (Exception e) {
+			throw new RuntimeException("Could not write the reduce output to "
+					+ file.getAbsolutePath(), e);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Closes the file and returns a combine input describing it.
+	 */
+	public CombineInput getCombineInput() {
+		try {
+			if (dout == null) {
+				open("", "");
+			}
+			dout.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write the reduce output to "
+					+ file.getAbsolutePath(), e);
+		}
+		CombineInput combineInput = new CombineInput(jobId, combineSink,
+				iteration, reducerNo);
+		combineInput.addKeyValue(new IntKey(reducerNo), new ReduceOutputFile(
+				reducerNo, daemonNo, daemonIP, file.getAbsolutePath(),
+				numRecords, file.length()));
+		return combineInput;
+	}
+}
@@ -55,7 +55,7 @@ package cgl.imr.base.impl;
 import java.util.HashMap;
 import java.util.Map;
 
-import cgl.imr.base.Combiner;
+import cgl.imr.base.AssociativeCombiner;
 import cgl.imr.base.Key;
 import cgl.imr.base.TwisterException;
 import cgl.imr.base.Value;
@@ -63,12 +63,13 @@ import cgl.imr.base.Value;
 /**
  * A generic combiner that can be used by any MapReduce computation. Simply
  * groups the results received from the Reduce tasks into a <Key,Value> map and
- * returns it.
+ * returns it. Since the reduce tasks produce disjoint sets of keys, the
+ * results can also be merged in a combine tree.
  * 
  * @author Jaliya Ekanayake (jaliyae@gamil.com, jekanaya@cs.indiana.edu)
  * 
  */
-public class GenericCombiner implements Combiner {
+public class GenericCombiner implements AssociativeCombiner {
 
 	Map<Key, Value> results;
 
@@ -88,6 +89,11 @@ public class GenericCombiner implements Combiner {
 		// TODO Auto-generated method stub
 	}
 
+	public Map<Key, Value> merge(Map<Key, Value> first, Map<Key, Value> second) {
+		first.putAll(second);
+		return first;
+	}
+
 	public Map<Key, Value> getResults() {
 		return results;
 	}
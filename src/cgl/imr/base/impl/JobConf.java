@@ -57,8 +57,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 
 import cgl.imr.base.SerializationException;
 import cgl.imr.base.TwisterConstants;
@@ -84,6 +86,22 @@ public class JobConf implements TwisterConstants, TwisterSerializable {
 	private String reduceClass;
 	private boolean faultTolerance=false;
 	private String reducerSelectorClass;
+	private int stalenessBound = 0;
+	private String allReduceClass;
+	private boolean hasAllReduceClass = false;
+	private int combineFanIn = 0;
+	private String reduceOutputDir;
+	// Used by the driver only, hence not serialized.
+	private boolean keepReduceOutputs = false;
+	private List<String> cleanupDirs = new ArrayList<String>();
+	private double speculativeSlowdown = 0;
+	private int rebalanceHorizon = 0;
+	private String checkpointDir;
+	private int checkpointInterval = 0;
+	private String traceFile;
+	private int statusPort = 0;
+	private String profileFile;
+	private int profileInterval = 0;
 	
 	private String rowBCastTopic;
 	private boolean rowBCastSupported;
@@ -147,6 +165,327 @@ public class JobConf implements TwisterConstants, TwisterSerializable {
 		return sqrtReducers;
 	}
 
+	/**
+	 * Returns the number of iterations a map task is allowed to lag behind the
+	 * current iteration. Zero means strict BSP iterations.
+	 */
+	public int getStalenessBound() {
+		return stalenessBound;
+	}
+
+	/**
+	 * Enables the stale synchronous mode for iterative computations driven by
+	 * <code>runMapReduceBCast</code>. A map task that is still busy with an
+	 * older iteration is not waited for as long as it is not more than
+	 * <code>stalenessBound</code> iterations behind. The reducers use the
+	 * latest output such a map task completed instead, and a
+	 * <code>StaleCombiner</code> is told how old the map outputs behind each
+	 * of its inputs are.
+	 * 
+	 * @param stalenessBound
+	 *            - maximum number of iterations a map task may lag behind,
+	 *            zero disables the mode.
+	 */
+	public void setStalenessBound(int stalenessBound) {
+		if (stalenessBound < 0) {
+			throw new RuntimeException("Staleness bound cannot be negative.");
+		}
+		this.stalenessBound = stalenessBound;
+	}
+
+	public boolean isStaleSynchronous() {
+		return stalenessBound > 0;
+	}
+
+	public String getAllReduceClass() {
+		return allReduceClass;
+	}
+
+	public boolean isHasAllReduceClass() {
+		return hasAllReduceClass;
+	}
+
+	/**
+	 * Sets the <code>AllReduceTask</code> used to merge the map outputs across
+	 * the daemons. Such a job has no reduce tasks or combiner, the merged value
+	 * is kept in the daemons and used by <code>runMapReduceAllReduce()</code>.
+	 * 
+	 * @param allReduceClass
+	 *            - class implementing <code>AllReduceTask</code>.
+	 */
+	public void setAllReduceClass(Class<?> allReduceClass) {
+		this.allReduceClass = allReduceClass.getName();
+		this.hasAllReduceClass = true;
+	}
+
+	/**
+	 * Returns the fan-in of the combine tree. Zero means that all the reducers
+	 * send their outputs directly to the client.
+	 */
+	public int getCombineFanIn() {
+		return combineFanIn;
+	}
+
+	/**
+	 * Combines the reduce outputs through a tree of intermediate combiners
+	 * hosted at the daemons. Each intermediate combiner merges the outputs of
+	 * at most <code>combineFanIn</code> reducers (or lower level combiners),
+	 * so that the client receives at most <code>combineFanIn</code> inputs.
+	 * The combiner of the job must implement <code>AssociativeCombiner</code>.
+	 * 
+	 * @param combineFanIn
+	 *            - maximum number of inputs of a combiner, zero disables the
+	 *            combine tree.
+	 */
+	public void setCombineFanIn(int combineFanIn) {
+		if (combineFanIn < 0 || combineFanIn == 1) {
+			throw new RuntimeException(
+					"Combine fan-in must be zero or larger than one.");
+		}
+		this.combineFanIn = combineFanIn;
+	}
+
+	public boolean isTreeCombine() {
+		return hasCombinerClass && combineFanIn > 0
+				&& numReduceTasks > combineFanIn;
+	}
+
+	public String getReduceOutputDir() {
+		return reduceOutputDir;
+	}
+
+	/**
+	 * Makes the reduce tasks write their outputs to local files instead of
+	 * sending them to the client. Each reduce task writes one file per
+	 * iteration under the given directory of the <code>data_dir</code> of its
+	 * daemon, and only a description of the file reaches the client. The file
+	 * of the previous iteration is deleted once the next one is written, and
+	 * the directory is deleted when the job terminates unless
+	 * <code>setKeepReduceOutputs(true)</code> is called.
+	 * 
+	 * The job must use <code>ReduceOutputCombiner</code>, or a subclass of it,
+	 * as the combiner. It is set if the job has no combiner yet, and a
+	 * different combiner is rejected.
+	 * 
+	 * @param reduceOutputDir
+	 *            - directory relative to the <code>data_dir</code>.
+	 */
+	public void setReduceOutputDir(String reduceOutputDir) {
+		if (hasCombinerClass && !isReduceOutputCombiner(combinerClass)) {
+			throw new RuntimeException("The combiner " + combinerClass
+					+ " cannot receive reduce outputs written to files. Use "
+					+ ReduceOutputCombiner.class.getName() + ".");
+		}
+		this.reduceOutputDir = reduceOutputDir;
+		if (!hasCombinerClass) {
+			setCombinerClass(ReduceOutputCombiner.class);
+		}
+	}
+
+	private static boolean isReduceOutputCombiner(String className) {
+		try {
+			return ReduceOutputCombiner.class.isAssignableFrom(Class
+					.forName(className));
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	public boolean isKeepReduceOutputs() {
+		return keepReduceOutputs;
+	}
+
+	/**
+	 * Keeps the reduce output files after the job terminates, so that they can
+	 * be used as the input of a following job. The application is then
+	 * responsible for deleting them, e.g. using
+	 * <code>addCleanupDir(..)</code> of the last job reading them.
+	 */
+	public void setKeepReduceOutputs(boolean keepReduceOutputs) {
+		this.keepReduceOutputs = keepReduceOutputs;
+	}
+
+	public List<String> getCleanupDirs() {
+		return cleanupDirs;
+	}
+
+	/**
+	 * Adds a directory that every daemon deletes, with its contents, when the
+	 * job terminates.
+	 * 
+	 * @param dir
+	 *            - directory relative to the <code>data_dir</code>.
+	 */
+	public void addCleanupDir(String dir) {
+		cleanupDirs.add(dir);
+	}
+
+	public boolean isReduceOutputToFiles() {
+		return reduceOutputDir != null;
+	}
+
+	public double getSpeculativeSlowdown() {
+		return speculativeSlowdown;
+	}
+
+	/**
+	 * Enables the speculative execution of straggling map tasks. Once most of
+	 * the map tasks of an iteration have completed, a map task running longer
+	 * than <code>speculativeSlowdown</code> times the median execution time is
+	 * launched again at another daemon holding a replica of its data
+	 * partition. The first result of a map task is used and the reducers
+	 * discard the other one. Map tasks must be configured using a partition
+	 * file and must not change their state between iterations.
+	 * 
+	 * @param speculativeSlowdown
+	 *            - multiple of the median execution time after which a map
+	 *            task is considered a straggler, zero disables speculation.
+	 */
+	public void setSpeculativeSlowdown(double speculativeSlowdown) {
+		if (speculativeSlowdown != 0 && speculativeSlowdown <= 1) {
+			throw new RuntimeException(
+					"Speculative slowdown must be zero or larger than one.");
+		}
+		this.speculativeSlowdown = speculativeSlowdown;
+	}
+
+	public boolean isSpeculativeExecution() {
+		return speculativeSlowdown > 0;
+	}
+
+	public int getRebalanceHorizon() {
+		return rebalanceHorizon;
+	}
+
+	/**
+	 * Enables moving map tasks between daemons between iterations based on
+	 * their execution times in the previous iterations. A map task is moved
+	 * only to a daemon holding a replica of its data partition, and only if
+	 * the predicted reduction of the iteration time over the next
+	 * <code>rebalanceHorizon</code> iterations exceeds the time to configure
+	 * the moved mappers. Map tasks must be configured using a partition file
+	 * and must not change their state between iterations: a moved map task is
+	 * configured again from its data partition at the new daemon, and its
+	 * mapper at the old daemon is removed, so any state kept by the map task
+	 * is lost.
+	 * 
+	 * @param rebalanceHorizon
+	 *            - number of iterations a migration must pay off in, zero
+	 *            disables rebalancing.
+	 */
+	public void setRebalanceHorizon(int rebalanceHorizon) {
+		if (rebalanceHorizon < 0) {
+			throw new RuntimeException("Rebalance horizon cannot be negative.");
+		}
+		this.rebalanceHorizon = rebalanceHorizon;
+	}
+
+	public boolean isRebalanceMaps() {
+		return rebalanceHorizon > 0;
+	}
+
+	public String getCheckpointDir() {
+		return checkpointDir;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * Enables checkpointing the state of the driver to the given local
+	 * directory after every <code>checkpointInterval</code> iterations. The
+	 * checkpoints are written in the background. If a checkpoint of this job
+	 * id exists when the driver starts, the job can be resumed from it using
+	 * <code>TwisterDriver.resumeFromCheckpoint()</code>. The checkpoint is
+	 * deleted when the driver is closed after the job completed.
+	 * 
+	 * @param checkpointDir
+	 *            - directory to write the checkpoints to.
+	 * @param checkpointInterval
+	 *            - number of iterations between two checkpoints.
+	 */
+	public void setCheckpointing(String checkpointDir, int checkpointInterval) {
+		if (checkpointDir == null || checkpointInterval <= 0) {
+			throw new RuntimeException(
+					"Checkpointing needs a directory and a positive interval.");
+		}
+		this.checkpointDir = checkpointDir;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public boolean isCheckpointing() {
+		return checkpointDir != null;
+	}
+
+	public String getTraceFile() {
+		return traceFile;
+	}
+
+	/**
+	 * Enables tracing the tasks of the job. The daemons record the events of
+	 * the tasks in memory and ship them to the driver at the end of the job,
+	 * which writes the timeline of the whole cluster to the given file in the
+	 * Chrome trace format.
+	 * 
+	 * @param traceFile
+	 *            - file to write the trace to, e.g. trace.json.
+	 */
+	public void setTraceFile(String traceFile) {
+		this.traceFile = traceFile;
+	}
+
+	public boolean isTracing() {
+		return traceFile != null;
+	}
+
+	public int getStatusPort() {
+		return statusPort;
+	}
+
+	/**
+	 * Serves the status of the job as JSON over HTTP from the driver, at
+	 * http://host:statusPort/status. The server is not started by default.
+	 * 
+	 * @param statusPort
+	 *            - port to listen on, 0 to disable the server.
+	 */
+	public void setStatusPort(int statusPort) {
+		this.statusPort = statusPort;
+	}
+
+	public String getProfileFile() {
+		return profileFile;
+	}
+
+	public int getProfileInterval() {
+		return profileInterval;
+	}
+
+	/**
+	 * Enables sampling the stacks of the map and reduce tasks. The daemons
+	 * send the samples with the task statuses, and the driver writes the
+	 * collapsed stacks of the whole cluster to the given file at the end of
+	 * the job, one stack and its count per line, e.g. for flamegraph.pl.
+	 * 
+	 * @param profileFile
+	 *            - file to write the collapsed stacks to.
+	 * @param profileInterval
+	 *            - milliseconds between two samples.
+	 */
+	public void setProfiling(String profileFile, int profileInterval) {
+		if (profileFile == null || profileInterval <= 0) {
+			throw new RuntimeException(
+					"Profiling needs a file and a positive interval.");
+		}
+		this.profileFile = profileFile;
+		this.profileInterval = profileInterval;
+	}
+
+	public boolean isProfiling() {
+		return profileFile != null;
+	}
+
 	/**
 	 * Serializes the <code>JobConf</code> object.
 	 */
@@ -164,6 +503,45 @@ public class JobConf implements TwisterConstants, TwisterSerializable {
 			this.jobId = new String(data);
 			
 			faultTolerance=din.readBoolean();
+			stalenessBound = din.readInt();
+
+			this.hasAllReduceClass = din.readBoolean();
+			if (this.hasAllReduceClass) {
+				len = din.readInt();
+				data = new byte[len];
+				din.readFully(data);
+				this.allReduceClass = new String(data);
+			}
+			combineFanIn = din.readInt();
+			if (din.readBoolean()) {
+				len = din.readInt();
+				data = new byte[len];
+				din.readFully(data);
+				this.reduceOutputDir = new String(data);
+			}
+			speculativeSlowdown = din.readDouble();
+			rebalanceHorizon = din.readInt();
+			if (din.readBoolean()) {
+				len = din.readInt();
+				data = new byte[len];
+				din.readFully(data);
+				this.checkpointDir = new String(data);
+			}
+			checkpointInterval = din.readInt();
+			if (din.readBoolean()) {
+				len = din.readInt();
+				data = new byte[len];
+				din.readFully(data);
+				this.traceFile = new String(data);
+			}
+			statusPort = din.readInt();
+			if (din.readBoolean()) {
+				len = din.readInt();
+				data = new byte[len];
+				din.readFully(data);
+				this.profileFile = new String(data);
+			}
+			profileInterval = din.readInt();
 
 			numMapTasks = din.readInt();
 			numReduceTasks = din.readInt();
@@ -241,6 +619,44 @@ public class JobConf implements TwisterConstants, TwisterSerializable {
 			dout.write(data);
 			
 			dout.writeBoolean(faultTolerance);
+			dout.writeInt(stalenessBound);
+
+			dout.writeBoolean(hasAllReduceClass);
+			if (hasAllReduceClass) {
+				data = allReduceClass.getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+			}
+			dout.writeInt(combineFanIn);
+			dout.writeBoolean(reduceOutputDir != null);
+			if (reduceOutputDir != null) {
+				data = reduceOutputDir.getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+			}
+			dout.writeDouble(speculativeSlowdown);
+			dout.writeInt(rebalanceHorizon);
+			dout.writeBoolean(checkpointDir != null);
+			if (checkpointDir != null) {
+				data = checkpointDir.getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+			}
+			dout.writeInt(checkpointInterval);
+			dout.writeBoolean(traceFile != null);
+			if (traceFile != null) {
+				data = traceFile.getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+			}
+			dout.writeInt(statusPort);
+			dout.writeBoolean(profileFile != null);
+			if (profileFile != null) {
+				data = profileFile.getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+			}
+			dout.writeInt(profileInterval);
 
 			dout.writeInt(numMapTasks);
 			dout.writeInt(numReduceTasks);
@@ -351,6 +767,12 @@ public class JobConf implements TwisterConstants, TwisterSerializable {
 	}
 
 	public void setCombinerClass(Class<?> combinerClass) {
+		if (reduceOutputDir != null
+				&& !ReduceOutputCombiner.class.isAssignableFrom(combinerClass)) {
+			throw new RuntimeException(
+					"The reduce outputs are written to files, hence the combiner must be "
+							+ ReduceOutputCombiner.class.getName() + ".");
+		}
 		this.combinerClass = combinerClass.getName();
 		this.hasCombinerClass = true;
 	}
@@ -52,12 +52,16 @@
 
 package cgl.imr.base.impl;
 
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import cgl.imr.base.PubSubException;
 import cgl.imr.base.PubSubService;
 import cgl.imr.base.TwisterConstants.EntityType;
 import cgl.imr.config.TwisterConfigurations;
 import cgl.imr.pubsub.nb.NBPubSubService;
 import cgl.imr.pubsub.mq.MQPubSubService;
+import cgl.imr.util.PubSubMetrics;
 
 /**
  * Factory method to select a pub/sub infrastructure based on the configuration
@@ -75,9 +79,35 @@ public class PubSubFactory {
 
 	final static String narada_broker_name = "NaradaBrokering";
 	final static String activemq_broker_name = "ActiveMQ";
+	final static String null_broker_name = "None";
+
+	private static AtomicInteger recordingCount = new AtomicInteger();
 
 	public static PubSubService getPubSubService(TwisterConfigurations config,
 			EntityType type, int daemonNo) throws PubSubException {
+		PubSubService pubSubService = getBrokerService(config, type, daemonNo);
+		if (config.getPubsubRecordDir() != null) {
+			File file = new File(config.getPubsubRecordDir(), type.name()
+					.toLowerCase()
+					+ "-"
+					+ daemonNo
+					+ "-"
+					+ System.currentTimeMillis()
+					+ "-"
+					+ recordingCount.getAndIncrement() + ".twr");
+			pubSubService = new RecordingPubSubService(pubSubService, file);
+		}
+		if (config.isPubsubMetering()) {
+			PubSubMetrics.getInstance().startSummaryLog(
+					config.getPubsubMeteringLogInterval() * 1000L);
+			return new MeteringPubSubService(pubSubService);
+		}
+		return pubSubService;
+	}
+
+	private static PubSubService getBrokerService(
+			TwisterConfigurations config, EntityType type, int daemonNo)
+			throws PubSubException {
 		if (config.getPubsubBroker().equalsIgnoreCase(narada_broker_name)) {
 			System.out.println("Isnide IF");
 			return new NBPubSubService(type, daemonNo);
@@ -85,6 +115,8 @@ public class PubSubFactory {
 		}else if (config.getPubsubBroker().equalsIgnoreCase(activemq_broker_name)){
 			//To ActiveMQ
 			return new MQPubSubService(type, daemonNo);
+		}else if (config.getPubsubBroker().equalsIgnoreCase(null_broker_name)){
+			return new NullPubSubService();
 		}else {
 			throw new PubSubException("Unsuported pub/sub broker.");
 		}
@@ -0,0 +1,171 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.base.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.PubSubException;
+import cgl.imr.base.PubSubService;
+import cgl.imr.base.Subscribable;
+import cgl.imr.base.TopicSubscribable;
+import cgl.imr.util.PubSubMetrics;
+import cgl.imr.util.TrafficRecord;
+import cgl.imr.util.TrafficRecorder;
+
+/**
+ * Decorates a pub/sub service to append every message sent and received to a
+ * <code>TrafficRecorder</code> file, which <code>ReplayTool</code> can later
+ * feed back into a single daemon or driver. <code>PubSubFactory</code>
+ * installs it when a record directory is set in twister.properties. A failure
+ * to write stops the recording but never the traffic.
+ * 
+ */
+public class RecordingPubSubService implements PubSubService,
+		TopicSubscribable {
+
+	private static Logger logger = Logger
+			.getLogger(RecordingPubSubService.class);
+
+	private PubSubService pubSubService;
+	private Subscribable subscriber;
+	private volatile TrafficRecorder recorder;
+	private File file;
+
+	public RecordingPubSubService(PubSubService pubSubService, File file)
+			throws PubSubException {
+		this.pubSubService = pubSubService;
+		this.file = file;
+		try {
+			this.recorder = new TrafficRecorder(file);
+		} catch (IOException e) {
+			throw new PubSubException("Could not create the recording "
+					+ file, e);
+		}
+		logger.info("Recording the pub/sub traffic to " + file);
+	}
+
+	public void close() throws PubSubException {
+		try {
+			pubSubService.close();
+		} finally {
+			TrafficRecorder closing = recorder;
+			recorder = null;
+			if (closing != null) {
+				try {
+					closing.close();
+				} catch (IOException e) {
+					logger.error("Could not close the recording " + file, e);
+				}
+			}
+		}
+	}
+
+	public void send(String topic, byte[] message) throws PubSubException {
+		pubSubService.send(topic, message);
+		record(TrafficRecord.SENT, topic, message);
+	}
+
+	public void send(String topic, String message) throws PubSubException {
+		pubSubService.send(topic, message);
+		record(TrafficRecord.SENT, topic, message.getBytes());
+	}
+
+	public void setSubscriber(Subscribable callback) throws PubSubException {
+		if (callback == null) {
+			throw new PubSubException("Susbcriber cannot be NULL.");
+		}
+		this.subscriber = callback;
+		pubSubService.setSubscriber(this);
+	}
+
+	public void subscribe(String topic) throws PubSubException {
+		pubSubService.subscribe(topic);
+	}
+
+	public void unsubscribe(String topic) throws PubSubException {
+		pubSubService.unsubscribe(topic);
+	}
+
+	public void onEvent(byte[] message) {
+		onEvent(PubSubMetrics.UNKNOWN_TOPIC, message);
+	}
+
+	public void onEvent(String topic, byte[] message) {
+		record(TrafficRecord.RECEIVED, topic, message);
+		if (subscriber instanceof TopicSubscribable) {
+			((TopicSubscribable) subscriber).onEvent(topic, message);
+		} else {
+			subscriber.onEvent(message);
+		}
+	}
+
+	private void record(byte direction, String topic, byte[] message) {
+		TrafficRecorder current = recorder;
+		if (current == null) {
+			return;
+		}
+		try {
+			current.record(direction, topic, message);
+		} catch (IOException e) {
+			logger.error("Stopped recording to " + file, e);
+			recorder = null;
+			try {
+				current.close();
+			} catch (IOException e1) { // Ignore
+			}
+		}
+	}
+}
@@ -68,9 +68,10 @@ public class ReduceOutputCollectorImpl implements ReduceOutputCollector {
 
 	private CombineInput combineInput;
 
-	public ReduceOutputCollectorImpl(String combineSink, int iteration,
-			int reducerNo) {
-		this.combineInput = new CombineInput(combineSink, iteration, reducerNo);
+	public ReduceOutputCollectorImpl(String jobId, String combineSink,
+			int iteration, int reducerNo) {
+		this.combineInput = new CombineInput(jobId, combineSink, iteration,
+				reducerNo);
 	}
 
 	public void collect(Key key, Value val) {
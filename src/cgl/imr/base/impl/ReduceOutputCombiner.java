@@ -0,0 +1,139 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.base.impl;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.ThreadSafeCombiner;
+import cgl.imr.base.TwisterConstants;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+import cgl.imr.data.file.ReduceOutputFile;
+
+/**
+ * Collects the descriptions of the files written by the reduce tasks when
+ * <code>JobConf.setReduceOutputDir</code> is used. The files can be passed to
+ * the map tasks of a following job through the partition file written by
+ * <code>writePartitionFile</code>, without moving the data through the
+ * client.
+ * 
+ */
+public class ReduceOutputCombiner implements ThreadSafeCombiner {
+
+	private Map<Integer, ReduceOutputFile> outputFiles = new TreeMap<Integer, ReduceOutputFile>();
+
+	public void configure(JobConf jobConf) throws TwisterException {
+	}
+
+	public synchronized void combine(Map<Key, Value> keyValues)
+			throws TwisterException {
+		Iterator<Value> ite = keyValues.values().iterator();
+		ReduceOutputFile file;
+		while (ite.hasNext()) {
+			file = (ReduceOutputFile) ite.next();
+			outputFiles.put(file.getReducerNo(), file);
+		}
+	}
+
+	/**
+	 * Returns the files written in the last iteration, ordered by the reduce
+	 * task numbers.
+	 */
+	public synchronized List<ReduceOutputFile> getOutputFiles() {
+		return new ArrayList<ReduceOutputFile>(outputFiles.values());
+	}
+
+	public synchronized long getNumRecords() {
+		long numRecords = 0;
+		for (ReduceOutputFile file : outputFiles.values()) {
+			numRecords += file.getNumRecords();
+		}
+		return numRecords;
+	}
+
+	/**
+	 * Writes a partition file listing the reduce output files, which can be
+	 * used with <code>configureMaps(partitionFile)</code>.
+	 * 
+	 * @param partitionFile
+	 *            - name of the partition file.
+	 * @throws TwisterException
+	 */
+	public synchronized void writePartitionFile(String partitionFile)
+			throws TwisterException {
+		try {
+			BufferedWriter bw = new BufferedWriter(
+					new FileWriter(partitionFile));
+			int fileNo = 0;
+			String sep = TwisterConstants.PARTITION_FILE_SPLIT_PATTERN;
+			for (ReduceOutputFile file : outputFiles.values()) {
+				bw.write(fileNo + sep + file.getDaemonIP() + sep
+						+ file.getDaemonNo() + sep + file.getFileName() + sep
+						+ file.getFileSize() + "\n");
+				fileNo++;
+			}
+			bw.flush();
+			bw.close();
+		} catch (Exception e) {
+			throw new TwisterException("Could not write the partition file "
+					+ partitionFile, e);
+		}
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.base.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.KeyValuePair;
+import cgl.imr.base.ThreadSafeCombiner;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.TwisterSerializable;
+import cgl.imr.base.Value;
+
+/**
+ * A combiner for computations with large outputs. Unlike
+ * <code>GenericCombiner</code>, the results are not collected into a single
+ * map. The records are buffered in memory and appended to a local file once
+ * the buffer is full, so the memory used by the client is bounded by the
+ * buffer size. With a buffer size of zero every record is written directly to
+ * the file.
+ * 
+ * The results are read back as a stream of records using
+ * <code>iterator()</code>, in the order they were received. The combiner is
+ * thread safe, hence the client combines the incoming outputs in parallel.
+ * 
+ * The buffer size and the directory of the file are read from the job
+ * properties <code>MAX_RECORDS_IN_MEMORY</code> and <code>SPILL_DIR</code>.
+ * To use it, set it as the combiner of the job and read the results from the
+ * combiner of the driver once the iteration completes, e.g.
+ * 
+ * <pre>
+ * jobConf.setCombinerClass(SpillingCombiner.class);
+ * jobConf.addProperty(SpillingCombiner.SPILL_DIR, &quot;/tmp&quot;);
+ * ...
+ * monitor.monitorTillCompletion();
+ * SpillingCombiner combiner = (SpillingCombiner) driver.getCurrentCombiner();
+ * Iterator&lt;KeyValuePair&gt; records = combiner.iterator();
+ * </pre>
+ * 
+ * The driver creates a new combiner for every iteration and closes the one of
+ * the previous iteration, which deletes its spill file, hence the records of
+ * an iteration have to be read before the next iteration starts. The combiner
+ * of the last iteration should be closed by the application.
+ * 
+ */
+public class SpillingCombiner implements ThreadSafeCombiner {
+
+	public static String MAX_RECORDS_IN_MEMORY = "spilling_combiner_max_records_in_memory";
+	public static String SPILL_DIR = "spilling_combiner_spill_dir";
+	public static int DEFAULT_MAX_RECORDS_IN_MEMORY = 100000;
+
+	private int maxRecordsInMemory = DEFAULT_MAX_RECORDS_IN_MEMORY;
+	private File spillDir;
+	private File spillFile;
+	private DataOutputStream spillStream;
+	private long numSpilledRecords = 0;
+	private List<KeyValuePair> buffer = new ArrayList<KeyValuePair>();
+	private boolean closed = false;
+
+	public void configure(JobConf jobConf) throws TwisterException {
+		String val = jobConf.getProperty(MAX_RECORDS_IN_MEMORY);
+		if (val != null) {
+			maxRecordsInMemory = Integer.parseInt(val);
+		}
+		val = jobConf.getProperty(SPILL_DIR);
+		if (val != null) {
+			spillDir = new File(val);
+		}
+	}
+
+	public synchronized void combine(Map<Key, Value> keyValues)
+			throws TwisterException {
+		// Late outputs of an iteration whose combiner was already replaced.
+		if (closed) {
+			return;
+		}
+		Iterator<Key> ite = keyValues.keySet().iterator();
+		Key key;
+		while (ite.hasNext()) {
+			key = ite.next();
+			buffer.add(new KeyValuePair(key, keyValues.get(key)));
+			if (buffer.size() >= maxRecordsInMemory) {
+				spill();
+			}
+		}
+	}
+
+	/**
+	 * Appends the buffered records to the spill file.
+	 */
+	private void spill() throws TwisterException {
+		try {
+			if (spillStream == null) {
+				spillFile = File.createTempFile("twister-combine-", ".spill",
+						spillDir);
+				spillFile.deleteOnExit();
+				spillStream = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(spillFile)));
+			}
+			byte[] data;
+			for (KeyValuePair pair : buffer) {
+				spillStream.writeUTF(pair.getKey().getClass().getName());
+				data = pair.getKey().getBytes();
+				spillStream.writeInt(data.length);
+				spillStream.write(data);
+				spillStream.writeUTF(pair.getValue().getClass().getName());
+				data = pair.getValue().getBytes();
+				spillStream.writeInt(data.length);
+				spillStream.write(data);
+			}
+			numSpilledRecords += buffer.size();
+			buffer.clear();
+		} catch (Exception e) {
+			throw new TwisterException("Could not spill the combiner results.",
+					e);
+		}
+	}
+
+	/**
+	 * Returns the total number of records received.
+	 */
+	public synchronized long getNumRecords() {
+		return numSpilledRecords + buffer.size();
+	}
+
+	/**
+	 * Returns the file holding the spilled records, or null if nothing has
+	 * been spilled.
+	 */
+	public synchronized File getSpillFile() throws TwisterException {
+		flush();
+		return spillFile;
+	}
+
+	private void flush() throws TwisterException {
+		if (spillStream != null) {
+			try {
+				spillStream.flush();
+			} catch (IOException e) {
+				throw new TwisterException(e);
+			}
+		}
+	}
+
+	/**
+	 * Streams the records received so far, first the spilled ones then the
+	 * ones still in memory. Should be used after the MapReduce computation
+	 * completes.
+	 * 
+	 * @return iterator over the records.
+	 * @throws TwisterException
+	 */
+	public synchronized Iterator<KeyValuePair> iterator()
+			throws TwisterException {
+		flush();
+		final List<KeyValuePair> inMemory = new ArrayList<KeyValuePair>(buffer);
+		final long numSpilled = numSpilledRecords;
+		final DataInputStream din;
+		try {
+			din = (numSpilled > 0) ? new DataInputStream(
+					new BufferedInputStream(new FileInputStream(spillFile)))
+					: null;
+		} catch (IOException e) {
+			throw new TwisterException("Could not open the spill file.", e);
+		}
+
+		return new Iterator<KeyValuePair>() {
+			private long numRead = 0;
+			private Iterator<KeyValuePair> memIte = inMemory.iterator();
+
+			public boolean hasNext() {
+				return numRead < numSpilled || memIte.hasNext();
+			}
+
+			public KeyValuePair next() {
+				if (numRead < numSpilled) {
+					try {
+						Key key = (Key) readObject(din);
+						Value value = (Value) readObject(din);
+						numRead++;
+						if (numRead == numSpilled) {
+							din.close();
+						}
+						return new KeyValuePair(key, value);
+					} catch (Exception e) {
+						throw new RuntimeException(
+								"Could not read the spilled records.", e);
+					}
+				}
+				if (memIte.hasNext()) {
+					return memIte.next();
+				}
+				throw new NoSuchElementException();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static TwisterSerializable readObject(DataInputStream din)
+			throws Exception {
+		Class<?> c = Class.forName(din.readUTF());
+		byte[] data = new byte[din.readInt()];
+		din.readFully(data);
+		TwisterSerializable obj = (TwisterSerializable) c.newInstance();
+		obj.fromBytes(data);
+		return obj;
+	}
+
+	/**
+	 * Releases the buffered records and deletes the spill file.
+	 */
+	public synchronized void close() throws TwisterException {
+		closed = true;
+		buffer.clear();
+		try {
+			if (spillStream != null) {
+				spillStream.close();
+				spillStream = null;
+			}
+		} catch (IOException e) {
+			throw new TwisterException(e);
+		} finally {
+			if (spillFile != null) {
+				spillFile.delete();
+				spillFile = null;
+			}
+			numSpilledRecords = 0;
+		}
+	}
+}
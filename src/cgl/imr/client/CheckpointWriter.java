@@ -0,0 +1,161 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the checkpoints of the driver to a local file in the background.
+ * Only the latest checkpoint is kept, so the checkpoints submitted while
+ * another one is being written are written together with a single sync to
+ * the disk. A checkpoint is written to a temporary file and then renamed, so
+ * that the previous checkpoint stays valid if the driver fails while writing.
+ * 
+ */
+public class CheckpointWriter implements Runnable {
+
+	private static Logger logger = Logger.getLogger(CheckpointWriter.class);
+
+	private File checkpointFile;
+	private byte[] pending;
+	private boolean closed = false;
+	private Thread thread;
+
+	public CheckpointWriter(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+		File dir = checkpointFile.getParentFile();
+		if (dir != null && !dir.exists()) {
+			dir.mkdirs();
+		}
+		this.thread = new Thread(this, "Checkpoint writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Schedules the given checkpoint to be written, replacing any checkpoint
+	 * that is not written yet.
+	 */
+	public synchronized void submit(byte[] checkpoint) {
+		if (closed) {
+			return;
+		}
+		pending = checkpoint;
+		notifyAll();
+	}
+
+	public void run() {
+		byte[] checkpoint;
+		while (true) {
+			synchronized (this) {
+				while (pending == null && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending == null) {
+					return;
+				}
+				checkpoint = pending;
+				pending = null;
+			}
+			try {
+				write(checkpoint);
+			} catch (IOException e) {
+				logger.error("Could not write the checkpoint to "
+						+ checkpointFile, e);
+			}
+		}
+	}
+
+	private void write(byte[] checkpoint) throws IOException {
+		File tmpFile = new File(checkpointFile.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmpFile);
+		try {
+			out.write(checkpoint);
+			out.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!tmpFile.renameTo(checkpointFile)) {
+			// Renaming over an existing file fails on some platforms.
+			checkpointFile.delete();
+			if (!tmpFile.renameTo(checkpointFile)) {
+				throw new IOException("Could not rename " + tmpFile + " to "
+						+ checkpointFile);
+			}
+		}
+	}
+
+	/**
+	 * Writes the pending checkpoint, if any, and stops the writer.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			logger.error(e);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cgl.imr.message.DaemonTelemetry;
+
+/**
+ * Resource usage of the daemons summed up over the cluster, from the latest
+ * telemetry each daemon reported to the <code>FaultDetector</code>.
+ * 
+ */
+public class ClusterPressure {
+
+	private int numDaemons;
+	private long heapUsed;
+	private long heapMax;
+	private double totalCpuLoad;
+	private int numCpuLoads;
+	private double maxGcFraction;
+	private long dataCacheBytes;
+	private int queueDepth;
+	private List<Integer> overloadedDaemons = new ArrayList<Integer>();
+
+	void add(int daemonNo, DaemonTelemetry telemetry, boolean overloaded) {
+		numDaemons++;
+		heapUsed += telemetry.getHeapUsed();
+		heapMax += Math.max(telemetry.getHeapMax(), 0);
+		if (telemetry.getCpuLoad() >= 0) {
+			totalCpuLoad += telemetry.getCpuLoad();
+			numCpuLoads++;
+		}
+		maxGcFraction = Math.max(maxGcFraction, telemetry.getGcFraction());
+		dataCacheBytes += telemetry.getDataCacheBytes();
+		queueDepth += telemetry.getQueueDepth();
+		if (overloaded) {
+			overloadedDaemons.add(daemonNo);
+		}
+	}
+
+	/**
+	 * @return the number of daemons that reported their usage.
+	 */
+	public int getNumDaemons() {
+		return numDaemons;
+	}
+
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+	public long getHeapMax() {
+		return heapMax;
+	}
+
+	/**
+	 * @return the mean CPU load of the daemons, or negative if unknown.
+	 */
+	public double getMeanCpuLoad() {
+		return numCpuLoads == 0 ? -1 : totalCpuLoad / numCpuLoads;
+	}
+
+	public double getMaxGcFraction() {
+		return maxGcFraction;
+	}
+
+	public long getDataCacheBytes() {
+		return dataCacheBytes;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public List<Integer> getOverloadedDaemons() {
+		return overloadedDaemons;
+	}
+
+	public String toString() {
+		return String.format(
+				"%d daemons, heap %dMB of %dMB, cpu %.0f%%, max gc %.0f%%,"
+						+ " data cache %dMB, queued tasks %d, overloaded %s",
+				numDaemons, heapUsed >> 20, heapMax >> 20,
+				getMeanCpuLoad() * 100, maxGcFraction * 100,
+				dataCacheBytes >> 20, queueDepth, overloadedDaemons);
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.AssociativeCombiner;
+import cgl.imr.base.Combiner;
+import cgl.imr.base.Key;
+import cgl.imr.base.StaleCombiner;
+import cgl.imr.base.ThreadSafeCombiner;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+import cgl.imr.message.CombineInput;
+import cgl.imr.message.TaskMetrics;
+import cgl.imr.monitor.TwisterMonitorBasic;
+
+/**
+ * Handles the combine inputs received by the client in a pool of threads, so
+ * that deserializing, downloading and combining the inputs do not block the
+ * pub/sub listener thread.
+ * 
+ * Inputs are downloaded and deserialized concurrently. How they are combined
+ * depends on the combiner.
+ * <ul>
+ * <li>An <code>AssociativeCombiner</code> merges the inputs pairwise in
+ * parallel, and the fully merged result is passed to <code>combine</code>
+ * once per iteration. Only the results of neighbouring senders are merged,
+ * the lower numbered first, so the order of the senders is kept.</li>
+ * <li>A <code>ThreadSafeCombiner</code> combines the inputs concurrently.</li>
+ * <li>Any other combiner combines one input at a time.</li>
+ * </ul>
+ * The monitor counts an input only after it has been combined, hence the
+ * iteration completes only after the last combine finishes.
+ * 
+ */
+public class CombineExecutor {
+
+	private static Logger logger = Logger.getLogger(CombineExecutor.class);
+
+	private TwisterDriver driver;
+	private ExecutorService executor;
+
+	// Partially merged inputs of associative combiners, per iteration.
+	private Map<Integer, IterationPartials> partials;
+
+	// Iteration being run; partial results of older iterations belong to
+	// attempts that were abandoned after a fault.
+	private int currentIteration;
+
+	// Merged outputs of the senders (reducers or top level combiners)
+	// numbered from first to last.
+	private static class PartialResult {
+		private Map<Key, Value> outputs;
+		private int first;
+		private int last;
+		private int oldestMapIteration;
+
+		private PartialResult(Map<Key, Value> outputs, int first, int last,
+				int oldestMapIteration) {
+			this.outputs = outputs;
+			this.first = first;
+			this.last = last;
+			this.oldestMapIteration = oldestMapIteration;
+		}
+
+		private int getNumInputs() {
+			return last - first + 1;
+		}
+	}
+
+	// Partial results of an iteration waiting for their neighbours, by their
+	// first and by their last sender.
+	private static class IterationPartials {
+		private Map<Integer, PartialResult> byFirst = new HashMap<Integer, PartialResult>();
+		private Map<Integer, PartialResult> byLast = new HashMap<Integer, PartialResult>();
+	}
+
+	public CombineExecutor(TwisterDriver driver, int numThreads) {
+		this.driver = driver;
+		this.partials = new HashMap<Integer, IterationPartials>();
+		this.executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "twister-combine");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Schedules the handling of a serialized combine input.
+	 * 
+	 * @param message
+	 *            - bytes of a <code>CombineInput</code>.
+	 */
+	public void submit(final byte[] message) {
+		executor.execute(new Runnable() {
+			public void run() {
+				handleCombineInput(message);
+			}
+		});
+	}
+
+	private void handleCombineInput(byte[] message) {
+		try {
+			Combiner combiner = driver.getCurrentCombiner();
+			TwisterMonitorBasic monitor = (TwisterMonitorBasic) driver
+					.getMonitor();
+			long handleBegin = System.nanoTime();
+			long begin = handleBegin;
+			CombineInput combineInput = new CombineInput();
+			combineInput.fromBytes(message);
+			long end = System.nanoTime();
+			monitor.recordDriverTime(TaskMetrics.SERIALIZE, end - begin);
+			if (!combineInput.isHasData()) {
+				combineInput = driver
+						.getCombineInputFromRemoteHost(combineInput);
+				begin = end;
+				end = System.nanoTime();
+				monitor.recordDriverTime(TaskMetrics.FETCH, end - begin);
+			}
+			Map<Key, Value> outputs = combineInput.getOutputs();
+			if (combiner instanceof AssociativeCombiner) {
+				mergeAndCombine((AssociativeCombiner) combiner, outputs,
+						combineInput.getReducerNo(), combineInput
+								.getIteration(), combineInput
+								.getOldestMapIteration(), monitor);
+			} else if (combiner instanceof ThreadSafeCombiner) {
+				if (!outputs.isEmpty()) {
+					combine(combiner, outputs, combineInput.getIteration(),
+							combineInput.getOldestMapIteration());
+				}
+				monitor.recordDriverTime(TaskMetrics.COMPUTE, System
+						.nanoTime()
+						- end);
+				monitor.combinerInputReceived(combineInput);
+			} else {
+				synchronized (combiner) {
+					if (!outputs.isEmpty()) {
+						combine(combiner, outputs, combineInput.getIteration(),
+								combineInput.getOldestMapIteration());
+					}
+				}
+				// Includes the time waiting for the combiner lock.
+				monitor.recordDriverTime(TaskMetrics.COMPUTE, System
+						.nanoTime()
+						- end);
+				monitor.combinerInputReceived(combineInput);
+			}
+			long handleEnd = System.nanoTime();
+			driver.getDriverMetrics().recordCombine(handleEnd - handleBegin);
+			if (driver.getTraceCollector() != null) {
+				driver.getTraceCollector().getTracer().span("combine",
+						handleBegin, handleEnd, combineInput.getReducerNo(),
+						combineInput.getIteration());
+			}
+		} catch (Exception e) {
+			/*
+			 * ZBJ: try to ignore the error here and use fault handler to
+			 * restore the computation. The exception here could be resulted by
+			 * the error from the Daemons (died with unknown reason).
+			 */
+			logger.error("Combiner encountered errors.", e);
+		}
+	}
+
+	/**
+	 * Passes the iteration tags to a <code>StaleCombiner</code>.
+	 */
+	private void combine(Combiner combiner, Map<Key, Value> outputs,
+			int iteration, int oldestMapIteration) throws TwisterException {
+		if (combiner instanceof StaleCombiner) {
+			((StaleCombiner) combiner).combine(outputs, iteration,
+					oldestMapIteration);
+		} else {
+			combiner.combine(outputs);
+		}
+	}
+
+	/**
+	 * Merges the outputs of a sender with the partial results of its
+	 * neighbouring senders in the iteration until either no neighbour is
+	 * left, in which case the merged outputs are kept for another thread, or
+	 * the outputs of all the senders are merged, in which case they are
+	 * combined. The senders are numbered from zero to the number of expected
+	 * inputs.
+	 */
+	private void mergeAndCombine(AssociativeCombiner combiner,
+			Map<Key, Value> outputs, int senderNo, int iteration,
+			int oldestMapIteration, TwisterMonitorBasic monitor)
+			throws TwisterException {
+		long begin = System.nanoTime();
+		int numExpected = driver.getNumCombineInputsExpected();
+		PartialResult result = new PartialResult(outputs, senderNo, senderNo,
+				oldestMapIteration);
+		PartialResult before;
+		PartialResult after;
+		while (result.getNumInputs() < numExpected) {
+			synchronized (this) {
+				if (iteration < currentIteration) {
+					logger.debug("Discarding a combine input of the abandoned iteration "
+							+ iteration);
+					return;
+				}
+				IterationPartials waiting = partials.get(iteration);
+				if (waiting == null) {
+					waiting = new IterationPartials();
+					partials.put(iteration, waiting);
+				}
+				before = waiting.byLast.remove(result.first - 1);
+				if (before != null) {
+					waiting.byFirst.remove(before.first);
+				}
+				after = waiting.byFirst.remove(result.last + 1);
+				if (after != null) {
+					waiting.byLast.remove(after.last);
+				}
+				if (before == null && after == null) {
+					waiting.byFirst.put(result.first, result);
+					waiting.byLast.put(result.last, result);
+					monitor.recordDriverTime(TaskMetrics.COMPUTE, System
+							.nanoTime()
+							- begin);
+					return;
+				}
+			}
+			if (before != null) {
+				result = merge(combiner, before, result);
+			}
+			if (after != null) {
+				result = merge(combiner, result, after);
+			}
+		}
+		synchronized (this) {
+			partials.remove(iteration);
+		}
+		if (!result.outputs.isEmpty()) {
+			combine(combiner, result.outputs, iteration,
+					result.oldestMapIteration);
+		}
+		monitor.recordDriverTime(TaskMetrics.COMPUTE, System.nanoTime() - begin);
+		monitor.combinerInputsReceived(result.getNumInputs());
+	}
+
+	/**
+	 * Merges the partial results of two neighbouring ranges of senders.
+	 */
+	private PartialResult merge(AssociativeCombiner combiner,
+			PartialResult first, PartialResult second) throws TwisterException {
+		return new PartialResult(combiner.merge(first.outputs, second.outputs),
+				first.first, second.last, Math.min(first.oldestMapIteration,
+						second.oldestMapIteration));
+	}
+
+	/**
+	 * Discards the partial results of the iterations before the given one,
+	 * which were left behind by attempts that failed or were restarted. Called
+	 * whenever the monitor is reset for a new run of an iteration.
+	 * 
+	 * @param iteration
+	 *            - the iteration about to run.
+	 */
+	public synchronized void beginIteration(int iteration) {
+		currentIteration = iteration;
+		Iterator<Integer> ite = partials.keySet().iterator();
+		while (ite.hasNext()) {
+			if (ite.next() < iteration) {
+				ite.remove();
+			}
+		}
+	}
+
+	/**
+	 * Stops the threads. Inputs not handled yet are discarded.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		synchronized (this) {
+			partials.clear();
+		}
+	}
+}
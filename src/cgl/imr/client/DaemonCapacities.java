@@ -0,0 +1,162 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cgl.imr.base.TwisterConstants;
+import cgl.imr.data.file.DaemonCapacity;
+
+/**
+ * Keeps the resources of the daemons reported in the responses to the new job
+ * requests and the rate at which they processed the data partitions of the
+ * previous map tasks. The information is shared by all the jobs of a client,
+ * so that a job benefits from the rates observed by the earlier jobs.
+ * 
+ */
+public class DaemonCapacities {
+
+	private static final double SMOOTHING_FACTOR = 0.5;
+
+	private static DaemonCapacities instance = new DaemonCapacities();
+
+	private Map<Integer, Integer> numProcessors;
+	private Map<Integer, Long> maxMemory;
+	// Bytes processed per millisecond by a map task.
+	private Map<Integer, Double> rates;
+
+	private DaemonCapacities() {
+		numProcessors = new HashMap<Integer, Integer>();
+		maxMemory = new HashMap<Integer, Long>();
+		rates = new HashMap<Integer, Double>();
+	}
+
+	public static DaemonCapacities getInstance() {
+		return instance;
+	}
+
+	public synchronized void setResources(int daemonNo, int processors,
+			long memory) {
+		numProcessors.put(daemonNo, processors);
+		maxMemory.put(daemonNo, memory);
+	}
+
+	/**
+	 * Records the rate of a map task which processed the given number of bytes
+	 * at the given daemon.
+	 */
+	public synchronized void recordMapTask(int daemonNo, long bytes,
+			long executionTime) {
+		if (bytes <= 0 || executionTime <= 0) {
+			return;
+		}
+		double rate = ((double) bytes) / executionTime;
+		Double current = rates.get(daemonNo);
+		if (current != null) {
+			rate = SMOOTHING_FACTOR * rate + (1 - SMOOTHING_FACTOR) * current;
+		}
+		rates.put(daemonNo, rate);
+	}
+
+	/**
+	 * Computes the capacities of the given daemons. The throughput of a daemon
+	 * is the number of map tasks it runs in parallel, limited by its share of
+	 * the processors of the node, multiplied by its observed rate relative to
+	 * the average rate of the daemons. A daemon is not assigned more bytes than
+	 * <code>PARTITION_MEMORY_FRACTION</code> of its heap.
+	 * 
+	 * @param daemons
+	 *            - the available daemons.
+	 * @param workersPerDaemon
+	 *            - number of map workers of a daemon.
+	 * @param daemonsPerNode
+	 *            - number of daemons sharing a node.
+	 * @return the capacity of every daemon.
+	 */
+	public synchronized Map<Integer, DaemonCapacity> getCapacities(
+			List<Integer> daemons, int workersPerDaemon, int daemonsPerNode) {
+		double totalRate = 0;
+		int numRates = 0;
+		for (Integer daemon : daemons) {
+			if (rates.containsKey(daemon)) {
+				totalRate += rates.get(daemon);
+				numRates++;
+			}
+		}
+		double averageRate = (numRates > 0) ? totalRate / numRates : 0;
+
+		Map<Integer, DaemonCapacity> capacities = new HashMap<Integer, DaemonCapacity>();
+		double parallelism;
+		double throughput;
+		long byteLimit;
+		for (Integer daemon : daemons) {
+			parallelism = Math.max(1, workersPerDaemon);
+			if (numProcessors.containsKey(daemon)) {
+				parallelism = Math.min(parallelism, Math.max(1,
+						numProcessors.get(daemon) / Math.max(1, daemonsPerNode)));
+			}
+			throughput = parallelism;
+			if (averageRate > 0 && rates.containsKey(daemon)) {
+				throughput *= rates.get(daemon) / averageRate;
+			}
+			byteLimit = 0;
+			if (maxMemory.containsKey(daemon)) {
+				byteLimit = (long) (maxMemory.get(daemon) * TwisterConstants.PARTITION_MEMORY_FRACTION);
+			}
+			capacities.put(daemon, new DaemonCapacity(throughput, byteLimit));
+		}
+		return capacities;
+	}
+}
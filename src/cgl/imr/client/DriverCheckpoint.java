@@ -0,0 +1,337 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.KeyValuePair;
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.TwisterSerializable;
+import cgl.imr.base.Value;
+
+/**
+ * State of the driver at the end of an iteration, used to resume an iterative
+ * job after the driver fails. Holds the number of the last completed
+ * iteration, its inputs, the execution plan and the daemons the data
+ * partitions were assigned to. The combiner is not saved, as the driver
+ * creates a new one for every iteration.
+ * 
+ */
+public class DriverCheckpoint implements TwisterSerializable {
+
+	private static final int VERSION = 2;
+	private static final String FILE_EXTENSION = ".ckpt";
+
+	private String jobId;
+	private int iteration;
+	private Value lastBcastValue;
+	private List<KeyValuePair> lastKeyValuePairs;
+
+	private boolean mapConfigured;
+	private String partitionFile;
+	private Value[] mapConfigurations;
+	private Value[] reduceConfigurations;
+	private Map<String, Value> memCachedData = new HashMap<String, Value>();
+	// Data partition file of a map task -> daemon running it.
+	private Map<String, Integer> mapAssignment = new HashMap<String, Integer>();
+
+	public DriverCheckpoint(byte[] bytes) throws SerializationException {
+		this.fromBytes(bytes);
+	}
+
+	public DriverCheckpoint(String jobId, int iteration, ExecutionPlan plan) {
+		this.jobId = jobId;
+		this.iteration = iteration;
+		this.mapConfigured = plan.isMapConfigured();
+		this.partitionFile = plan.getPartitionFile();
+		this.mapConfigurations = plan.getMapConfigurations();
+		this.reduceConfigurations = plan.getReduceConfigurations();
+		this.memCachedData.putAll(plan.getMemCachedData());
+	}
+
+	/**
+	 * Returns the file holding the checkpoints of the given job.
+	 */
+	public static File getCheckpointFile(String checkpointDir, String jobId) {
+		return new File(checkpointDir, jobId + FILE_EXTENSION);
+	}
+
+	/**
+	 * Reads the checkpoint of the given job.
+	 * 
+	 * @return the checkpoint, or null if the job has no checkpoint.
+	 * @throws SerializationException
+	 */
+	public static DriverCheckpoint read(String checkpointDir, String jobId)
+			throws SerializationException {
+		File file = getCheckpointFile(checkpointDir, jobId);
+		if (!file.exists()) {
+			return null;
+		}
+		byte[] data = new byte[(int) file.length()];
+		try {
+			DataInputStream din = new DataInputStream(new FileInputStream(file));
+			try {
+				din.readFully(data);
+			} finally {
+				din.close();
+			}
+		} catch (IOException e) {
+			throw new SerializationException(e);
+		}
+		return new DriverCheckpoint(data);
+	}
+
+	public void fromBytes(byte[] bytes) throws SerializationException {
+		ByteArrayInputStream baInputStream = new ByteArrayInputStream(bytes);
+		DataInputStream din = new DataInputStream(baInputStream);
+		try {
+			int version = din.readInt();
+			if (version != VERSION) {
+				throw new SerializationException(
+						"Unsupported checkpoint version " + version + ".");
+			}
+			jobId = din.readUTF();
+			iteration = din.readInt();
+			lastBcastValue = din.readBoolean() ? (Value) readObject(din) : null;
+			if (din.readBoolean()) {
+				int count = din.readInt();
+				lastKeyValuePairs = new ArrayList<KeyValuePair>(count);
+				for (int i = 0; i < count; i++) {
+					lastKeyValuePairs.add(new KeyValuePair(
+							(Key) readObject(din), (Value) readObject(din)));
+				}
+			}
+
+			mapConfigured = din.readBoolean();
+			partitionFile = din.readBoolean() ? din.readUTF() : null;
+			mapConfigurations = readValues(din);
+			reduceConfigurations = readValues(din);
+			int count = din.readInt();
+			for (int i = 0; i < count; i++) {
+				memCachedData.put(din.readUTF(), (Value) readObject(din));
+			}
+			count = din.readInt();
+			for (int i = 0; i < count; i++) {
+				mapAssignment.put(din.readUTF(), din.readInt());
+			}
+			din.close();
+			baInputStream.close();
+		} catch (IOException e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	public byte[] getBytes() throws SerializationException {
+		ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(baOutputStream);
+		try {
+			dout.writeInt(VERSION);
+			dout.writeUTF(jobId);
+			dout.writeInt(iteration);
+			dout.writeBoolean(lastBcastValue != null);
+			if (lastBcastValue != null) {
+				writeObject(dout, lastBcastValue);
+			}
+			dout.writeBoolean(lastKeyValuePairs != null);
+			if (lastKeyValuePairs != null) {
+				dout.writeInt(lastKeyValuePairs.size());
+				for (KeyValuePair pair : lastKeyValuePairs) {
+					writeObject(dout, pair.getKey());
+					writeObject(dout, pair.getValue());
+				}
+			}
+
+			dout.writeBoolean(mapConfigured);
+			dout.writeBoolean(partitionFile != null);
+			if (partitionFile != null) {
+				dout.writeUTF(partitionFile);
+			}
+			writeValues(dout, mapConfigurations);
+			writeValues(dout, reduceConfigurations);
+			dout.writeInt(memCachedData.size());
+			Iterator<String> keys = memCachedData.keySet().iterator();
+			String key;
+			while (keys.hasNext()) {
+				key = keys.next();
+				dout.writeUTF(key);
+				writeObject(dout, memCachedData.get(key));
+			}
+			dout.writeInt(mapAssignment.size());
+			for (Map.Entry<String, Integer> entry : mapAssignment.entrySet()) {
+				dout.writeUTF(entry.getKey());
+				dout.writeInt(entry.getValue());
+			}
+			dout.flush();
+		} catch (IOException e) {
+			throw new SerializationException(e);
+		}
+		return baOutputStream.toByteArray();
+	}
+
+	private void writeObject(DataOutputStream dout, TwisterSerializable object)
+			throws IOException, SerializationException {
+		dout.writeUTF(object.getClass().getName());
+		byte[] data = object.getBytes();
+		dout.writeInt(data.length);
+		dout.write(data);
+	}
+
+	private TwisterSerializable readObject(DataInputStream din)
+			throws IOException, SerializationException {
+		String className = din.readUTF();
+		byte[] data = new byte[din.readInt()];
+		din.readFully(data);
+		TwisterSerializable object;
+		try {
+			object = (TwisterSerializable) Class.forName(className)
+					.newInstance();
+		} catch (Exception e) {
+			throw new SerializationException("Could not load the class "
+					+ className, e);
+		}
+		object.fromBytes(data);
+		return object;
+	}
+
+	private void writeValues(DataOutputStream dout, Value[] values)
+			throws IOException, SerializationException {
+		dout.writeInt(values == null ? -1 : values.length);
+		if (values != null) {
+			for (Value value : values) {
+				writeObject(dout, value);
+			}
+		}
+	}
+
+	private Value[] readValues(DataInputStream din) throws IOException,
+			SerializationException {
+		int count = din.readInt();
+		if (count < 0) {
+			return null;
+		}
+		Value[] values = new Value[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = (Value) readObject(din);
+		}
+		return values;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	/**
+	 * Returns the number of the last completed iteration, whose inputs are
+	 * saved in the checkpoint.
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	public Value getLastBcastValue() {
+		return lastBcastValue;
+	}
+
+	public void setLastBcastValue(Value lastBcastValue) {
+		this.lastBcastValue = lastBcastValue;
+	}
+
+	public List<KeyValuePair> getLastKeyValuePairs() {
+		return lastKeyValuePairs;
+	}
+
+	public void setLastKeyValuePairs(List<KeyValuePair> lastKeyValuePairs) {
+		this.lastKeyValuePairs = lastKeyValuePairs;
+	}
+
+	public boolean isMapConfigured() {
+		return mapConfigured;
+	}
+
+	public String getPartitionFile() {
+		return partitionFile;
+	}
+
+	public Value[] getMapConfigurations() {
+		return mapConfigurations;
+	}
+
+	public Value[] getReduceConfigurations() {
+		return reduceConfigurations;
+	}
+
+	public Map<String, Value> getMemCachedData() {
+		return memCachedData;
+	}
+
+	public Map<String, Integer> getMapAssignment() {
+		return mapAssignment;
+	}
+
+	public void addMapAssignment(String dataFile, int daemonNo) {
+		mapAssignment.put(dataFile, daemonNo);
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cgl.imr.base.TwisterConstants;
+
+import cgl.imr.util.HistogramSnapshot;
+import cgl.imr.util.LatencyHistogram;
+import cgl.imr.util.MessageMetrics;
+
+/**
+ * Counters and latency histograms of a driver, exposed through JMX.
+ * 
+ */
+public class DriverMetrics implements DriverMetricsMXBean {
+
+	private TwisterDriver driver;
+	private String jobId;
+
+	private MessageMetrics messages = new MessageMetrics();
+	private LatencyHistogram mapTaskDurations = new LatencyHistogram();
+	private LatencyHistogram reduceTaskDurations = new LatencyHistogram();
+	private LatencyHistogram combineDurations = new LatencyHistogram();
+	private LatencyHistogram iterationDurations = new LatencyHistogram();
+	// Milliseconds of the last iterations, keyed by the iteration number.
+	private LinkedHashMap<Integer, Long> recentIterations = new LinkedHashMap<Integer, Long>();
+	private long startTime = System.currentTimeMillis();
+
+	public DriverMetrics(TwisterDriver driver, String jobId) {
+		this.driver = driver;
+		this.jobId = jobId;
+	}
+
+	public MessageMetrics getMessages() {
+		return messages;
+	}
+
+	public void recordMapTask(long nanos) {
+		mapTaskDurations.record(nanos);
+	}
+
+	public void recordReduceTask(long nanos) {
+		reduceTaskDurations.record(nanos);
+	}
+
+	public void recordCombine(long nanos) {
+		combineDurations.record(nanos);
+	}
+
+	public void recordIteration(long nanos) {
+		iterationDurations.record(nanos);
+		synchronized (recentIterations) {
+			recentIterations.put(driver.getIterationCount(), nanos / 1000000);
+			if (recentIterations.size() > TwisterConstants.NUM_RECENT_ITERATIONS) {
+				recentIterations.remove(recentIterations.keySet().iterator()
+						.next());
+			}
+		}
+	}
+
+	/**
+	 * Returns the milliseconds of the last iterations, keyed by the iteration
+	 * number in the order they completed.
+	 */
+	public Map<Integer, Long> getRecentIterations() {
+		synchronized (recentIterations) {
+			return new LinkedHashMap<Integer, Long>(recentIterations);
+		}
+	}
+
+	/**
+	 * Returns the time the driver started, in milliseconds since the epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public int getIteration() {
+		return driver.getIterationCount();
+	}
+
+	public long getBytesIn() {
+		return messages.getBytesIn();
+	}
+
+	public Map<String, Long> getMessagesHandled() {
+		return messages.getCounts();
+	}
+
+	public Map<String, HistogramSnapshot> getMessageLatencies() {
+		return messages.getLatencies();
+	}
+
+	public HistogramSnapshot getMapTaskDurations() {
+		return mapTaskDurations.getSnapshot();
+	}
+
+	public HistogramSnapshot getReduceTaskDurations() {
+		return reduceTaskDurations.getSnapshot();
+	}
+
+	public HistogramSnapshot getCombineDurations() {
+		return combineDurations.getSnapshot();
+	}
+
+	public HistogramSnapshot getIterationDurations() {
+		return iterationDurations.getSnapshot();
+	}
+}
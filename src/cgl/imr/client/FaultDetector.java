@@ -56,6 +56,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -78,6 +79,7 @@ import cgl.imr.base.impl.PubSubFactory;
 import cgl.imr.config.ConfigurationException;
 import cgl.imr.config.TwisterConfigurations;
 import cgl.imr.message.DaemonStatusMessage;
+import cgl.imr.message.DaemonTelemetry;
 import cgl.imr.worker.StatusNotifier;
 
 public class FaultDetector implements Subscribable {
@@ -98,12 +100,16 @@ public class FaultDetector implements Subscribable {
 		public void run(){			
 			Integer daemonNo;
 			DaemonStatus status;
+			long now;
 			while(!stop){
 				Iterator<Integer> ite =daemons.keySet().iterator();
 				while(ite.hasNext()){
 					daemonNo=ite.next();
 					status=daemons.get(daemonNo);
-					if( status.isRunning() && (System.currentTimeMillis()-status.getLastAliveTime())>TwisterConstants.MAX_WAIT_TIME_FOR_FAULT){
+					now = System.currentTimeMillis();
+					if (status.isRunning()
+							&& (getDetector(daemonNo).phi(now) > TwisterConstants.PHI_THRESHOLD || (now - status
+									.getLastAliveTime()) > TwisterConstants.MAX_WAIT_TIME_FOR_FAULT)) {
 						synchronized (this) {
 						System.out.println("FAILURE DETECTED ##################### Daemon " + daemonNo);
 						status.setRunning(false);						
@@ -113,7 +119,7 @@ public class FaultDetector implements Subscribable {
 						
 				}
 				try {
-					Thread.sleep(5000);
+					Thread.sleep(TwisterConstants.FAULT_CHECK_INTERVAL);
 				} catch (InterruptedException e) {
 					e.printStackTrace();
 				}
@@ -125,6 +131,10 @@ public class FaultDetector implements Subscribable {
 	private static Logger logger = Logger.getLogger(FaultDetector.class);
 
 	private ConcurrentHashMap<Integer, DaemonStatus> daemons = new ConcurrentHashMap<Integer, DaemonStatus>();
+	private ConcurrentHashMap<Integer, PhiAccrualDetector> detectors = new ConcurrentHashMap<Integer, PhiAccrualDetector>();
+	// Latest resource usage reported by each daemon, and when it arrived.
+	private ConcurrentHashMap<Integer, DaemonTelemetry> telemetry = new ConcurrentHashMap<Integer, DaemonTelemetry>();
+	private ConcurrentHashMap<Integer, Long> telemetryTimes = new ConcurrentHashMap<Integer, Long>();
 	private TwisterConfigurations config;
 	//private int numNodes;
 	//private int numDaemons;
@@ -223,6 +233,126 @@ public class FaultDetector implements Subscribable {
 		}
 	}
 
+	/**
+	 * Records a message received from a daemon. Any message from a daemon,
+	 * such as a task status or a response, shows that it is alive, so the
+	 * daemons send dedicated status messages only when they are idle.
+	 * 
+	 * @param daemonNo
+	 */
+	public void heartbeat(int daemonNo) {
+		DaemonStatus daemonStatus = daemons.get(daemonNo);
+		if (daemonStatus == null) {
+			logger.error("Invalid daemon no. Inconsistant runtime state.");
+			return;
+		}
+		long now = System.currentTimeMillis();
+		getDetector(daemonNo).heartbeat(now);
+		daemonStatus.setRunning(true);
+		daemonStatus.setLastAliveTime(now);
+	}
+
+	private PhiAccrualDetector getDetector(int daemonNo) {
+		PhiAccrualDetector detector = detectors.get(daemonNo);
+		if (detector == null) {
+			detectors.putIfAbsent(daemonNo, new PhiAccrualDetector(
+					TwisterConstants.HEARTBEAT_WINDOW_SIZE,
+					StatusNotifier.DAEMON_STATUS_INTERVAL,
+					TwisterConstants.HEARTBEAT_MIN_STD_DEVIATION,
+					StatusNotifier.DAEMON_STATUS_INTERVAL, System
+							.currentTimeMillis()));
+			detector = detectors.get(daemonNo);
+		}
+		return detector;
+	}
+
+	/**
+	 * Returns the suspicion level of a daemon, see
+	 * <code>PhiAccrualDetector</code>.
+	 */
+	public double getPhi(int daemonNo) {
+		return getDetector(daemonNo).phi(System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the liveness of the daemons, keyed by the daemon number.
+	 */
+	public Map<Integer, DaemonStatus> getDaemons() {
+		return Collections.unmodifiableMap(daemons);
+	}
+
+	/**
+	 * Records the resource usage reported by a daemon.
+	 */
+	public void addTelemetry(int daemonNo, DaemonTelemetry daemonTelemetry) {
+		boolean wasOverloaded = isOverloaded(daemonNo);
+		telemetry.put(daemonNo, daemonTelemetry);
+		telemetryTimes.put(daemonNo, System.currentTimeMillis());
+		boolean overloaded = isOverloaded(daemonNo);
+		if (overloaded && !wasOverloaded) {
+			logger.warn(String.format(
+					"Daemon %d spends %.0f%% of its time in GC, heap %dMB of %dMB.",
+					daemonNo, daemonTelemetry.getGcFraction() * 100,
+					daemonTelemetry.getHeapUsed() >> 20, daemonTelemetry
+							.getHeapMax() >> 20));
+		} else if (wasOverloaded && !overloaded) {
+			logger.info("Daemon " + daemonNo + " recovered from GC pressure.");
+		}
+	}
+
+	/**
+	 * Returns the latest resource usage of the daemons, keyed by the daemon
+	 * number.
+	 */
+	public Map<Integer, DaemonTelemetry> getTelemetry() {
+		return Collections.unmodifiableMap(telemetry);
+	}
+
+	/**
+	 * Checks whether a daemon recently reported spending more than
+	 * <code>GC_OVERLOAD_FRACTION</code> of its time in garbage collection.
+	 */
+	public boolean isOverloaded(int daemonNo) {
+		DaemonTelemetry daemonTelemetry = telemetry.get(daemonNo);
+		Long time = telemetryTimes.get(daemonNo);
+		if (daemonTelemetry == null || time == null) {
+			return false;
+		}
+		// Old reports do not tell the current state of the daemon.
+		if (System.currentTimeMillis() - time > 3 * StatusNotifier.DAEMON_TELEMETRY_INTERVAL) {
+			return false;
+		}
+		return daemonTelemetry.getGcFraction() >= TwisterConstants.GC_OVERLOAD_FRACTION;
+	}
+
+	/**
+	 * Returns the given daemons that are not overloaded, or all of them if
+	 * every daemon is overloaded.
+	 */
+	public List<Integer> preferHealthy(List<Integer> daemonNos) {
+		List<Integer> healthy = new ArrayList<Integer>();
+		for (Integer daemonNo : daemonNos) {
+			if (!isOverloaded(daemonNo)) {
+				healthy.add(daemonNo);
+			}
+		}
+		return healthy.isEmpty() ? daemonNos : healthy;
+	}
+
+	/**
+	 * Sums up the latest resource usage of the available daemons.
+	 */
+	public ClusterPressure getClusterPressure() {
+		ClusterPressure pressure = new ClusterPressure();
+		for (Integer daemonNo : getAvailableDeamons()) {
+			DaemonTelemetry daemonTelemetry = telemetry.get(daemonNo);
+			if (daemonTelemetry != null) {
+				pressure.add(daemonNo, daemonTelemetry, isOverloaded(daemonNo));
+			}
+		}
+		return pressure;
+	}
+
 	public List<Integer> getAvailableDeamons() {
 		List<Integer> availbleDaemons = new ArrayList<Integer>();
 		Iterator<Integer> ite = daemons.keySet().iterator();
@@ -244,12 +374,9 @@ public class FaultDetector implements Subscribable {
 				status = new DaemonStatusMessage(message);
 				//System.out.println("Status :" + status.getDaemonNo() + " "
 				//		+ status.getHostIP());
-				DaemonStatus daemonStatus=daemons.get(status.getDaemonNo());				
-				if(daemonStatus!=null){
-					daemonStatus.setRunning(true);
-					daemonStatus.setLastAliveTime(System.currentTimeMillis());
-				}else{
-					logger.error("Invalid daemon no. Inconsistant runtime state.");
+				heartbeat(status.getDaemonNo());
+				if (status.getTelemetry() != null) {
+					addTelemetry(status.getDaemonNo(), status.getTelemetry());
 				}
 			} catch (SerializationException e) {
 				logger.error(e);
@@ -0,0 +1,255 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.message.TaskStatus;
+import cgl.imr.monitor.JobStatus;
+
+/**
+ * Plans the migration of map tasks between daemons across iterations (see
+ * <code>JobConf.setRebalanceHorizon</code>).
+ * 
+ * The execution time of every map task is tracked across iterations using a
+ * moving average. The load of a daemon is the total time of its map tasks
+ * divided by the number of workers of a daemon, and the predicted iteration
+ * time is the load of the most loaded daemon. A map task is moved only to a
+ * daemon holding a replica of its data partition, and is expected to take the
+ * same time there. The time of a map task is not scaled by the average time of
+ * the tasks at either daemon, since a single slow task would then make its
+ * daemon look slow and be moved back and forth. Map tasks are moved away from
+ * the most loaded daemon while that reduces the predicted iteration time. The
+ * migrations are made only if the predicted gain over the next
+ * <code>horizon</code> iterations exceeds the cost of a migration, i.e. the
+ * time it took to configure the mappers the last time.
+ * 
+ */
+public class MapTaskRebalancer {
+
+	private static Logger logger = Logger.getLogger(MapTaskRebalancer.class);
+
+	private static final double SMOOTHING_FACTOR = 0.5;
+
+	private int numMapTasks;
+	private int horizon;
+	private int workersPerDaemon;
+	private double[] taskTimes;
+	private long migrationCost = 0;
+
+	public MapTaskRebalancer(int numMapTasks, int horizon, int workersPerDaemon) {
+		this.numMapTasks = numMapTasks;
+		this.horizon = horizon;
+		this.workersPerDaemon = Math.max(1, workersPerDaemon);
+		this.taskTimes = new double[numMapTasks];
+		for (int i = 0; i < numMapTasks; i++) {
+			taskTimes[i] = -1;
+		}
+	}
+
+	/**
+	 * Updates the execution times of the map tasks using the statuses of a
+	 * completed iteration.
+	 * 
+	 * @param jobStatus
+	 *            - status of the completed iteration.
+	 */
+	public synchronized void iterationCompleted(JobStatus jobStatus) {
+		Iterator<TaskStatus> ite = jobStatus.getMapTaskStatuses().values()
+				.iterator();
+		TaskStatus status;
+		int taskNo;
+		while (ite.hasNext()) {
+			status = ite.next();
+			taskNo = status.getTaskNo();
+			if (taskNo < 0 || taskNo >= numMapTasks) {
+				continue;
+			}
+			if (taskTimes[taskNo] < 0) {
+				taskTimes[taskNo] = status.getExecuationTime();
+			} else {
+				taskTimes[taskNo] = SMOOTHING_FACTOR
+						* status.getExecuationTime()
+						+ (1 - SMOOTHING_FACTOR) * taskTimes[taskNo];
+			}
+		}
+	}
+
+	/**
+	 * Sets the time, in milliseconds, it takes to configure the mappers at
+	 * their new daemons.
+	 */
+	public synchronized void setMigrationCost(long migrationCost) {
+		this.migrationCost = migrationCost;
+	}
+
+	public synchronized long getMigrationCost() {
+		return migrationCost;
+	}
+
+	/**
+	 * Plans the migrations for the next iteration.
+	 * 
+	 * @param assignment
+	 *            - current daemon of every map task.
+	 * @param candidates
+	 *            - daemons each map task can be moved to.
+	 * @return the new daemon of every map task to be moved, empty if no
+	 *         migration pays off.
+	 */
+	public synchronized Map<Integer, Integer> planMigrations(
+			Map<Integer, Integer> assignment,
+			Map<Integer, Collection<Integer>> candidates) {
+		Map<Integer, Integer> migrations = new HashMap<Integer, Integer>();
+		for (int i = 0; i < numMapTasks; i++) {
+			if (taskTimes[i] < 0) {
+				return migrations;
+			}
+		}
+
+		Map<Integer, Double> loads = new HashMap<Integer, Double>();
+		Map<Integer, Integer> current = new HashMap<Integer, Integer>(
+				assignment);
+		double[] times = taskTimes.clone();
+		for (int i = 0; i < numMapTasks; i++) {
+			addLoad(loads, current.get(i), times[i]);
+		}
+
+		double initialMakespan = getMakespan(loads);
+		double makespan = initialMakespan;
+		for (int move = 0; move < numMapTasks; move++) {
+			int slowest = getMostLoaded(loads);
+			int bestTask = -1;
+			int bestDaemon = -1;
+			double bestMakespan = makespan;
+			for (int i = 0; i < numMapTasks; i++) {
+				if (current.get(i) != slowest || candidates.get(i) == null) {
+					continue;
+				}
+				for (Integer target : candidates.get(i)) {
+					if (target == slowest) {
+						continue;
+					}
+					addLoad(loads, slowest, -times[i]);
+					addLoad(loads, target, times[i]);
+					double newMakespan = getMakespan(loads);
+					addLoad(loads, slowest, times[i]);
+					addLoad(loads, target, -times[i]);
+					if (newMakespan < bestMakespan) {
+						bestMakespan = newMakespan;
+						bestTask = i;
+						bestDaemon = target;
+					}
+				}
+			}
+			if (bestTask < 0) {
+				break;
+			}
+			addLoad(loads, slowest, -times[bestTask]);
+			addLoad(loads, bestDaemon, times[bestTask]);
+			current.put(bestTask, bestDaemon);
+			migrations.put(bestTask, bestDaemon);
+			makespan = bestMakespan;
+		}
+		// A task moved back to its original daemon needs no migration.
+		Iterator<Map.Entry<Integer, Integer>> ite = migrations.entrySet()
+				.iterator();
+		while (ite.hasNext()) {
+			Map.Entry<Integer, Integer> entry = ite.next();
+			if (entry.getValue().equals(assignment.get(entry.getKey()))) {
+				ite.remove();
+			}
+		}
+
+		double gain = (initialMakespan - makespan) * horizon;
+		if (migrations.isEmpty() || gain <= migrationCost) {
+			migrations.clear();
+			return migrations;
+		}
+		logger.info("Moving " + migrations.size()
+				+ " map tasks, predicted iteration time "
+				+ (long) initialMakespan + " -> " + (long) makespan + " ms.");
+		return migrations;
+	}
+
+	private void addLoad(Map<Integer, Double> loads, int daemon, double time) {
+		Double load = loads.get(daemon);
+		loads.put(daemon, (load == null ? 0 : load.doubleValue())
+				+ time / workersPerDaemon);
+	}
+
+	private double getMakespan(Map<Integer, Double> loads) {
+		double max = 0;
+		for (Double load : loads.values()) {
+			max = Math.max(max, load);
+		}
+		return max;
+	}
+
+	private int getMostLoaded(Map<Integer, Double> loads) {
+		int daemon = -1;
+		double max = -1;
+		for (Map.Entry<Integer, Double> entry : loads.entrySet()) {
+			if (entry.getValue() > max) {
+				max = entry.getValue();
+				daemon = entry.getKey();
+			}
+		}
+		return daemon;
+	}
+}
@@ -235,6 +235,7 @@ public class PartitionFileCreator implements Subscribable {
 		dir = dir.replace("//", "/");
 		int fileNo = 0;
 		List<String> tmpFiles = null;
+		List<Long> tmpSizes = null;
 		int numDaemonsPerNode = configs.getDamonsPerNode();
 		int numDaemons = nodes.size() * numDaemonsPerNode;
 
@@ -253,10 +254,12 @@ public class PartitionFileCreator implements Subscribable {
 					new FileWriter(partitionFile));
 			for (DirListResponse res : responses) {
 				tmpFiles = res.getFileNames();
+				tmpSizes = res.getFileSizes();
 				if (tmpFiles != null) {
-					for (String file : tmpFiles) {
+					for (int i = 0; i < tmpFiles.size(); i++) {
 						bw.write(fileNo + "," + res.getDaemonIP() + ","
-								+ res.getDaemonNo() + "," + file + "\n");
+								+ res.getDaemonNo() + "," + tmpFiles.get(i)
+								+ "," + tmpSizes.get(i) + "\n");
 						fileNo++;
 					}
 				}
@@ -0,0 +1,143 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+/**
+ * Phi accrual failure detector for a single daemon. Keeps a sliding window of
+ * the intervals between the messages received from the daemon and computes
+ * phi, the negative base 10 logarithm of the probability that a message is
+ * still to come after the time elapsed since the last one, assuming normally
+ * distributed intervals. The intervals are learned per daemon, so a daemon
+ * that sends messages often is suspected sooner than a quiet one.
+ * 
+ */
+public class PhiAccrualDetector {
+
+	private long[] intervals;
+	private int numIntervals = 0;
+	private int next = 0;
+	private double sum = 0;
+	private double sumOfSquares = 0;
+	private long lastArrival;
+	private long minStdDeviation;
+	private long acceptablePause;
+
+	/**
+	 * @param windowSize
+	 *            - number of intervals to keep.
+	 * @param firstInterval
+	 *            - expected interval used before any message is received.
+	 * @param minStdDeviation
+	 *            - lower bound of the standard deviation, in milliseconds.
+	 * @param acceptablePause
+	 *            - time a daemon may stay silent without being suspected, in
+	 *            addition to the mean interval.
+	 * @param now
+	 *            - time the daemon is known to be alive.
+	 */
+	public PhiAccrualDetector(int windowSize, long firstInterval,
+			long minStdDeviation, long acceptablePause, long now) {
+		this.intervals = new long[windowSize];
+		this.minStdDeviation = minStdDeviation;
+		this.acceptablePause = acceptablePause;
+		this.lastArrival = now;
+		// Starts with a mean of firstInterval and a deviation of a quarter of
+		// it.
+		addInterval(firstInterval - firstInterval / 4);
+		addInterval(firstInterval + firstInterval / 4);
+	}
+
+	private void addInterval(long interval) {
+		if (numIntervals == intervals.length) {
+			sum -= intervals[next];
+			sumOfSquares -= (double) intervals[next] * intervals[next];
+		} else {
+			numIntervals++;
+		}
+		intervals[next] = interval;
+		sum += interval;
+		sumOfSquares += (double) interval * interval;
+		next = (next + 1) % intervals.length;
+	}
+
+	/**
+	 * Records a message received from the daemon.
+	 */
+	public synchronized void heartbeat(long now) {
+		if (now > lastArrival) {
+			addInterval(now - lastArrival);
+			lastArrival = now;
+		}
+	}
+
+	/**
+	 * Returns the suspicion level of the daemon at the given time.
+	 */
+	public synchronized double phi(long now) {
+		double mean = sum / numIntervals;
+		double variance = sumOfSquares / numIntervals - mean * mean;
+		double stdDeviation = Math.max(Math.sqrt(Math.max(variance, 0)),
+				minStdDeviation);
+		double y = (now - lastArrival - mean - acceptablePause) / stdDeviation;
+		// Logistic approximation of the cumulative normal distribution.
+		double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+		if (y > 0) {
+			return -Math.log10(e / (1.0 + e));
+		}
+		return -Math.log10(1.0 - 1.0 / (1.0 + e));
+	}
+
+	public synchronized long getLastArrival() {
+		return lastArrival;
+	}
+}
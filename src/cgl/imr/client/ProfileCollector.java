@@ -0,0 +1,123 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cgl.imr.base.TwisterException;
+
+/**
+ * Merges the stacks sampled at the daemons, received with the task statuses,
+ * into one profile of the job. The profile is written in the collapsed stack
+ * format, one stack and the number of its samples per line, which
+ * flamegraph.pl and speedscope read.
+ * 
+ */
+public class ProfileCollector {
+
+	private ConcurrentHashMap<String, AtomicLong> stacks = new ConcurrentHashMap<String, AtomicLong>();
+
+	public void add(Map<String, Integer> profile) {
+		for (Map.Entry<String, Integer> entry : profile.entrySet()) {
+			AtomicLong count = stacks.get(entry.getKey());
+			if (count == null) {
+				stacks.putIfAbsent(entry.getKey(), new AtomicLong());
+				count = stacks.get(entry.getKey());
+			}
+			count.addAndGet(entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns the number of samples of each stack collected so far.
+	 */
+	public Map<String, Long> getStacks() {
+		Map<String, Long> copy = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : stacks.entrySet()) {
+			copy.put(entry.getKey(), entry.getValue().get());
+		}
+		return copy;
+	}
+
+	public void write(String file) throws TwisterException {
+		BufferedWriter writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file), "UTF-8"));
+			for (Map.Entry<String, Long> entry : getStacks().entrySet()) {
+				// Spaces separate the count from the stack.
+				writer.write(entry.getKey().replace(' ', '_'));
+				writer.write(' ');
+				writer.write(String.valueOf(entry.getValue()));
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new TwisterException("Could not write the profile to "
+					+ file, e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+}
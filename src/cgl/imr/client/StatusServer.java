@@ -0,0 +1,300 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.TwisterConstants;
+import cgl.imr.message.DaemonTelemetry;
+import cgl.imr.message.TaskStatus;
+import cgl.imr.monitor.TwisterMonitorBasic;
+import cgl.imr.util.HistogramSnapshot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the status of a running job as JSON at <code>/status</code>, using the
+ * HTTP server of the JDK. The document is built from the state the driver
+ * already keeps, i.e. the job state, the recent iterations, the liveness and
+ * resource usage of the daemons, the counters of <code>DriverMetrics</code> and
+ * the last task statuses received by the monitor.
+ * 
+ */
+public class StatusServer implements HttpHandler {
+
+	private static Logger logger = Logger.getLogger(StatusServer.class);
+
+	private TwisterDriver driver;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public StatusServer(TwisterDriver driver, int port) throws IOException {
+		this.driver = driver;
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.server.createContext("/status", this);
+		// A single daemon thread, so that the server never keeps the client
+		// alive.
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "twister-status-server");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.server.setExecutor(executor);
+		this.server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void close() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			byte[] body;
+			int code = 200;
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				code = 405;
+				body = "{\"error\":\"method not allowed\"}".getBytes("UTF-8");
+			} else {
+				try {
+					body = getStatus().getBytes("UTF-8");
+				} catch (RuntimeException e) {
+					logger.error("Could not build the status of the job.", e);
+					code = 500;
+					body = "{\"error\":\"internal error\"}".getBytes("UTF-8");
+				}
+			}
+			exchange.getResponseHeaders().set("Content-Type",
+					"application/json; charset=utf-8");
+			exchange.sendResponseHeaders(code, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Builds the status document of the job.
+	 */
+	public String getStatus() {
+		DriverMetrics metrics = driver.getDriverMetrics();
+		StringBuilder json = new StringBuilder();
+		json.append("{\"jobId\":\"").append(
+				TraceCollector.escape(metrics.getJobId())).append('"');
+		json.append(",\"state\":\"").append(driver.getJobState()).append('"');
+		json.append(",\"iteration\":").append(driver.getIterationCount());
+		long uptime = System.currentTimeMillis() - metrics.getStartTime();
+		json.append(",\"uptimeMillis\":").append(uptime);
+
+		json.append(",\"iterations\":[");
+		boolean first = true;
+		for (Map.Entry<Integer, Long> entry : metrics.getRecentIterations()
+				.entrySet()) {
+			json.append(first ? "" : ",").append("{\"iteration\":").append(
+					entry.getKey()).append(",\"millis\":").append(
+					entry.getValue()).append('}');
+			first = false;
+		}
+		json.append(']');
+
+		json.append(",\"daemons\":[");
+		FaultDetector faultDetector = driver.getFaultDetector();
+		if (faultDetector != null) {
+			first = true;
+			long now = System.currentTimeMillis();
+			for (Map.Entry<Integer, DaemonStatus> entry : faultDetector
+					.getDaemons().entrySet()) {
+				double phi = faultDetector.getPhi(entry.getKey());
+				json.append(first ? "" : ",").append("{\"daemonNo\":").append(
+						entry.getKey()).append(",\"running\":").append(
+						entry.getValue().isRunning()).append(
+						",\"lastSeenMillisAgo\":").append(
+						now - entry.getValue().getLastAliveTime()).append(
+						",\"phi\":").append(
+						Double.isInfinite(phi) || Double.isNaN(phi) ? "null"
+								: String.format(Locale.US, "%.3f", phi));
+				DaemonTelemetry telemetry = faultDetector.getTelemetry().get(
+						entry.getKey());
+				if (telemetry != null) {
+					json.append(",\"telemetry\":");
+					appendTelemetry(json, telemetry);
+					json.append(",\"overloaded\":").append(
+							faultDetector.isOverloaded(entry.getKey()));
+				}
+				json.append('}');
+				first = false;
+			}
+		}
+		json.append(']');
+		if (faultDetector != null) {
+			ClusterPressure pressure = faultDetector.getClusterPressure();
+			json.append(String.format(Locale.US,
+					",\"cluster\":{\"daemons\":%d,\"heapUsed\":%d,"
+							+ "\"heapMax\":%d,\"meanCpuLoad\":%.3f,"
+							+ "\"maxGcFraction\":%.3f,\"dataCacheBytes\":%d,"
+							+ "\"queueDepth\":%d,\"overloaded\":%s}",
+					pressure.getNumDaemons(), pressure.getHeapUsed(), pressure
+							.getHeapMax(), pressure.getMeanCpuLoad(), pressure
+							.getMaxGcFraction(), pressure.getDataCacheBytes(),
+					pressure.getQueueDepth(), pressure.getOverloadedDaemons()
+							.toString().replace(" ", "")));
+		}
+
+		double seconds = Math.max(uptime / 1000.0, 0.001);
+		long messages = 0;
+		for (long count : metrics.getMessagesHandled().values()) {
+			messages += count;
+		}
+		json.append(",\"throughput\":{");
+		appendDuration(json, "mapTasks", metrics.getMapTaskDurations(),
+				seconds);
+		json.append(',');
+		appendDuration(json, "reduceTasks", metrics.getReduceTaskDurations(),
+				seconds);
+		json.append(',');
+		appendDuration(json, "combines", metrics.getCombineDurations(),
+				seconds);
+		json.append(',');
+		appendDuration(json, "iterations", metrics.getIterationDurations(),
+				seconds);
+		json.append(String.format(Locale.US, 
+				",\"messages\":{\"count\":%d,\"perSecond\":%.3f}", messages,
+				messages / seconds));
+		json.append(String.format(Locale.US, 
+				",\"bytesIn\":{\"count\":%d,\"perSecond\":%.3f}", metrics
+						.getBytesIn(), metrics.getBytesIn() / seconds));
+		json.append('}');
+
+		json.append(",\"recentTasks\":[");
+		if (driver.getMonitor() instanceof TwisterMonitorBasic) {
+			List<TaskStatus> statuses = ((TwisterMonitorBasic) driver
+					.getMonitor()).getRecentTaskStatuses();
+			first = true;
+			for (TaskStatus status : statuses) {
+				json.append(first ? "" : ",").append("{\"type\":\"").append(
+						getTaskTypeName(status.getTaskType())).append(
+						"\",\"taskNo\":").append(status.getTaskNo()).append(
+						",\"iteration\":").append(status.getIteration())
+						.append(",\"daemonNo\":").append(status.getDaemonNo())
+						.append(",\"success\":").append(
+								status.getStatus() == TwisterConstants.SUCCESS)
+						.append(",\"millis\":").append(
+								status.getExecuationTime());
+				if (status.isHasException()) {
+					json.append(",\"exception\":\"").append(
+							TraceCollector.escape(status.getExceptionString()))
+							.append('"');
+				}
+				json.append('}');
+				first = false;
+			}
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	private static void appendTelemetry(StringBuilder json,
+			DaemonTelemetry telemetry) {
+		json.append(String.format(Locale.US,
+				"{\"heapUsed\":%d,\"heapMax\":%d,\"gcCount\":%d,"
+						+ "\"gcMillis\":%d,\"intervalMillis\":%d,"
+						+ "\"cpuLoad\":%.3f,\"threads\":%d,"
+						+ "\"dataCacheBytes\":%d,\"queueDepth\":%d}",
+				telemetry.getHeapUsed(), telemetry.getHeapMax(), telemetry
+						.getGcCount(), telemetry.getGcTimeMillis(), telemetry
+						.getIntervalMillis(), telemetry.getCpuLoad(),
+				telemetry.getThreadCount(), telemetry.getDataCacheBytes(),
+				telemetry.getQueueDepth()));
+	}
+
+	private static void appendDuration(StringBuilder json, String name,
+			HistogramSnapshot snapshot, double seconds) {
+		json.append(String.format(Locale.US, "\"%s\":{\"count\":%d,\"perSecond\":%.3f,"
+				+ "\"meanMillis\":%.3f,\"p99Millis\":%.3f}", name, snapshot
+				.getCount(), snapshot.getCount() / seconds, snapshot
+				.getMeanMillis(), snapshot.getP99Millis()));
+	}
+
+	private static String getTaskTypeName(int taskType) {
+		switch (taskType) {
+		case TwisterConstants.MAP_TASK:
+			return "map";
+		case TwisterConstants.REDUCE_TASK:
+			return "reduce";
+		case TwisterConstants.ALL_REDUCE_TASK:
+			return "allreduce";
+		default:
+			return String.valueOf(taskType);
+		}
+	}
+}
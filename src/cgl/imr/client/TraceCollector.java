@@ -0,0 +1,218 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.TwisterException;
+import cgl.imr.message.TraceData;
+import cgl.imr.util.TraceEvent;
+import cgl.imr.util.Tracer;
+
+/**
+ * Merges the events the driver and the daemons recorded for a job into one
+ * timeline, and writes it in the Chrome trace format, which can be viewed in
+ * chrome://tracing or Perfetto.
+ * 
+ * The clock of a daemon is mapped to the clock of the driver using the times
+ * of the end job request: the driver sent it at t0 and received the trace at
+ * t3, the daemon received the request at t1 and sent the trace at t2, all on
+ * their own monotonic clocks. The offset of the daemon is then estimated as
+ * ((t1 - t0) + (t2 - t3)) / 2, which is accurate to half of the network round
+ * trip.
+ * 
+ */
+public class TraceCollector {
+
+	private static Logger logger = Logger.getLogger(TraceCollector.class);
+
+	private static final int DRIVER_PID = 0;
+
+	private Tracer tracer = new Tracer();
+	private long endJobSendTime;
+	// Process id in the trace -> events on the clock of the driver.
+	private Map<Integer, List<TraceEvent>> processEvents = new HashMap<Integer, List<TraceEvent>>();
+
+	public Tracer getTracer() {
+		return tracer;
+	}
+
+	/**
+	 * Called just before the end job request is sent to the daemons.
+	 */
+	public void endJobRequestSent() {
+		endJobSendTime = System.nanoTime();
+	}
+
+	/**
+	 * Adds the events of a daemon, moving them to the clock of the driver.
+	 */
+	public synchronized void addDaemonTrace(TraceData traceData) {
+		long receiveTime = System.nanoTime();
+		long offset = ((traceData.getReceiveNanos() - endJobSendTime) + (traceData
+				.getSendNanos() - receiveTime)) / 2;
+		List<TraceEvent> events = new ArrayList<TraceEvent>();
+		for (TraceEvent event : traceData.getEvents()) {
+			events.add(new TraceEvent(event.getName(), event.getThread(),
+					event.getBeginNanos() - offset, event.getDurationNanos(),
+					event.getTaskNo(), event.getIteration()));
+		}
+		processEvents.put(traceData.getDaemonNo() + 1, events);
+	}
+
+	/**
+	 * Writes the trace of the driver and of the daemons received so far.
+	 */
+	public synchronized void write(String file) throws TwisterException {
+		processEvents.put(DRIVER_PID, tracer.getEvents());
+		long origin = Long.MAX_VALUE;
+		for (List<TraceEvent> events : processEvents.values()) {
+			for (TraceEvent event : events) {
+				origin = Math.min(origin, event.getBeginNanos());
+			}
+		}
+		BufferedWriter writer = null;
+		try {
+			writer = new BufferedWriter(new FileWriter(file));
+			writer.write("{\"traceEvents\":[\n");
+			boolean first = true;
+			for (Map.Entry<Integer, List<TraceEvent>> entry : processEvents
+					.entrySet()) {
+				int pid = entry.getKey();
+				String processName = pid == DRIVER_PID ? "driver" : "daemon "
+						+ (pid - 1);
+				first = writeMetadata(writer, first, "process_name", pid, 0,
+						processName);
+				Map<String, Integer> threadIds = new HashMap<String, Integer>();
+				for (TraceEvent event : entry.getValue()) {
+					Integer tid = threadIds.get(event.getThread());
+					if (tid == null) {
+						tid = threadIds.size();
+						threadIds.put(event.getThread(), tid);
+						first = writeMetadata(writer, first, "thread_name",
+								pid, tid, event.getThread());
+					}
+					first = writeEvent(writer, first, event, pid, tid, origin);
+				}
+			}
+			writer.write("\n]}\n");
+		} catch (IOException e) {
+			throw new TwisterException("Could not write the trace to " + file,
+					e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					logger.error(e);
+				}
+			}
+		}
+	}
+
+	private static boolean writeMetadata(BufferedWriter writer,
+			boolean first, String type, int pid, int tid, String name)
+			throws IOException {
+		if (!first) {
+			writer.write(",\n");
+		}
+		writer.write("{\"name\":\"" + type + "\",\"ph\":\"M\",\"pid\":" + pid
+				+ ",\"tid\":" + tid + ",\"args\":{\"name\":\"" + escape(name)
+				+ "\"}}");
+		return false;
+	}
+
+	private static boolean writeEvent(BufferedWriter writer, boolean first,
+			TraceEvent event, int pid, int tid, long origin) throws IOException {
+		if (!first) {
+			writer.write(",\n");
+		}
+		StringBuilder json = new StringBuilder();
+		json.append("{\"name\":\"").append(escape(event.getName())).append(
+				"\",\"cat\":\"twister\",\"pid\":").append(pid).append(
+				",\"tid\":").append(tid).append(",\"ts\":").append(
+				(event.getBeginNanos() - origin) / 1000.0);
+		if (event.isInstant()) {
+			json.append(",\"ph\":\"i\",\"s\":\"t\"");
+		} else {
+			json.append(",\"ph\":\"X\",\"dur\":").append(
+					event.getDurationNanos() / 1000.0);
+		}
+		json.append(",\"args\":{\"task\":").append(event.getTaskNo()).append(
+				",\"iteration\":").append(event.getIteration()).append("}}");
+		writer.write(json.toString());
+		return false;
+	}
+
+	static String escape(String value) {
+		StringBuilder escaped = new StringBuilder();
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if (c < 0x20) {
+				escaped.append(String.format("\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+}
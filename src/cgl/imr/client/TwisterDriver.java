@@ -54,8 +54,10 @@ package cgl.imr.client;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
@@ -71,10 +73,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.ObjectName;
+
 import org.apache.log4j.Logger;
 import org.safehaus.uuid.UUIDGenerator;
 
+import cgl.imr.base.AssociativeCombiner;
 import cgl.imr.base.Combiner;
 import cgl.imr.base.Key;
 import cgl.imr.base.KeyValuePair;
@@ -91,15 +98,19 @@ import cgl.imr.base.impl.JobConf;
 import cgl.imr.base.impl.MapperConf;
 import cgl.imr.base.impl.PubSubFactory;
 import cgl.imr.base.impl.ReducerConf;
+import cgl.imr.base.impl.SpillingCombiner;
 import cgl.imr.config.ConfigurationException;
 import cgl.imr.config.TwisterConfigurations;
 import cgl.imr.data.DataPartitionException;
 import cgl.imr.data.file.FileData;
 import cgl.imr.data.file.FileDataPartitioner;
 import cgl.imr.data.file.PartitionFile;
+import cgl.imr.message.AllReducePlan;
 import cgl.imr.message.CombineInput;
+import cgl.imr.message.CombinerRequest;
 import cgl.imr.message.EndJobRequest;
 import cgl.imr.message.MapTaskRequest;
+import cgl.imr.message.MapperRemoval;
 import cgl.imr.message.MapperRequest;
 import cgl.imr.message.MemCacheClean;
 import cgl.imr.message.MemCacheInput;
@@ -107,11 +118,18 @@ import cgl.imr.message.NewJobRequest;
 import cgl.imr.message.PubSubMessage;
 import cgl.imr.message.ReducerRequest;
 import cgl.imr.message.StartReduceMessage;
+import cgl.imr.message.TaskMetrics;
+import cgl.imr.message.TaskStatus;
+import cgl.imr.message.TraceData;
 import cgl.imr.message.WorkerResponse;
+import cgl.imr.monitor.JobStatus;
+import cgl.imr.monitor.StalenessTracker;
+import cgl.imr.monitor.StragglerTracker;
 import cgl.imr.monitor.TwisterMonitorBasic;
 import cgl.imr.types.IntValue;
 import cgl.imr.types.StringKey;
 import cgl.imr.types.StringValue;
+import cgl.imr.util.MBeanRegistrar;
 
 /**
  * Client side driver for the MapReduce computations. This is a very important
@@ -127,7 +145,9 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 	private static Logger logger = Logger.getLogger(TwisterDriver.class);
 
 	protected String combineTopic;
-	protected Combiner currentCombiner;
+	protected String combineTreeTopicBase;
+	protected int numCombineInputsExpected;
+	protected volatile Combiner currentCombiner;
 	protected boolean isMonitoringMapReduce = false;
 	protected JobConf jobConf;
 	protected JobState jobState;
@@ -156,6 +176,26 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 
 	protected FaultDetector faultDetector;
 	protected ExecutionPlan execPlan;
+	protected StalenessTracker stalenessTracker;
+	protected StragglerTracker stragglerTracker;
+	protected MapTaskRebalancer mapTaskRebalancer;
+	// Used to launch speculative map tasks at the replicas of the partitions.
+	protected PartitionFile mapPartitions;
+	protected ConcurrentHashMap<Integer, MapTaskRequest> lastMapRequests = new ConcurrentHashMap<Integer, MapTaskRequest>();
+	protected ConcurrentHashMap<Integer, Integer> speculativeMappers = new ConcurrentHashMap<Integer, Integer>();
+	protected CombineExecutor combineExecutor;
+	protected AllReducePlan allReducePlan;
+	protected ConcurrentHashMap<Integer, String> daemonHosts = new ConcurrentHashMap<Integer, String>();
+	protected CheckpointWriter checkpointWriter;
+	protected DriverMetrics driverMetrics;
+	protected ObjectName driverMetricsName;
+	protected TraceCollector traceCollector;
+	protected StatusServer statusServer;
+	protected ProfileCollector profileCollector;
+	// Checkpoint found when the driver started, till the job is resumed.
+	protected DriverCheckpoint resumeCheckpoint;
+	// Daemons running the data partitions before the job was resumed.
+	protected Map<String, Integer> resumedAssignment;
 
 	protected List<Integer> workingDaemons;
 
@@ -188,10 +228,6 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		if (jobConf == null) {
 			throw new TwisterException("JobConfiguration cannot be null.");
 		}
-		System.out.println("JobID: " + jobConf.getJobId());
-		this.jobConf = jobConf;
-		this.numMapTasks = jobConf.getNumMapTasks();
-		this.numReduceTasks = jobConf.getNumReduceTasks();
 
 		workingDaemons = new ArrayList<Integer>();
 
@@ -215,12 +251,6 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 					"Could not read the nodes file. Please check if  the nodes file "
 							+ "exists in the classpath.", e);
 		}
-		this.responseTopic = TwisterConstants.RESPONSE_TOPIC_BASE + "/"
-				+ jobConf.getJobId();
-		this.reduceTopicBase = TwisterConstants.REDUCE_TOPIC_BASE + "/"
-				+ uuidGen.generateTimeBasedUUID();
-		this.combineTopic = TwisterConstants.COMBINE_TOPIC_BASE
-				+ uuidGen.generateTimeBasedUUID();
 
 		// System.out.println("Adding a shutdown hook");
 
@@ -236,10 +266,6 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 					EntityType.DRIVER, entityId);
 			// System.out.println("Setting the subscriber");
 			this.pubSubService.setSubscriber(this);
-			this.pubSubService.subscribe(responseTopic);
-			this.pubSubService.subscribe(combineTopic);
-			// System.out.println("Subscribed to pubSubService");
-
 		} catch (PubSubException e) {
 			if (this.pubSubService != null) {
 				try {
@@ -254,7 +280,169 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 
 		// System.out.println("Starting a Randomizer");
 		randomizer = new Random(System.currentTimeMillis());
+		initJob(jobConf);
+
+		// System.out.println("Job Initiated");
+	}
+
+	/**
+	 * Terminates the current job at the daemons and starts a new one with the
+	 * given configuration, reusing the broker connection of this driver. This
+	 * avoids connecting to the broker for each job of a sequence, such as the
+	 * stages of a <code>TwisterPipeline</code>. The state of the current job,
+	 * including its combiner, is discarded; the maps of the new job have to be
+	 * configured again.
+	 * 
+	 * @param jobConf
+	 *            - JobConf object of the new job.
+	 * @throws TwisterException
+	 */
+	public void startNewJob(JobConf jobConf) throws TwisterException {
+		if (jobConf == null) {
+			throw new TwisterException("JobConfiguration cannot be null.");
+		}
+		synchronized (this) {
+			if (isMonitoringMapReduce) {
+				throw new TwisterException(
+						"A MapReduce computation is still running for this TwisterDriver.");
+			}
+		}
+		if (jobState.ordinal() >= JobState.TERMINATE_COMPLETES.ordinal()) {
+			throw new TwisterException("The driver is already closed.");
+		}
+		try {
+			endJob();
+			this.faultDetector.close();
+			this.pubSubService.unsubscribe(responseTopic);
+			this.pubSubService.unsubscribe(combineTopic);
+		} catch (Exception e) {
+			cleanupAndTerminateJob();
+			throw new TwisterException("Could not terminate the job "
+					+ this.jobConf.getJobId(), e);
+		}
+		releaseJobResources();
+		deleteCheckpoint();
+
+		this.jobState = JobState.NOT_CONFIGURED;
+		this.mapConfigured = false;
+		this.reduceConfigured = false;
+		this.iterationCount = 0;
+		this.currentCombiner = null;
+		this.combineTreeTopicBase = null;
+		this.setLastBcastValue(null);
+		this.setLastKeyValuePair(null);
+		this.reduceTasksMap.clear();
+		this.mapTasksMap.clear();
+		this.responseMap.clear();
+		this.memCacheMap.clear();
+		this.lastMapRequests.clear();
+		this.speculativeMappers.clear();
+		this.stalenessTracker = null;
+		this.stragglerTracker = null;
+		this.mapTaskRebalancer = null;
+		this.mapPartitions = null;
+		this.combineExecutor = null;
+		this.allReducePlan = null;
+		this.checkpointWriter = null;
+		this.traceCollector = null;
+		this.statusServer = null;
+		this.profileCollector = null;
+		this.resumeCheckpoint = null;
+		this.resumedAssignment = null;
+		initJob(jobConf);
+	}
+
+	/**
+	 * Subscribes to the topics of a job, creates the per job helpers and
+	 * sends the new job request to the daemons.
+	 */
+	private void initJob(JobConf jobConf) throws TwisterException {
+		System.out.println("JobID: " + jobConf.getJobId());
+		this.jobConf = jobConf;
+		this.numMapTasks = jobConf.getNumMapTasks();
+		this.numReduceTasks = jobConf.getNumReduceTasks();
+		this.numCombineInputsExpected = numReduceTasks;
+
+		this.responseTopic = TwisterConstants.RESPONSE_TOPIC_BASE + "/"
+				+ jobConf.getJobId();
+		this.reduceTopicBase = TwisterConstants.REDUCE_TOPIC_BASE + "/"
+				+ uuidGen.generateTimeBasedUUID();
+		this.combineTopic = TwisterConstants.COMBINE_TOPIC_BASE
+				+ uuidGen.generateTimeBasedUUID();
+		try {
+			this.pubSubService.subscribe(responseTopic);
+			this.pubSubService.subscribe(combineTopic);
+			// System.out.println("Subscribed to pubSubService");
+		} catch (PubSubException e) {
+			try {
+				this.pubSubService.close();
+			} catch (PubSubException e1) { // Ignore
+			}
+			throw new TwisterException(
+					"Could not establish a connection with the pub/sub broker.",
+					e);
+		}
+
+		if (jobConf.isStaleSynchronous()) {
+			if (jobConf.isFaultTolerance() || jobConf.isRowBCastSupported()) {
+				throw new TwisterException(
+						"The stale synchronous mode cannot be used with fault tolerance or row broadcast.");
+			}
+			this.stalenessTracker = new StalenessTracker(numMapTasks,
+					numReduceTasks, jobConf.getStalenessBound());
+		}
+		if (jobConf.isHasAllReduceClass()) {
+			if (numReduceTasks != 0 || jobConf.isHasCombinerClass()
+					|| jobConf.isStaleSynchronous()
+					|| jobConf.isFaultTolerance()
+					|| jobConf.isRowBCastSupported()) {
+				throw new TwisterException(
+						"An AllReduce job cannot have reduce tasks, a combiner, fault tolerance, row broadcast or the stale synchronous mode.");
+			}
+		}
+		if (jobConf.isSpeculativeExecution()) {
+			if (jobConf.isStaleSynchronous() || jobConf.isHasAllReduceClass()
+					|| jobConf.isRowBCastSupported()) {
+				throw new TwisterException(
+						"Speculative execution cannot be used with AllReduce, row broadcast or the stale synchronous mode.");
+			}
+			this.stragglerTracker = new StragglerTracker(numMapTasks, jobConf
+					.getSpeculativeSlowdown());
+		}
+		if (jobConf.isRebalanceMaps()) {
+			if (jobConf.isStaleSynchronous() || jobConf.isHasAllReduceClass()) {
+				throw new TwisterException(
+						"Map tasks cannot be rebalanced with AllReduce or the stale synchronous mode.");
+			}
+			this.mapTaskRebalancer = new MapTaskRebalancer(numMapTasks, jobConf
+					.getRebalanceHorizon(), mrConfig.getWorkersPerDaemon());
+		}
+		if (jobConf.isTracing()) {
+			this.traceCollector = new TraceCollector();
+		}
+		if (jobConf.isProfiling()) {
+			this.profileCollector = new ProfileCollector();
+		}
+		this.driverMetrics = new DriverMetrics(this, jobConf.getJobId());
+		this.driverMetricsName = MBeanRegistrar.register(driverMetrics,
+				"type=TwisterDriver,jobId="
+						+ ObjectName.quote(jobConf.getJobId()));
 		this.monitor = new TwisterMonitorBasic(jobConf, this);
+		if (jobConf.getStatusPort() > 0) {
+			try {
+				this.statusServer = new StatusServer(this, jobConf
+						.getStatusPort());
+				logger.info("Status of the job served on port "
+						+ statusServer.getPort() + " at /status");
+			} catch (IOException e) {
+				logger.error("Could not start the status server on port "
+						+ jobConf.getStatusPort(), e);
+			}
+		}
+		if (jobConf.isHasCombinerClass()) {
+			this.combineExecutor = new CombineExecutor(this, Runtime
+					.getRuntime().availableProcessors());
+		}
 
 		try {
 			/*
@@ -263,6 +451,13 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 			 * user.
 			 */
 			//System.out.println("Start sending new job request");
+			if (jobConf.isCheckpointing()) {
+				this.resumeCheckpoint = DriverCheckpoint.read(jobConf
+						.getCheckpointDir(), jobConf.getJobId());
+				this.checkpointWriter = new CheckpointWriter(DriverCheckpoint
+						.getCheckpointFile(jobConf.getCheckpointDir(), jobConf
+								.getJobId()));
+			}
 			Map<Integer, DaemonStatus> daemons = sendNewJobRequest(
 					jobConf.getJobId(), workingDaemons);
 
@@ -292,8 +487,6 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		}
 
 		this.jobState = JobState.INITIATED;
-
-		// System.out.println("Job Initiated");
 	}
 
 	private synchronized void updateWorkingDaemons(Collection<Integer> daemons) {
@@ -320,6 +513,23 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		} catch (Exception e) {
 			logger.error(e);
 		}
+		releaseJobResources();
+	}
+
+	/**
+	 * Stops the helpers created for the current job.
+	 */
+	private void releaseJobResources() {
+		if (combineExecutor != null) {
+			combineExecutor.shutdown();
+		}
+		if (checkpointWriter != null) {
+			checkpointWriter.close();
+		}
+		MBeanRegistrar.unregister(driverMetricsName);
+		if (statusServer != null) {
+			statusServer.close();
+		}
 	}
 
 	/*
@@ -331,6 +541,29 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		if (this.jobState.ordinal() != JobState.TERMINATE_COMPLETES.ordinal()) {
 			cleanupAndTerminateJob();
 		}
+		boolean running;
+		synchronized (this) {
+			running = isMonitoringMapReduce;
+		}
+		if (!running && jobState == JobState.TERMINATE_COMPLETES) {
+			deleteCheckpoint();
+		}
+	}
+
+	/**
+	 * Deletes the checkpoint of a job that completed, as it is no longer needed
+	 * to resume the job. Called after the checkpoint writer is closed, so that
+	 * no pending write recreates the file.
+	 */
+	private void deleteCheckpoint() {
+		if (checkpointWriter == null) {
+			return;
+		}
+		File checkpointFile = DriverCheckpoint.getCheckpointFile(jobConf
+				.getCheckpointDir(), jobConf.getJobId());
+		if (checkpointFile.exists() && !checkpointFile.delete()) {
+			logger.warn("Could not delete the checkpoint " + checkpointFile);
+		}
 	}
 
 	/**
@@ -339,6 +572,15 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 	 * @throws TwisterException
 	 */
 	protected void configureCurrentCombiner() throws TwisterException {
+		// Each run of an iteration gets a fresh combiner; a spilling combiner
+		// of the previous run is closed so that its spill file is deleted.
+		if (this.currentCombiner instanceof SpillingCombiner) {
+			try {
+				((SpillingCombiner) this.currentCombiner).close();
+			} catch (TwisterException e) {
+				logger.warn("Could not close the combiner of the previous iteration.", e);
+			}
+		}
 		try {
 			Class<?> combinerClass = Class.forName(jobConf.getCombinerClass());
 			this.currentCombiner = (Combiner) combinerClass.newInstance();
@@ -417,6 +659,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		} else if (sendRecvResponse != null
 				&& sendRecvResponse.getStatus().equals(SendRecvStatus.SUCCESS)) {
 			this.mapConfigured = true;
+			this.allReducePlan = null;
 			jobState = JobState.MAP_CONFIGURED;
 			return true;
 		}
@@ -558,6 +801,8 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 
 
 			PartitionFile partitions = new PartitionFile(partitionFile);
+			this.mapPartitions = partitions;
+			this.speculativeMappers.clear();
 
 			if (numMapTasks != partitions.getNumberOfFiles()) {
 				throw new DataPartitionException(
@@ -565,7 +810,23 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 			}
 
 			Map<String, Integer> partitionsAndDaemons = FileDataPartitioner
-					.assignPartitionsToDaemons(availableDaemons, partitions);
+					.assignPartitionsToDaemons(availableDaemons, partitions,
+							DaemonCapacities.getInstance().getCapacities(
+									availableDaemons,
+									mrConfig.getWorkersPerDaemon(),
+									numDaemonsPerNode));
+			if (resumedAssignment != null) {
+				// Keep the partitions at the daemons that may still have them
+				// loaded.
+				Integer daemon;
+				for (Map.Entry<String, Integer> entry : partitionsAndDaemons
+						.entrySet()) {
+					daemon = resumedAssignment.get(entry.getKey());
+					if (daemon != null && availableDaemons.contains(daemon)) {
+						entry.setValue(daemon);
+					}
+				}
+			}
 
 			jobState = JobState.MAP_CONFIGURING;
 			MapperConf mapperConf = null;
@@ -585,6 +846,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 				mapperRequest = new MapperRequest(jobConf, mapperConf,
 						iterationCount);
 				mapperRequest.setResponseTopic(responseTopic);
+				mapperRequest.setReattach(resumedAssignment != null);
 				mapAssignment = new TaskAssignment(mapperRequest,
 						assignedDaemon);
 				mapTasksMap.put(new Integer(count), mapAssignment);
@@ -629,6 +891,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 							SendRecvStatus.SUCCESS)) {
 				// System.out.println("should be true if I am here");
 				this.mapConfigured = true;
+				this.allReducePlan = null;
 				jobState = JobState.MAP_CONFIGURED;
 				logger.info("Configuring Mappers through the partition file is completed. ");
 				return true;
@@ -653,7 +916,12 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 
 	public void configureMaps(String partitionFile) throws TwisterException {
 		execPlan.setPartitionFile(partitionFile);
+		long beginTime = System.currentTimeMillis();
 		boolean status = configureMapsInternal(partitionFile);
+		if (mapTaskRebalancer != null) {
+			mapTaskRebalancer.setMigrationCost(System.currentTimeMillis()
+					- beginTime);
+		}
 		if (!status) {
 			if (jobConf.isFaultTolerance()) {
 				System.out.println("Begin to handle Failure in configureMaps(String partitionFile). ");
@@ -695,6 +963,15 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		this.faultDetector.setFaultHandlerIsWorking(true);
 
 		double beginTime = System.currentTimeMillis();
+		if (recoverFailedTasks()) {
+			faultDetector.setLastFaultServicedTime(System.currentTimeMillis());
+			this.faultDetector.setFaultHandlerIsWorking(false);
+			logger.info("Total Time to recover the failed tasks ="
+					+ (System.currentTimeMillis() - beginTime) / 1000
+					+ " Seconds.");
+			return true;
+		}
+		logger.info("Could not recover the failed tasks, restarting the job.");
 		int numRetries = 0;
 		boolean complete = true;
 		while (numRetries < NUM_RETRIES) {
@@ -811,10 +1088,197 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		return false;
 	}
 
+	/**
+	 * Recovers from a fault by moving only the tasks of the failed daemons to
+	 * the available daemons, while the mappers, reducers and cached data at
+	 * the available daemons are kept. A map task is moved to a daemon holding
+	 * a replica of its data partition. If an iteration is in progress, the
+	 * moved map tasks are run again, or all the map tasks if a reduce task
+	 * that had not completed is moved, and the iteration continues. The
+	 * duplicate outputs of the map tasks run again are discarded by the
+	 * reducers and the monitor.
+	 * 
+	 * @return false if the tasks could not be moved, in which case the job
+	 *         has to be restarted.
+	 */
+	protected boolean recoverFailedTasks() {
+		if (!(mapConfigured && reduceConfigured) || jobConf.isTreeCombine()
+				|| jobConf.isRowBCastSupported()) {
+			return false;
+		}
+		List<Integer> availableDaemons = faultDetector.getAvailableDeamons();
+		if (availableDaemons.isEmpty()) {
+			return false;
+		}
+
+		// Number of tasks at each available daemon, the moved tasks go to the
+		// least loaded daemons.
+		Map<Integer, Integer> load = new HashMap<Integer, Integer>();
+		for (Integer daemon : availableDaemons) {
+			load.put(daemon, 0);
+		}
+		Set<Integer> failedDaemons = new HashSet<Integer>();
+		List<Integer> lostMaps = new ArrayList<Integer>();
+		List<Integer> lostReduces = new ArrayList<Integer>();
+		int daemonNo;
+		for (int i = 0; i < numMapTasks; i++) {
+			daemonNo = getAssignedDaemonForTheMapTask(i);
+			if (load.containsKey(daemonNo)) {
+				load.put(daemonNo, load.get(daemonNo) + 1);
+			} else {
+				failedDaemons.add(daemonNo);
+				lostMaps.add(i);
+			}
+		}
+		for (int i = 0; i < numReduceTasks; i++) {
+			daemonNo = reduceTasksMap.get(i).getAssignedDaemon();
+			if (load.containsKey(daemonNo)) {
+				load.put(daemonNo, load.get(daemonNo) + 1);
+			} else {
+				failedDaemons.add(daemonNo);
+				lostReduces.add(i);
+			}
+		}
+		logger.info("Moving " + lostMaps.size() + " map tasks and "
+				+ lostReduces.size() + " reduce tasks from the daemons "
+				+ failedDaemons);
+
+		TwisterMonitorBasic basicMonitor = (TwisterMonitorBasic) monitor;
+		boolean inIteration = isMonitoringMapReduce;
+		ConcurrentHashMap<Integer, TaskAssignment> mapAssignments = new ConcurrentHashMap<Integer, TaskAssignment>();
+		MapperRequest assignedMapper;
+		MapperRequest mapperRequest;
+		List<Integer> replicas;
+		for (int mapTaskNo : lostMaps) {
+			assignedMapper = (MapperRequest) mapTasksMap.get(mapTaskNo)
+					.getTaskRequest();
+			replicas = getReplicaDaemonsForTheMapTask(mapTaskNo);
+			if (replicas.isEmpty()) {
+				if (assignedMapper.getMapConf().isHasDataPartition()) {
+					logger.error("No available daemon holds the data of map task "
+							+ mapTaskNo);
+					return false;
+				}
+				replicas = availableDaemons;
+			}
+			daemonNo = getLeastLoadedDaemon(replicas, load);
+			mapperRequest = new MapperRequest(jobConf, assignedMapper
+					.getMapConf(), iterationCount);
+			mapperRequest.setResponseTopic(responseTopic);
+			mapAssignments.put(mapTaskNo, new TaskAssignment(mapperRequest,
+					daemonNo));
+			speculativeMappers.remove(mapTaskNo);
+		}
+
+		// A reduce task that had not completed the current iteration resumes
+		// it at the new daemon.
+		ConcurrentHashMap<Integer, TaskAssignment> reduceAssignments = new ConcurrentHashMap<Integer, TaskAssignment>();
+		boolean rerunReduces = false;
+		ReducerRequest assignedReducer;
+		ReducerRequest reducerRequest;
+		int iteration;
+		for (int reduceTaskNo : lostReduces) {
+			assignedReducer = (ReducerRequest) reduceTasksMap.get(
+					reduceTaskNo).getTaskRequest();
+			iteration = iterationCount;
+			if (inIteration && !basicMonitor.isReduceTaskCompleted(reduceTaskNo)) {
+				iteration = iterationCount - 1;
+				rerunReduces = true;
+			}
+			reducerRequest = new ReducerRequest(jobConf, assignedReducer
+					.getReduceConf(), assignedReducer.getReduceTopic(),
+					responseTopic, assignedReducer.getCombineTopic(), iteration);
+			reduceAssignments.put(reduceTaskNo, new TaskAssignment(
+					reducerRequest, getLeastLoadedDaemon(availableDaemons, load)));
+		}
+
+		try {
+			if (!mapAssignments.isEmpty()
+					&& !sendAllExecutorRequestsAndReceiveResponses(
+							mapAssignments, mapAssignments.size()).getStatus()
+							.equals(SendRecvStatus.SUCCESS)) {
+				return false;
+			}
+			if (!reduceAssignments.isEmpty()
+					&& !sendAllExecutorRequestsAndReceiveResponses(
+							reduceAssignments, reduceAssignments.size())
+							.getStatus().equals(SendRecvStatus.SUCCESS)) {
+				return false;
+			}
+		} catch (Exception e) {
+			logger.error("Could not move the tasks of the failed daemons.", e);
+			return false;
+		}
+		mapTasksMap.putAll(mapAssignments);
+		reduceTasksMap.putAll(reduceAssignments);
+		updateWorkingDaemons(availableDaemons);
+
+		// Remove the job from the failed daemons in case they come back.
+		EndJobRequest endJobRequest = new EndJobRequest();
+		endJobRequest.setJobId(jobConf.getJobId());
+		endJobRequest.setResponseTopic(responseTopic);
+		for (Integer failedDaemon : failedDaemons) {
+			try {
+				pubSubService.send(TwisterConstants.MAP_REDUCE_TOPIC_BASE
+						+ "/" + failedDaemon, endJobRequest.getBytes());
+			} catch (Exception e) {
+				logger.debug("Could not reach the failed daemon "
+						+ failedDaemon, e);
+			}
+		}
+
+		if (!inIteration) {
+			return true;
+		}
+		// The moved reducers also need the outputs of the completed map tasks,
+		// the map tasks still running deliver their outputs to them.
+		MapTaskRequest mapRequest;
+		try {
+			for (int mapTaskNo = 0; mapTaskNo < numMapTasks; mapTaskNo++) {
+				if (!(mapAssignments.containsKey(mapTaskNo) || (rerunReduces && basicMonitor
+						.isMapTaskCompleted(mapTaskNo)))) {
+					continue;
+				}
+				mapRequest = lastMapRequests.get(mapTaskNo);
+				if (mapRequest == null) {
+					return false;
+				}
+				pubSubService.send(TwisterConstants.MAP_REDUCE_TOPIC_BASE
+						+ "/" + getAssignedDaemonForTheMapTask(mapTaskNo),
+						mapRequest.getBytes());
+			}
+			if (rerunReduces && basicMonitor.isStartReduceSent()) {
+				resendStartReduceMessage(basicMonitor.getReduceInputMap(),
+						iterationCount - 1);
+			}
+		} catch (Exception e) {
+			logger.error("Could not run the map tasks of the failed daemons.",
+					e);
+			return false;
+		}
+		return true;
+	}
+
+	private int getLeastLoadedDaemon(List<Integer> daemons,
+			Map<Integer, Integer> load) {
+		daemons = faultDetector.preferHealthy(daemons);
+		int selected = daemons.get(0);
+		for (Integer daemon : daemons) {
+			if (load.get(daemon) < load.get(selected)) {
+				selected = daemon;
+			}
+		}
+		load.put(selected, load.get(selected) + 1);
+		return selected;
+	}
+
 	protected void cleanupAfterAFault() {
 		EndJobRequest endMapReduceRequest = new EndJobRequest();
 		endMapReduceRequest.setJobId(jobConf.getJobId());
 		endMapReduceRequest.setResponseTopic(responseTopic);
+		if (traceCollector != null) {
+			traceCollector.endJobRequestSent();
+		}
 		try {
 			bcastRequestsAndReceiveResponses(endMapReduceRequest);
 		} catch (Exception e) {
@@ -968,6 +1432,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		} else if (sendRecvResponse != null
 				&& sendRecvResponse.getStatus().equals(SendRecvStatus.SUCCESS)) {
 			this.mapConfigured = true;
+			this.allReducePlan = null;
 			jobState = JobState.MAP_CONFIGURED;
 			return true;
 		}
@@ -1026,6 +1491,13 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		TaskAssignment reduceAssignment = null;
 		ReducerRequest reudceExecutorRequest = null;
 		String topicForReduceTask = null;
+		String combineTopicForReduceTask = combineTopic;
+		if (jobConf.isTreeCombine()) {
+			// New topics every time, so that the combiners of a previous
+			// configuration do not receive the inputs.
+			combineTreeTopicBase = combineTopic + "/tree/"
+					+ uuidGen.generateTimeBasedUUID() + "/";
+		}
 		for (int reduceTaskNo = 0; reduceTaskNo < numReduceTasks; reduceTaskNo++) {
 			if (values != null) {
 				reducerConf = new ReducerConf(reduceTaskNo,
@@ -1034,9 +1506,13 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 				reducerConf = new ReducerConf(reduceTaskNo);
 			}
 			topicForReduceTask = reduceTopicBase + reduceTaskNo;
+			if (jobConf.isTreeCombine()) {
+				combineTopicForReduceTask = getCombineTreeTopic(1,
+						reduceTaskNo / jobConf.getCombineFanIn());
+			}
 			reudceExecutorRequest = new ReducerRequest(jobConf, reducerConf,
-					topicForReduceTask, responseTopic, combineTopic,
-					iterationCount);
+					topicForReduceTask, responseTopic,
+					combineTopicForReduceTask, iterationCount);
 			// /
 			// TODO
 			// Possible bug.
@@ -1076,6 +1552,9 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 
 		} else if (sendRecvResponse != null
 				&& sendRecvResponse.getStatus().equals(SendRecvStatus.SUCCESS)) {
+			if (jobConf.isTreeCombine() && !configureCombineTree()) {
+				return false;
+			}
 			reduceConfigured = true;
 			jobState = JobState.REDUCE_CONFIGURED;
 			return true;
@@ -1103,6 +1582,118 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 
 	}
 
+	private String getCombineTreeTopic(int level, int combinerNo) {
+		return combineTreeTopicBase + level + "/" + combinerNo;
+	}
+
+	/**
+	 * Starts the intermediate combiners of the combine tree. A combiner at
+	 * level one merges the outputs of <code>fanIn</code> consecutive reducers,
+	 * a combiner at the next level merges the outputs of <code>fanIn</code>
+	 * consecutive combiners of the previous level, and so on until the client
+	 * receives at most <code>fanIn</code> inputs. Each combiner runs at the
+	 * daemon of the first reducer of its subtree.
+	 *
+	 * @return true if all the combiners are started.
+	 * @throws TwisterException
+	 */
+	protected boolean configureCombineTree() throws TwisterException {
+		try {
+			Class<?> combinerClass = Class.forName(jobConf.getCombinerClass());
+			if (!AssociativeCombiner.class.isAssignableFrom(combinerClass)) {
+				throw new TwisterException(
+						"The combine tree requires a combiner implementing "
+								+ AssociativeCombiner.class.getName() + ".");
+			}
+		} catch (ClassNotFoundException e) {
+			throw new TwisterException("Could not load the combiner class.", e);
+		}
+
+		int fanIn = jobConf.getCombineFanIn();
+		ConcurrentHashMap<Integer, TaskAssignment> combinerTasksMap = new ConcurrentHashMap<Integer, TaskAssignment>();
+		CombinerRequest combinerRequest = null;
+		String sinkTopic = null;
+		int numInputs = numReduceTasks;
+		int numCombiners = 0;
+		int reducersPerCombiner = fanIn;
+		int numTasks = 0;
+		for (int level = 1; numInputs > fanIn; level++) {
+			numCombiners = (numInputs + fanIn - 1) / fanIn;
+			for (int i = 0; i < numCombiners; i++) {
+				if (numCombiners > fanIn) {
+					sinkTopic = getCombineTreeTopic(level + 1, i / fanIn);
+				} else {
+					sinkTopic = combineTopic;
+				}
+				combinerRequest = new CombinerRequest(jobConf,
+						getCombineTreeTopic(level, i), sinkTopic,
+						responseTopic, i, Math.min(fanIn, numInputs - i
+								* fanIn));
+				combinerTasksMap.put(new Integer(numTasks++),
+						new TaskAssignment(combinerRequest, reduceTasksMap
+								.get(new Integer(i * reducersPerCombiner))
+								.getAssignedDaemon()));
+			}
+			numInputs = numCombiners;
+			reducersPerCombiner *= fanIn;
+		}
+		numCombineInputsExpected = numInputs;
+
+		SendRecvResponse sendRecvResponse = null;
+		try {
+			sendRecvResponse = sendAllExecutorRequestsAndReceiveResponses(
+					combinerTasksMap, numTasks);
+		} catch (Exception e) {
+			cleanupAndTerminateJob();
+			throw new TwisterException(
+					"Could not send the combiner requests.", e);
+		}
+		if (sendRecvResponse != null
+				&& sendRecvResponse.getStatus()
+						.equals(SendRecvStatus.EXCEPTION)) {
+			cleanupAndTerminateJob();
+			throw new TwisterException(
+					"Configuring the combine tree produced errors at the daemons. Please see the logs for further information.");
+		}
+		return sendRecvResponse != null
+				&& sendRecvResponse.getStatus().equals(SendRecvStatus.SUCCESS);
+	}
+
+	public DriverMetrics getDriverMetrics() {
+		return driverMetrics;
+	}
+
+	public JobState getJobState() {
+		return jobState;
+	}
+
+	/**
+	 * Returns the collector of the trace, or null if the job is not traced.
+	 */
+	public TraceCollector getTraceCollector() {
+		return traceCollector;
+	}
+
+	/**
+	 * Returns the collector of the profile, or null if the job is not
+	 * profiled.
+	 */
+	public ProfileCollector getProfileCollector() {
+		return profileCollector;
+	}
+
+	public int getIterationCount() {
+		return iterationCount;
+	}
+
+	/**
+	 * Returns the number of combine inputs the client receives in an
+	 * iteration.
+	 */
+	public int getNumCombineInputsExpected() {
+		return numCombineInputsExpected;
+	}
+
 	protected int getAssignedDaemonForTheMapTask(int number) {
 		return mapTasksMap.get(new Integer(number)).getAssignedDaemon();
 	}
@@ -1130,6 +1721,18 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		return this.monitor;
 	}
 
+	/**
+	 * Resets the monitor for a new run of the iteration
+	 * <code>iterationCount</code>, and discards the partial combine results
+	 * left by earlier attempts.
+	 */
+	private void resetMonitor() {
+		this.monitor.resetMonitor();
+		if (combineExecutor != null) {
+			combineExecutor.beginIteration(iterationCount);
+		}
+	}
+
 	/**
 	 * Gets the number of nodes from the nodes file.
 	 *
@@ -1180,49 +1783,38 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 	 */
 	public void onEvent(byte[] message) {
 		if (message != null) {
+			long dispatchBegin = System.nanoTime();
 			if (message[0] == TwisterConstants.COMBINE_INPUT) {
-				// System.out.println("Combining now!");
-				// CombineInput combineInputTmp = new CombineInput();
-				CombineInput combineInput = new CombineInput();
-				try {
-					// combineInputTmp.fromBytes(message);
-					combineInput.fromBytes(message);
-					if (this.currentCombiner != null) {
-						if (!combineInput.isHasData()) {
-							combineInput = getCombineInputFromRemoteHost(combineInput);
-						}
-						if (!combineInput.getOutputs().isEmpty()) {
-							currentCombiner.combine(combineInput.getOutputs());
-						}
-						monitor.combinerInputReceived(combineInput);
-					} else {
-						logger.error("Combiner is not configured");
-					}
-					// System.out.println("Combining finishes!");
-				} catch (Exception e) {
-					// cleanupAndTerminateJob();
-					// this.monitor.setMonitoringException(new TwisterException(
-					// "Combiner encountered erros.", e));
-
-					/*
-					 * ZBJ: try to ignore the error here and use fault handler
-					 * to restore the computation The exception here could be
-					 * resulted by the error from the Daemons (died with unknown
-					 * reason) However the client is still fine actually. Based
-					 * on this reason ,terminating the job directly doesn't look
-					 * proper.
-					 */
-					logger.error("Combiner encountered errors.");
-					//logger.error("Combiner encountered errors.", e);
+				if (traceCollector != null) {
+					traceCollector.getTracer().instant("combine-input", -1,
+							iterationCount);
+				}
+				// Combine inputs are handled by the combine threads, so that
+				// downloading and combining do not block this thread.
+				if (combineExecutor != null) {
+					combineExecutor.submit(message);
+				} else {
+					logger.error("Combiner is not configured");
 				}
 			} else if (message[0] == TwisterConstants.TASK_STATUS) {
 				this.monitor.onEvent(message);
+			} else if (message[0] == TwisterConstants.TRACE_DATA) {
+				if (traceCollector != null) {
+					try {
+						traceCollector.addDaemonTrace(new TraceData(message));
+					} catch (SerializationException e) {
+						logger.error("Could not read the trace of a daemon.", e);
+					}
+				}
 			} else {
 				// These are responses. So should go to response queue.
 				try {
 					WorkerResponse response = new WorkerResponse(message);
 					//System.out.println("The response key is checking: " + response.getRefMessageId());
 					responseMap.put(response.getRefMessageId(), response);
+					if (faultDetector != null) {
+						faultDetector.heartbeat(response.getDaemonNo());
+					}
 				} catch (Exception e) {
 					cleanupAndTerminateJob();
 					this.monitor.setMonitoringException(new TwisterException(
@@ -1230,6 +1822,16 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 					logger.error("Error in receiving worker responses.", e);
 				}
 			}
+			// Responses may arrive before the monitor is created.
+			if (monitor != null) {
+				long dispatchTime = System.nanoTime() - dispatchBegin;
+				TwisterMonitorBasic basicMonitor = (TwisterMonitorBasic) monitor;
+				basicMonitor.recordDriverTime(TaskMetrics.DISPATCH,
+						dispatchTime);
+				basicMonitor.recordDriverBytes(TaskMetrics.BYTES_RECEIVED,
+						message.length);
+				driverMetrics.getMessages().record(message, dispatchTime);
+			}
 		}
 	}
 
@@ -1276,7 +1878,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		return bout.toByteArray();
 	}
 
-	private CombineInput getCombineInputFromRemoteHost(
+	protected CombineInput getCombineInputFromRemoteHost(
 			CombineInput combineInputTmp) throws TwisterException,
 			SerializationException {
 		// Map<Key,List<Value>> tmpMap=reduceInputTmp.getOutputs();
@@ -1344,12 +1946,17 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 	 */
 	public TwisterMonitor runMapReduce() throws TwisterException {
 
+		if (stalenessTracker != null) {
+			throw new TwisterException(
+					"The stale synchronous mode is only supported by runMapReduceBCast(..).");
+		}
+
 		boolean currentlyMonitoringMapReduce = false;
 		synchronized (this) {
 			if (isMonitoringMapReduce) {
 				currentlyMonitoringMapReduce = true;
 			} else {
-				this.monitor.resetMonitor();
+				resetMonitor();
 				isMonitoringMapReduce = true;
 			}
 		}
@@ -1371,6 +1978,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		if (!reduceConfigured) {
 			configureReduceInternal(null);
 		}
+		rebalanceMapTasks();
 
 		MapTaskRequest mapRequest = null;
 		try {
@@ -1399,6 +2007,11 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 	public TwisterMonitor runMapReduce(List<KeyValuePair> pairs)
 			throws TwisterException {
 
+		if (stalenessTracker != null) {
+			throw new TwisterException(
+					"The stale synchronous mode is only supported by runMapReduceBCast(..).");
+		}
+
 		setLastKeyValuePair(pairs);
 
 		boolean currentlyMonitoringMapReduce = false;
@@ -1406,7 +2019,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 			if (isMonitoringMapReduce) {
 				currentlyMonitoringMapReduce = true;
 			} else {
-				this.monitor.resetMonitor();
+				resetMonitor();
 				isMonitoringMapReduce = true;
 			}
 		}
@@ -1430,6 +2043,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 			configureReduceInternal(null);
 		}
 
+		rebalanceMapTasks();
 		List<Map<Key, Value>> keyValueGroups = partitionKeyValuesToMapTasks(pairs);
 
 		try {
@@ -1464,7 +2078,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 				currentlyMonitoringMapReduce = true;
 			} else {
 				// System.out.println("new monitoring ");
-				this.monitor.resetMonitor();
+				resetMonitor();
 				isMonitoringMapReduce = true;
 			}
 		}
@@ -1487,16 +2101,34 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		if (!reduceConfigured) {
 			configureReduceInternal(null);
 		}
+		rebalanceMapTasks();
 
 		MapTaskRequest mapRequest = null;
 		try {
+			if (stalenessTracker != null) {
+				stalenessTracker.beginIteration(iterationCount);
+			}
 			// System.out.println("send Bcast value " + iterationCount);
 			for (int i = 0; i < numMapTasks; i++) {
+				if (stalenessTracker != null) {
+					// Map tasks still working on an older iteration are not
+					// waited for, the reducers use their latest outputs.
+					if (stalenessTracker.isBusy(i)) {
+						logger.debug("Map task " + i
+								+ " is behind, skipping it in iteration "
+								+ iterationCount);
+						continue;
+					}
+					stalenessTracker.mapDispatched(i, iterationCount, true);
+				}
 				mapRequest = new MapTaskRequest(i, iterationCount);
 				mapRequest.addKeyValue(new StringKey(jobConf.getJobId() + i),
 						val);
 				sendMapRequest(mapRequest);
 			}
+			if (stalenessTracker != null) {
+				startReduceIfWithinStalenessBound();
+			}
 		} catch (Exception e) {
 			cleanupAndTerminateJob();
 			throw new TwisterException(
@@ -1547,6 +2179,8 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 					//System.out.println("The Daemon I get " + taskNo);
 					responses.put(taskNo,
 							new DaemonStatus(true, System.currentTimeMillis()));
+					daemonHosts.put(taskNo, response.getDaemonIp());
+					recordDaemonResources(taskNo, response);
 				}
 			}
 			// All responses received.
@@ -1584,6 +2218,8 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 								}
 								responses.put(taskNo, new DaemonStatus(true,
 										System.currentTimeMillis()));
+								daemonHosts.put(taskNo, response.getDaemonIp());
+								recordDaemonResources(taskNo, response);
 							} else {
 								//Finally, I still don't have those daemons
 								logger.info("Desert Daemon " + taskNo);
@@ -1697,7 +2333,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 								//+ refIds.get(taskNo));
 
 						if (!receivedResponse.contains(refIds.get(taskNo))) {
-							System.out.println("The response from taksNo " + taskNo + " is not received");
+							logger.debug("The response from taksNo " + taskNo + " is not received");
 							response = responseMap.remove(refIds.get(taskNo));
 							if (response != null) {
 								if (response.isHasException()) {
@@ -1879,6 +2515,16 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		mapRequest.setJobId(jobConf.getJobId());
 		mapRequest.setSinkBase(reduceTopicBase);
 		mapRequest.setResponseTopic(responseTopic);
+		if (jobConf.isHasAllReduceClass()) {
+			mapRequest.setAllReducePlan(getAllReducePlan());
+		}
+		if (stragglerTracker != null || jobConf.isFaultTolerance()) {
+			lastMapRequests.put(mapRequest.getMapTaskNo(), mapRequest);
+		}
+		if (stragglerTracker != null) {
+			stragglerTracker.mapDispatched(mapRequest.getMapTaskNo(),
+					mapRequest.getIteration());
+		}
 		pubSubService.send(TwisterConstants.MAP_REDUCE_TOPIC_BASE + "/"
 				+ (getAssignedDaemonForTheMapTask(mapRequest.getMapTaskNo())),
 				mapRequest.getBytes());
@@ -1889,6 +2535,9 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 			SerializationException, TwisterException {
 
 		NewJobRequest jobRequest = new NewJobRequest(jobId, this.responseTopic);
+		// Only the first request of a resumed job reattaches to the daemons.
+		jobRequest.setResume(resumeCheckpoint != null
+				&& jobState == JobState.NOT_CONFIGURED);
 
 		// //
 		// Have to get num daemons from the detector.
@@ -1921,14 +2570,8 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 	 * @throws TwisterException
 	 */
 	protected void terminate() throws TwisterException {
-
-		EndJobRequest endMapReduceRequest = new EndJobRequest();
-		endMapReduceRequest.setJobId(jobConf.getJobId());
-		endMapReduceRequest.setResponseTopic(responseTopic);
-
 		try {
-			bcastRequestsAndReceiveResponses(endMapReduceRequest);
-
+			endJob();
 			this.faultDetector.close();
 			this.pubSubService.close();
 			jobState = JobState.TERMINATE_COMPLETES;
@@ -1937,6 +2580,45 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		} catch (Exception e) {
 			logger.error("Could not send the teminate requests.", e);
 		}
+	}
+
+	/**
+	 * Removes the job from the daemons, deleting the directories to clean up,
+	 * and writes the trace and the profile of the job.
+	 */
+	private void endJob() throws Exception {
+		EndJobRequest endMapReduceRequest = new EndJobRequest();
+		endMapReduceRequest.setJobId(jobConf.getJobId());
+		endMapReduceRequest.setResponseTopic(responseTopic);
+		if (jobConf.isReduceOutputToFiles() && !jobConf.isKeepReduceOutputs()) {
+			endMapReduceRequest.addCleanupDir(jobConf.getReduceOutputDir());
+		}
+		for (String dir : jobConf.getCleanupDirs()) {
+			endMapReduceRequest.addCleanupDir(dir);
+		}
+		if (traceCollector != null) {
+			traceCollector.endJobRequestSent();
+		}
+
+		bcastRequestsAndReceiveResponses(endMapReduceRequest);
+		if (traceCollector != null) {
+			try {
+				traceCollector.write(jobConf.getTraceFile());
+				logger.info("Trace of the job written to "
+						+ jobConf.getTraceFile());
+			} catch (TwisterException e) {
+				logger.error("Could not write the trace of the job.", e);
+			}
+		}
+		if (profileCollector != null) {
+			try {
+				profileCollector.write(jobConf.getProfileFile());
+				logger.info("Profile of the job written to "
+						+ jobConf.getProfileFile());
+			} catch (TwisterException e) {
+				logger.error("Could not write the profile of the job.", e);
+			}
+		}
 		//
 		// jobState = JobState.TERMINATE_SUBMITTED;
 		// Iterator<Integer> keys = responses.keySet().iterator();
@@ -1973,8 +2655,30 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		// key=ite.next();
 		// System.out.println(key+" "+reduceInputMap.get(key));
 		// }
+		sendStartReduceMessage(new StartReduceMessage(reduceInputMap, jobConf
+				.getJobId(), reduceTopicBase));
+	}
+
+	private void sendStartReduceMessage(StartReduceMessage msg)
+			throws TwisterException {
+		try {
+			pubSubService.send(TwisterConstants.CLEINT_TO_WORKER_BCAST,
+					msg.getBytes());
+		} catch (Exception e) {
+			throw new TwisterException(e);
+		}
+	}
+
+	/**
+	 * Sends the start reduce message again after a fault, so that the
+	 * reducers moved to other daemons are started. Only the reducers still in
+	 * the given iteration are started.
+	 */
+	protected void resendStartReduceMessage(
+			ConcurrentHashMap<Integer, Integer> reduceInputMap, int iteration)
+			throws TwisterException {
 		StartReduceMessage msg = new StartReduceMessage(reduceInputMap,
-				jobConf.getJobId(), reduceTopicBase);
+				jobConf.getJobId(), reduceTopicBase, iteration);
 		try {
 			pubSubService.send(TwisterConstants.CLEINT_TO_WORKER_BCAST,
 					msg.getBytes());
@@ -1983,6 +2687,503 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		}
 	}
 
+	/**
+	 * Returns the daemons participating in the AllReduce operation, which are
+	 * the daemons running the map tasks.
+	 */
+	public synchronized AllReducePlan getAllReducePlan() {
+		if (allReducePlan == null) {
+			Map<Integer, Integer> mapTasksPerDaemon = new HashMap<Integer, Integer>();
+			Iterator<TaskAssignment> ite = mapTasksMap.values().iterator();
+			Integer daemonNo;
+			Integer count;
+			while (ite.hasNext()) {
+				daemonNo = ite.next().getAssignedDaemon();
+				count = mapTasksPerDaemon.get(daemonNo);
+				mapTasksPerDaemon.put(daemonNo, count == null ? 1 : count + 1);
+			}
+			allReducePlan = new AllReducePlan(mapTasksPerDaemon, daemonHosts,
+					mrConfig.getDaemonPortBase());
+		}
+		return allReducePlan;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see cgl.imr.base.TwisterModel#runMapReduceAllReduce()
+	 */
+	public TwisterMonitor runMapReduceAllReduce() throws TwisterException {
+		if (!jobConf.isHasAllReduceClass()) {
+			throw new TwisterException(
+					"The job does not have an AllReduce class.");
+		}
+		if (iterationCount == 0) {
+			throw new TwisterException(
+					"No AllReduce result is available yet. Please start with runMapReduceBCast(..).");
+		}
+		boolean currentlyMonitoringMapReduce = false;
+		synchronized (this) {
+			if (isMonitoringMapReduce) {
+				currentlyMonitoringMapReduce = true;
+			} else {
+				resetMonitor();
+				isMonitoringMapReduce = true;
+			}
+		}
+
+		if (currentlyMonitoringMapReduce) {
+			throw new TwisterException(
+					"A MapReduce computation is already running for this TwisterDriver. "
+							+ "Use another driver for a new MapReduce computation.");
+		}
+
+		if (!mapConfigured) {
+			throw new TwisterException(
+					"Map tasks are not configured. Please call configureMaps(..).");
+		}
+
+		MapTaskRequest mapRequest = null;
+		try {
+			for (int i = 0; i < numMapTasks; i++) {
+				mapRequest = new MapTaskRequest(i, iterationCount);
+				mapRequest.setUseAllReduceResult(true);
+				sendMapRequest(mapRequest);
+			}
+		} catch (Exception e) {
+			cleanupAndTerminateJob();
+			throw new TwisterException(
+					"Could not send all the map task requests.", e);
+		} finally {
+			iterationCount++;
+		}
+		jobState = JobState.MAP_SUBMITTED;
+		return this.monitor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see cgl.imr.base.TwisterModel#getAllReduceResult()
+	 */
+	public Value getAllReduceResult() throws TwisterException {
+		if (!jobConf.isHasAllReduceClass()) {
+			throw new TwisterException(
+					"The job does not have an AllReduce class.");
+		}
+		AllReducePlan plan = getAllReducePlan();
+		byte[] bytes = getDataFromServer(plan.getHost(0), plan.getPort(0),
+				ALL_REDUCE_RESULT_KEY + jobConf.getJobId());
+		DataInputStream din = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		try {
+			if (!din.readBoolean()) {
+				return null;
+			}
+			byte[] data = new byte[din.readInt()];
+			din.readFully(data);
+			Class<?> c = Class.forName(new String(data));
+			data = new byte[din.readInt()];
+			din.readFully(data);
+			Value value = (Value) c.newInstance();
+			value.fromBytes(data);
+			return value;
+		} catch (Exception e) {
+			throw new TwisterException(
+					"Could not read the result of the AllReduce operation.", e);
+		}
+	}
+
+	public StalenessTracker getStalenessTracker() {
+		return stalenessTracker;
+	}
+
+	/**
+	 * Starts the reduce phase of the current iteration once all the map tasks
+	 * are within the staleness bound. Used only in the stale synchronous mode.
+	 * 
+	 * @throws TwisterException
+	 */
+	public void startReduceIfWithinStalenessBound() throws TwisterException {
+		if (stalenessTracker.tryStartReduce()) {
+			StartReduceMessage msg = new StartReduceMessage(stalenessTracker
+					.getReduceInputMap(), jobConf.getJobId(), reduceTopicBase);
+			msg.setMapIterations(stalenessTracker.getMapIterations());
+			sendStartReduceMessage(msg);
+		}
+	}
+
+	/**
+	 * Dispatches a map task that just completed an older iteration with the
+	 * value broadcast for the current iteration, so that it catches up without
+	 * waiting for the next iteration. Used only in the stale synchronous mode.
+	 * 
+	 * @param mapTaskNo
+	 *            - the map task to dispatch.
+	 * @throws TwisterException
+	 */
+	public void redispatchStaleMapTask(int mapTaskNo) throws TwisterException {
+		Value val = getLastBcastValue();
+		if (val == null) {
+			// The iteration has completed, the next one picks up the task.
+			return;
+		}
+		int iteration = stalenessTracker.getCurrentIteration();
+		MapTaskRequest mapRequest = new MapTaskRequest(mapTaskNo, iteration);
+		mapRequest.addKeyValue(new StringKey(jobConf.getJobId() + mapTaskNo),
+				val);
+		stalenessTracker.mapDispatched(mapTaskNo, iteration, false);
+		try {
+			sendMapRequest(mapRequest);
+		} catch (Exception e) {
+			throw new TwisterException("Could not send the map task request.",
+					e);
+		}
+	}
+
+	public StragglerTracker getStragglerTracker() {
+		return stragglerTracker;
+	}
+
+	/**
+	 * Launches the straggling map tasks of the current iteration again at
+	 * other daemons holding replicas of their data partitions. The map task
+	 * request last sent to a straggler is sent to the chosen daemon, after
+	 * configuring a mapper for the partition there if needed. Used only when
+	 * speculative execution is enabled.
+	 * 
+	 * @throws TwisterException
+	 */
+	public void speculateStragglers() throws TwisterException {
+		if (stragglerTracker == null) {
+			return;
+		}
+		List<Integer> stragglers = stragglerTracker.getStragglers();
+		if (stragglers.isEmpty() || mapPartitions == null) {
+			return;
+		}
+		int daemonNo;
+		for (int mapTaskNo : stragglers) {
+			daemonNo = getReplicaDaemonForTheMapTask(mapTaskNo);
+			if (daemonNo < 0) {
+				logger.info("Map task " + mapTaskNo
+						+ " is straggling, but no other daemon holds its data.");
+				continue;
+			}
+			try {
+				if (!configureSpeculativeMapper(mapTaskNo, daemonNo)) {
+					logger.error("Could not configure a speculative mapper for map task "
+							+ mapTaskNo + " at daemon " + daemonNo);
+					continue;
+				}
+				pubSubService.send(TwisterConstants.MAP_REDUCE_TOPIC_BASE + "/"
+						+ daemonNo, lastMapRequests.get(mapTaskNo).getBytes());
+				logger.info("Speculatively launched map task " + mapTaskNo
+						+ " of iteration "
+						+ stragglerTracker.getCurrentIteration()
+						+ " at daemon " + daemonNo);
+			} catch (Exception e) {
+				throw new TwisterException(
+						"Could not launch a speculative map task.", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns an available daemon, other than the assigned one, which holds a
+	 * replica of the data partition of the given map task, or -1. Daemons
+	 * under GC pressure are chosen only if no other replica is available.
+	 */
+	protected int getReplicaDaemonForTheMapTask(int mapTaskNo) {
+		List<Integer> replicas = faultDetector
+				.preferHealthy(getReplicaDaemonsForTheMapTask(mapTaskNo));
+		if (replicas.isEmpty()) {
+			return -1;
+		}
+		Integer configured = speculativeMappers.get(mapTaskNo);
+		if (configured != null && replicas.contains(configured)) {
+			return configured;
+		}
+		return replicas.get(0);
+	}
+
+	/**
+	 * Returns the available daemons, other than the assigned one, which hold a
+	 * replica of the data partition of the given map task.
+	 */
+	protected List<Integer> getReplicaDaemonsForTheMapTask(int mapTaskNo) {
+		List<Integer> daemons = new ArrayList<Integer>();
+		MapperRequest mapperRequest = (MapperRequest) mapTasksMap.get(
+				mapTaskNo).getTaskRequest();
+		if (mapPartitions == null
+				|| !mapperRequest.getMapConf().isHasDataPartition()) {
+			return daemons;
+		}
+		String fileName = ((FileData) mapperRequest.getMapConf()
+				.getDataPartition()).getFileName();
+		int assignedDaemon = getAssignedDaemonForTheMapTask(mapTaskNo);
+		List<Integer> availableDaemons = faultDetector.getAvailableDeamons();
+		Collection<Integer> replicas = mapPartitions
+				.getDaemonsForDataPartition(fileName);
+		if (replicas != null) {
+			for (Integer daemon : replicas) {
+				if (daemon.intValue() != assignedDaemon
+						&& availableDaemons.contains(daemon)
+						&& !daemons.contains(daemon)) {
+					daemons.add(daemon);
+				}
+			}
+		}
+		return daemons;
+	}
+
+	private void recordDaemonResources(int daemonNo, WorkerResponse response) {
+		if (response.isHasResources()) {
+			DaemonCapacities.getInstance().setResources(daemonNo,
+					response.getNumProcessors(), response.getMaxMemory());
+		}
+	}
+
+	/**
+	 * Records the rates at which the daemons processed the data partitions in
+	 * a completed iteration, used to assign the partitions of later jobs.
+	 * 
+	 * @param jobStatus
+	 *            - status of the completed iteration.
+	 */
+	public void recordMapTaskRates(JobStatus jobStatus) {
+		if (mapPartitions == null || !mapPartitions.isHasFileSizes()) {
+			return;
+		}
+		MapperRequest mapperRequest;
+		TaskAssignment assignment;
+		for (TaskStatus status : jobStatus.getMapTaskStatuses().values()) {
+			assignment = mapTasksMap.get(status.getTaskNo());
+			if (assignment == null) {
+				continue;
+			}
+			mapperRequest = (MapperRequest) assignment.getTaskRequest();
+			if (!mapperRequest.getMapConf().isHasDataPartition()) {
+				continue;
+			}
+			DaemonCapacities.getInstance().recordMapTask(
+					assignment.getAssignedDaemon(),
+					mapPartitions.getFileSize(((FileData) mapperRequest
+							.getMapConf().getDataPartition()).getFileName()),
+					status.getExecuationTime());
+		}
+	}
+
+	/**
+	 * Returns the names of the data partitions of the map tasks that read
+	 * one, keyed by the map task number.
+	 */
+	public Map<Integer, String> getMapPartitionNames() {
+		Map<Integer, String> names = new HashMap<Integer, String>();
+		MapperConf mapperConf;
+		for (Map.Entry<Integer, TaskAssignment> entry : mapTasksMap
+				.entrySet()) {
+			mapperConf = ((MapperRequest) entry.getValue().getTaskRequest())
+					.getMapConf();
+			if (mapperConf.isHasDataPartition()
+					&& mapperConf.getDataPartition() instanceof FileData) {
+				names.put(entry.getKey(), ((FileData) mapperConf
+						.getDataPartition()).getFileName());
+			}
+		}
+		return names;
+	}
+
+	public MapTaskRebalancer getMapTaskRebalancer() {
+		return mapTaskRebalancer;
+	}
+
+	/**
+	 * Moves map tasks to other daemons holding replicas of their data
+	 * partitions if the <code>MapTaskRebalancer</code> predicts that it pays
+	 * off. Called between iterations, before the map tasks are dispatched.
+	 * The map tasks keep their old daemons if the new mappers cannot be
+	 * configured. Otherwise the old mappers are removed from their daemons.
+	 * A moved map task is configured again from its data partition, hence
+	 * any state it kept between iterations is lost.
+	 * 
+	 * @throws TwisterException
+	 */
+	protected void rebalanceMapTasks() throws TwisterException {
+		if (mapTaskRebalancer == null || mapPartitions == null) {
+			return;
+		}
+		Map<Integer, Integer> assignment = new HashMap<Integer, Integer>();
+		Map<Integer, Collection<Integer>> candidates = new HashMap<Integer, Collection<Integer>>();
+		for (int i = 0; i < numMapTasks; i++) {
+			assignment.put(i, getAssignedDaemonForTheMapTask(i));
+			candidates.put(i, getReplicaDaemonsForTheMapTask(i));
+		}
+		Map<Integer, Integer> migrations = mapTaskRebalancer.planMigrations(
+				assignment, candidates);
+		if (migrations.isEmpty()) {
+			return;
+		}
+
+		ConcurrentHashMap<Integer, TaskAssignment> newAssignments = new ConcurrentHashMap<Integer, TaskAssignment>();
+		MapperRequest assigned;
+		MapperRequest mapperRequest;
+		for (Map.Entry<Integer, Integer> entry : migrations.entrySet()) {
+			assigned = (MapperRequest) mapTasksMap.get(entry.getKey())
+					.getTaskRequest();
+			mapperRequest = new MapperRequest(jobConf, assigned.getMapConf(),
+					iterationCount);
+			mapperRequest.setResponseTopic(responseTopic);
+			newAssignments.put(entry.getKey(), new TaskAssignment(
+					mapperRequest, entry.getValue()));
+		}
+		long beginTime = System.currentTimeMillis();
+		SendRecvResponse sendRecvResponse;
+		try {
+			sendRecvResponse = sendAllExecutorRequestsAndReceiveResponses(
+					newAssignments, newAssignments.size());
+		} catch (Exception e) {
+			throw new TwisterException(
+					"Could not send the map executor requests.", e);
+		}
+		if (sendRecvResponse.getStatus().equals(SendRecvStatus.SUCCESS)) {
+			mapTasksMap.putAll(newAssignments);
+			mapTaskRebalancer.setMigrationCost(System.currentTimeMillis()
+					- beginTime);
+			for (Integer mapTaskNo : migrations.keySet()) {
+				removeMapper(mapTaskNo, assignment.get(mapTaskNo));
+			}
+			logger.info("Moved " + newAssignments.size()
+					+ " map tasks to new daemons.");
+		} else {
+			logger.error("Could not move the map tasks, keeping the current assignment.");
+		}
+	}
+
+	/**
+	 * Asks a daemon to drop the mapper of a map task that has moved away.
+	 */
+	private void removeMapper(int mapTaskNo, int daemonNo) {
+		try {
+			pubSubService.send(TwisterConstants.MAP_REDUCE_TOPIC_BASE + "/"
+					+ daemonNo, new MapperRemoval(jobConf.getJobId(),
+					mapTaskNo).getBytes());
+		} catch (Exception e) {
+			logger.warn("Could not remove the mapper of the map task "
+					+ mapTaskNo + " from the daemon " + daemonNo, e);
+		}
+	}
+
+	/**
+	 * Configures a mapper for the given map task at the given daemon unless it
+	 * is already there. The mapper is kept for later iterations.
+	 */
+	protected boolean configureSpeculativeMapper(int mapTaskNo, int daemonNo)
+			throws PubSubException, SerializationException {
+		Integer configured = speculativeMappers.get(mapTaskNo);
+		if (configured != null && configured.intValue() == daemonNo) {
+			return true;
+		}
+		MapperRequest assigned = (MapperRequest) mapTasksMap.get(mapTaskNo)
+				.getTaskRequest();
+		MapperRequest mapperRequest = new MapperRequest(jobConf, assigned
+				.getMapConf(), iterationCount);
+		mapperRequest.setResponseTopic(responseTopic);
+		ConcurrentHashMap<Integer, TaskAssignment> assignment = new ConcurrentHashMap<Integer, TaskAssignment>();
+		assignment.put(mapTaskNo, new TaskAssignment(mapperRequest, daemonNo));
+		SendRecvResponse sendRecvResponse = sendAllExecutorRequestsAndReceiveResponses(
+				assignment, 1);
+		if (sendRecvResponse.getStatus().equals(SendRecvStatus.SUCCESS)) {
+			speculativeMappers.put(mapTaskNo, daemonNo);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checkpoints the state of the driver at the end of an iteration if
+	 * checkpointing is enabled and the checkpoint interval has passed. The
+	 * checkpoint is serialized here and written in the background. The
+	 * iteration count was already advanced when the iteration was dispatched,
+	 * hence the completed iteration, whose inputs are saved, is the previous
+	 * one.
+	 */
+	public void checkpointIteration() {
+		if (checkpointWriter == null
+				|| iterationCount % jobConf.getCheckpointInterval() != 0) {
+			return;
+		}
+		DriverCheckpoint checkpoint = new DriverCheckpoint(jobConf.getJobId(),
+				iterationCount - 1, execPlan);
+		checkpoint.setLastBcastValue(lastBcastValue);
+		checkpoint.setLastKeyValuePairs(lastKeyValuePair);
+		MapperRequest mapperRequest;
+		for (TaskAssignment assignment : mapTasksMap.values()) {
+			mapperRequest = (MapperRequest) assignment.getTaskRequest();
+			if (mapperRequest.getMapConf().isHasDataPartition()
+					&& mapperRequest.getMapConf().getDataPartition() instanceof FileData) {
+				checkpoint.addMapAssignment(((FileData) mapperRequest
+						.getMapConf().getDataPartition()).getFileName(),
+						assignment.getAssignedDaemon());
+			}
+		}
+		try {
+			checkpointWriter.submit(checkpoint.getBytes());
+		} catch (Exception e) {
+			logger.error("Could not checkpoint iteration " + iterationCount, e);
+		}
+	}
+
+	/**
+	 * Resumes the job from the checkpoint found when the driver started. The
+	 * memcache, the map tasks and the reduce tasks are configured again as in
+	 * the checkpointed execution plan. Daemons that still hold the mappers of
+	 * the job keep them, the other daemons load the data partitions again. The
+	 * iteration count is set back to the checkpointed iteration, whose inputs
+	 * are available from the returned checkpoint, so that the application runs
+	 * that iteration again with them. Its combiner is created afresh by that
+	 * run.
+	 * 
+	 * @return the checkpoint, or null if there is no checkpoint to resume
+	 *         from.
+	 * @throws TwisterException
+	 */
+	public DriverCheckpoint resumeFromCheckpoint() throws TwisterException {
+		DriverCheckpoint checkpoint = resumeCheckpoint;
+		if (checkpoint == null) {
+			return null;
+		}
+		resumeCheckpoint = null;
+		// Reducers and mappers start from the checkpointed iteration.
+		iterationCount = checkpoint.getIteration();
+
+		for (Map.Entry<String, Value> entry : checkpoint.getMemCachedData()
+				.entrySet()) {
+			execPlan.addMemCachedData(entry.getKey(), entry.getValue());
+			if (!addToMemCacheInternal(entry.getKey(), entry.getValue())) {
+				throw new TwisterException("Could not restore the memcache.");
+			}
+		}
+		if (checkpoint.getPartitionFile() != null) {
+			resumedAssignment = checkpoint.getMapAssignment();
+			try {
+				configureMaps(checkpoint.getPartitionFile());
+			} finally {
+				resumedAssignment = null;
+			}
+		} else if (checkpoint.getMapConfigurations() != null) {
+			configureMaps(checkpoint.getMapConfigurations());
+		} else if (checkpoint.isMapConfigured()) {
+			configureMaps();
+		}
+		if (checkpoint.getReduceConfigurations() != null) {
+			configureReduce(checkpoint.getReduceConfigurations());
+		}
+		logger.info("Resumed job " + jobConf.getJobId() + " at iteration "
+				+ checkpoint.getIteration());
+		return checkpoint;
+	}
+
 	public void setLastKeyValuePair(List<KeyValuePair> lastKeyValuePair) {
 		this.lastKeyValuePair = lastKeyValuePair;
 		this.lastBcastValue = null;
@@ -2007,7 +3208,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		if (getLastBcastValue() != null) {
 			// System.out.println("Bcast Value resend");
 
-			this.monitor.resetMonitor();
+			resetMonitor();
 
 			if (jobConf.isHasCombinerClass()) {
 				// System.out.println("no combiner?");
@@ -2048,7 +3249,7 @@ public class TwisterDriver implements Subscribable, TwisterConstants,
 		} else if (getLastKeyValuePair() != null) {
 			// ZBJ: try to restart the computation which has keyvalue pairs
 			// System.out.println("KeyValuePair resend");
-			this.monitor.resetMonitor();
+			resetMonitor();
 
 			// ZBJ: It seems once this value is set as true, it is never turned
 			// off.
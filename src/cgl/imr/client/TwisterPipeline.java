@@ -0,0 +1,298 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.Combiner;
+import cgl.imr.base.TwisterConstants;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.base.impl.ReduceOutputCombiner;
+import cgl.imr.data.DataPartitionException;
+import cgl.imr.data.file.PartitionFile;
+
+/**
+ * Executes a graph of MapReduce jobs (stages) where the reduce outputs of a
+ * stage are the map inputs of the stages depending on it. The reduce tasks of
+ * such a stage write their outputs to local files at their daemons (see
+ * <code>JobConf.setReduceOutputDir</code>) and the map tasks of the next
+ * stages are placed at the daemons holding those files, so the intermediate
+ * data never passes through the client. Only the partition files describing
+ * the intermediate data are written at the client.
+ * 
+ * Stages are added in a topological order, i.e. the inputs of a stage must be
+ * added before the stage. A stage without inputs reads the partition file
+ * given to <code>run</code>. The number of map tasks of a stage is set to the
+ * number of files it reads. A stage with dependent stages uses
+ * <code>ReduceOutputCombiner</code> as its combiner; the results of the other
+ * stages are available from their combiners through <code>getCombiner</code>.
+ * The intermediate files are kept till the last stage completes, and are
+ * deleted when it terminates. All the stages run on one driver, which starts
+ * the job of each stage using <code>TwisterDriver.startNewJob</code>.
+ * 
+ */
+public class TwisterPipeline {
+
+	private static Logger logger = Logger.getLogger(TwisterPipeline.class);
+
+	private String pipelineId;
+	private String partitionFileDir;
+	private Map<String, Stage> stages;
+
+	private static class Stage {
+		private String name;
+		private JobConf jobConf;
+		private List<String> inputs;
+		private boolean hasDependents = false;
+		private String partitionFile;
+		private Combiner combiner;
+
+		private Stage(String name, JobConf jobConf, List<String> inputs) {
+			this.name = name;
+			this.jobConf = jobConf;
+			this.inputs = inputs;
+		}
+	}
+
+	/**
+	 * @param pipelineId
+	 *            - unique name of the pipeline, used as the directory of the
+	 *            intermediate files under the <code>data_dir</code>.
+	 * @param partitionFileDir
+	 *            - local directory for the partition files of the stages.
+	 */
+	public TwisterPipeline(String pipelineId, String partitionFileDir) {
+		this.pipelineId = pipelineId;
+		this.partitionFileDir = partitionFileDir;
+		this.stages = new LinkedHashMap<String, Stage>();
+	}
+
+	/**
+	 * Adds a stage to the pipeline.
+	 * 
+	 * @param name
+	 *            - name of the stage.
+	 * @param jobConf
+	 *            - job of the stage.
+	 * @param inputStages
+	 *            - stages whose reduce outputs are the inputs of this stage.
+	 * @throws TwisterException
+	 */
+	public void addStage(String name, JobConf jobConf, String... inputStages)
+			throws TwisterException {
+		if (stages.containsKey(name)) {
+			throw new TwisterException("Duplicate stage " + name + ".");
+		}
+		List<String> inputs = new ArrayList<String>();
+		for (String input : inputStages) {
+			Stage inputStage = stages.get(input);
+			if (inputStage == null) {
+				throw new TwisterException("Input stage " + input + " of "
+						+ name + " must be added first.");
+			}
+			inputStage.hasDependents = true;
+			inputs.add(input);
+		}
+		stages.put(name, new Stage(name, jobConf, inputs));
+	}
+
+	/**
+	 * Runs the stages in the order they were added. Each stage executes one
+	 * MapReduce computation.
+	 * 
+	 * @param inputPartitionFile
+	 *            - partition file of the stages without input stages.
+	 * @throws TwisterException
+	 */
+	public void run(String inputPartitionFile) throws TwisterException {
+		// One driver, hence one broker connection, runs all the stages.
+		TwisterDriver driver = null;
+		try {
+			Iterator<Stage> ite = stages.values().iterator();
+			Stage stage;
+			while (ite.hasNext()) {
+				stage = ite.next();
+				if (!ite.hasNext()) {
+					stage.jobConf.addCleanupDir(pipelineId);
+				}
+				String partitionFile;
+				if (stage.inputs.isEmpty()) {
+					partitionFile = inputPartitionFile;
+				} else {
+					partitionFile = mergeInputPartitionFiles(stage);
+				}
+				driver = runStage(driver, stage, partitionFile);
+			}
+		} finally {
+			if (driver != null) {
+				driver.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs a stage, creating the driver for the first stage.
+	 * 
+	 * @return the driver.
+	 */
+	private TwisterDriver runStage(TwisterDriver driver, Stage stage,
+			String partitionFile) throws TwisterException {
+		JobConf jobConf = stage.jobConf;
+		if (stage.hasDependents) {
+			jobConf.setReduceOutputDir(pipelineId + "/" + stage.name);
+			jobConf.setKeepReduceOutputs(true);
+		}
+		jobConf.setNumMapTasks(countPartitions(partitionFile));
+
+		long beginTime = System.currentTimeMillis();
+		if (driver == null) {
+			driver = new TwisterDriver(jobConf);
+		} else {
+			driver.startNewJob(jobConf);
+		}
+		driver.configureMaps(partitionFile);
+		driver.runMapReduce().monitorTillCompletion();
+		if (jobConf.isHasCombinerClass()) {
+			stage.combiner = driver.getCurrentCombiner();
+		}
+		if (stage.hasDependents) {
+			stage.partitionFile = getPartitionFileName(stage.name);
+			((ReduceOutputCombiner) stage.combiner)
+					.writePartitionFile(stage.partitionFile);
+		}
+		logger.info("Stage " + stage.name + " of pipeline " + pipelineId
+				+ " completed in " + (System.currentTimeMillis() - beginTime)
+				+ " ms.");
+		return driver;
+	}
+
+	private String getPartitionFileName(String fileName) {
+		return new File(partitionFileDir, pipelineId + "_" + fileName + ".pf")
+				.getPath();
+	}
+
+	/**
+	 * Concatenates the partition files of the input stages, renumbering the
+	 * partitions.
+	 */
+	private String mergeInputPartitionFiles(Stage stage)
+			throws TwisterException {
+		if (stage.inputs.size() == 1) {
+			return stages.get(stage.inputs.get(0)).partitionFile;
+		}
+		String mergedFile = getPartitionFileName(stage.name + "_input");
+		try {
+			BufferedWriter bw = new BufferedWriter(new FileWriter(mergedFile));
+			int fileNo = 0;
+			String line;
+			for (String input : stage.inputs) {
+				BufferedReader reader = new BufferedReader(new FileReader(
+						stages.get(input).partitionFile));
+				while ((line = reader.readLine()) != null) {
+					bw.write(fileNo
+							+ line.substring(line
+									.indexOf(TwisterConstants.PARTITION_FILE_SPLIT_PATTERN))
+							+ "\n");
+					fileNo++;
+				}
+				reader.close();
+			}
+			bw.flush();
+			bw.close();
+		} catch (IOException e) {
+			throw new TwisterException("Could not create the input of stage "
+					+ stage.name, e);
+		}
+		return mergedFile;
+	}
+
+	private int countPartitions(String partitionFile) throws TwisterException {
+		try {
+			return new PartitionFile(partitionFile).getNumberOfFiles();
+		} catch (DataPartitionException e) {
+			throw new TwisterException("Could not read the partition file "
+					+ partitionFile, e);
+		}
+	}
+
+	/**
+	 * Returns the combiner of a completed stage, or null if the stage does not
+	 * have a combiner.
+	 */
+	public Combiner getCombiner(String stageName) {
+		Stage stage = stages.get(stageName);
+		return (stage == null) ? null : stage.combiner;
+	}
+
+	/**
+	 * Returns the partition file describing the reduce outputs of a completed
+	 * stage with dependent stages.
+	 */
+	public String getPartitionFile(String stageName) {
+		Stage stage = stages.get(stageName);
+		return (stage == null) ? null : stage.partitionFile;
+	}
+}
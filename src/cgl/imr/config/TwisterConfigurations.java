@@ -76,6 +76,12 @@ public class TwisterConfigurations {
 	final static String KEY_WORKERS_PER_DAEMON = "workers_per_daemon";
 
 	final static String KEY_PUBSUB_BROKER = "pubsub_broker";
+	// Optional, meters the traffic of each topic when true.
+	final static String KEY_PUBSUB_METERING = "pubsub_metering";
+	// Optional, seconds between two summaries of the metered traffic.
+	final static String KEY_PUBSUB_METERING_LOG_INTERVAL = "pubsub_metering_log_interval";
+	// Optional, records the traffic of each pub/sub connection in this directory.
+	final static String KEY_PUBSUB_RECORD_DIR = "pubsub_record_dir";
 
 	public synchronized static TwisterConfigurations getInstance()
 			throws ConfigurationException {
@@ -94,6 +100,9 @@ public class TwisterConfigurations {
 	protected int workersPerDaemon;
 
 	protected String pubsubBroker;
+	protected boolean pubsubMetering;
+	protected int pubsubMeteringLogInterval;
+	protected String pubsubRecordDir;
 
 	private TwisterConfigurations() throws ConfigurationException {
 		this(TwisterConstants.PROPERTIES_FILE);
@@ -114,6 +123,11 @@ public class TwisterConfigurations {
 			this.pubsubBroker = properties.getProperty(KEY_PUBSUB_BROKER);
 			this.daemonPortBase = Integer.parseInt(properties
 					.getProperty(KEY_DAEMON_PORT_BASE));
+			this.pubsubMetering = Boolean.parseBoolean(properties
+					.getProperty(KEY_PUBSUB_METERING));
+			this.pubsubMeteringLogInterval = Integer.parseInt(properties
+					.getProperty(KEY_PUBSUB_METERING_LOG_INTERVAL, "60"));
+			this.pubsubRecordDir = properties.getProperty(KEY_PUBSUB_RECORD_DIR);
 
 			// Check for not null
 			if (nodeFile == null || localAppJarDir == null
@@ -156,4 +170,57 @@ public class TwisterConfigurations {
 		return workersPerDaemon;
 	}
 
+	public boolean isPubsubMetering() {
+		return pubsubMetering;
+	}
+
+	public int getPubsubMeteringLogInterval() {
+		return pubsubMeteringLogInterval;
+	}
+
+	/**
+	 * @return the directory to record the pub/sub traffic in, or null when the
+	 *         traffic is not recorded.
+	 */
+	public String getPubsubRecordDir() {
+		return pubsubRecordDir;
+	}
+
+	/**
+	 * Overrides the pub/sub broker of twister.properties, e.g. with "None" to
+	 * run a daemon on replayed traffic.
+	 */
+	public void setPubsubBroker(String pubsubBroker) {
+		this.pubsubBroker = pubsubBroker;
+	}
+
+	public void setPubsubRecordDir(String pubsubRecordDir) {
+		this.pubsubRecordDir = pubsubRecordDir;
+	}
+
+	/*
+	 * The setters below let LocalCluster run the driver and all the daemons in
+	 * one process, on a private nodes file and data directory.
+	 */
+
+	public void setNodeFile(String nodeFile) {
+		this.nodeFile = nodeFile;
+	}
+
+	public void setDamonsPerNode(int damonsPerNode) {
+		this.damonsPerNode = damonsPerNode;
+	}
+
+	public void setWorkersPerDaemon(int workersPerDaemon) {
+		this.workersPerDaemon = workersPerDaemon;
+	}
+
+	public void setLocalDataDir(String localDataDir) {
+		this.localDataDir = localDataDir;
+	}
+
+	public void setLocalAppJarDir(String localAppJarDir) {
+		this.localAppJarDir = localAppJarDir;
+	}
+
 }
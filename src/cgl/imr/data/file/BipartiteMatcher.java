@@ -0,0 +1,241 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.data.file;
+
+/**
+ * Maximum bipartite matching between files and daemons, where every daemon can
+ * be matched to at most <code>capacity</code> files. Files and daemons are
+ * identified by dense integer ids. The matching is computed as a max flow
+ * from a source to the files, from the files to their daemons and from the
+ * daemons to a sink, using Dinic's algorithm. As every augmenting path carries
+ * a unit flow this behaves like Hopcroft-Karp, i.e. O(E sqrt(V)) per run.
+ * 
+ * The graph is kept in flat int arrays and the depth first search is
+ * iterative, so that large graphs do not need per-node objects or deep
+ * recursion.
+ * 
+ */
+class BipartiteMatcher {
+
+	private int numFiles;
+	private int numDaemons;
+	private int source;
+	private int sink;
+
+	// Adjacency lists as linked edges. Edge e and e ^ 1 are the reverse of
+	// each other, the even edges are the forward ones.
+	private int[] head;
+	private int[] next;
+	private int[] to;
+	private int[] cap;
+	private int[] initialCap;
+	private int numEdges = 0;
+	// Edges from the daemons to the sink.
+	private int[] sinkEdges;
+
+	private int[] level;
+	private int[] iterators;
+	private int[] queue;
+	private int[] pathEdges;
+
+	/**
+	 * @param numFiles
+	 *            - number of files.
+	 * @param numDaemons
+	 *            - number of daemons.
+	 * @param fileDaemons
+	 *            - daemon ids each file can be assigned to.
+	 */
+	BipartiteMatcher(int numFiles, int numDaemons, int[][] fileDaemons) {
+		this.numFiles = numFiles;
+		this.numDaemons = numDaemons;
+		int numNodes = numFiles + numDaemons + 2;
+		this.source = numFiles + numDaemons;
+		this.sink = source + 1;
+
+		int edges = numFiles + numDaemons;
+		for (int[] daemons : fileDaemons) {
+			edges += daemons.length;
+		}
+		head = new int[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			head[i] = -1;
+		}
+		next = new int[2 * edges];
+		to = new int[2 * edges];
+		cap = new int[2 * edges];
+		sinkEdges = new int[numDaemons];
+
+		for (int f = 0; f < numFiles; f++) {
+			addEdge(source, f, 1);
+			for (int d : fileDaemons[f]) {
+				addEdge(f, numFiles + d, 1);
+			}
+		}
+		for (int d = 0; d < numDaemons; d++) {
+			sinkEdges[d] = addEdge(numFiles + d, sink, 0);
+		}
+		initialCap = cap.clone();
+
+		level = new int[numNodes];
+		iterators = new int[numNodes];
+		queue = new int[numNodes];
+		pathEdges = new int[numNodes];
+	}
+
+	private int addEdge(int u, int v, int c) {
+		int e = numEdges;
+		to[e] = v;
+		cap[e] = c;
+		next[e] = head[u];
+		head[u] = e;
+		to[e + 1] = u;
+		cap[e + 1] = 0;
+		next[e + 1] = head[v];
+		head[v] = e + 1;
+		numEdges += 2;
+		return e;
+	}
+
+	/**
+	 * Computes a maximum matching where every daemon gets at most
+	 * <code>capacity</code> files.
+	 * 
+	 * @return the daemon id of every file, -1 for the unmatched files.
+	 */
+	int[] match(int capacity) {
+		System.arraycopy(initialCap, 0, cap, 0, cap.length);
+		for (int d = 0; d < numDaemons; d++) {
+			cap[sinkEdges[d]] = capacity;
+		}
+		while (buildLevels()) {
+			System.arraycopy(head, 0, iterators, 0, head.length);
+			while (augment()) {
+				// Keep augmenting along the current level graph.
+			}
+		}
+
+		int[] matches = new int[numFiles];
+		for (int f = 0; f < numFiles; f++) {
+			matches[f] = -1;
+			for (int e = head[f]; e != -1; e = next[e]) {
+				if ((e & 1) == 0 && cap[e] == 0 && to[e] != source) {
+					matches[f] = to[e] - numFiles;
+					break;
+				}
+			}
+		}
+		return matches;
+	}
+
+	private boolean buildLevels() {
+		for (int i = 0; i < level.length; i++) {
+			level[i] = -1;
+		}
+		int first = 0;
+		int last = 0;
+		queue[last++] = source;
+		level[source] = 0;
+		int u;
+		while (first < last) {
+			u = queue[first++];
+			for (int e = head[u]; e != -1; e = next[e]) {
+				if (cap[e] > 0 && level[to[e]] < 0) {
+					level[to[e]] = level[u] + 1;
+					queue[last++] = to[e];
+				}
+			}
+		}
+		return level[sink] >= 0;
+	}
+
+	/**
+	 * Finds one augmenting path in the level graph and pushes a unit flow
+	 * along it.
+	 */
+	private boolean augment() {
+		int top = 0;
+		int u = source;
+		int e;
+		boolean advanced;
+		while (true) {
+			if (u == sink) {
+				for (int i = 0; i < top; i++) {
+					cap[pathEdges[i]]--;
+					cap[pathEdges[i] ^ 1]++;
+				}
+				return true;
+			}
+			advanced = false;
+			for (; iterators[u] != -1; iterators[u] = next[iterators[u]]) {
+				e = iterators[u];
+				if (cap[e] > 0 && level[to[e]] == level[u] + 1) {
+					pathEdges[top++] = e;
+					u = to[e];
+					advanced = true;
+					break;
+				}
+			}
+			if (!advanced) {
+				if (u == source) {
+					return false;
+				}
+				// Dead end, remove the node from the level graph.
+				level[u] = -1;
+				e = pathEdges[--top];
+				u = to[e ^ 1];
+				iterators[u] = next[iterators[u]];
+			}
+		}
+	}
+}
@@ -53,6 +53,8 @@
 package cgl.imr.data.file;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -60,7 +62,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import cgl.imr.data.DataPartitionException;
@@ -85,10 +86,11 @@ import cgl.imr.data.DataPartitionException;
  *         capability is 1. The edges between daemons to the sink is the
  *         capability of the daemon.
  * 
- *         In the first turn of assignment, the capability of daemon is set to
- *         the average number of files on each daemon. If there are some files
- *         not assigned after the first turn, the algorithm will pick them up
- *         and continually do the matching
+ *         The capability of each daemon starts from the average number of
+ *         files on each daemon. If some files cannot be matched, the smallest
+ *         capability matching all the files is searched for. The matching
+ *         runs on integer ids of the files and the daemons (see
+ *         <code>BipartiteMatcher</code>).
  * 
  * @author Bingjing Zhang (zhangbj@indiana.edu)
  * 
@@ -97,7 +99,11 @@ import cgl.imr.data.DataPartitionException;
 public class FileDataPartitioner {
 
 	/**
-	 * This function is invoked by the driver
+	 * This function is invoked by the driver. Each file is assigned to one of
+	 * the available daemons holding it, as evenly as possible: the files are
+	 * matched to the daemons with the smallest per daemon capacity, starting
+	 * from the average number of files on each daemon, that matches all the
+	 * files.
 	 * 
 	 * @param daemons
 	 * @param partitions
@@ -108,291 +114,298 @@ public class FileDataPartitioner {
 			List<Integer> daemons, PartitionFile partitions)
 			throws DataPartitionException {
 
-		// the data should be returned
-		Map<String, Integer> partitionAndDaemons = new HashMap<String, Integer>();
-
 		if (daemons.size() == 0) {
 			// if no daemons available,
 			throw new DataPartitionException(
 					"no available nodes. Twister Error.");
 		}
 
-		// try to use max flow to solve assignment problem.
-		// files as source part
-		Set<String> files = new HashSet<String>();
-
-		// edge connections between files and daemons,
-		// edges with file to daemon direction use file as key
-		// edges with daemon to file use daemon as key
-		Map<String, Set<String>> filedaemonAvailability = new HashMap<String, Set<String>>();
-
-		// daemonCapability is set as sink, daemon number as key, capability of
-		// each daemon as value
-		Map<String, Integer> daemonCapability = new HashMap<String, Integer>();
+		// Dense ids for the files and for the daemons holding them.
+		Set<Integer> availableDaemons = new HashSet<Integer>(daemons);
+		Map<Integer, Integer> daemonIds = new HashMap<Integer, Integer>();
+		List<Integer> daemonNumbers = new ArrayList<Integer>();
+		String[] files = new String[partitions.getNumberOfFiles()];
+		int[][] fileDaemons = new int[files.length][];
 
-		// prepare to do initialization,
 		Iterator<String> fileIte = partitions.getPartitions();
-		String fileName = null;
-		// the list got from the partitions
-		List<Integer> daemonsForFile = null;
-		// the set for building edge information
-		Set<String> availableDaemonsForFile = null;
-
-		// build source part sink part, connection part of the max flow chart
+		int numFiles = 0;
+		int[] ids = new int[daemons.size()];
+		int numIds;
+		Integer id;
 		while (fileIte.hasNext()) {
-			fileName = fileIte.next();
-			daemonsForFile = new ArrayList<Integer>(
-					partitions.getDaemonsForDataPartition(fileName));
-			
-			//build the available daemons for the file
-			availableDaemonsForFile = new HashSet<String>();
-
-			for (int i = 0; i < daemonsForFile.size(); i++) {
-				int daemonNO = daemonsForFile.get(i);
-
-				// daemons refer to available daemons
-				if (daemons.contains(daemonNO)) {
-					availableDaemonsForFile.add(daemonNO + "");
-
-					// if the daemon is available in daemons,
-					// but not in daemonCapability, add it to daemonCapability
-					if (!daemonCapability.containsKey(daemonNO)) {
-						daemonCapability.put(daemonNO + "", 0);
-					}
+			files[numFiles] = fileIte.next();
+			numIds = 0;
+			for (Integer daemonNo : partitions
+					.getDaemonsForDataPartition(files[numFiles])) {
+				if (!availableDaemons.contains(daemonNo)) {
+					continue;
+				}
+				id = daemonIds.get(daemonNo);
+				if (id == null) {
+					id = daemonNumbers.size();
+					daemonIds.put(daemonNo, id);
+					daemonNumbers.add(daemonNo);
+				}
+				if (!contains(ids, numIds, id)) {
+					ids[numIds++] = id;
 				}
 			}
-
-			// add this connection to edge information
-			if (availableDaemonsForFile.size() != 0) {
-				files.add(fileName);
-				filedaemonAvailability.put(fileName, availableDaemonsForFile);
+			if (numIds == 0) {
+				throw new DataPartitionException(
+						"There is no  node available for some files. Twister Error.");
 			}
+			fileDaemons[numFiles] = new int[numIds];
+			System.arraycopy(ids, 0, fileDaemons[numFiles], 0, numIds);
+			numFiles++;
 		}
 
-		// check if all files are on available daemons
-		if (files.size() != partitions.getNumberOfFiles()) {
-			throw new DataPartitionException(
-					"There is no  node available for some files. Twister Error.");
-		}
-
-		int averageCapability = files.size() / daemonCapability.size();
-
-		// reset values of daemonCapability to its real capability
-		for (String d : daemonCapability.keySet()) {
-			daemonCapability.put(d, averageCapability);
+		Map<String, Integer> partitionAndDaemons = new HashMap<String, Integer>();
+		if (numFiles == 0) {
+			return partitionAndDaemons;
 		}
 
-		// do some output later
-		//System.out.println("average capability: " + averageCapability);
-
-		// a function to return a match between files and daemons, in
-		// String-Integer Mapping
-		Map<String, String> filesAndDaemons = matchByMaxFlow(files,
-				filedaemonAvailability, daemonCapability);
-
-		Set<String> matchedFiles = filesAndDaemons.keySet();
-		
-		Map<String, String> restFilesAndDaemons = null;
-
-		// if some files are not matched yet
-		while (matchedFiles.size() != partitions.getNumberOfFiles()) {
-			for (String file : matchedFiles) {
-				files.remove(file);
-				filedaemonAvailability.remove(file);
-			}
-
-			// only one file left assign directly
-			if (files.size() == 1) {
-				String file = files.iterator().next();
-				String dm = filedaemonAvailability.get(file).iterator().next();
-				filesAndDaemons.put(file, dm);
-				break;
-			}
-
-			daemonCapability.clear();
-			// rebuild the daemon capability,set the number to 1, 
-			// keep the assignment to be evenly
-			for (String file : filedaemonAvailability.keySet()) {
-				for (String daemonNO : filedaemonAvailability.get(file)) {
-					if (!daemonCapability.containsKey(daemonNO)) {
-						daemonCapability.put(daemonNO, 1);
-					}
+		BipartiteMatcher matcher = new BipartiteMatcher(numFiles,
+				daemonNumbers.size(), fileDaemons);
+		int low = (numFiles + daemonNumbers.size() - 1)
+				/ daemonNumbers.size();
+		int[] matches = matcher.match(low);
+		if (!isComplete(matches)) {
+			// Find the smallest capacity matching all the files, every file
+			// is matched with a capacity of numFiles.
+			int high = numFiles;
+			int[] highMatches = null;
+			int mid;
+			low++;
+			while (low < high) {
+				mid = (low + high) / 2;
+				matches = matcher.match(mid);
+				if (isComplete(matches)) {
+					high = mid;
+					highMatches = matches;
+				} else {
+					low = mid + 1;
 				}
 			}
+			matches = (highMatches != null) ? highMatches : matcher
+					.match(high);
+		}
 
-			// if only one daemon available for the rest files
-			if (daemonCapability.size() == 1) {
-				String dm = daemonCapability.keySet().iterator().next();
-				for (String file : files) {
-					filesAndDaemons.put(file, dm);
-				}
-				break;
-			}
+		for (int f = 0; f < numFiles; f++) {
+			partitionAndDaemons.put(files[f], daemonNumbers.get(matches[f]));
+		}
+		return partitionAndDaemons;
+	}
 
-			restFilesAndDaemons = matchByMaxFlow(files, filedaemonAvailability,
-					daemonCapability);
-			
-			// add the mappings to original result
-			for (String file : restFilesAndDaemons.keySet()) {
-				filesAndDaemons.put(file, restFilesAndDaemons.get(file));
+	private static boolean contains(int[] values, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (values[i] == value) {
+				return true;
 			}
-			
-			matchedFiles = filesAndDaemons.keySet();
 		}
+		return false;
+	}
 
-		for (String file : filesAndDaemons.keySet()) {
-			partitionAndDaemons.put(file,
-					Integer.parseInt(filesAndDaemons.get(file)));
+	private static boolean isComplete(int[] matches) {
+		for (int match : matches) {
+			if (match < 0) {
+				return false;
+			}
 		}
-
-		// final return and some output test
-		/*
-		 * System.out.println("******************"); for (String file :
-		 * partitionAndDaemons.keySet()) { System.out.println(file + ": " +
-		 * partitionAndDaemons.get(file)); }
-		 * System.out.println("******************");
-		 */
-		
-		return partitionAndDaemons;
+		return true;
 	}
 
 	/**
-	 * The max flow algorithm,
-	 * 
-	 * all the variables are referred to concepts in graph
-	 * 
-	 * not to files and daemons, but source and edge parts
+	 * Assigns the data partitions to the daemons holding them so that the
+	 * predicted makespan, i.e. the largest number of bytes assigned to a
+	 * daemon divided by its throughput, is minimized. The partitions are
+	 * assigned in decreasing order of their sizes to the daemon that would
+	 * finish them first, avoiding daemons whose byte limit would be exceeded
+	 * if possible, and then partitions are moved away from the daemon
+	 * finishing last while that reduces the makespan. Partitions with unknown
+	 * sizes are given the average size. The even assignment by max flow is
+	 * used if the sizes are unknown and the daemons have equal capacities.
 	 * 
-	 * are all computed based on capability = 1.
-	 * 
-	 * @param source
-	 * @param edge
-	 * @param sink
-	 * @return
+	 * @param daemons
+	 *            - the available daemons.
+	 * @param partitions
+	 *            - the partition file.
+	 * @param capacities
+	 *            - the capacity of every available daemon.
+	 * @return the daemon assigned to every partition.
+	 * @throws DataPartitionException
 	 */
-	private static Map<String, String> matchByMaxFlow(Set<String> source,
-			Map<String, Set<String>> edge, Map<String, Integer> sink) {
-
-		Map<String, String> maxFlows = new HashMap<String, String>();
-
-		// explored list by DFS, nodes are referred to nodes in graph
-		Set<String> nodesExploredByDFS = new HashSet<String>();
-		Stack<String> currentPath = new Stack<String>();
-		boolean matchFound = false;
-		boolean nonvisitedNodeFound = false;
-
-		// tmp reference
-		Set<String> adjacentNodes = null;
-		Iterator<String> nodeIterator = null;
-		Integer capability = null;
-
-		// source to file cap 1
-		// file to daemons cap 1
-		// max flow algorithm,
-		// check each file from the source
-		for (String fileName : source) {
-			currentPath.push(fileName);
-
-			// DFS starts, find a path to sink with available capability
-			while (currentPath.size() != 0) {
-				String node = currentPath.peek();
-
-				// explore this node, check if this is the node to sink
-				if (!nodesExploredByDFS.contains(node)) {
-					nodesExploredByDFS.add(node);
-					capability = sink.get(node);
-					if (capability != null) {
-						if (capability > 0) {
-							capability = capability - 1;
-							sink.put(node, capability);
-							matchFound = true;
-							// System.out.println("checking " + fileName + " "
-							// + node + " " + sink.get(node));
-							break;
-						}
-					}
-				}
+	public static Map<String, Integer> assignPartitionsToDaemons(
+			List<Integer> daemons, PartitionFile partitions,
+			Map<Integer, DaemonCapacity> capacities)
+			throws DataPartitionException {
+		if (capacities == null
+				|| (!partitions.isHasFileSizes() && isUniform(daemons,
+						capacities))) {
+			return assignPartitionsToDaemons(daemons, partitions);
+		}
+		if (daemons.size() == 0) {
+			throw new DataPartitionException(
+					"no available nodes. Twister Error.");
+		}
 
-				adjacentNodes = edge.get(node);
-				nonvisitedNodeFound = false;
-				if (adjacentNodes != null) {
-					nodeIterator = adjacentNodes.iterator();
-					while (nodeIterator.hasNext()) {
-						String adjNode = nodeIterator.next();
-						if (!nodesExploredByDFS.contains(adjNode)) {
-							// System.out.println("Next exploring: " + node +
-							// " " + adjNode);
-							currentPath.push(adjNode);
-							nonvisitedNodeFound = true;
-							break;
-						}
-					}
-					if (!nonvisitedNodeFound) {
-						currentPath.pop();
-					}
-				} else {
-					currentPath.pop();
+		// Sizes and candidate daemons of the partitions.
+		final Map<String, Long> sizes = new HashMap<String, Long>();
+		final Map<String, List<Integer>> candidates = new HashMap<String, List<Integer>>();
+		long totalSize = 0;
+		int numSizes = 0;
+		Iterator<String> fileIte = partitions.getPartitions();
+		String fileName;
+		List<Integer> available;
+		while (fileIte.hasNext()) {
+			fileName = fileIte.next();
+			available = new ArrayList<Integer>();
+			for (Integer daemon : partitions
+					.getDaemonsForDataPartition(fileName)) {
+				if (daemons.contains(daemon) && !available.contains(daemon)) {
+					available.add(daemon);
 				}
 			}
+			if (available.isEmpty()) {
+				throw new DataPartitionException(
+						"There is no  node available for some files. Twister Error.");
+			}
+			candidates.put(fileName, available);
+			if (partitions.getFileSize(fileName) >= 0) {
+				sizes.put(fileName, partitions.getFileSize(fileName));
+				totalSize += partitions.getFileSize(fileName);
+				numSizes++;
+			}
+		}
+		long defaultSize = (numSizes > 0) ? Math.max(1, totalSize / numSizes)
+				: 1;
+		for (String file : candidates.keySet()) {
+			if (!sizes.containsKey(file)) {
+				sizes.put(file, defaultSize);
+			} else if (sizes.get(file) == 0) {
+				sizes.put(file, 1L);
+			}
+		}
 
-			// process current flow and remain graph
-			if (matchFound) {
-				List<String> path = new ArrayList<String>(currentPath);
-
-				for (int i = 0; i < path.size() - 1; i++) {
-
-					String curNode = path.get(i);
-					String nextNode = path.get(i + 1);
-
-					// put nodes to current flow
-					// since max flow only contains one single file to one
-					// single node
-					// add and remove freely
-					String flow = maxFlows.get(nextNode);
-					if (flow != null) {
-						maxFlows.remove(nextNode);
-					} else {
-						maxFlows.put(curNode, nextNode);
-					}
+		// Largest partitions first, the ones with fewer replicas first among
+		// equal sizes.
+		List<String> files = new ArrayList<String>(candidates.keySet());
+		Collections.sort(files, new Comparator<String>() {
+			public int compare(String f1, String f2) {
+				int c = sizes.get(f2).compareTo(sizes.get(f1));
+				if (c == 0) {
+					c = candidates.get(f1).size() - candidates.get(f2).size();
+				}
+				return (c == 0) ? f1.compareTo(f2) : c;
+			}
+		});
 
-					// remove and add edges
-					adjacentNodes = edge.get(curNode);
-					if (adjacentNodes != null) {
-						adjacentNodes.remove(nextNode);
+		Map<Integer, Long> loads = new HashMap<Integer, Long>();
+		for (Integer daemon : daemons) {
+			loads.put(daemon, 0L);
+		}
+		Map<String, Integer> partitionAndDaemons = new HashMap<String, Integer>();
+		int best;
+		boolean bestFits;
+		boolean fits;
+		double finishTime;
+		double bestFinishTime;
+		for (String file : files) {
+			best = -1;
+			bestFits = false;
+			bestFinishTime = Double.MAX_VALUE;
+			for (Integer daemon : candidates.get(file)) {
+				fits = isWithinByteLimit(capacities.get(daemon), loads
+						.get(daemon)
+						+ sizes.get(file));
+				finishTime = getFinishTime(capacities.get(daemon), loads
+						.get(daemon)
+						+ sizes.get(file));
+				if ((fits && !bestFits)
+						|| (fits == bestFits && finishTime < bestFinishTime)) {
+					best = daemon;
+					bestFits = fits;
+					bestFinishTime = finishTime;
+				}
+			}
+			partitionAndDaemons.put(file, best);
+			loads.put(best, loads.get(best) + sizes.get(file));
+		}
 
-						if (adjacentNodes.size() == 0) {
-							edge.remove(curNode);
-						} else {
-							edge.put(curNode, adjacentNodes);
-						}
+		// Move partitions away from the daemon finishing last.
+		for (int move = 0; move < files.size(); move++) {
+			int last = -1;
+			double makespan = -1;
+			for (Integer daemon : daemons) {
+				finishTime = getFinishTime(capacities.get(daemon), loads
+						.get(daemon));
+				if (finishTime > makespan) {
+					makespan = finishTime;
+					last = daemon;
+				}
+			}
+			String bestFile = null;
+			best = -1;
+			bestFinishTime = makespan;
+			for (String file : files) {
+				if (partitionAndDaemons.get(file) != last) {
+					continue;
+				}
+				for (Integer daemon : candidates.get(file)) {
+					if (daemon == last
+							|| !isWithinByteLimit(capacities.get(daemon),
+									loads.get(daemon) + sizes.get(file))) {
+						continue;
 					}
-
-					// add the edge
-					adjacentNodes = edge.get(nextNode);
-					if (adjacentNodes == null) {
-						adjacentNodes = new HashSet<String>();
+					finishTime = Math.max(getFinishTime(capacities.get(last),
+							loads.get(last) - sizes.get(file)), getFinishTime(
+							capacities.get(daemon), loads.get(daemon)
+									+ sizes.get(file)));
+					if (finishTime < bestFinishTime) {
+						bestFinishTime = finishTime;
+						bestFile = file;
+						best = daemon;
 					}
-					adjacentNodes.add(curNode);
-					edge.put(nextNode, adjacentNodes);
 				}
 			}
+			if (bestFile == null) {
+				break;
+			}
+			loads.put(last, loads.get(last) - sizes.get(bestFile));
+			loads.put(best, loads.get(best) + sizes.get(bestFile));
+			partitionAndDaemons.put(bestFile, best);
+		}
+		return partitionAndDaemons;
+	}
 
-			matchFound = false;
-			currentPath.clear();
-			nodesExploredByDFS.clear();
+	private static boolean isUniform(List<Integer> daemons,
+			Map<Integer, DaemonCapacity> capacities) {
+		double throughput = -1;
+		for (Integer daemon : daemons) {
+			DaemonCapacity capacity = capacities.get(daemon);
+			if (capacity == null) {
+				continue;
+			}
+			if (throughput >= 0 && capacity.getThroughput() != throughput) {
+				return false;
+			}
+			throughput = capacity.getThroughput();
 		}
+		return true;
+	}
 
-		//some test output
-		/*
-		System.out.println("..............................");
-		for (String file : maxFlows.keySet()) {
-			System.out.println(file + ": " + maxFlows.get(file));
+	private static double getFinishTime(DaemonCapacity capacity, long bytes) {
+		if (capacity == null || capacity.getThroughput() <= 0) {
+			return bytes;
 		}
-		System.out.println("..............................");
-		*/
+		return bytes / capacity.getThroughput();
+	}
 
-		return maxFlows;
+	private static boolean isWithinByteLimit(DaemonCapacity capacity,
+			long bytes) {
+		return capacity == null || !capacity.isHasByteLimit()
+				|| bytes <= capacity.getByteLimit();
 	}
+
 	
 	
 	/*
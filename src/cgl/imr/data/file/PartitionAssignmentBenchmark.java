@@ -0,0 +1,162 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.data.file;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import cgl.imr.data.DataPartitionException;
+
+/**
+ * Measures the time to assign data partitions to daemons using synthetic
+ * partition files of increasing sizes. Each file is placed on a number of
+ * randomly chosen daemons, and a few daemons hold more files than the others
+ * so that the even assignment is not trivial.
+ * 
+ */
+public class PartitionAssignmentBenchmark {
+
+	public static void main(String[] args) throws DataPartitionException,
+			IOException {
+		if (args.length < 3) {
+			System.out
+					.println("Usage: [num daemons][num replicas][num files]...");
+			System.out.println("E.g. 500 3 1000 10000 100000");
+			return;
+		}
+		int numDaemons = Integer.parseInt(args[0]);
+		int numReplicas = Integer.parseInt(args[1]);
+		List<Integer> daemons = new ArrayList<Integer>();
+		for (int i = 0; i < numDaemons; i++) {
+			daemons.add(i);
+		}
+
+		System.out.println("files\tdaemons\treplicas\tmatching(ms)\tmax files\tweighted(ms)");
+		for (int i = 2; i < args.length; i++) {
+			int numFiles = Integer.parseInt(args[i]);
+			File file = File.createTempFile("twister_benchmark", ".pf");
+			try {
+				writePartitionFile(file, numFiles, numDaemons, numReplicas,
+						new Random(numFiles));
+				PartitionFile partitions = new PartitionFile(file
+						.getAbsolutePath());
+
+				long beginTime = System.currentTimeMillis();
+				Map<String, Integer> assignment = FileDataPartitioner
+						.assignPartitionsToDaemons(daemons, partitions);
+				long matchingTime = System.currentTimeMillis() - beginTime;
+
+				Map<Integer, DaemonCapacity> capacities = new HashMap<Integer, DaemonCapacity>();
+				for (int d = 0; d < numDaemons; d++) {
+					capacities.put(d, new DaemonCapacity(1 + (d % 4), 0));
+				}
+				beginTime = System.currentTimeMillis();
+				FileDataPartitioner.assignPartitionsToDaemons(daemons,
+						partitions, capacities);
+				long weightedTime = System.currentTimeMillis() - beginTime;
+
+				System.out.println(numFiles + "\t" + numDaemons + "\t"
+						+ numReplicas + "\t" + matchingTime + "\t"
+						+ getMaxFilesPerDaemon(assignment) + "\t"
+						+ weightedTime);
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	private static void writePartitionFile(File file, int numFiles,
+			int numDaemons, int numReplicas, Random random) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		int hotDaemons = Math.max(1, numDaemons / 10);
+		List<Integer> replicas = new ArrayList<Integer>();
+		int daemon;
+		for (int f = 0; f < numFiles; f++) {
+			replicas.clear();
+			while (replicas.size() < Math.min(numReplicas, numDaemons)) {
+				// Half of the replicas go to a small set of daemons.
+				daemon = random.nextBoolean() ? random.nextInt(hotDaemons)
+						: random.nextInt(numDaemons);
+				if (!replicas.contains(daemon)) {
+					replicas.add(daemon);
+				}
+			}
+			for (Integer d : replicas) {
+				bw.write(f + ",127.0.0.1," + d + ",/data/part_" + f + ","
+						+ (1 + random.nextInt(1 << 26)) + "\n");
+			}
+		}
+		bw.flush();
+		bw.close();
+	}
+
+	private static int getMaxFilesPerDaemon(Map<String, Integer> assignment) {
+		Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		int max = 0;
+		Integer count;
+		for (Integer daemon : assignment.values()) {
+			count = counts.get(daemon);
+			count = (count == null) ? 1 : count + 1;
+			counts.put(daemon, count);
+			max = Math.max(max, count);
+		}
+		return max;
+	}
+}
@@ -65,6 +65,9 @@ import cgl.imr.data.DataPartitionException;
 
 /**
  * <code>PartitionFile </code> is a specific <code> PartitionInfo</code>.
+ * Each line of a partition file has the form
+ * <code>fileNo,daemonIP,daemonNo,fileName[,fileSize]</code>, where the
+ * optional size of the file is given in bytes.
  * 
  * @author Jaliya Ekanayake (jaliyae@gmail.com, jekanaya@cs.indiana.edu)
  * 
@@ -72,11 +75,13 @@ import cgl.imr.data.DataPartitionException;
 public class PartitionFile {
 	protected String fileName;
 	protected Map<String, Queue<Integer>> partitions;
+	protected Map<String, Long> fileSizes;
 
 	public PartitionFile(String fileName) throws DataPartitionException {
 		super();
 		this.fileName = fileName;
 		partitions = new HashMap<String, Queue<Integer>>();
+		fileSizes = new HashMap<String, Long>();
 		populatePartitionsNodeMap(fileName);
 	}
 
@@ -96,6 +101,21 @@ public class PartitionFile {
 		return this.partitions.size();
 	}
 
+	/**
+	 * Returns the size of the given file in bytes, or -1 if it is not known.
+	 */
+	public long getFileSize(String fileName) {
+		Long size = fileSizes.get(fileName);
+		return (size == null) ? -1 : size.longValue();
+	}
+
+	/**
+	 * Check if the sizes of all the files are known.
+	 */
+	public boolean isHasFileSizes() {
+		return fileSizes.size() == partitions.size();
+	}
+
 	/**
 	 * Assign data partitions - files - to map tasks.
 	 */
@@ -113,7 +133,7 @@ public class PartitionFile {
 			while ((line = reader.readLine()) != null) {
 				parts = line
 						.split(TwisterConstants.PARTITION_FILE_SPLIT_PATTERN);
-				if (parts.length != 4) {
+				if (parts.length != 4 && parts.length != 5) {
 					throw new DataPartitionException(
 							"Illformed partition file.");
 				}
@@ -130,6 +150,9 @@ public class PartitionFile {
 					partitions.put(fileName, daemonQueue);
 				}
 				daemonQueue.add(daemon);				
+				if (parts.length == 5) {
+					fileSizes.put(fileName, Long.parseLong(parts[4].trim()));
+				}
 			}
 			reader.close();
 		} catch (Exception e) {
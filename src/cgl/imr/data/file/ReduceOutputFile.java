@@ -0,0 +1,149 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.data.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.Value;
+
+/**
+ * Describes a file written by a reduce task, see
+ * <code>JobConf.setReduceOutputDir</code>. This is the only information about
+ * the reduce output that reaches the client.
+ * 
+ */
+public class ReduceOutputFile implements Value {
+
+	private int reducerNo;
+	private int daemonNo;
+	private String daemonIP;
+	private String fileName;
+	private long numRecords;
+	private long fileSize;
+
+	public ReduceOutputFile() {
+	}
+
+	public ReduceOutputFile(int reducerNo, int daemonNo, String daemonIP,
+			String fileName, long numRecords, long fileSize) {
+		this.reducerNo = reducerNo;
+		this.daemonNo = daemonNo;
+		this.daemonIP = daemonIP;
+		this.fileName = fileName;
+		this.numRecords = numRecords;
+		this.fileSize = fileSize;
+	}
+
+	public void fromBytes(byte[] bytes) throws SerializationException {
+		DataInputStream din = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		try {
+			reducerNo = din.readInt();
+			daemonNo = din.readInt();
+			daemonIP = din.readUTF();
+			fileName = din.readUTF();
+			numRecords = din.readLong();
+			fileSize = din.readLong();
+			din.close();
+		} catch (IOException ioe) {
+			throw new SerializationException(ioe);
+		}
+	}
+
+	public byte[] getBytes() throws SerializationException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(bout);
+		try {
+			dout.writeInt(reducerNo);
+			dout.writeInt(daemonNo);
+			dout.writeUTF(daemonIP);
+			dout.writeUTF(fileName);
+			dout.writeLong(numRecords);
+			dout.writeLong(fileSize);
+			dout.flush();
+			dout.close();
+		} catch (IOException ioe) {
+			throw new SerializationException(ioe);
+		}
+		return bout.toByteArray();
+	}
+
+	public int getReducerNo() {
+		return reducerNo;
+	}
+
+	public int getDaemonNo() {
+		return daemonNo;
+	}
+
+	public String getDaemonIP() {
+		return daemonIP;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public long getNumRecords() {
+		return numRecords;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+}
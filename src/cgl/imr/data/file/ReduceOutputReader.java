@@ -0,0 +1,179 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.data.file;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.KeyValuePair;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+
+/**
+ * Reads the records of a file written by
+ * <code>FileReduceOutputCollector</code>. Records are read one at a time, so
+ * large files can be processed without loading them into memory. A map task
+ * configured with the partition file written by
+ * <code>ReduceOutputCombiner</code> receives the name of such a file as a
+ * <code>FileData</code> value.
+ * 
+ */
+public class ReduceOutputReader implements Iterator<KeyValuePair> {
+
+	public static int MAGIC = 0x54575230;
+	public static String FILE_EXTENSION = ".twr";
+
+	private DataInputStream din;
+	private Class<?> keyClass;
+	private Class<?> valueClass;
+	private KeyValuePair next;
+
+	public ReduceOutputReader(String fileName) throws TwisterException {
+		this(fileName, ReduceOutputReader.class.getClassLoader());
+	}
+
+	/**
+	 * @param fileName
+	 *            - the file to read.
+	 * @param classLoader
+	 *            - loader of the key and value classes, e.g. the class loader
+	 *            of the map task.
+	 * @throws TwisterException
+	 */
+	public ReduceOutputReader(String fileName, ClassLoader classLoader)
+			throws TwisterException {
+		try {
+			din = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(fileName), 1024 * 1024));
+			if (din.readInt() != MAGIC) {
+				din.close();
+				throw new TwisterException(fileName
+						+ " is not a reduce output file.");
+			}
+			String keyClassName = din.readUTF();
+			String valueClassName = din.readUTF();
+			if (keyClassName.length() > 0) {
+				keyClass = Class.forName(keyClassName, true, classLoader);
+				valueClass = Class.forName(valueClassName, true, classLoader);
+				next = readRecord();
+			} else {
+				close();
+			}
+		} catch (TwisterException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new TwisterException("Could not read the reduce output file "
+					+ fileName, e);
+		}
+	}
+
+	private KeyValuePair readRecord() throws Exception {
+		int len;
+		try {
+			len = din.readInt();
+		} catch (EOFException e) {
+			close();
+			return null;
+		}
+		byte[] data = new byte[len];
+		din.readFully(data);
+		Key key = (Key) keyClass.newInstance();
+		key.fromBytes(data);
+		data = new byte[din.readInt()];
+		din.readFully(data);
+		Value value = (Value) valueClass.newInstance();
+		value.fromBytes(data);
+		return new KeyValuePair(key, value);
+	}
+
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	public KeyValuePair next() {
+		if (next == null) {
+			throw new NoSuchElementException();
+		}
+		KeyValuePair current = next;
+		try {
+			next = readRecord();
+		} catch (Exception e) {
+			throw new RuntimeException("Could not read the reduce output.", e);
+		}
+		return current;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Closes the file. Called automatically once all the records are read.
+	 */
+	public void close() {
+		try {
+			if (din != null) {
+				din.close();
+				din = null;
+			}
+		} catch (IOException e) {
+			// Ignore
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.TwisterSerializable;
+
+/**
+ * Describes the daemons taking part in an AllReduce operation. Every daemon
+ * that runs at least one map task of the job participates. The rank of a
+ * daemon is its position in the ascending order of the daemon numbers. The
+ * plan also carries the number of map tasks each daemon runs, so that a daemon
+ * knows when its local map outputs are complete.
+ * 
+ */
+public class AllReducePlan implements TwisterSerializable {
+
+	private int[] daemonNos;
+	private String[] hosts;
+	private int[] numMapTasks;
+	private int daemonPortBase;
+
+	public AllReducePlan(byte[] bytes) throws SerializationException {
+		this.fromBytes(bytes);
+	}
+
+	/**
+	 * @param mapTasksPerDaemon
+	 *            - number of map tasks assigned to each daemon.
+	 * @param daemonHosts
+	 *            - host IP of each daemon.
+	 * @param daemonPortBase
+	 *            - base of the daemon data ports.
+	 */
+	public AllReducePlan(Map<Integer, Integer> mapTasksPerDaemon,
+			Map<Integer, String> daemonHosts, int daemonPortBase) {
+		int size = mapTasksPerDaemon.size();
+		this.daemonNos = new int[size];
+		this.hosts = new String[size];
+		this.numMapTasks = new int[size];
+		this.daemonPortBase = daemonPortBase;
+
+		int i = 0;
+		for (Integer daemonNo : mapTasksPerDaemon.keySet()) {
+			daemonNos[i++] = daemonNo;
+		}
+		Arrays.sort(daemonNos);
+		for (i = 0; i < size; i++) {
+			hosts[i] = daemonHosts.get(daemonNos[i]);
+			numMapTasks[i] = mapTasksPerDaemon.get(daemonNos[i]);
+		}
+	}
+
+	public int getNumParticipants() {
+		return daemonNos.length;
+	}
+
+	/**
+	 * Returns the rank of the given daemon, or -1 if it does not participate.
+	 */
+	public int getRank(int daemonNo) {
+		int rank = Arrays.binarySearch(daemonNos, daemonNo);
+		return rank < 0 ? -1 : rank;
+	}
+
+	public int getDaemonNo(int rank) {
+		return daemonNos[rank];
+	}
+
+	public String getHost(int rank) {
+		return hosts[rank];
+	}
+
+	public int getPort(int rank) {
+		return daemonPortBase + daemonNos[rank];
+	}
+
+	public int getNumMapTasks(int rank) {
+		return numMapTasks[rank];
+	}
+
+	public void fromBytes(byte[] bytes) throws SerializationException {
+		ByteArrayInputStream baInputStream = new ByteArrayInputStream(bytes);
+		DataInputStream din = new DataInputStream(baInputStream);
+		try {
+			daemonPortBase = din.readInt();
+			int size = din.readInt();
+			daemonNos = new int[size];
+			hosts = new String[size];
+			numMapTasks = new int[size];
+			int len;
+			byte[] data;
+			for (int i = 0; i < size; i++) {
+				daemonNos[i] = din.readInt();
+				numMapTasks[i] = din.readInt();
+				len = din.readInt();
+				data = new byte[len];
+				din.readFully(data);
+				hosts[i] = new String(data);
+			}
+			din.close();
+			baInputStream.close();
+		} catch (IOException ioe) {
+			throw new SerializationException(ioe);
+		}
+	}
+
+	public byte[] getBytes() throws SerializationException {
+		ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(baOutputStream);
+		try {
+			dout.writeInt(daemonPortBase);
+			dout.writeInt(daemonNos.length);
+			byte[] data;
+			for (int i = 0; i < daemonNos.length; i++) {
+				dout.writeInt(daemonNos[i]);
+				dout.writeInt(numMapTasks[i]);
+				data = hosts[i].getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+			}
+			dout.flush();
+			dout.close();
+		} catch (IOException ioe) {
+			throw new SerializationException(ioe);
+		}
+		return baOutputStream.toByteArray();
+	}
+}
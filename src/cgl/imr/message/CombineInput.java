@@ -64,10 +64,12 @@ import java.util.Map;
 import cgl.imr.base.Key;
 import cgl.imr.base.SerializationException;
 import cgl.imr.base.Value;
+import cgl.imr.util.CustomClassLoader;
 
 public class CombineInput extends PubSubMessage {
 
 	private String combineTopic;
+	private String jobId;
 	private String keyClass;
 
 	private Map<Key, Value> outputs;
@@ -75,13 +77,29 @@ public class CombineInput extends PubSubMessage {
 	private int iteration;
 	int reducerNo;
 	private boolean hasData=true;
+	// Oldest iteration of the map outputs behind this input, or -1 if they
+	// are all from the iteration of the input.
+	private int oldestMapIteration = -1;
+	// Class loaders of the jobs at the receiving daemon, or null if the
+	// classes of the outputs are on the classpath, as at the driver.
+	private Map<String, CustomClassLoader> classLoaders;
 
 	public CombineInput() {
 		this.outputs = new HashMap<Key, Value>();
 	}
 
-	public CombineInput(String topic, int iteration, int reducerNo) {
+	public CombineInput(byte[] bytes,
+			Map<String, CustomClassLoader> classLoaders)
+			throws SerializationException {
 		this();
+		this.classLoaders = classLoaders;
+		this.fromBytes(bytes);
+	}
+
+	public CombineInput(String jobId, String topic, int iteration,
+			int reducerNo) {
+		this();
+		this.jobId = jobId;
 		this.combineTopic = topic;
 		this.iteration = iteration;
 		this.reducerNo = reducerNo;
@@ -131,6 +149,11 @@ public class CombineInput extends PubSubMessage {
 			data = new byte[len];
 			din.readFully(data);
 			this.combineTopic = new String(data);
+
+			len = din.readInt();
+			data = new byte[len];
+			din.readFully(data);
+			this.jobId = new String(data);
 			
 			this.hasData=din.readBoolean();
 
@@ -148,30 +171,38 @@ public class CombineInput extends PubSubMessage {
 				din.readFully(data);
 				this.valueClass = new String(data);
 
-				Class<?> c = null;
+				ClassLoader classLoader = CombineInput.class.getClassLoader();
+				if (classLoaders != null) {
+					classLoader = classLoaders.get(jobId);
+					if (classLoader == null) {
+						throw new SerializationException(
+								"Could not find a class loader for this job id.");
+					}
+				}
+				Class<?> kClass = Class.forName(keyClass, true, classLoader);
+				Class<?> vClass = Class.forName(valueClass, true, classLoader);
 				Key key = null;
 				Value val = null;
 				for (int i = 0; i < numKeys; i++) {
 					len = din.readInt();
 					data = new byte[len];
 					din.readFully(data);
-					c = Class.forName(keyClass);
 
-					key = (Key) c.newInstance();
+					key = (Key) kClass.newInstance();
 					key.fromBytes(data);
 
-					c = Class.forName(valueClass);
 					len = din.readInt();
 					data = new byte[len];
 					din.readFully(data);
 
-					val = (Value) c.newInstance();
+					val = (Value) vClass.newInstance();
 					val.fromBytes(data);
 
 					// Add the key value pair.
 					addKeyValue(key, val);
 				}
 			}
+			this.oldestMapIteration = din.readInt();
 			din.close();
 			baInputStream.close();
 
@@ -206,6 +237,10 @@ public class CombineInput extends PubSubMessage {
 			data = combineTopic.getBytes();
 			dout.writeInt(data.length);
 			dout.write(data);
+
+			data = jobId.getBytes();
+			dout.writeInt(data.length);
+			dout.write(data);
 			
 			dout.writeBoolean(hasData);
 
@@ -236,6 +271,7 @@ public class CombineInput extends PubSubMessage {
 				dout.writeInt(data.length);
 				dout.write(data);
 			}
+			dout.writeInt(oldestMapIteration);
 			dout.flush();
 			serializedBytes = baOutputStream.toByteArray();
 			baOutputStream = null;
@@ -251,6 +287,10 @@ public class CombineInput extends PubSubMessage {
 		return combineTopic;
 	}
 
+	public String getJobId() {
+		return jobId;
+	}
+
 	public Map<Key, Value> getOutputs() {
 		return outputs;
 	}
@@ -270,4 +310,17 @@ public class CombineInput extends PubSubMessage {
 	public int getReducerNo() {
 		return reducerNo;
 	}
+
+	/**
+	 * Returns the oldest iteration of the map outputs this input was reduced
+	 * from. Lower than <code>getIteration</code> only in the stale synchronous
+	 * mode, when a map task lagged behind.
+	 */
+	public int getOldestMapIteration() {
+		return oldestMapIteration < 0 ? iteration : oldestMapIteration;
+	}
+
+	public void setOldestMapIteration(int oldestMapIteration) {
+		this.oldestMapIteration = oldestMapIteration;
+	}
 }
\ No newline at end of file
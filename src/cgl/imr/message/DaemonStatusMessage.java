@@ -64,6 +64,8 @@ public class DaemonStatusMessage extends PubSubMessage{
 	
 	private int daemonNo;
 	private String hostIP;
+	// Resource usage of the daemon, null if not sampled.
+	private DaemonTelemetry telemetry;
 	
 	private DaemonStatusMessage() {
 	}
@@ -87,6 +89,14 @@ public class DaemonStatusMessage extends PubSubMessage{
 		return hostIP;
 	}
 
+	public DaemonTelemetry getTelemetry() {
+		return telemetry;
+	}
+
+	public void setTelemetry(DaemonTelemetry telemetry) {
+		this.telemetry = telemetry;
+	}
+
 	@Override
 	public void fromBytes(byte[] bytes) throws SerializationException {
 		ByteArrayInputStream baInputStream = new ByteArrayInputStream(bytes);
@@ -108,6 +118,10 @@ public class DaemonStatusMessage extends PubSubMessage{
 			data = new byte[len];
 			din.readFully(data);
 			this.hostIP = new String(data);
+			if (din.readBoolean()) {
+				telemetry = new DaemonTelemetry();
+				telemetry.readFrom(din);
+			}
 			din.close();
 			baInputStream.close();
 
@@ -129,6 +143,10 @@ public class DaemonStatusMessage extends PubSubMessage{
 			data = hostIP.getBytes();
 			dout.writeInt(data.length);
 			dout.write(data);
+			dout.writeBoolean(telemetry != null);
+			if (telemetry != null) {
+				telemetry.writeTo(dout);
+			}
 		
 			dout.flush();
 			serializedBytes = baOutputStream.toByteArray();
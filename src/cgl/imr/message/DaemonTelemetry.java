@@ -0,0 +1,162 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Resource usage of a daemon, sampled through the platform MXBeans when the
+ * daemon sends a status message. The garbage collection counts and times are
+ * the deltas since the previous sample, over <code>intervalMillis</code>.
+ * 
+ */
+public class DaemonTelemetry {
+
+	private long heapUsed;
+	private long heapMax;
+	private long gcCount;
+	private long gcTimeMillis;
+	private long intervalMillis;
+	// Fraction of the machine used by the daemon, or negative if unknown.
+	private double cpuLoad = -1;
+	private int threadCount;
+	private long dataCacheBytes;
+	private int queueDepth;
+
+	public DaemonTelemetry() {
+	}
+
+	public DaemonTelemetry(long heapUsed, long heapMax, long gcCount,
+			long gcTimeMillis, long intervalMillis, double cpuLoad,
+			int threadCount, long dataCacheBytes, int queueDepth) {
+		this.heapUsed = heapUsed;
+		this.heapMax = heapMax;
+		this.gcCount = gcCount;
+		this.gcTimeMillis = gcTimeMillis;
+		this.intervalMillis = intervalMillis;
+		this.cpuLoad = cpuLoad;
+		this.threadCount = threadCount;
+		this.dataCacheBytes = dataCacheBytes;
+		this.queueDepth = queueDepth;
+	}
+
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+	public long getHeapMax() {
+		return heapMax;
+	}
+
+	public long getGcCount() {
+		return gcCount;
+	}
+
+	public long getGcTimeMillis() {
+		return gcTimeMillis;
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	/**
+	 * @return the fraction of the interval spent in garbage collection.
+	 */
+	public double getGcFraction() {
+		return intervalMillis <= 0 ? 0 : Math.min(1.0, gcTimeMillis
+				/ (double) intervalMillis);
+	}
+
+	public double getCpuLoad() {
+		return cpuLoad;
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public long getDataCacheBytes() {
+		return dataCacheBytes;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	void writeTo(DataOutputStream dout) throws IOException {
+		dout.writeLong(heapUsed);
+		dout.writeLong(heapMax);
+		dout.writeLong(gcCount);
+		dout.writeLong(gcTimeMillis);
+		dout.writeLong(intervalMillis);
+		dout.writeDouble(cpuLoad);
+		dout.writeInt(threadCount);
+		dout.writeLong(dataCacheBytes);
+		dout.writeInt(queueDepth);
+	}
+
+	void readFrom(DataInputStream din) throws IOException {
+		heapUsed = din.readLong();
+		heapMax = din.readLong();
+		gcCount = din.readLong();
+		gcTimeMillis = din.readLong();
+		intervalMillis = din.readLong();
+		cpuLoad = din.readDouble();
+		threadCount = din.readInt();
+		dataCacheBytes = din.readLong();
+		queueDepth = din.readInt();
+	}
+}
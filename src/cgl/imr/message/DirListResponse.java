@@ -72,18 +72,22 @@ public class DirListResponse extends PubSubMessage {
 
 	private int fileCount;
 	private List<String> fileNames;
+	private List<Long> fileSizes;
 	private int daemonNo;
 	private String daemonIP;
 
 	public DirListResponse() {
 		this.fileCount = 0;
 		fileNames = new ArrayList<String>();
+		fileSizes = new ArrayList<Long>();
 	}
 
-	public DirListResponse(List<String> fileList, int daemonNo, String daemonIP) {
+	public DirListResponse(List<String> fileList, List<Long> fileSizes,
+			int daemonNo, String daemonIP) {
 		this.daemonIP = daemonIP;
 		this.daemonNo = daemonNo;
 		this.fileNames = fileList;
+		this.fileSizes = fileSizes;
 		this.fileCount = fileList.size();
 	}
 
@@ -129,6 +133,9 @@ public class DirListResponse extends PubSubMessage {
 				din.readFully(data);
 				this.fileNames.add(new String(data));
 			}
+			for (int i = 0; i < fileCount; i++) {
+				this.fileSizes.add(din.readLong());
+			}
 
 			din.close();
 			baInputStream.close();
@@ -167,6 +174,9 @@ public class DirListResponse extends PubSubMessage {
 				dout.writeInt(data.length);
 				dout.write(data);
 			}
+			for (int i = 0; i < fileCount; i++) {
+				dout.writeLong(fileSizes.get(i));
+			}
 
 			dout.flush();
 			serializedBytes = baOutputStream.toByteArray();
@@ -186,4 +196,11 @@ public class DirListResponse extends PubSubMessage {
 	public List<String> getFileNames() {
 		return fileNames;
 	}
+
+	/**
+	 * Sizes of the files in bytes, in the order of the file names.
+	 */
+	public List<Long> getFileSizes() {
+		return fileSizes;
+	}
 }
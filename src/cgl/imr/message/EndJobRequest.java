@@ -57,6 +57,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import cgl.imr.base.SerializationException;
 
@@ -70,6 +72,8 @@ public class EndJobRequest extends PubSubMessage {
 
 	private String jobId;
 	private String responseTopic;
+	// Directories under the data_dir deleted by the daemons.
+	private List<String> cleanupDirs = new ArrayList<String>();
 
 	@Override
 	public void fromBytes(byte[] messageBytes) throws SerializationException {
@@ -102,6 +106,14 @@ public class EndJobRequest extends PubSubMessage {
 			din.readFully(responseTopicBytes);
 			this.responseTopic = new String(responseTopicBytes);
 
+			int numDirs = din.readInt();
+			for (int i = 0; i < numDirs; i++) {
+				len = din.readInt();
+				data = new byte[len];
+				din.readFully(data);
+				cleanupDirs.add(new String(data));
+			}
+
 			din.close();
 			baInputStream.close();
 
@@ -133,6 +145,13 @@ public class EndJobRequest extends PubSubMessage {
 			dout.writeInt(responseTopicBytes.length);
 			dout.write(responseTopicBytes);
 
+			dout.writeInt(cleanupDirs.size());
+			for (String dir : cleanupDirs) {
+				data = dir.getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+			}
+
 			dout.flush();
 			marshalledBytes = baOutputStream.toByteArray();
 			baOutputStream = null;
@@ -148,6 +167,14 @@ public class EndJobRequest extends PubSubMessage {
 		return jobId;
 	}
 
+	public List<String> getCleanupDirs() {
+		return cleanupDirs;
+	}
+
+	public void addCleanupDir(String dir) {
+		cleanupDirs.add(dir);
+	}
+
 	// public int getMaxNumMapTasks() {
 	// return maxNumMapTasks;
 	// }
@@ -65,7 +65,6 @@ import cgl.imr.base.Key;
 import cgl.imr.base.SerializationException;
 import cgl.imr.base.Value;
 import cgl.imr.util.CustomClassLoader;
-import cgl.imr.worker.DaemonWorker;
 
 /**
  * Request for map tasks.
@@ -84,13 +83,19 @@ public class MapTaskRequest extends PubSubMessage {
 	private String valClass;
 
 	private int iteration;
+	private AllReducePlan allReducePlan;
+	private boolean useAllReduceResult = false;
+	private Map<String, CustomClassLoader> classLoaders;
 
 	protected MapTaskRequest() {
 		this.keyValues = new HashMap<Key, Value>();
 	}
 
-	public MapTaskRequest(byte[] request) throws SerializationException {
+	public MapTaskRequest(byte[] request,
+			Map<String, CustomClassLoader> classLoaders)
+			throws SerializationException {
 		this();
+		this.classLoaders = classLoaders;
 		this.fromBytes(request);
 	}
 
@@ -149,8 +154,7 @@ public class MapTaskRequest extends PubSubMessage {
 				din.readFully(data);
 				valClass = new String(data);
 
-				CustomClassLoader classLoader = DaemonWorker
-						.getClassLoader(jobId);
+				CustomClassLoader classLoader = classLoaders.get(jobId);
 				if (classLoader == null) {
 					throw new SerializationException(
 							"Could not find a class loader for this job id.");
@@ -191,6 +195,14 @@ public class MapTaskRequest extends PubSubMessage {
 			din.readFully(data);
 			responseTopic = new String(data);
 
+			if (din.readBoolean()) {
+				len = din.readInt();
+				data = new byte[len];
+				din.readFully(data);
+				allReducePlan = new AllReducePlan(data);
+				useAllReduceResult = din.readBoolean();
+			}
+
 			din.close();
 			baInputStream.close();
 
@@ -259,6 +271,14 @@ public class MapTaskRequest extends PubSubMessage {
 			dout.writeInt(data.length);
 			dout.write(data);
 
+			dout.writeBoolean(allReducePlan != null);
+			if (allReducePlan != null) {
+				data = allReducePlan.getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+				dout.writeBoolean(useAllReduceResult);
+			}
+
 			dout.flush();
 			marshalledBytes = baOutputStream.toByteArray();
 			baOutputStream = null;
@@ -289,6 +309,27 @@ public class MapTaskRequest extends PubSubMessage {
 		return responseTopic;
 	}
 
+	public AllReducePlan getAllReducePlan() {
+		return allReducePlan;
+	}
+
+	public void setAllReducePlan(AllReducePlan allReducePlan) {
+		this.allReducePlan = allReducePlan;
+	}
+
+	/**
+	 * Returns true if the map task should use the result of the previous
+	 * AllReduce operation held by the daemon instead of the key/value pairs of
+	 * this request.
+	 */
+	public boolean isUseAllReduceResult() {
+		return useAllReduceResult;
+	}
+
+	public void setUseAllReduceResult(boolean useAllReduceResult) {
+		this.useAllReduceResult = useAllReduceResult;
+	}
+
 	public String getSinkBase() {
 		return sinkBase;
 	}
@@ -57,11 +57,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Map;
 
 import cgl.imr.base.SerializationException;
 import cgl.imr.base.impl.JobConf;
 import cgl.imr.base.impl.MapperConf;
-import cgl.imr.worker.DaemonWorker;
+import cgl.imr.util.CustomClassLoader;
 
 /**
  * Message sent requesting mapper task.
@@ -77,12 +78,19 @@ public class MapperRequest extends PubSubMessage {
 	private int mapTaskNo;
 	private int iteration;
 	private String responseTopic;
+	// Keep a mapper already configured with the same data partition at the
+	// daemon, used when a job is resumed from a checkpoint.
+	private boolean reattach = false;
+	private Map<String, CustomClassLoader> classLoaders;
 
 	protected MapperRequest() {
 	}
 
-	public MapperRequest(byte[] request) throws SerializationException {
+	public MapperRequest(byte[] request,
+			Map<String, CustomClassLoader> classLoaders)
+			throws SerializationException {
 		this();
+		this.classLoaders = classLoaders;
 		this.fromBytes(request);
 	}
 
@@ -129,13 +137,13 @@ public class MapperRequest extends PubSubMessage {
 			len = din.readInt();
 			data = new byte[len];
 			din.readFully(data);
-			ClassLoader loader = DaemonWorker
-					.getClassLoader(jobConf.getJobId());
+			ClassLoader loader = classLoaders.get(jobConf.getJobId());
 			if (loader == null) {
 				throw new SerializationException(
 						"Could not find a class loader for this job Id.");
 			}
 			mapperConf = new MapperConf(data, loader);
+			reattach = din.readBoolean();
 
 			din.close();
 			baInputStream.close();
@@ -174,6 +182,7 @@ public class MapperRequest extends PubSubMessage {
 			data = mapperConf.getBytes();
 			dout.writeInt(data.length);
 			dout.write(data);
+			dout.writeBoolean(reattach);
 
 			dout.flush();
 			marshalledBytes = baOutputStream.toByteArray();
@@ -213,4 +222,12 @@ public class MapperRequest extends PubSubMessage {
 	public void setResponseTopic(String responseTopic) {
 		this.responseTopic = responseTopic;
 	}
+
+	public boolean isReattach() {
+		return reattach;
+	}
+
+	public void setReattach(boolean reattach) {
+		this.reattach = reattach;
+	}
 }
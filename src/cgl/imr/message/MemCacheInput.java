@@ -57,11 +57,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Map;
 
 import cgl.imr.base.SerializationException;
 import cgl.imr.base.Value;
 import cgl.imr.util.CustomClassLoader;
-import cgl.imr.worker.DaemonWorker;
 
 public class MemCacheInput extends PubSubMessage {
 
@@ -70,12 +70,16 @@ public class MemCacheInput extends PubSubMessage {
 	private String responseTopic;
 	private Value value;
 	private String valueClass;
+	private Map<String, CustomClassLoader> classLoaders;
 
 	private MemCacheInput() {
 	};
 
-	public MemCacheInput(byte[] request) throws SerializationException {
+	public MemCacheInput(byte[] request,
+			Map<String, CustomClassLoader> classLoaders)
+			throws SerializationException {
 		this();
+		this.classLoaders = classLoaders;
 		this.fromBytes(request);
 	}
 
@@ -145,7 +149,7 @@ public class MemCacheInput extends PubSubMessage {
 			din.readFully(data);
 			this.valueClass = new String(data);
 
-			CustomClassLoader classLoader = DaemonWorker.getClassLoader(jobId);
+			CustomClassLoader classLoader = classLoaders.get(jobId);
 			if (classLoader == null) {
 				throw new SerializationException(
 						"Could not find a class loader for this job id.");
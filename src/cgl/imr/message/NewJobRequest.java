@@ -73,6 +73,9 @@ public class NewJobRequest extends PubSubMessage {
 	private String jobId;
 	private List<String> listOfJars;
 	private String responseTopic;
+	// Set when a driver resumes the job from a checkpoint, so that the daemons
+	// keep the mappers of the job.
+	private boolean resume = false;
 
 	protected NewJobRequest() {
 		listOfJars = new ArrayList<String>();
@@ -127,12 +130,13 @@ public class NewJobRequest extends PubSubMessage {
 			// Number of jar files.
 			int numJars = din.readInt();
 
-			if (numJars > 0) {
+			for (int i = 0; i < numJars; i++) {
 				len = din.readInt();
 				data = new byte[len];
 				din.readFully(data);
 				this.listOfJars.add(new String(data));
 			}
+			this.resume = din.readBoolean();
 			din.close();
 			baInputStream.close();
 		} catch (Exception e) {
@@ -176,6 +180,7 @@ public class NewJobRequest extends PubSubMessage {
 					dout.write(data);
 				}
 			}
+			dout.writeBoolean(resume);
 
 			dout.flush();
 			serializedBytes = baOutputStream.toByteArray();
@@ -196,4 +201,12 @@ public class NewJobRequest extends PubSubMessage {
 		return responseTopic;
 	}
 
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
 }
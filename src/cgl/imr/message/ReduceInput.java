@@ -67,7 +67,6 @@ import cgl.imr.base.Key;
 import cgl.imr.base.SerializationException;
 import cgl.imr.base.Value;
 import cgl.imr.util.CustomClassLoader;
-import cgl.imr.worker.DaemonWorker;
 
 /**
  * Message carrying the map outputs to the reducers. Holds a
@@ -85,7 +84,9 @@ public class ReduceInput extends PubSubMessage {
 	//private int reduceNo;
 	private String valueClass;
 	private int iteration;
+	private int mapTaskNo = -1;
 	private boolean hasData=true;
+	private Map<String, CustomClassLoader> classLoaders;
 
 	public ReduceInput() {
 		this.outputs = new HashMap<Key, List<Value>>();
@@ -96,8 +97,11 @@ public class ReduceInput extends PubSubMessage {
 		this.iteration = iteration;
 	}
 
-	public ReduceInput(byte[] bytes) throws SerializationException {
+	public ReduceInput(byte[] bytes,
+			Map<String, CustomClassLoader> classLoaders)
+			throws SerializationException {
 		this();
+		this.classLoaders = classLoaders;
 		this.fromBytes(bytes);
 	}
 	
@@ -150,6 +154,7 @@ public class ReduceInput extends PubSubMessage {
 			// Read the refId if any and set the boolean flag.
 			readRefIdIfAny(din);
 			this.iteration = din.readInt();
+			this.mapTaskNo = din.readInt();
 			//this.reduceNo = din.readInt();
 
 			len = din.readInt();
@@ -182,8 +187,7 @@ public class ReduceInput extends PubSubMessage {
 
 				try {
 
-					CustomClassLoader classLoader = DaemonWorker
-							.getClassLoader(jobId);
+					CustomClassLoader classLoader = classLoaders.get(jobId);
 					if (classLoader == null) {
 						throw new SerializationException(
 								"Could not find a class loader for this job id.");
@@ -250,6 +254,7 @@ public class ReduceInput extends PubSubMessage {
 			// Write the refID if any with the boolean flag.
 			serializeRefId(dout);
 			dout.writeInt(iteration);
+			dout.writeInt(mapTaskNo);
 			//dout.writeInt(reduceNo);
 
 			// Now write the sink
@@ -316,6 +321,17 @@ public class ReduceInput extends PubSubMessage {
 		return iteration;
 	}
 
+	/**
+	 * Returns the map task that produced this input, or -1 if it is unknown.
+	 */
+	public int getMapTaskNo() {
+		return mapTaskNo;
+	}
+
+	public void setMapTaskNo(int mapTaskNo) {
+		this.mapTaskNo = mapTaskNo;
+	}
+
 	public Map<Key, List<Value>> getOutputs() {
 		return outputs;
 	}
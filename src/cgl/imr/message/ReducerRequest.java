@@ -57,11 +57,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Map;
 
 import cgl.imr.base.SerializationException;
 import cgl.imr.base.impl.JobConf;
 import cgl.imr.base.impl.ReducerConf;
-import cgl.imr.worker.DaemonWorker;
+import cgl.imr.util.CustomClassLoader;
 
 /**
  * Message requesting a reducer.
@@ -77,12 +78,16 @@ public class ReducerRequest extends PubSubMessage {
 	private String reduceTopic;
 	private String responseTopic;
 	private int iteration;
+	private Map<String, CustomClassLoader> classLoaders;
 
 	protected ReducerRequest() {
 	}
 
-	public ReducerRequest(byte[] request) throws SerializationException {
+	public ReducerRequest(byte[] request,
+			Map<String, CustomClassLoader> classLoaders)
+			throws SerializationException {
 		this();
+		this.classLoaders = classLoaders;
 		this.fromBytes(request);
 	}
 
@@ -143,8 +148,7 @@ public class ReducerRequest extends PubSubMessage {
 			data = new byte[len];
 			din.readFully(data);
 
-			ClassLoader loader = DaemonWorker
-					.getClassLoader(jobConf.getJobId());
+			ClassLoader loader = classLoaders.get(jobConf.getJobId());
 			if (loader == null) {
 				throw new SerializationException(
 						"Could not find a class loader for this job Id.");
@@ -69,6 +69,11 @@ public class StartReduceMessage extends PubSubMessage {
 	Map<Integer, Integer> reduceInputMap;
 	String jobId;
 	String reduceTopicBase;
+	// Iteration of the reducers to start, or -1 for all the reducers.
+	int iteration = -1;
+	// In the stale synchronous mode, the iteration of the output of each map
+	// task every reducer has to use, keyed by the reducer.
+	Map<Integer, Map<Integer, Integer>> mapIterations;
 
 	private StartReduceMessage() {
 		reduceInputMap = new HashMap<Integer, Integer>();
@@ -81,6 +86,12 @@ public class StartReduceMessage extends PubSubMessage {
 		this.reduceInputMap.putAll(map);
 	}
 
+	public StartReduceMessage(ConcurrentHashMap<Integer, Integer> map,
+			String jobId, String reduceTopicBase, int iteration) {
+		this(map, jobId, reduceTopicBase);
+		this.iteration = iteration;
+	}
+
 	public StartReduceMessage(byte[] bytes) throws SerializationException {
 		this();
 		this.fromBytes(bytes);
@@ -99,6 +110,27 @@ public class StartReduceMessage extends PubSubMessage {
 		return jobId;
 	}
 
+	public int getIteration() {
+		return iteration;
+	}
+
+	public void setMapIterations(
+			Map<Integer, Map<Integer, Integer>> mapIterations) {
+		this.mapIterations = mapIterations;
+	}
+
+	/**
+	 * Returns the iteration of the output of each map task the reducer has to
+	 * use, or null if the reducer only counts its inputs.
+	 */
+	public Map<Integer, Integer> getMapIterations(int reducerNo) {
+		if (mapIterations == null) {
+			return null;
+		}
+		Map<Integer, Integer> versions = mapIterations.get(reducerNo);
+		return versions == null ? new HashMap<Integer, Integer>() : versions;
+	}
+
 	@Override
 	public void fromBytes(byte[] bytes) throws SerializationException {
 		ByteArrayInputStream baInputStream = new ByteArrayInputStream(bytes);
@@ -135,6 +167,23 @@ public class StartReduceMessage extends PubSubMessage {
 				value = din.readInt();
 				reduceInputMap.put(key, value);
 			}
+			this.iteration = din.readInt();
+
+			count = din.readInt();
+			if (count >= 0) {
+				mapIterations = new HashMap<Integer, Map<Integer, Integer>>();
+				for (int i = 0; i < count; i++) {
+					int reducerNo = din.readInt();
+					int numMaps = din.readInt();
+					Map<Integer, Integer> versions = new HashMap<Integer, Integer>();
+					for (int j = 0; j < numMaps; j++) {
+						key = din.readInt();
+						value = din.readInt();
+						versions.put(key, value);
+					}
+					mapIterations.put(reducerNo, versions);
+				}
+			}
 
 			din.close();
 			baInputStream.close();
@@ -174,6 +223,23 @@ public class StartReduceMessage extends PubSubMessage {
 				dout.writeInt(key);
 				dout.writeInt(reduceInputMap.get(key));
 			}
+			dout.writeInt(iteration);
+
+			if (mapIterations == null) {
+				dout.writeInt(-1);
+			} else {
+				dout.writeInt(mapIterations.size());
+				for (Map.Entry<Integer, Map<Integer, Integer>> entry : mapIterations
+						.entrySet()) {
+					dout.writeInt(entry.getKey());
+					dout.writeInt(entry.getValue().size());
+					for (Map.Entry<Integer, Integer> version : entry
+							.getValue().entrySet()) {
+						dout.writeInt(version.getKey());
+						dout.writeInt(version.getValue());
+					}
+				}
+			}
 
 			dout.flush();
 			dout.close();
@@ -0,0 +1,162 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Time spent in each phase of a task and the number of bytes the task moved.
+ * The times are measured with <code>System.nanoTime()</code> and accumulated
+ * over the iteration of the task. The metrics of a task travel with its
+ * <code>TaskStatus</code>, and the client keeps its own metrics in the
+ * <code>JobStatus</code> of the iteration.
+ * 
+ */
+public class TaskMetrics {
+
+	// Phases.
+	public static final int COMPUTE = 0;
+	public static final int SERIALIZE = 1;
+	public static final int PUBLISH = 2;
+	// Downloading the data kept in the cache of another daemon.
+	public static final int FETCH = 3;
+	// Waiting for the reduce inputs after the start reduce message.
+	public static final int WAIT = 4;
+	// Handling of the messages by the pub/sub listener of the client.
+	public static final int DISPATCH = 5;
+	public static final String[] PHASE_NAMES = { "compute", "serialize",
+			"publish", "fetch", "wait", "dispatch" };
+
+	// Byte counters.
+	public static final int BYTES_PUBLISHED = 0;
+	// Bytes kept in the data cache for an indirect transfer.
+	public static final int BYTES_CACHED = 1;
+	public static final int BYTES_FETCHED = 2;
+	public static final int BYTES_RECEIVED = 3;
+	public static final String[] BYTE_COUNTER_NAMES = { "published",
+			"cached", "fetched", "received" };
+
+	private long[] phaseTimes = new long[PHASE_NAMES.length];
+	private long[] byteCounts = new long[BYTE_COUNTER_NAMES.length];
+
+	public synchronized void addTime(int phase, long nanos) {
+		phaseTimes[phase] += nanos;
+	}
+
+	public synchronized void addBytes(int counter, long bytes) {
+		byteCounts[counter] += bytes;
+	}
+
+	/**
+	 * Adds the given metrics to these.
+	 */
+	public synchronized void add(TaskMetrics other) {
+		long[] otherTimes;
+		long[] otherBytes;
+		synchronized (other) {
+			otherTimes = other.phaseTimes.clone();
+			otherBytes = other.byteCounts.clone();
+		}
+		for (int i = 0; i < phaseTimes.length; i++) {
+			phaseTimes[i] += otherTimes[i];
+		}
+		for (int i = 0; i < byteCounts.length; i++) {
+			byteCounts[i] += otherBytes[i];
+		}
+	}
+
+	/**
+	 * @return time spent in the phase in nanoseconds.
+	 */
+	public synchronized long getTime(int phase) {
+		return phaseTimes[phase];
+	}
+
+	public synchronized long getBytes(int counter) {
+		return byteCounts[counter];
+	}
+
+	synchronized void writeTo(DataOutputStream dout) throws IOException {
+		dout.writeInt(phaseTimes.length);
+		for (long time : phaseTimes) {
+			dout.writeLong(time);
+		}
+		dout.writeInt(byteCounts.length);
+		for (long count : byteCounts) {
+			dout.writeLong(count);
+		}
+	}
+
+	/**
+	 * Reads the metrics. Values of phases or counters this version does not
+	 * know are skipped.
+	 */
+	synchronized void readFrom(DataInputStream din) throws IOException {
+		int count = din.readInt();
+		for (int i = 0; i < count; i++) {
+			long time = din.readLong();
+			if (i < phaseTimes.length) {
+				phaseTimes[i] = time;
+			}
+		}
+		count = din.readInt();
+		for (int i = 0; i < count; i++) {
+			long bytes = din.readLong();
+			if (i < byteCounts.length) {
+				byteCounts[i] = bytes;
+			}
+		}
+	}
+}
@@ -74,6 +74,14 @@ public class TaskStatus extends PubSubMessage {
 	private int iteration;
 	private boolean hasReduceInputMap=false;
 	private Map<Integer,Integer> reduceInputMap;
+	// Daemon that ran the task, used as a heartbeat of the daemon.
+	private int daemonNo = -1;
+	private TaskMetrics metrics = new TaskMetrics();
+	// Time the driver received the status, in its System.nanoTime(). This
+	// is local to the receiver hence not serialized.
+	private long receiveTime;
+	// Collapsed stacks sampled while the task ran, with their counts.
+	private Map<String, Integer> profile;
 
 	private TaskStatus() {
 	}
@@ -103,6 +111,42 @@ public class TaskStatus extends PubSubMessage {
 		return hasReduceInputMap;
 	}
 
+	public int getDaemonNo() {
+		return daemonNo;
+	}
+
+	public void setDaemonNo(int daemonNo) {
+		this.daemonNo = daemonNo;
+	}
+
+	public TaskMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(TaskMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the stacks sampled while the task ran, or null if the job is
+	 * not profiled. The keys are the frames from the root separated by ';'.
+	 */
+	public Map<String, Integer> getProfile() {
+		return profile;
+	}
+
+	public void setProfile(Map<String, Integer> profile) {
+		this.profile = profile;
+	}
+
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	public void setReceiveTime(long receiveTime) {
+		this.receiveTime = receiveTime;
+	}
+
 	public TaskStatus(byte[] data) throws SerializationException {
 		this();
 		this.fromBytes(data);
@@ -149,6 +193,18 @@ public class TaskStatus extends PubSubMessage {
 					reduceInputMap.put(key,value);
 				}
 			}
+			daemonNo = din.readInt();
+			metrics.readFrom(din);
+			if (din.readBoolean()) {
+				int count = din.readInt();
+				profile = new HashMap<String, Integer>();
+				for (int i = 0; i < count; i++) {
+					len = din.readInt();
+					data = new byte[len];
+					din.readFully(data);
+					profile.put(new String(data), din.readInt());
+				}
+			}
 
 			din.close();
 			baInputStream.close();
@@ -190,6 +246,18 @@ public class TaskStatus extends PubSubMessage {
 					dout.writeInt(reduceInputMap.get(key));
 				}				
 			}
+			dout.writeInt(daemonNo);
+			metrics.writeTo(dout);
+			dout.writeBoolean(profile != null);
+			if (profile != null) {
+				dout.writeInt(profile.size());
+				for (Map.Entry<String, Integer> entry : profile.entrySet()) {
+					data = entry.getKey().getBytes();
+					dout.writeInt(data.length);
+					dout.write(data);
+					dout.writeInt(entry.getValue());
+				}
+			}
 
 			dout.flush();
 			serializedBytes = baOutputStream.toByteArray();
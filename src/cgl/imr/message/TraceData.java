@@ -0,0 +1,206 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cgl.imr.base.SerializationException;
+import cgl.imr.util.TraceEvent;
+
+/**
+ * Events a daemon recorded for a job, sent to the driver at the end of the
+ * job. The message carries the times of the daemon at which it received the
+ * end of the job and sent this message, so that the driver can estimate the
+ * offset between the clocks of the daemon and itself.
+ * 
+ */
+public class TraceData extends PubSubMessage {
+
+	private String jobId;
+	private int daemonNo;
+	private long receiveNanos;
+	private long sendNanos;
+	private List<TraceEvent> events;
+
+	public TraceData(byte[] bytes) throws SerializationException {
+		this.fromBytes(bytes);
+	}
+
+	public TraceData(String jobId, int daemonNo, long receiveNanos,
+			List<TraceEvent> events) {
+		this.jobId = jobId;
+		this.daemonNo = daemonNo;
+		this.receiveNanos = receiveNanos;
+		this.events = events;
+	}
+
+	@Override
+	public void fromBytes(byte[] bytes) throws SerializationException {
+		ByteArrayInputStream baInputStream = new ByteArrayInputStream(bytes);
+		DataInputStream din = new DataInputStream(baInputStream);
+		try {
+			byte msgType = din.readByte();
+			if (msgType != TRACE_DATA) {
+				throw new SerializationException(
+						"Invalid set of bytes to deserialize "
+								+ this.getClass().getName() + ".");
+			}
+			readRefIdIfAny(din);
+			jobId = din.readUTF();
+			daemonNo = din.readInt();
+			receiveNanos = din.readLong();
+			sendNanos = din.readLong();
+
+			// Names are written once and referred by their index.
+			String[] names = new String[din.readInt()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = din.readUTF();
+			}
+			int count = din.readInt();
+			events = new ArrayList<TraceEvent>(count);
+			for (int i = 0; i < count; i++) {
+				String name = names[din.readInt()];
+				String thread = names[din.readInt()];
+				events.add(new TraceEvent(name, thread, din.readLong(), din
+						.readLong(), din.readInt(), din.readInt()));
+			}
+			din.close();
+			baInputStream.close();
+		} catch (IOException ioe) {
+			throw new SerializationException(ioe);
+		}
+	}
+
+	/**
+	 * Serializes the message, taking the current time as the send time.
+	 */
+	@Override
+	public byte[] getBytes() throws SerializationException {
+		ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(baOutputStream);
+		try {
+			dout.writeByte(TRACE_DATA);
+			serializeRefId(dout);
+			dout.writeUTF(jobId);
+			dout.writeInt(daemonNo);
+			dout.writeLong(receiveNanos);
+
+			Map<String, Integer> nameIndexes = new HashMap<String, Integer>();
+			List<String> names = new ArrayList<String>();
+			for (TraceEvent event : events) {
+				indexOf(event.getName(), nameIndexes, names);
+				indexOf(event.getThread(), nameIndexes, names);
+			}
+			ByteArrayOutputStream eventBytes = new ByteArrayOutputStream();
+			DataOutputStream eventOut = new DataOutputStream(eventBytes);
+			eventOut.writeInt(names.size());
+			for (String name : names) {
+				eventOut.writeUTF(name);
+			}
+			eventOut.writeInt(events.size());
+			for (TraceEvent event : events) {
+				eventOut.writeInt(nameIndexes.get(event.getName()));
+				eventOut.writeInt(nameIndexes.get(event.getThread()));
+				eventOut.writeLong(event.getBeginNanos());
+				eventOut.writeLong(event.getDurationNanos());
+				eventOut.writeInt(event.getTaskNo());
+				eventOut.writeInt(event.getIteration());
+			}
+			eventOut.flush();
+
+			sendNanos = System.nanoTime();
+			dout.writeLong(sendNanos);
+			eventBytes.writeTo(dout);
+			dout.flush();
+			return baOutputStream.toByteArray();
+		} catch (IOException ioe) {
+			throw new SerializationException(ioe);
+		}
+	}
+
+	private static void indexOf(String name, Map<String, Integer> nameIndexes,
+			List<String> names) {
+		if (!nameIndexes.containsKey(name)) {
+			nameIndexes.put(name, names.size());
+			names.add(name);
+		}
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public int getDaemonNo() {
+		return daemonNo;
+	}
+
+	public long getReceiveNanos() {
+		return receiveNanos;
+	}
+
+	public long getSendNanos() {
+		return sendNanos;
+	}
+
+	public List<TraceEvent> getEvents() {
+		return events;
+	}
+}
@@ -72,6 +72,10 @@ public class WorkerResponse extends PubSubMessage {
 	private String exceptionString;
 	private int daemonNo;
 	private String daemonIP;
+	// Resources of the daemon, sent in the responses to new job requests.
+	private boolean hasResources = false;
+	private int numProcessors;
+	private long maxMemory;
 
 	public WorkerResponse(byte[] bytes) throws SerializationException {
 		super();
@@ -129,6 +133,11 @@ public class WorkerResponse extends PubSubMessage {
 				din.readFully(data);
 				this.exceptionString = new String(data);
 			}
+			hasResources = din.readBoolean();
+			if (hasResources) {
+				numProcessors = din.readInt();
+				maxMemory = din.readLong();
+			}
 
 			din.close();
 			baInputStream.close();
@@ -163,6 +172,11 @@ public class WorkerResponse extends PubSubMessage {
 				dout.writeInt(data.length);
 				dout.write(data);
 			}
+			dout.writeBoolean(hasResources);
+			if (hasResources) {
+				dout.writeInt(numProcessors);
+				dout.writeLong(maxMemory);
+			}
 
 			dout.flush();
 			marshalledBytes = baOutputStream.toByteArray();
@@ -187,4 +201,26 @@ public class WorkerResponse extends PubSubMessage {
 	public void setExceptionString(String exceptionString) {
 		this.exceptionString = exceptionString;
 	}
+
+	public boolean isHasResources() {
+		return hasResources;
+	}
+
+	public int getNumProcessors() {
+		return numProcessors;
+	}
+
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+
+	/**
+	 * Sets the number of processors and the maximum heap size, in bytes,
+	 * available to the daemon.
+	 */
+	public void setResources(int numProcessors, long maxMemory) {
+		this.hasResources = true;
+		this.numProcessors = numProcessors;
+		this.maxMemory = maxMemory;
+	}
 }
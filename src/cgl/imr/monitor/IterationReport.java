@@ -0,0 +1,306 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import cgl.imr.base.TwisterConstants;
+import cgl.imr.message.TaskMetrics;
+import cgl.imr.message.TaskStatus;
+
+/**
+ * Where the time of a completed iteration went. The critical path follows
+ * the last map task to report, the last reduce task to report after it and
+ * the combine that ends the iteration. The times are taken when the driver
+ * receives the task statuses, hence they include the delivery of the
+ * statuses. The stragglers are the slowest successful tasks that took well
+ * over the median time of the tasks of the same type, and the skew compares
+ * the time the daemons spent executing tasks.
+ * 
+ */
+public class IterationReport {
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private long beginTime;
+	private long endTime;
+	private Map<Integer, String> mapPartitions;
+
+	private TaskStatus lastMap;
+	private TaskStatus lastReduce;
+	private long medianMapTime;
+	private long medianReduceTime;
+	private List<TaskStatus> stragglers = new ArrayList<TaskStatus>();
+	// Milliseconds each daemon spent executing tasks.
+	private Map<Integer, Long> daemonTimes = new TreeMap<Integer, Long>();
+	private Map<Integer, Integer> daemonTasks = new TreeMap<Integer, Integer>();
+
+	/**
+	 * @param beginTime
+	 *            <code>System.nanoTime()</code> at the start of the iteration.
+	 * @param endTime
+	 *            <code>System.nanoTime()</code> at the completion of the
+	 *            iteration.
+	 * @param mapPartitions
+	 *            data partitions of the map tasks, keyed by task number.
+	 * @param numStragglers
+	 *            maximum number of stragglers to report.
+	 */
+	public IterationReport(JobStatus jobStatus, long beginTime, long endTime,
+			Map<Integer, String> mapPartitions, int numStragglers) {
+		this.beginTime = beginTime;
+		this.endTime = endTime;
+		this.mapPartitions = mapPartitions;
+
+		List<TaskStatus> maps = successful(jobStatus.getMapTaskStatuses());
+		List<TaskStatus> reduces = successful(jobStatus
+				.getReduceTaskStatuses());
+		this.lastMap = lastReceived(maps);
+		this.lastReduce = lastReceived(reduces);
+		this.medianMapTime = median(maps);
+		this.medianReduceTime = median(reduces);
+
+		List<TaskStatus> tasks = new ArrayList<TaskStatus>(maps);
+		tasks.addAll(reduces);
+		Collections.sort(tasks, new Comparator<TaskStatus>() {
+			public int compare(TaskStatus t1, TaskStatus t2) {
+				long diff = t2.getExecuationTime() - t1.getExecuationTime();
+				return diff > 0 ? 1 : (diff < 0 ? -1 : 0);
+			}
+		});
+		for (TaskStatus task : tasks) {
+			if (stragglers.size() >= numStragglers) {
+				break;
+			}
+			if (isStraggler(task.getExecuationTime(),
+					task.getTaskType() == TwisterConstants.MAP_TASK ? medianMapTime
+							: medianReduceTime)) {
+				stragglers.add(task);
+			}
+		}
+
+		for (TaskStatus task : tasks) {
+			if (task.getDaemonNo() < 0) {
+				continue;
+			}
+			Long time = daemonTimes.get(task.getDaemonNo());
+			daemonTimes.put(task.getDaemonNo(), (time == null ? 0 : time)
+					+ task.getExecuationTime());
+			Integer count = daemonTasks.get(task.getDaemonNo());
+			daemonTasks.put(task.getDaemonNo(), (count == null ? 0 : count) + 1);
+		}
+	}
+
+	private static List<TaskStatus> successful(
+			Map<Integer, TaskStatus> statuses) {
+		List<TaskStatus> tasks = new ArrayList<TaskStatus>();
+		for (TaskStatus status : statuses.values()) {
+			if (status.getStatus() == TwisterConstants.SUCCESS) {
+				tasks.add(status);
+			}
+		}
+		return tasks;
+	}
+
+	private static TaskStatus lastReceived(List<TaskStatus> tasks) {
+		TaskStatus last = null;
+		for (TaskStatus task : tasks) {
+			if (last == null || task.getReceiveTime() > last.getReceiveTime()) {
+				last = task;
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * A task straggles if it took both a multiple of the median time and a
+	 * minimum time longer than it, so that tasks of a few milliseconds are
+	 * not reported.
+	 */
+	private static boolean isStraggler(long time, long median) {
+		return time >= median * TwisterConstants.STRAGGLER_REPORT_SLOWDOWN
+				&& time - median >= TwisterConstants.STRAGGLER_REPORT_MIN_GAP;
+	}
+
+	private static long median(List<TaskStatus> tasks) {
+		long[] times = new long[tasks.size()];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = tasks.get(i).getExecuationTime();
+		}
+		return new PercentileSummary(times).getP50();
+	}
+
+	/**
+	 * @return the map task that reported last, or null if none succeeded.
+	 */
+	public TaskStatus getLastMapTask() {
+		return lastMap;
+	}
+
+	/**
+	 * @return the reduce task that reported last, or null if none succeeded.
+	 */
+	public TaskStatus getLastReduceTask() {
+		return lastReduce;
+	}
+
+	/**
+	 * @return the stragglers, slowest first.
+	 */
+	public List<TaskStatus> getStragglers() {
+		return stragglers;
+	}
+
+	/**
+	 * @return milliseconds the daemons spent executing tasks, keyed by the
+	 *         daemon number.
+	 */
+	public Map<Integer, Long> getDaemonTimes() {
+		return daemonTimes;
+	}
+
+	/**
+	 * @return the ratio of the busiest daemon's time to the mean time of the
+	 *         daemons, 1 when the load is even.
+	 */
+	public double getDaemonSkew() {
+		if (daemonTimes.isEmpty()) {
+			return 1;
+		}
+		long total = 0;
+		long max = 0;
+		for (long time : daemonTimes.values()) {
+			total += time;
+			max = Math.max(max, time);
+		}
+		return total == 0 ? 1 : max * daemonTimes.size() / (double) total;
+	}
+
+	public String format() {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("total %.2fms%n",
+				(endTime - beginTime) / NANOS_PER_MILLI));
+
+		long reduceBegin = beginTime;
+		if (lastMap != null) {
+			reduceBegin = lastMap.getReceiveTime();
+			report.append(String.format(
+					"critical path: map phase %.2fms, last %s%n",
+					(reduceBegin - beginTime) / NANOS_PER_MILLI,
+					describe(lastMap)));
+		}
+		long combineBegin = reduceBegin;
+		if (lastReduce != null) {
+			combineBegin = lastReduce.getReceiveTime();
+			TaskMetrics metrics = lastReduce.getMetrics();
+			report.append(String.format(
+					"critical path: reduce phase %.2fms, last %s"
+							+ " waited %.2fms fetched %.2fms%n",
+					(combineBegin - reduceBegin) / NANOS_PER_MILLI,
+					describe(lastReduce), metrics.getTime(TaskMetrics.WAIT)
+							/ NANOS_PER_MILLI, metrics
+							.getTime(TaskMetrics.FETCH)
+							/ NANOS_PER_MILLI));
+		}
+		report.append(String.format("critical path: combine %.2fms%n",
+				(endTime - combineBegin) / NANOS_PER_MILLI));
+
+		for (TaskStatus task : stragglers) {
+			long median = task.getTaskType() == TwisterConstants.MAP_TASK ? medianMapTime
+					: medianReduceTime;
+			report.append("straggler: ").append(describe(task));
+			if (median > 0) {
+				report.append(String.format(" %.1fx median", task
+						.getExecuationTime()
+						/ (double) median));
+			}
+			report.append(String.format("%n"));
+		}
+
+		if (!daemonTimes.isEmpty()) {
+			int busiest = -1;
+			for (Map.Entry<Integer, Long> entry : daemonTimes.entrySet()) {
+				if (busiest < 0
+						|| entry.getValue() > daemonTimes.get(busiest)) {
+					busiest = entry.getKey();
+				}
+			}
+			report.append(String.format(
+					"daemon skew %.2f over %d daemons, busiest daemon %d"
+							+ " %dms in %d tasks%n", getDaemonSkew(),
+					daemonTimes.size(), busiest, daemonTimes.get(busiest),
+					daemonTasks.get(busiest)));
+		}
+		return report.toString();
+	}
+
+	private String describe(TaskStatus task) {
+		StringBuilder text = new StringBuilder();
+		text.append(task.getTaskType() == TwisterConstants.MAP_TASK ? "map "
+				: "reduce ");
+		text.append(task.getTaskNo()).append(" on daemon ").append(
+				task.getDaemonNo());
+		if (task.getTaskType() == TwisterConstants.MAP_TASK
+				&& mapPartitions.containsKey(task.getTaskNo())) {
+			text.append(" (").append(mapPartitions.get(task.getTaskNo()))
+					.append(')');
+		}
+		text.append(' ').append(task.getExecuationTime()).append("ms");
+		return text.toString();
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.monitor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completion of one iteration of a MapReduce computation. The monitor
+ * completes it from the thread that delivers the last task status, so that
+ * the threads waiting for the iteration wake up immediately instead of
+ * polling the job status.
+ * 
+ */
+public class JobCompletion {
+
+	private CountDownLatch latch = new CountDownLatch(1);
+	private volatile JobStatus jobStatus;
+	private volatile Exception exception;
+
+	/**
+	 * Completes the iteration with the given status. Only the first call has
+	 * an effect.
+	 */
+	public synchronized boolean complete(JobStatus jobStatus) {
+		if (isDone()) {
+			return false;
+		}
+		this.jobStatus = jobStatus;
+		latch.countDown();
+		return true;
+	}
+
+	/**
+	 * Completes the iteration with an error. Only the first call has an
+	 * effect.
+	 */
+	public synchronized boolean fail(Exception exception) {
+		if (isDone()) {
+			return false;
+		}
+		this.exception = exception;
+		latch.countDown();
+		return true;
+	}
+
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	public boolean isFailed() {
+		return exception != null;
+	}
+
+	/**
+	 * Waits till the iteration completes or the timeout expires.
+	 * 
+	 * @return true if the iteration completed.
+	 */
+	public boolean await(long timeout) throws InterruptedException {
+		return latch.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	public JobStatus getJobStatus() {
+		return jobStatus;
+	}
+
+	public Exception getException() {
+		return exception;
+	}
+}
@@ -52,15 +52,22 @@
 
 package cgl.imr.monitor;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import cgl.imr.base.TwisterConstants;
 import cgl.imr.base.impl.JobConf;
+import cgl.imr.message.TaskMetrics;
 import cgl.imr.message.TaskStatus;
 
 /**
  * Presents the state of the job to the user. Keeps track of successful/failed
- * tasks.
+ * tasks. The counters are updated from the broker and the combine threads,
+ * hence they are kept in atomic integers. The phase metrics of the tasks are
+ * summarized as percentiles over the successful tasks of the iteration.
  * 
  * @author Jaliya Ekanayake (jaliyae@gmail.com, jekanaya@cs.indiana.edu)
  * 
@@ -69,15 +76,19 @@ public class JobStatus {
 
 	private JobConf jobConf;
 	private Map<Integer, TaskStatus> mapTaskStatuses;
-	private int numCombineInputsReceived = 0;
+	// Updated by the combine threads of the client.
+	private AtomicInteger numCombineInputsReceived = new AtomicInteger();
 
-	private int numFailedMapTasks = 0;
-	private int numFailedReduceTasks = 0;
+	private AtomicInteger numFailedMapTasks = new AtomicInteger();
+	private AtomicInteger numFailedReduceTasks = new AtomicInteger();
 
-	private int numSuccessfulMapTasks = 0;
-	private int numSuccessfulReduceTasks = 0;
+	private AtomicInteger numSuccessfulMapTasks = new AtomicInteger();
+	private AtomicInteger numSuccessfulReduceTasks = new AtomicInteger();
+	private AtomicInteger numSuccessfulAllReduceTasks = new AtomicInteger();
 	
-	private boolean success=true;;
+	private volatile boolean success=true;
+	// Metrics of the client, i.e. message dispatch and combine.
+	private TaskMetrics driverMetrics = new TaskMetrics();
 		
 	private Map<Integer, TaskStatus> reduceTaskStatuses;
 
@@ -104,11 +115,11 @@ public class JobStatus {
 	}
 
 	public float getCurrentMapPercentage() {
-		return ((float) numSuccessfulMapTasks) / jobConf.getNumMapTasks() * 100;
+		return ((float) numSuccessfulMapTasks.get()) / jobConf.getNumMapTasks() * 100;
 	}
 
 	public float getCurrentReducePercentage() {
-		return ((float) numSuccessfulReduceTasks) / jobConf.getNumReduceTasks()
+		return ((float) numSuccessfulReduceTasks.get()) / jobConf.getNumReduceTasks()
 				* 100;
 	}
 
@@ -121,23 +132,119 @@ public class JobStatus {
 	}
 
 	public int getNumCombineInputsReceived() {
-		return numCombineInputsReceived;
+		return numCombineInputsReceived.get();
 	}
 
 	public int getNumFailedMapTasks() {
-		return numFailedMapTasks;
+		return numFailedMapTasks.get();
 	}
 
 	public int getNumFailedReduceTasks() {
-		return numFailedReduceTasks;
+		return numFailedReduceTasks.get();
 	}
 
 	public int getNumSuccessfulMapTasks() {
-		return numSuccessfulMapTasks;
+		return numSuccessfulMapTasks.get();
 	}
 
 	public int getNumSuccessfulReduceTasks() {
-		return numSuccessfulReduceTasks;
+		return numSuccessfulReduceTasks.get();
+	}
+
+	public int getNumSuccessfulAllReduceTasks() {
+		return numSuccessfulAllReduceTasks.get();
+	}
+
+	public TaskMetrics getDriverMetrics() {
+		return driverMetrics;
+	}
+
+	/**
+	 * @return times in nanoseconds the map tasks spent in the given phase of
+	 *         <code>TaskMetrics</code>.
+	 */
+	public PercentileSummary getMapPhaseSummary(int phase) {
+		return summarize(mapTaskStatuses, phase, true);
+	}
+
+	public PercentileSummary getReducePhaseSummary(int phase) {
+		return summarize(reduceTaskStatuses, phase, true);
+	}
+
+	/**
+	 * @return bytes the map tasks counted in the given counter of
+	 *         <code>TaskMetrics</code>.
+	 */
+	public PercentileSummary getMapBytesSummary(int counter) {
+		return summarize(mapTaskStatuses, counter, false);
+	}
+
+	public PercentileSummary getReduceBytesSummary(int counter) {
+		return summarize(reduceTaskStatuses, counter, false);
+	}
+
+	private static PercentileSummary summarize(
+			Map<Integer, TaskStatus> statuses, int index, boolean time) {
+		List<Long> values = new ArrayList<Long>();
+		for (TaskStatus status : statuses.values()) {
+			if (status.getStatus() == TwisterConstants.SUCCESS) {
+				TaskMetrics metrics = status.getMetrics();
+				values.add(time ? metrics.getTime(index) : metrics
+						.getBytes(index));
+			}
+		}
+		long[] array = new long[values.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = values.get(i);
+		}
+		return new PercentileSummary(array);
+	}
+
+	/**
+	 * Describes where the time of the iteration went, one line per phase
+	 * measured.
+	 */
+	public String getPhaseReport() {
+		StringBuilder report = new StringBuilder();
+		for (int phase = 0; phase < TaskMetrics.PHASE_NAMES.length; phase++) {
+			appendSummary(report, "map", TaskMetrics.PHASE_NAMES[phase],
+					getMapPhaseSummary(phase), 1000000.0, "ms");
+			appendSummary(report, "reduce", TaskMetrics.PHASE_NAMES[phase],
+					getReducePhaseSummary(phase), 1000000.0, "ms");
+		}
+		for (int counter = 0; counter < TaskMetrics.BYTE_COUNTER_NAMES.length; counter++) {
+			appendSummary(report, "map", "bytes "
+					+ TaskMetrics.BYTE_COUNTER_NAMES[counter],
+					getMapBytesSummary(counter), 1024.0, "KB");
+			appendSummary(report, "reduce", "bytes "
+					+ TaskMetrics.BYTE_COUNTER_NAMES[counter],
+					getReduceBytesSummary(counter), 1024.0, "KB");
+		}
+		for (int phase = 0; phase < TaskMetrics.PHASE_NAMES.length; phase++) {
+			long time = driverMetrics.getTime(phase);
+			if (time > 0) {
+				report.append(String.format("client %s %.2fms%n",
+						TaskMetrics.PHASE_NAMES[phase], time / 1000000.0));
+			}
+		}
+		for (int counter = 0; counter < TaskMetrics.BYTE_COUNTER_NAMES.length; counter++) {
+			long bytes = driverMetrics.getBytes(counter);
+			if (bytes > 0) {
+				report.append(String.format("client bytes %s %.2fKB%n",
+						TaskMetrics.BYTE_COUNTER_NAMES[counter],
+						bytes / 1024.0));
+			}
+		}
+		return report.toString();
+	}
+
+	private static void appendSummary(StringBuilder report, String taskType,
+			String name, PercentileSummary summary, double scale, String unit) {
+		if (summary.getTotal() > 0) {
+			report.append(taskType).append(' ').append(name).append(' ')
+					.append(summary.format(scale, unit)).append(
+							String.format("%n"));
+		}
 	}
 
 	public Map<Integer, TaskStatus> getReduceTaskStatuses() {
@@ -148,23 +255,35 @@ public class JobStatus {
 		return reduceTaskStatuses.get(new Integer(reduceTaskNumber));
 	}
 
-	public void incrementCombineInputs() {
-		numCombineInputsReceived++;
+	public int incrementCombineInputs() {
+		return numCombineInputsReceived.incrementAndGet();
+	}
+
+	public int addCombineInputs(int numInputs) {
+		return numCombineInputsReceived.addAndGet(numInputs);
+	}
+
+	public int incrementFailedMapTasks() {
+		return numFailedMapTasks.incrementAndGet();
 	}
 
-	public void incrementFailedMapTasks() {
-		numFailedMapTasks++;
+	public int incrementFailedReduceTasks() {
+		return numFailedReduceTasks.incrementAndGet();
 	}
 
-	public void incrementFailedReduceTasks() {
-		numFailedReduceTasks++;
+	/**
+	 * @return the number of successful map tasks including this one, so that
+	 *         exactly one caller observes the completion of the map phase.
+	 */
+	public int incrementSuccessfulMapTasks() {
+		return numSuccessfulMapTasks.incrementAndGet();
 	}
 
-	public void incrementSuccessfulMapTasks() {
-		numSuccessfulMapTasks++;
+	public int incrementSuccessfulReduceTasks() {
+		return numSuccessfulReduceTasks.incrementAndGet();
 	}
 
-	public void incrementSuccessfulReduceTasks() {
-		numSuccessfulReduceTasks++;
+	public int incrementSuccessfulAllReduceTasks() {
+		return numSuccessfulAllReduceTasks.incrementAndGet();
 	}
 }
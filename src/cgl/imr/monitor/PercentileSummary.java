@@ -0,0 +1,130 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.monitor;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of a metric over the tasks of an iteration. The percentiles
+ * use the nearest rank method.
+ * 
+ */
+public class PercentileSummary {
+
+	private int count;
+	private long min;
+	private long p50;
+	private long p90;
+	private long p99;
+	private long max;
+	private long total;
+
+	public PercentileSummary(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		this.count = sorted.length;
+		for (long value : sorted) {
+			total += value;
+		}
+		if (count > 0) {
+			this.min = sorted[0];
+			this.max = sorted[count - 1];
+			this.p50 = percentile(sorted, 50);
+			this.p90 = percentile(sorted, 90);
+			this.p99 = percentile(sorted, 99);
+		}
+	}
+
+	private static long percentile(long[] sorted, double percent) {
+		int rank = (int) Math.ceil(percent / 100 * sorted.length);
+		return sorted[Math.max(rank - 1, 0)];
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getMin() {
+		return min;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public long getP90() {
+		return p90;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Formats the summary with the values divided by the given scale, e.g.
+	 * 1000000 to print nanoseconds as milliseconds.
+	 */
+	public String format(double scale, String unit) {
+		return String.format("n=%d p50=%.2f%s p90=%.2f%s p99=%.2f%s max=%.2f%s total=%.2f%s",
+				count, p50 / scale, unit, p90 / scale, unit, p99 / scale,
+				unit, max / scale, unit, total / scale, unit);
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.monitor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the progress of the individual map tasks when a job runs in
+ * the stale synchronous mode (see <code>JobConf.setStalenessBound</code>).
+ * 
+ * A map task that was dispatched at the beginning of the current iteration
+ * has to complete that iteration before the reduce phase can start. A map
+ * task that was still busy with an older iteration is allowed to lag behind
+ * by at most <code>stalenessBound</code> iterations, and the reducers use its
+ * latest output. The mode assumes that a map task sends its outputs to the
+ * same set of reducers in every iteration.
+ * 
+ */
+public class StalenessTracker {
+
+	private int stalenessBound;
+	private int numMapTasks;
+	private int numReduceTasks;
+
+	private int currentIteration = -1;
+	private boolean startReduceSent = false;
+
+	private int[] dispatchedIterations;
+	private int[] completedIterations;
+	private boolean[] dispatchedFresh;
+	private Map<Integer, Map<Integer, Integer>> reduceInputMaps;
+
+	public StalenessTracker(int numMapTasks, int numReduceTasks,
+			int stalenessBound) {
+		this.numMapTasks = numMapTasks;
+		this.numReduceTasks = numReduceTasks;
+		this.stalenessBound = stalenessBound;
+		this.dispatchedIterations = new int[numMapTasks];
+		this.completedIterations = new int[numMapTasks];
+		this.dispatchedFresh = new boolean[numMapTasks];
+		for (int i = 0; i < numMapTasks; i++) {
+			dispatchedIterations[i] = -1;
+			completedIterations[i] = -1;
+		}
+		this.reduceInputMaps = new HashMap<Integer, Map<Integer, Integer>>();
+	}
+
+	/**
+	 * Starts a new iteration. Must be called before the map tasks of the
+	 * iteration are dispatched.
+	 * 
+	 * @param iteration
+	 *            - the new iteration.
+	 */
+	public synchronized void beginIteration(int iteration) {
+		this.currentIteration = iteration;
+		this.startReduceSent = false;
+		for (int i = 0; i < numMapTasks; i++) {
+			dispatchedFresh[i] = false;
+		}
+	}
+
+	public synchronized int getCurrentIteration() {
+		return currentIteration;
+	}
+
+	public int getStalenessBound() {
+		return stalenessBound;
+	}
+
+	/**
+	 * A map task is busy if it has not yet completed the last iteration it was
+	 * dispatched with.
+	 */
+	public synchronized boolean isBusy(int mapTaskNo) {
+		return dispatchedIterations[mapTaskNo] > completedIterations[mapTaskNo];
+	}
+
+	public synchronized void mapDispatched(int mapTaskNo, int iteration,
+			boolean fresh) {
+		dispatchedIterations[mapTaskNo] = iteration;
+		dispatchedFresh[mapTaskNo] = fresh && (iteration == currentIteration);
+	}
+
+	/**
+	 * Records the completion of a map task.
+	 * 
+	 * @param mapTaskNo
+	 *            - the map task.
+	 * @param iteration
+	 *            - the iteration the map task completed.
+	 * @param reduceInputMap
+	 *            - number of outputs the map task sent to each reducer.
+	 * @return true if the map task is now idle but behind the current
+	 *         iteration, and hence should be dispatched again.
+	 */
+	public synchronized boolean mapCompleted(int mapTaskNo, int iteration,
+			Map<Integer, Integer> reduceInputMap) {
+		if (iteration > completedIterations[mapTaskNo]) {
+			completedIterations[mapTaskNo] = iteration;
+			reduceInputMaps.put(mapTaskNo, reduceInputMap);
+		}
+		return !isBusy(mapTaskNo)
+				&& completedIterations[mapTaskNo] < currentIteration;
+	}
+
+	/**
+	 * Check if every map task is within the staleness bound for the current
+	 * iteration.
+	 */
+	public synchronized boolean isMapPhaseReady() {
+		if (currentIteration < 0) {
+			return false;
+		}
+		int required;
+		for (int i = 0; i < numMapTasks; i++) {
+			required = dispatchedFresh[i] ? currentIteration
+					: currentIteration - stalenessBound;
+			if (completedIterations[i] < required
+					|| completedIterations[i] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the start of the reduce phase of the current iteration if the map
+	 * tasks are within the staleness bound and it has not been started yet.
+	 * 
+	 * @return true if the caller should start the reduce phase.
+	 */
+	public synchronized boolean tryStartReduce() {
+		if (startReduceSent || !isMapPhaseReady()) {
+			return false;
+		}
+		startReduceSent = true;
+		return true;
+	}
+
+	public synchronized boolean isStartReduceSent() {
+		return startReduceSent;
+	}
+
+	/**
+	 * Returns the number of map tasks sending outputs to each reducer. The
+	 * reducers are started on the versions given by
+	 * <code>getMapIterations</code>, the counts are only informative.
+	 */
+	public synchronized ConcurrentHashMap<Integer, Integer> getReduceInputMap() {
+		ConcurrentHashMap<Integer, Integer> expected = new ConcurrentHashMap<Integer, Integer>();
+		for (int r = 0; r < numReduceTasks; r++) {
+			expected.put(r, 0);
+		}
+		Iterator<Integer> ite = reduceInputMaps.keySet().iterator();
+		int mapTaskNo;
+		int reducerNo;
+		while (ite.hasNext()) {
+			mapTaskNo = ite.next();
+			Iterator<Integer> reducers = reduceInputMaps.get(mapTaskNo)
+					.keySet().iterator();
+			while (reducers.hasNext()) {
+				reducerNo = reducers.next();
+				if (reduceInputMaps.get(mapTaskNo).get(reducerNo) > 0) {
+					expected.put(reducerNo, expected.get(reducerNo) + 1);
+				}
+			}
+		}
+		return expected;
+	}
+
+	/**
+	 * Returns, for each reducer, the iteration of the output of each map task
+	 * it has to use in the current reduce phase, which is the latest
+	 * iteration the map task completed. A map output may reach the reducer
+	 * after a newer one of the same map task, so the reducer selects these
+	 * versions explicitly instead of using the latest it holds.
+	 */
+	public synchronized Map<Integer, Map<Integer, Integer>> getMapIterations() {
+		Map<Integer, Map<Integer, Integer>> versions = new HashMap<Integer, Map<Integer, Integer>>();
+		for (int r = 0; r < numReduceTasks; r++) {
+			versions.put(r, new HashMap<Integer, Integer>());
+		}
+		for (Map.Entry<Integer, Map<Integer, Integer>> entry : reduceInputMaps
+				.entrySet()) {
+			int mapTaskNo = entry.getKey();
+			for (Map.Entry<Integer, Integer> outputs : entry.getValue()
+					.entrySet()) {
+				if (outputs.getValue() > 0) {
+					versions.get(outputs.getKey()).put(mapTaskNo,
+							completedIterations[mapTaskNo]);
+				}
+			}
+		}
+		return versions;
+	}
+
+	/**
+	 * Returns the largest number of iterations any map task lags behind.
+	 */
+	public synchronized int getMaxLag() {
+		int lag = 0;
+		for (int i = 0; i < numMapTasks; i++) {
+			lag = Math.max(lag, currentIteration - completedIterations[i]);
+		}
+		return lag;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cgl.imr.base.TwisterConstants;
+
+/**
+ * Keeps track of the map tasks of the current iteration when speculative
+ * execution is enabled (see <code>JobConf.setSpeculativeSlowdown</code>).
+ * 
+ * Once <code>SPECULATION_MIN_COMPLETED_FRACTION</code> of the map tasks have
+ * completed, a map task that has been running longer than the given multiple
+ * of the median execution time of the completed map tasks is reported as a
+ * straggler, at most once per iteration. Only the first completion of a map
+ * task is accepted.
+ * 
+ */
+public class StragglerTracker {
+
+	private double slowdown;
+	private int numMapTasks;
+	private int minCompleted;
+
+	private int currentIteration = -1;
+	private int numCompleted = 0;
+	private long[] dispatchTimes;
+	private boolean[] completed;
+	private boolean[] speculated;
+	private List<Long> executionTimes;
+
+	public StragglerTracker(int numMapTasks, double slowdown) {
+		this.numMapTasks = numMapTasks;
+		this.slowdown = slowdown;
+		this.minCompleted = (int) Math.ceil(numMapTasks
+				* TwisterConstants.SPECULATION_MIN_COMPLETED_FRACTION);
+		this.dispatchTimes = new long[numMapTasks];
+		this.completed = new boolean[numMapTasks];
+		this.speculated = new boolean[numMapTasks];
+		this.executionTimes = new ArrayList<Long>();
+	}
+
+	/**
+	 * Records the dispatch of a map task. Dispatching a map task with a new
+	 * iteration starts that iteration.
+	 * 
+	 * @param mapTaskNo
+	 *            - the map task.
+	 * @param iteration
+	 *            - the iteration the map task is dispatched with.
+	 */
+	public synchronized void mapDispatched(int mapTaskNo, int iteration) {
+		if (iteration != currentIteration) {
+			currentIteration = iteration;
+			numCompleted = 0;
+			executionTimes.clear();
+			for (int i = 0; i < numMapTasks; i++) {
+				completed[i] = false;
+				speculated[i] = false;
+			}
+		}
+		dispatchTimes[mapTaskNo] = System.currentTimeMillis();
+	}
+
+	/**
+	 * Records the completion of a map task.
+	 * 
+	 * @param mapTaskNo
+	 *            - the map task.
+	 * @param iteration
+	 *            - the iteration the map task completed.
+	 * @param executionTime
+	 *            - execution time of the map task in milliseconds.
+	 * @return true if this is the first completion of the map task in the
+	 *         current iteration, false if the result should be ignored.
+	 */
+	public synchronized boolean mapCompleted(int mapTaskNo, int iteration,
+			long executionTime) {
+		if (iteration != currentIteration || completed[mapTaskNo]) {
+			return false;
+		}
+		completed[mapTaskNo] = true;
+		numCompleted++;
+		executionTimes.add(executionTime);
+		return true;
+	}
+
+	/**
+	 * Returns the map tasks which should be launched again. A returned map
+	 * task is not returned again in the same iteration.
+	 */
+	public synchronized List<Integer> getStragglers() {
+		List<Integer> stragglers = new ArrayList<Integer>();
+		if (numCompleted < minCompleted || numCompleted == numMapTasks) {
+			return stragglers;
+		}
+		List<Long> times = new ArrayList<Long>(executionTimes);
+		Collections.sort(times);
+		long median = times.get(times.size() / 2);
+		long threshold = Math.max((long) (median * slowdown),
+				TwisterConstants.SPECULATION_MIN_ELAPSED_TIME);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < numMapTasks; i++) {
+			if (!completed[i] && !speculated[i]
+					&& (now - dispatchTimes[i]) > threshold) {
+				speculated[i] = true;
+				stragglers.add(i);
+			}
+		}
+		return stragglers;
+	}
+
+	public synchronized int getCurrentIteration() {
+		return currentIteration;
+	}
+}
@@ -52,9 +52,17 @@
 
 package cgl.imr.monitor;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
@@ -63,12 +71,18 @@ import cgl.imr.base.TwisterException;
 import cgl.imr.base.TwisterModel;
 import cgl.imr.base.TwisterMonitor;
 import cgl.imr.base.impl.JobConf;
+import cgl.imr.client.ClusterPressure;
+import cgl.imr.client.MapTaskRebalancer;
 import cgl.imr.client.TwisterDriver;
 import cgl.imr.message.CombineInput;
+import cgl.imr.message.TaskMetrics;
 import cgl.imr.message.TaskStatus;
 
 /**
- * Monitor the progress of MapReduce computation tasks.
+ * Monitor the progress of MapReduce computation tasks. The task statuses
+ * update the job status from the broker thread, and the status that completes
+ * the iteration also completes a {@link JobCompletion}, which wakes up the
+ * threads waiting for the iteration.
  * 
  * @author Jaliya Ekanayake (jaliyae@gmail.com, jekanaya@cs.indiana.edu)
  * 
@@ -79,33 +93,63 @@ public class TwisterMonitorBasic implements TwisterConstants, TwisterMonitor {
 
 	private TwisterDriver driver;
 	private boolean hasCombiner = false;
-	private boolean hasMonitoringException = false;
+	private volatile boolean hasMonitoringException = false;
 	private JobConf jobConf;
-	private JobStatus jobStatus;
+	private volatile JobStatus jobStatus;
+	private volatile JobCompletion completion;
+	// Makes sure the post processing of an iteration runs only once.
+	private AtomicBoolean iterationFinished;
 	private ConcurrentHashMap<Integer,Integer> reduceInputMap;
 	private int numReduceTasks;
-	private long totalSequentialExecutionTime; //milliseconds
+	private AtomicLong totalSequentialExecutionTime; //milliseconds
+	private long iterationBeginTime;
+	private StalenessTracker stalenessTracker;
+	private StragglerTracker stragglerTracker;
+	private MapTaskRebalancer mapTaskRebalancer;
+	// Tasks completed in this iteration, used to discard the results of the
+	// tasks rerun after a fault.
+	private Map<Integer, Boolean> completedMapTasks;
+	private Map<Integer, Boolean> completedReduceTasks;
+	// Last task statuses received, across the iterations, newest last.
+	private LinkedList<TaskStatus> recentTaskStatuses = new LinkedList<TaskStatus>();
 	
-	private Exception monitoringException;
+	private volatile Exception monitoringException;
 
 	public TwisterMonitorBasic(JobConf jobConf, TwisterDriver driver) {
 		this.driver = driver;
 		this.jobConf = jobConf;
 		this.jobStatus = new JobStatus(jobConf);
+		this.completion = new JobCompletion();
+		this.iterationFinished = new AtomicBoolean(false);
+		this.totalSequentialExecutionTime = new AtomicLong();
+		this.iterationBeginTime = System.nanoTime();
 		this.hasCombiner=jobConf.isHasCombinerClass();
 		this.reduceInputMap=new ConcurrentHashMap<Integer, Integer>();
 		numReduceTasks=jobConf.getNumReduceTasks();
 		for(int i=0;i<numReduceTasks;i++){
 			reduceInputMap.put(i,0);
 		}
+		this.stalenessTracker = driver.getStalenessTracker();
+		this.stragglerTracker = driver.getStragglerTracker();
+		this.mapTaskRebalancer = driver.getMapTaskRebalancer();
+		if (jobConf.isFaultTolerance()) {
+			this.completedMapTasks = new ConcurrentHashMap<Integer, Boolean>();
+			this.completedReduceTasks = new ConcurrentHashMap<Integer, Boolean>();
+		}
 	}
 
-	public synchronized void combinerInputReceived(CombineInput combineInput) {
+	public void combinerInputReceived(CombineInput combineInput) {
 		this.jobStatus.incrementCombineInputs();
+		checkCompletion();
 	}
 
-	private int getElapsedTimeInMinutes(long beginTime) {
-		return (int) ((System.currentTimeMillis() - beginTime) / (1000 * 60));
+	/**
+	 * Counts several combine inputs at once, used when the inputs are merged
+	 * before they are combined.
+	 */
+	public void combinerInputsReceived(int numInputs) {
+		this.jobStatus.addCombineInputs(numInputs);
+		checkCompletion();
 	}
 
 	public Exception getMonitoringException() {
@@ -122,13 +166,28 @@ public class TwisterMonitorBasic implements TwisterConstants, TwisterMonitor {
 		if (hasMonitoringException) {
 			throw new TwisterException(monitoringException);
 		}
+		return allTasksCompleted(jobStatus);
+	}
 
-		if (jobStatus.getNumSuccessfulMapTasks() == jobConf.getNumMapTasks()
+	private boolean allTasksCompleted(JobStatus jobStatus) {
+		// In the stale synchronous mode some map tasks may not complete in
+		// this iteration, hence the reduce phase decides the completion.
+		boolean mapsCompleted = (stalenessTracker != null) ? stalenessTracker
+				.isStartReduceSent() : jobStatus.getNumSuccessfulMapTasks() == jobConf
+				.getNumMapTasks();
+		// With AllReduce, every participating daemon reports the completion of
+		// the collective operation.
+		if (jobConf.isHasAllReduceClass()) {
+			return mapsCompleted
+					&& jobStatus.getNumSuccessfulAllReduceTasks() == driver
+							.getAllReducePlan().getNumParticipants();
+		}
+		if (mapsCompleted
 				&& jobStatus.getNumSuccessfulReduceTasks() == jobConf
 						.getNumReduceTasks()) {
 			if (hasCombiner) {
-				if (this.jobStatus.getNumCombineInputsReceived() == jobConf
-						.getNumReduceTasks()) {
+				if (jobStatus.getNumCombineInputsReceived() == driver
+						.getNumCombineInputsExpected()) {
 					return true;
 				} else {
 					return false;
@@ -141,39 +200,156 @@ public class TwisterMonitorBasic implements TwisterConstants, TwisterMonitor {
 		}
 	}
 
-	public boolean isHasCombiner() {
-		return hasCombiner;
+	/**
+	 * Completes the current iteration if all of its tasks have completed. This
+	 * is called after every event that may complete the iteration.
+	 */
+	private void checkCompletion() {
+		JobCompletion current = completion;
+		JobStatus status = jobStatus;
+		if (!current.isDone() && allTasksCompleted(status)) {
+			current.complete(status);
+		}
 	}
 
 	/**
-	 * Monitors till the completion of the job.
+	 * Waits till the current iteration completes or the deadline passes. The
+	 * thread sleeps on the completion of the iteration and wakes up every
+	 * MONITOR_CHECK_INTERVAL to speculate stragglers and to handle faults.
 	 * 
-	 * @return job status.
+	 * @param deadline
+	 *            - time in milliseconds to wait till.
+	 * @param handleFaults
+	 *            - whether to recover from the faults detected meanwhile.
+	 * @return true if the iteration completed.
 	 * @throws TwisterException
 	 */
-	public JobStatus monitorTillCompletion() throws TwisterException {
-		int waitCount=0;
+	private boolean awaitCompletion(long deadline, boolean handleFaults)
+			throws TwisterException {
+		checkCompletion();
+		long lastFaultCheck = System.currentTimeMillis();
 		while (!isComplete()) {
+			long now = System.currentTimeMillis();
+			if (now >= deadline) {
+				return false;
+			}
 			try {
-				Thread.sleep(TwisterConstants.MONITOR_SLEEP_TIME);
+				if (completion.await(Math.min(MONITOR_CHECK_INTERVAL, deadline
+						- now))) {
+					continue;
+				}
 			} catch (InterruptedException e) {
 				logger.error(e);
 			}
-			waitCount++;
-			if(waitCount%WAIT_COUNT_FOR_FAULTS==0){
-				if(this.driver.getFaultDetector().isHasFault()){
+			if (stragglerTracker != null) {
+				this.driver.speculateStragglers();
+			}
+			if (handleFaults
+					&& System.currentTimeMillis() - lastFaultCheck >= MONITOR_FAULT_CHECK_INTERVAL) {
+				lastFaultCheck = System.currentTimeMillis();
+				if (this.driver.getFaultDetector().isHasFault()) {
 					System.out.println("Begin to handle Failure in monitorTillCompletion");
 					this.driver.handleFailures();
 					//ZBJ: do internal recovery, no break required
-					//this.jobStatus.setFailed();	
-					//break;
 				}
 			}
-			
-			if (hasMonitoringException) {
-				throw new TwisterException(monitoringException);
+		}
+		return true;
+	}
+
+	private void rememberStatus(TaskStatus status) {
+		synchronized (recentTaskStatuses) {
+			recentTaskStatuses.addLast(status);
+			if (recentTaskStatuses.size() > TwisterConstants.NUM_RECENT_TASK_STATUSES) {
+				recentTaskStatuses.removeFirst();
 			}
 		}
+	}
+
+	/**
+	 * Returns the last task statuses received, oldest first.
+	 */
+	public List<TaskStatus> getRecentTaskStatuses() {
+		synchronized (recentTaskStatuses) {
+			return new ArrayList<TaskStatus>(recentTaskStatuses);
+		}
+	}
+
+	private void traceStatus(String name, TaskStatus status) {
+		if (driver.getTraceCollector() != null) {
+			driver.getTraceCollector().getTracer().instant(name,
+					status.getTaskNo(), status.getIteration());
+		}
+	}
+
+	/**
+	 * Post processing of a completed iteration, which runs once even if the
+	 * completion is retrieved several times.
+	 */
+	private void finishIteration() {
+		if (!iterationFinished.compareAndSet(false, true)) {
+			return;
+		}
+		if (mapTaskRebalancer != null) {
+			mapTaskRebalancer.iterationCompleted(jobStatus);
+		}
+		this.driver.recordMapTaskRates(jobStatus);
+		this.driver.checkpointIteration();
+		long iterationEndTime = System.nanoTime();
+		this.driver.getDriverMetrics().recordIteration(
+				iterationEndTime - iterationBeginTime);
+		if (driver.getTraceCollector() != null) {
+			driver.getTraceCollector().getTracer().span("iteration",
+					iterationBeginTime, iterationEndTime, -1,
+					driver.getIterationCount());
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Phases of the iteration:\n"
+					+ jobStatus.getPhaseReport());
+		}
+		if (logger.isInfoEnabled()) {
+			IterationReport report = new IterationReport(jobStatus,
+					iterationBeginTime, iterationEndTime,
+					driver.getMapPartitionNames(),
+					TwisterConstants.NUM_STRAGGLERS_REPORTED);
+			String pressure = "";
+			if (driver.getFaultDetector() != null) {
+				ClusterPressure clusterPressure = driver.getFaultDetector()
+						.getClusterPressure();
+				if (clusterPressure.getNumDaemons() > 0) {
+					pressure = "cluster " + clusterPressure + "\n";
+				}
+			}
+			logger.info("Iteration " + driver.getIterationCount() + ":\n"
+					+ report.format() + pressure);
+		}
+	}
+
+	/**
+	 * Records the time the client spent in a phase of <code>TaskMetrics</code>
+	 * for the current iteration.
+	 */
+	public void recordDriverTime(int phase, long nanos) {
+		jobStatus.getDriverMetrics().addTime(phase, nanos);
+	}
+
+	public void recordDriverBytes(int counter, long bytes) {
+		jobStatus.getDriverMetrics().addBytes(counter, bytes);
+	}
+
+	public boolean isHasCombiner() {
+		return hasCombiner;
+	}
+
+	/**
+	 * Monitors till the completion of the job.
+	 * 
+	 * @return job status.
+	 * @throws TwisterException
+	 */
+	public JobStatus monitorTillCompletion() throws TwisterException {
+		awaitCompletion(Long.MAX_VALUE, true);
+		finishIteration();
 		this.driver.setMonitoringCompletes();
 		//Once this iteration is done, remove the backup of the keyvalues or bcastvalues
 		this.driver.setLastKeyValuePair(null);
@@ -191,19 +367,67 @@ public class TwisterMonitorBasic implements TwisterConstants, TwisterMonitor {
 	 */
 	public JobStatus monitorTillCompletion(int maxMinutes)
 			throws TwisterException {
-		long beginTime = System.currentTimeMillis();
-		while (!(isComplete() || getElapsedTimeInMinutes(beginTime) > maxMinutes)) {
+		// Waits till the elapsed whole minutes exceed maxMinutes.
+		long deadline = System.currentTimeMillis() + (maxMinutes + 1L) * 60000;
+		if (awaitCompletion(deadline, false)) {
+			finishIteration();
+		}
+		this.driver.setMonitoringCompletes();
+		return this.jobStatus;
+	}
+
+	/**
+	 * Returns the completion of the current iteration without blocking. The
+	 * future is done as soon as all the tasks of the iteration complete, so
+	 * the driver may overlap its own work with the running iteration.
+	 * Retrieving the result finishes the monitoring the same way as
+	 * monitorTillCompletion(), and handles stragglers and faults while
+	 * waiting. The future follows the iteration across a restart after a
+	 * fault, and should not be kept after the next iteration starts.
+	 */
+	public Future<JobStatus> whenComplete() {
+		return new IterationFuture();
+	}
+
+	private class IterationFuture implements Future<JobStatus> {
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public boolean isDone() {
+			return completion.isDone();
+		}
+
+		public JobStatus get() throws InterruptedException,
+				ExecutionException {
 			try {
-				Thread.sleep(TwisterConstants.MONITOR_SLEEP_TIME);
-			} catch (InterruptedException e) {
-				logger.error(e);
+				return monitorTillCompletion();
+			} catch (TwisterException e) {
+				throw new ExecutionException(e);
 			}
-			if (hasMonitoringException) {
-				throw new TwisterException(monitoringException);
+		}
+
+		public JobStatus get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException,
+				TimeoutException {
+			long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+			if (deadline < 0) {
+				deadline = Long.MAX_VALUE;
+			}
+			try {
+				if (!awaitCompletion(deadline, true)) {
+					throw new TimeoutException();
+				}
+				return monitorTillCompletion();
+			} catch (TwisterException e) {
+				throw new ExecutionException(e);
 			}
 		}
-		this.driver.setMonitoringCompletes();
-		return this.jobStatus;
 	}
 
 	/**
@@ -215,52 +439,163 @@ public class TwisterMonitorBasic implements TwisterConstants, TwisterMonitor {
 			if (message[0] == TwisterConstants.TASK_STATUS) {
 				try {
 					TaskStatus status = new TaskStatus(message);
+					status.setReceiveTime(System.nanoTime());
+					rememberStatus(status);
+					if (status.getProfile() != null
+							&& driver.getProfileCollector() != null) {
+						driver.getProfileCollector().add(status.getProfile());
+					}
+					if (status.getDaemonNo() >= 0
+							&& driver.getFaultDetector() != null) {
+						driver.getFaultDetector().heartbeat(status.getDaemonNo());
+					}
 					if (status.getTaskType() == MAP_TASK) {
-						if (status.getStatus() == SUCCESS) {
-							totalSequentialExecutionTime+=status.getExecuationTime();
-							Map<Integer,Integer> reduceMap=status.getReduceInputMap();
-							Iterator<Integer> ite= reduceMap.keySet().iterator();
-							int key;
-							int value;							
-							while(ite.hasNext()){
-								key=ite.next();
-								//System.out.println("Reduce task "+key);
-								value=reduceInputMap.get(key);
-								value=value+reduceMap.get(key).intValue();
-								reduceInputMap.put(key,value);
-							}
+						if (status.getStatus() == SUCCESS && stalenessTracker != null) {
+							totalSequentialExecutionTime.addAndGet(status.getExecuationTime());
 							this.jobStatus.incrementSuccessfulMapTasks();
-							if(jobStatus.getNumSuccessfulMapTasks()==jobConf.getNumMapTasks()){
+							handleStaleMapCompletion(status);
+						} else if (status.getStatus() == SUCCESS) {
+							// With speculative execution only the first
+							// result of a map task is used.
+							if (stragglerTracker != null
+									&& !stragglerTracker.mapCompleted(status
+											.getTaskNo(),
+											status.getIteration(), status
+													.getExecuationTime())) {
+								logger.debug("Ignoring a duplicate result of map task "
+										+ status.getTaskNo());
+								return;
+							}
+							if (completedMapTasks != null
+									&& completedMapTasks.put(status.getTaskNo(),
+											Boolean.TRUE) != null) {
+								logger.debug("Ignoring a rerun of map task "
+										+ status.getTaskNo());
+								return;
+							}
+							totalSequentialExecutionTime.addAndGet(status.getExecuationTime());
+							driver.getDriverMetrics().recordMapTask(
+									status.getExecuationTime() * 1000000);
+							addReduceInputs(status.getReduceInputMap());
+							// Only the last map task sees the total count.
+							if(this.jobStatus.incrementSuccessfulMapTasks()==jobConf.getNumMapTasks() && !jobConf.isHasAllReduceClass()){
 								driver.sendStartReduceMessage(reduceInputMap);
 							}
 						} else if (status.getStatus() == FAILED) {
 							this.jobStatus.incrementFailedMapTasks();
 						}
 						this.jobStatus.addMapTaskStatus(status);
+						traceStatus("map-status", status);
 					} else if (status.getTaskType() == REDUCE_TASK) {
+						if (status.getStatus() == SUCCESS
+								&& completedReduceTasks != null
+								&& completedReduceTasks.put(status.getTaskNo(),
+										Boolean.TRUE) != null) {
+							logger.debug("Ignoring a rerun of reduce task "
+									+ status.getTaskNo());
+							return;
+						}
 						if (status.getStatus() == SUCCESS) {
-							totalSequentialExecutionTime+=status.getExecuationTime();
+							totalSequentialExecutionTime.addAndGet(status.getExecuationTime());
+							driver.getDriverMetrics().recordReduceTask(
+									status.getExecuationTime() * 1000000);
 							this.jobStatus.incrementSuccessfulReduceTasks();
 						} else if (status.getStatus() == FAILED) {
 							this.jobStatus.incrementFailedReduceTasks();
 						}
 						this.jobStatus.addReduceTaskStatus(status);
+						traceStatus("reduce-status", status);
+					} else if (status.getTaskType() == ALL_REDUCE_TASK) {
+						if (status.getStatus() == SUCCESS) {
+							this.jobStatus.incrementSuccessfulAllReduceTasks();
+						} else if (status.getStatus() == FAILED) {
+							setMonitoringException(new Exception(
+									"AllReduce failed at daemon "
+											+ status.getTaskNo() + ": "
+											+ status.getExceptionString()));
+						}
 					}
 				} catch (Exception e) {
 					e.printStackTrace();
 					setMonitoringException(new Exception(
 							"Monitor encoutered errors.", e));
 				}
+				checkCompletion();
+			}
+		}
+	}
+
+	/**
+	 * Adds the number of inputs a map task produced for each reduce task.
+	 * The counts are updated with compare and swap, since the map outputs may
+	 * be counted by several threads.
+	 */
+	private void addReduceInputs(Map<Integer, Integer> reduceMap) {
+		for (Map.Entry<Integer, Integer> entry : reduceMap.entrySet()) {
+			Integer key = entry.getKey();
+			int numInputs = entry.getValue().intValue();
+			while (true) {
+				Integer value = reduceInputMap.get(key);
+				if (value == null) {
+					if (reduceInputMap.putIfAbsent(key, numInputs) == null) {
+						break;
+					}
+				} else if (reduceInputMap.replace(key, value, value
+						.intValue()
+						+ numInputs)) {
+					break;
+				}
 			}
 		}
 	}
 	
+	/**
+	 * Handles a completed map task in the stale synchronous mode. A map task
+	 * that completed an older iteration is immediately dispatched with the
+	 * current iteration, and the reduce phase starts as soon as all the map
+	 * tasks are within the staleness bound.
+	 * 
+	 * @param status
+	 * @throws TwisterException
+	 */
+	private void handleStaleMapCompletion(TaskStatus status)
+			throws TwisterException {
+		if (stalenessTracker.mapCompleted(status.getTaskNo(), status
+				.getIteration(), status.getReduceInputMap())) {
+			driver.redispatchStaleMapTask(status.getTaskNo());
+		}
+		driver.startReduceIfWithinStalenessBound();
+	}
+
+	/**
+	 * Checks whether all the map tasks of this iteration completed, after
+	 * which the reduce tasks are started.
+	 */
+	public boolean isStartReduceSent() {
+		return jobStatus.getNumSuccessfulMapTasks() == jobConf.getNumMapTasks();
+	}
+
+	public boolean isMapTaskCompleted(int mapTaskNo) {
+		TaskStatus status = jobStatus.getMapTaskStatuses(mapTaskNo);
+		return status != null && status.getStatus() == SUCCESS;
+	}
+
+	public boolean isReduceTaskCompleted(int reduceTaskNo) {
+		TaskStatus status = jobStatus.getReduceTaskStatuses(reduceTaskNo);
+		return status != null && status.getStatus() == SUCCESS;
+	}
+
+	public ConcurrentHashMap<Integer, Integer> getReduceInputMap() {
+		return reduceInputMap;
+	}
+
 	public double getTotalSequentialTimeSeconds(){
-		return ((double)totalSequentialExecutionTime)/1000;
+		return ((double)totalSequentialExecutionTime.get())/1000;
 	}
 
 	public void resetMonitor() {
-		totalSequentialExecutionTime=0;
+		totalSequentialExecutionTime.set(0);
+		iterationBeginTime = System.nanoTime();
 		this.hasMonitoringException = false;
 		this.monitoringException = null;
 		this.reduceInputMap.clear();
@@ -268,6 +603,12 @@ public class TwisterMonitorBasic implements TwisterConstants, TwisterMonitor {
 			reduceInputMap.put(i,0);
 		}
 		this.jobStatus = new JobStatus(jobConf);
+		this.iterationFinished.set(false);
+		this.completion = new JobCompletion();
+		if (completedMapTasks != null) {
+			completedMapTasks.clear();
+			completedReduceTasks.clear();
+		}
 	}
 
 	public void setHasCombiner(boolean hasCombiner) {
@@ -275,7 +616,9 @@ public class TwisterMonitorBasic implements TwisterConstants, TwisterMonitor {
 	}
 
 	public void setMonitoringException(Exception monitoringException) {
-		this.hasMonitoringException = true;
 		this.monitoringException = monitoringException;
+		this.hasMonitoringException = true;
+		// Wakes up the threads waiting for the iteration.
+		this.completion.fail(monitoringException);
 	}
 }
@@ -77,9 +77,23 @@ public class AMQConfigurations {
 	final static String key_uri = "uri";
 	final static String properties_file = "amq.properties";
 
+	// Replaces the uri of amq.properties, e.g. with an embedded broker.
+	private static volatile String uriOverride;
+
 	protected String uri;
 	protected Random rands;
 
+	/**
+	 * Makes all the connections created afterwards in this process use the
+	 * given broker uri instead of the one in amq.properties.
+	 * 
+	 * @param uri
+	 *            - broker uri, or null to use amq.properties again.
+	 */
+	public static void setURIOverride(String uri) {
+		uriOverride = uri;
+	}
+
 	/**
 	 * Public Constructor
 	 * 
@@ -98,6 +112,10 @@ public class AMQConfigurations {
 	 */
 	protected AMQConfigurations(String propertiesFile)
 			throws ConfigurationException {
+		if (uriOverride != null) {
+			uri = uriOverride;
+			return;
+		}
 		try {
 			Properties properties = PropertyLoader
 					.loadProperties(propertiesFile);
@@ -71,6 +71,7 @@ import org.apache.activemq.ActiveMQConnectionFactory;
 import cgl.imr.base.PubSubException;
 import cgl.imr.base.PubSubService;
 import cgl.imr.base.Subscribable;
+import cgl.imr.base.TopicSubscribable;
 import cgl.imr.base.TwisterConstants.EntityType;
 import cgl.imr.config.ConfigurationException;
 
@@ -293,7 +294,13 @@ public class MQPubSubService implements PubSubService, MessageListener {
 				message = new byte[(int) bytes.getBodyLength()];
 				bytes.readBytes(message);
 
-				this.subscriber.onEvent(message);
+				if (this.subscriber instanceof TopicSubscribable) {
+					((TopicSubscribable) this.subscriber).onEvent(
+							((Topic) mqMessage.getJMSDestination())
+									.getTopicName(), message);
+				} else {
+					this.subscriber.onEvent(message);
+				}
 
 			} catch (Exception e) {
 				// try to get all exception including the exception
@@ -60,6 +60,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import cgl.imr.base.PubSubException;
 import cgl.imr.base.PubSubService;
 import cgl.imr.base.Subscribable;
+import cgl.imr.base.TopicSubscribable;
 import cgl.imr.base.TwisterConstants.EntityType;
 import cgl.imr.config.ConfigurationException;
 import cgl.narada.event.NBEvent;
@@ -153,7 +154,11 @@ public class NBPubSubService implements PubSubService, NBEventListener {
 	 * subscribable's <code>onEvent()</code> method.
 	 */
 	public void onEvent(NBEvent nbMessage) {
-		if (this.subscriber != null) {
+		if (this.subscriber instanceof TopicSubscribable) {
+			((TopicSubscribable) this.subscriber).onEvent(String
+					.valueOf(nbMessage.getContentSynopsis()), nbMessage
+					.getContentPayload());
+		} else if (this.subscriber != null) {
 			this.subscriber.onEvent(nbMessage.getContentPayload());
 		}
 	}
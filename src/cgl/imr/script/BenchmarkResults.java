@@ -0,0 +1,145 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.script;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects the iteration latencies of a benchmark run and writes them as
+ * tab separated rows (run, benchmark, daemons, iteration, milliseconds,
+ * items per second), one per iteration and a final "all" row for the whole
+ * run. The rows are appended to the results file, so the runs of a sweep
+ * end up in one table.
+ * 
+ */
+public class BenchmarkResults {
+
+	public static final String HEADER = "run\tbenchmark\tdaemons\titeration\tmillis\titems_per_second";
+
+	private String benchmark;
+	private int numDaemons;
+	private long itemsPerIteration;
+	private long run = System.currentTimeMillis();
+	private List<Long> iterationNanos = new ArrayList<Long>();
+	private long iterationBegin;
+
+	/**
+	 * @param itemsPerIteration
+	 *            - number of items (data points, urls, vertices) processed
+	 *            in an iteration, to compute the throughput.
+	 */
+	public BenchmarkResults(String benchmark, int numDaemons,
+			long itemsPerIteration) {
+		this.benchmark = benchmark;
+		this.numDaemons = numDaemons;
+		this.itemsPerIteration = itemsPerIteration;
+	}
+
+	public void beginIteration() {
+		iterationBegin = System.nanoTime();
+	}
+
+	public void endIteration() {
+		iterationNanos.add(System.nanoTime() - iterationBegin);
+	}
+
+	public int getNumIterations() {
+		return iterationNanos.size();
+	}
+
+	public long getTotalNanos() {
+		long total = 0;
+		for (long nanos : iterationNanos) {
+			total += nanos;
+		}
+		return total;
+	}
+
+	private String row(String iteration, int numIterations, long nanos) {
+		double seconds = nanos / 1e9;
+		return String.format(Locale.US, "%d\t%s\t%d\t%s\t%.3f\t%.1f", run,
+				benchmark, numDaemons, iteration, nanos / 1e6, seconds == 0 ? 0
+						: itemsPerIteration * numIterations / seconds);
+	}
+
+	/**
+	 * Appends the rows of this run to the given file, writing the header first
+	 * when the file is new, and prints them.
+	 */
+	public void write(File file) throws IOException {
+		boolean isNew = !file.exists() || file.length() == 0;
+		PrintWriter writer = new PrintWriter(new FileWriter(file, true));
+		try {
+			if (isNew) {
+				writer.println(HEADER);
+			}
+			System.out.println(HEADER);
+			for (int i = 0; i < iterationNanos.size(); i++) {
+				String line = row(String.valueOf(i), 1, iterationNanos.get(i));
+				writer.println(line);
+				System.out.println(line);
+			}
+			String line = row("all", iterationNanos.size(), getTotalNanos());
+			writer.println(line);
+			System.out.println(line);
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.script;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.TwisterException;
+import cgl.imr.config.TwisterConfigurations;
+import cgl.imr.pubsub.mq.AMQConfigurations;
+import cgl.imr.worker.DaemonWorker;
+import cgl.imr.worker.DataCache;
+
+/**
+ * Runs an embedded ActiveMQ broker and a number of daemons inside the current
+ * process, so that a <code>TwisterDriver</code> created afterwards in the same
+ * process runs its jobs end to end without a cluster. The broker listens on a
+ * free loopback port. The daemons share a private nodes file, data directory
+ * and (empty) application directory under the given working directory, so the
+ * map tasks are loaded from the classpath. twister.properties must still be
+ * on the classpath; its broker, node and directory settings are replaced.
+ * 
+ * Each daemon keeps the class loaders of its jobs, and since the application
+ * directory is empty they all load the classes of the job from the classpath.
+ * The daemons run in one process and share the <code>MemCache</code>, hence
+ * the first daemon ending a job removes its cached objects for the others.
+ * The numbers measured with the local cluster show the cost of the runtime
+ * and the broker rather than that of the network.
+ * 
+ */
+public class LocalCluster {
+
+	private static Logger logger = Logger.getLogger(LocalCluster.class);
+
+	public static final String LOCAL_HOST = "127.0.0.1";
+
+	private BrokerService broker;
+	private List<DaemonWorker> daemons = new ArrayList<DaemonWorker>();
+	private File dataDir;
+
+	public LocalCluster(int numDaemons, int workersPerDaemon, File workDir)
+			throws TwisterException {
+		dataDir = new File(workDir, "data");
+		File appDir = new File(workDir, "apps");
+		File nodesFile = new File(workDir, "nodes");
+		try {
+			if (!(dataDir.isDirectory() || dataDir.mkdirs())
+					|| !(appDir.isDirectory() || appDir.mkdirs())) {
+				throw new IOException("Could not create " + workDir);
+			}
+			BufferedWriter writer = new BufferedWriter(
+					new FileWriter(nodesFile));
+			writer.write(LOCAL_HOST + "\n");
+			writer.close();
+
+			broker = new BrokerService();
+			broker.setBrokerName("twister-local");
+			broker.setPersistent(false);
+			broker.setUseJmx(false);
+			TransportConnector connector = broker.addConnector("tcp://"
+					+ LOCAL_HOST + ":0");
+			broker.start();
+			AMQConfigurations.setURIOverride(connector.getConnectUri()
+					.toString());
+			logger.info("Embedded broker started at "
+					+ connector.getConnectUri());
+
+			TwisterConfigurations config = TwisterConfigurations.getInstance();
+			config.setPubsubBroker("ActiveMQ");
+			config.setNodeFile(nodesFile.getAbsolutePath());
+			config.setDamonsPerNode(numDaemons);
+			config.setWorkersPerDaemon(workersPerDaemon);
+			config.setLocalDataDir(dataDir.getAbsolutePath());
+			config.setLocalAppJarDir(appDir.getAbsolutePath());
+
+			for (int i = 0; i < numDaemons; i++) {
+				daemons.add(new DaemonWorker(i, workersPerDaemon,
+						new DataCache(), config.getDaemonPortBase() + i,
+						LOCAL_HOST));
+			}
+		} catch (Exception e) {
+			close();
+			throw new TwisterException("Could not start the local cluster.", e);
+		}
+	}
+
+	public int getNumDaemons() {
+		return daemons.size();
+	}
+
+	public List<DaemonWorker> getDaemons() {
+		return daemons;
+	}
+
+	/**
+	 * @return the data directory shared by all the daemons.
+	 */
+	public File getDataDir() {
+		return dataDir;
+	}
+
+	/**
+	 * Creates a sub directory of the data directory, as
+	 * <code>twister.sh mkdir</code> does on a cluster.
+	 */
+	public File mkdir(String subDir) throws TwisterException {
+		File dir = new File(dataDir, subDir);
+		if (!(dir.isDirectory() || dir.mkdirs())) {
+			throw new TwisterException("Could not create " + dir);
+		}
+		return dir;
+	}
+
+	/**
+	 * Writes a partition file assigning the files of a sub directory of the
+	 * data directory to the daemons in turn. <code>PartitionFileCreator</code>
+	 * cannot be used since every daemon would list all the files of the
+	 * shared data directory.
+	 * 
+	 * @return number of files in the partition file.
+	 */
+	public int createPartitionFile(String subDir, final String filter,
+			String partitionFile) throws TwisterException {
+		File[] files = new File(dataDir, subDir).listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().contains(filter);
+			}
+		});
+		if (files == null) {
+			throw new TwisterException("Directory " + subDir
+					+ " does not exist.");
+		}
+		Arrays.sort(files);
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(
+					partitionFile));
+			for (int i = 0; i < files.length; i++) {
+				writer.write(i + "," + LOCAL_HOST + "," + (i % daemons.size())
+						+ "," + files[i].getAbsolutePath() + ","
+						+ files[i].length() + "\n");
+			}
+			writer.close();
+		} catch (IOException e) {
+			throw new TwisterException(e);
+		}
+		return files.length;
+	}
+
+	/**
+	 * Stops the daemons and the broker.
+	 */
+	public void close() {
+		// Each daemon waits a few seconds before it terminates.
+		List<Thread> stoppers = new ArrayList<Thread>();
+		for (final DaemonWorker daemon : daemons) {
+			Thread stopper = new Thread(new Runnable() {
+				public void run() {
+					try {
+						daemon.termintate();
+					} catch (Exception e) {
+						logger.error(e);
+					}
+				}
+			});
+			stopper.start();
+			stoppers.add(stopper);
+		}
+		for (Thread stopper : stoppers) {
+			try {
+				stopper.join();
+			} catch (InterruptedException e) {
+				logger.error(e);
+			}
+		}
+		daemons.clear();
+		if (broker != null) {
+			try {
+				broker.stop();
+			} catch (Exception e) {
+				logger.error(e);
+			}
+			broker = null;
+		}
+		AMQConfigurations.setURIOverride(null);
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.script;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.config.TwisterConfigurations;
+import cgl.imr.util.TrafficRecord;
+import cgl.imr.util.TrafficRecorder;
+import cgl.imr.util.TrafficReplayer;
+import cgl.imr.worker.DaemonMetrics;
+import cgl.imr.worker.DaemonWorker;
+import cgl.imr.worker.DataCache;
+
+/**
+ * Inspects the pub/sub traffic recorded with pubsub_record_dir, and replays
+ * the recording of a daemon into a fresh <code>DaemonWorker</code> in this
+ * process, without a broker, to measure a change against the same input.
+ * The daemon reads its data from the data_dir of twister.properties, so the
+ * replay runs on a node holding the partitions of the recorded daemon. A
+ * driver recording is replayed through <code>TrafficReplayer</code> from a
+ * program that configures the <code>TwisterDriver</code> with the job's own
+ * <code>JobConf</code>.
+ * 
+ */
+public class ReplayTool {
+
+	private static Logger logger = Logger.getLogger(ReplayTool.class);
+
+	private static final long POLL_INTERVAL = 100;
+	private static final int IDLE_POLLS = 5;
+
+	public static void main(String[] args) {
+		if (args.length == 2 && args[0].equals("list")) {
+			list(new File(args[1]));
+		} else if (args.length >= 3 && args[0].equals("daemon")) {
+			boolean realTime = true;
+			long from = 0;
+			long to = Long.MAX_VALUE;
+			for (int i = 3; i < args.length; i++) {
+				if (args[i].equals("-fast")) {
+					realTime = false;
+				} else if (args[i].equals("-from") && i + 1 < args.length) {
+					from = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-to") && i + 1 < args.length) {
+					to = Long.parseLong(args[++i]);
+				} else {
+					usage();
+				}
+			}
+			replayDaemon(new File(args[1]), Integer.parseInt(args[2]),
+					realTime, from, to);
+		} else {
+			usage();
+		}
+	}
+
+	private static void usage() {
+		System.out.println("Usage ReplayTool list [recording]");
+		System.out.println("      ReplayTool daemon [recording][daemon no]"
+				+ " [-fast][-from ms][-to ms]");
+		System.exit(0);
+	}
+
+	private static List<TrafficRecord> read(File file) {
+		try {
+			return TrafficRecorder.read(file);
+		} catch (Exception e) {
+			logger.error("Could not read the recording " + file, e);
+			System.exit(-1);
+			return null;
+		}
+	}
+
+	/**
+	 * Prints the number of messages and bytes sent and received on each
+	 * topic, and the time spanned by the recording.
+	 */
+	private static void list(File file) {
+		List<TrafficRecord> records = read(file);
+		Map<String, long[]> topics = new TreeMap<String, long[]>();
+		long last = 0;
+		for (TrafficRecord record : records) {
+			long[] counts = topics.get(record.getTopic());
+			if (counts == null) {
+				counts = new long[4];
+				topics.put(record.getTopic(), counts);
+			}
+			int offset = record.isReceived() ? 2 : 0;
+			counts[offset]++;
+			counts[offset + 1] += record.getMessage().length;
+			last = record.getNanos();
+		}
+		System.out.println(records.size() + " messages over " + last
+				/ 1000000L + " ms");
+		System.out.println("topic\tsent\tsent bytes\treceived\treceived bytes");
+		for (Map.Entry<String, long[]> entry : topics.entrySet()) {
+			long[] counts = entry.getValue();
+			System.out.println(entry.getKey() + "\t" + counts[0] + "\t"
+					+ counts[1] + "\t" + counts[2] + "\t" + counts[3]);
+		}
+	}
+
+	private static void replayDaemon(File file, int daemonNo,
+			boolean realTime, long from, long to) {
+		List<TrafficRecord> records = read(file);
+		DaemonWorker worker = null;
+		try {
+			TwisterConfigurations config = TwisterConfigurations.getInstance();
+			config.setPubsubBroker("None");
+			config.setPubsubRecordDir(null);
+			worker = new DaemonWorker(daemonNo, config.getWorkersPerDaemon(),
+					new DataCache(), config.getDaemonPortBase() + daemonNo,
+					InetAddress.getLocalHost().getHostAddress());
+
+			TrafficReplayer replayer = new TrafficReplayer(records);
+			replayer.setRealTime(realTime);
+			replayer.setWindow(from, to);
+			long begin = System.nanoTime();
+			replayer.replay(worker);
+			long elapsed = waitUntilIdle(worker.getMetrics()) - begin;
+
+			double seconds = elapsed / 1e9;
+			System.out.println("Replayed " + replayer.getMessagesReplayed()
+					+ " messages (" + replayer.getBytesReplayed()
+					+ " bytes) in " + elapsed / 1000000L + " ms, "
+					+ (long) (replayer.getMessagesReplayed() / seconds)
+					+ " messages/s, "
+					+ worker.getMetrics().getCompletedTasks()
+					+ " tasks completed.");
+		} catch (Exception e) {
+			logger.error("Replay of " + file + " failed.", e);
+		} finally {
+			if (worker != null) {
+				try {
+					worker.termintate();
+				} catch (Exception e) {
+					logger.error(e);
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Waits until the task pool of the daemon stays empty and idle, with no
+	 * task completing, for a few consecutive polls.
+	 * 
+	 * @return the time of the first poll of that idle run, in nanoseconds.
+	 */
+	private static long waitUntilIdle(DaemonMetrics metrics)
+			throws InterruptedException {
+		int idle = 0;
+		long completed = -1;
+		long idleSince = System.nanoTime();
+		while (idle < IDLE_POLLS) {
+			Thread.sleep(POLL_INTERVAL);
+			long nowCompleted = metrics.getCompletedTasks();
+			if (metrics.getTaskQueueDepth() == 0
+					&& metrics.getActiveTaskThreads() == 0
+					&& nowCompleted == completed) {
+				idle++;
+			} else {
+				idle = 0;
+				idleSince = System.nanoTime();
+			}
+			completed = nowCompleted;
+		}
+		return idleSince;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cgl.imr.base.TwisterConstants;
+
+/**
+ * Counts the pub/sub messages an entity handled, per message type, together
+ * with the bytes received and the time spent handling each type.
+ * 
+ */
+public class MessageMetrics {
+
+	private ConcurrentMap<Byte, AtomicLong> counts = new ConcurrentHashMap<Byte, AtomicLong>();
+	private ConcurrentMap<Byte, LatencyHistogram> latencies = new ConcurrentHashMap<Byte, LatencyHistogram>();
+	private AtomicLong bytesIn = new AtomicLong();
+
+	/**
+	 * Records a handled message.
+	 * 
+	 * @param message
+	 *            - the message, whose first byte is its type.
+	 * @param nanos
+	 *            - time spent handling it.
+	 */
+	public void record(byte[] message, long nanos) {
+		Byte type = message[0];
+		AtomicLong count = counts.get(type);
+		if (count == null) {
+			counts.putIfAbsent(type, new AtomicLong());
+			count = counts.get(type);
+		}
+		count.incrementAndGet();
+		LatencyHistogram latency = latencies.get(type);
+		if (latency == null) {
+			latencies.putIfAbsent(type, new LatencyHistogram());
+			latency = latencies.get(type);
+		}
+		latency.record(nanos);
+		bytesIn.addAndGet(message.length);
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public Map<String, Long> getCounts() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<Byte, AtomicLong> entry : counts.entrySet()) {
+			result.put(getMessageTypeName(entry.getKey()), entry.getValue()
+					.get());
+		}
+		return result;
+	}
+
+	public Map<String, HistogramSnapshot> getLatencies() {
+		Map<String, HistogramSnapshot> result = new TreeMap<String, HistogramSnapshot>();
+		for (Map.Entry<Byte, LatencyHistogram> entry : latencies.entrySet()) {
+			result.put(getMessageTypeName(entry.getKey()), entry.getValue()
+					.getSnapshot());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a readable name of a message type.
+	 */
+	public static String getMessageTypeName(byte type) {
+		switch (type) {
+		case TwisterConstants.MAPPER_REQUEST:
+			return "MapperRequest";
+		case TwisterConstants.REDUCE_WORKER_REQUEST:
+			return "ReducerRequest";
+		case TwisterConstants.MAP_TASK_REQUEST:
+			return "MapTaskRequest";
+		case TwisterConstants.REDUCE_INPUT:
+			return "ReduceInput";
+		case TwisterConstants.MAP_ITERATIONS_OVER:
+			return "EndJobRequest";
+		case TwisterConstants.COMBINE_INPUT:
+			return "CombineInput";
+		case TwisterConstants.TASK_STATUS:
+			return "TaskStatus";
+		case TwisterConstants.DIR_LIST_REQ:
+			return "DirListRequest";
+		case TwisterConstants.DIR_LIST_RES:
+			return "DirListResponse";
+		case TwisterConstants.WORKER_RESPONSE:
+			return "WorkerResponse";
+		case TwisterConstants.NEW_JOB_REQUEST:
+			return "NewJobRequest";
+		case TwisterConstants.NEW_JOB_RESPONSE:
+			return "NewJobResponse";
+		case TwisterConstants.MEMCACHE_INPUT:
+			return "MemCacheInput";
+		case TwisterConstants.MEMCACHE_CLEAN:
+			return "MemCacheClean";
+		case TwisterConstants.DAEMON_STATUS:
+			return "DaemonStatus";
+		case TwisterConstants.START_REDUCE:
+			return "StartReduce";
+		case TwisterConstants.COMBINER_REQUEST:
+			return "CombinerRequest";
+		case TwisterConstants.TRACE_DATA:
+			return "TraceData";
+		case TwisterConstants.MAPPER_REMOVAL:
+			return "MapperRemoval";
+		default:
+			return "Type" + type;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.util;
+
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.TwisterConstants;
+
+/**
+ * Counts the messages and bytes sent and received on each group of topics by
+ * the pub/sub services of this process, and the time the subscribers spent
+ * handling the received messages. The topics that carry a job id, a daemon
+ * number or a reducer number are grouped by their base, e.g. all the reduce
+ * topics are counted under <code>/twister/reduce/topic/*</code>. The
+ * metrics are kept once per process, since the driver and the daemons
+ * open several pub/sub services.
+ * 
+ */
+public class PubSubMetrics implements PubSubMetricsMXBean {
+
+	private static Logger logger = Logger.getLogger(PubSubMetrics.class);
+
+	private static PubSubMetrics metrics; // Singleton.
+
+	// Topic of the received messages when the pub/sub service does not
+	// provide it.
+	public static final String UNKNOWN_TOPIC = "unknown";
+
+	private static final String[] TOPIC_BASES = {
+			TwisterConstants.COMBINE_TOPIC_BASE,
+			TwisterConstants.MAP_REDUCE_TOPIC_BASE,
+			TwisterConstants.REDUCE_TOPIC_BASE,
+			TwisterConstants.RESPONSE_TOPIC_BASE,
+			TwisterConstants.PARTITION_FILE_RESPONSE_TOPIC_BASE };
+
+	private static class TopicStats {
+		private SizeHistogram sent = new SizeHistogram();
+		private SizeHistogram received = new SizeHistogram();
+		private LatencyHistogram handling = new LatencyHistogram();
+	}
+
+	private ConcurrentHashMap<String, TopicStats> topics = new ConcurrentHashMap<String, TopicStats>();
+	private Timer summaryTimer;
+
+	public synchronized static PubSubMetrics getInstance() {
+		if (metrics == null) {
+			metrics = new PubSubMetrics();
+			MBeanRegistrar.register(metrics, "type=PubSubMetrics");
+		}
+		return metrics;
+	}
+
+	/**
+	 * Returns the group a topic is counted under.
+	 */
+	public static String getTopicGroup(String topic) {
+		for (String base : TOPIC_BASES) {
+			if (topic.startsWith(base) && topic.length() > base.length()) {
+				return base.endsWith("/") ? base + "*" : base + "/*";
+			}
+		}
+		return topic;
+	}
+
+	private TopicStats getStats(String topic) {
+		String group = getTopicGroup(topic);
+		TopicStats stats = topics.get(group);
+		if (stats == null) {
+			topics.putIfAbsent(group, new TopicStats());
+			stats = topics.get(group);
+		}
+		return stats;
+	}
+
+	public void recordSent(String topic, int bytes) {
+		getStats(topic).sent.record(bytes);
+	}
+
+	/**
+	 * Records a received message and the nanoseconds its subscriber spent
+	 * handling it.
+	 */
+	public void recordReceived(String topic, int bytes, long handlingNanos) {
+		TopicStats stats = getStats(topic);
+		stats.received.record(bytes);
+		stats.handling.record(handlingNanos);
+	}
+
+	public Map<String, TopicSnapshot> getTopics() {
+		Map<String, TopicSnapshot> snapshots = new TreeMap<String, TopicSnapshot>();
+		for (Map.Entry<String, TopicStats> entry : topics.entrySet()) {
+			TopicStats stats = entry.getValue();
+			snapshots.put(entry.getKey(), new TopicSnapshot(stats.sent
+					.getCount(), stats.sent.getTotalBytes(), stats.sent
+					.getPercentile(0.50), stats.sent.getPercentile(0.99),
+					stats.received.getCount(), stats.received.getTotalBytes(),
+					stats.received.getPercentile(0.50), stats.received
+							.getPercentile(0.99), stats.handling.getSnapshot()));
+		}
+		return snapshots;
+	}
+
+	public long getBytesSent() {
+		long bytes = 0;
+		for (TopicStats stats : topics.values()) {
+			bytes += stats.sent.getTotalBytes();
+		}
+		return bytes;
+	}
+
+	public long getBytesReceived() {
+		long bytes = 0;
+		for (TopicStats stats : topics.values()) {
+			bytes += stats.received.getTotalBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Logs the summary of the traffic periodically, from a daemon thread. Only
+	 * the first call starts the logging.
+	 * 
+	 * @param interval
+	 *            - milliseconds between two summaries.
+	 */
+	public synchronized void startSummaryLog(long interval) {
+		if (summaryTimer != null || interval <= 0) {
+			return;
+		}
+		summaryTimer = new Timer("twister-pubsub-metrics", true);
+		summaryTimer.schedule(new TimerTask() {
+			public void run() {
+				if (logger.isInfoEnabled() && !topics.isEmpty()) {
+					logger.info("Pub/sub traffic:\n" + getSummary());
+				}
+			}
+		}, interval, interval);
+	}
+
+	/**
+	 * Describes the traffic of each group of topics, one line per group.
+	 */
+	public String getSummary() {
+		StringBuilder summary = new StringBuilder();
+		for (Map.Entry<String, TopicSnapshot> entry : getTopics().entrySet()) {
+			TopicSnapshot topic = entry.getValue();
+			summary.append(String.format(
+					"%s sent %d msgs %.1fKB p99 %dB, received %d msgs %.1fKB"
+							+ " p99 %dB, handling mean %.2fms p99 %.2fms%n",
+					entry.getKey(), topic.getSentMessages(), topic
+							.getSentBytes() / 1024.0, topic.getSentP99Size(),
+					topic.getReceivedMessages(),
+					topic.getReceivedBytes() / 1024.0, topic
+							.getReceivedP99Size(), topic.getHandling()
+							.getMeanMillis(), topic.getHandling()
+							.getP99Millis()));
+		}
+		return summary.toString();
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of message sizes, counted in buckets of exponentially
+ * growing widths in bytes like the <code>LatencyHistogram</code>.
+ * 
+ */
+public class SizeHistogram {
+
+	private static final int NUM_BUCKETS = 48;
+
+	// Bucket i counts the sizes in [2^(i-1), 2^i) bytes.
+	private AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong totalBytes = new AtomicLong();
+	private AtomicLong maxBytes = new AtomicLong();
+
+	public void record(long bytes) {
+		int bucket = 64 - Long.numberOfLeadingZeros(Math.max(bytes, 0));
+		buckets.incrementAndGet(Math.min(bucket, NUM_BUCKETS - 1));
+		count.incrementAndGet();
+		totalBytes.addAndGet(bytes);
+		long max = maxBytes.get();
+		while (bytes > max && !maxBytes.compareAndSet(max, bytes)) {
+			max = maxBytes.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalBytes() {
+		return totalBytes.get();
+	}
+
+	public long getMaxBytes() {
+		return maxBytes.get();
+	}
+
+	/**
+	 * Returns the upper bound of the bucket holding the given fraction of the
+	 * sizes, bounded by the largest size recorded.
+	 */
+	public long getPercentile(double fraction) {
+		long[] counts = new long[NUM_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(1L << i, maxBytes.get());
+			}
+		}
+		return maxBytes.get();
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the events of the tasks of a job in memory. Every thread writes to
+ * its own ring buffer, so recording an event takes no shared lock and never
+ * allocates; when a buffer is full the oldest events are overwritten. The
+ * times come from the monotonic clock of the process, the driver aligns the
+ * clocks of the processes when it merges their events.
+ * 
+ */
+public class Tracer {
+
+	public static final int DEFAULT_BUFFER_SIZE = 16384;
+
+	private int bufferSize;
+	private List<TraceBuffer> buffers = new CopyOnWriteArrayList<TraceBuffer>();
+	private ThreadLocal<TraceBuffer> localBuffer = new ThreadLocal<TraceBuffer>() {
+		@Override
+		protected TraceBuffer initialValue() {
+			TraceBuffer buffer = new TraceBuffer(Thread.currentThread()
+					.getName(), bufferSize);
+			buffers.add(buffer);
+			return buffer;
+		}
+	};
+
+	public Tracer() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	public Tracer(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Records an event that spans the given times.
+	 */
+	public void span(String name, long beginNanos, long endNanos, int taskNo,
+			int iteration) {
+		localBuffer.get().add(name, beginNanos,
+				Math.max(endNanos - beginNanos, 0), taskNo, iteration);
+	}
+
+	/**
+	 * Records an event that happened now.
+	 */
+	public void instant(String name, int taskNo, int iteration) {
+		localBuffer.get().add(name, System.nanoTime(), -1, taskNo, iteration);
+	}
+
+	/**
+	 * Wraps a task so that the time it waited in the queue of the executor
+	 * and the time it ran are recorded.
+	 */
+	public Runnable wrap(final Runnable task, final String name,
+			final int taskNo, final int iteration) {
+		final long queuedTime = System.nanoTime();
+		return new Runnable() {
+			public void run() {
+				long beginTime = System.nanoTime();
+				span("queued", queuedTime, beginTime, taskNo, iteration);
+				try {
+					task.run();
+				} finally {
+					span(name, beginTime, System.nanoTime(), taskNo, iteration);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the events recorded so far by all the threads.
+	 */
+	public List<TraceEvent> getEvents() {
+		List<TraceEvent> events = new ArrayList<TraceEvent>();
+		for (TraceBuffer buffer : buffers) {
+			buffer.copyTo(events);
+		}
+		return events;
+	}
+
+	private static class TraceBuffer {
+		private String thread;
+		private String[] names;
+		private long[] begins;
+		private long[] durations;
+		private int[] taskNos;
+		private int[] iterations;
+		private int next = 0;
+		private boolean wrapped = false;
+
+		private TraceBuffer(String thread, int size) {
+			this.thread = thread;
+			this.names = new String[size];
+			this.begins = new long[size];
+			this.durations = new long[size];
+			this.taskNos = new int[size];
+			this.iterations = new int[size];
+		}
+
+		// Only contended when the events are collected.
+		private synchronized void add(String name, long begin, long duration,
+				int taskNo, int iteration) {
+			names[next] = name;
+			begins[next] = begin;
+			durations[next] = duration;
+			taskNos[next] = taskNo;
+			iterations[next] = iteration;
+			next++;
+			if (next == names.length) {
+				next = 0;
+				wrapped = true;
+			}
+		}
+
+		private synchronized void copyTo(List<TraceEvent> events) {
+			int count = wrapped ? names.length : next;
+			int first = wrapped ? next : 0;
+			for (int i = 0; i < count; i++) {
+				int index = (first + i) % names.length;
+				events.add(new TraceEvent(names[index], thread,
+						begins[index], durations[index], taskNos[index],
+						iterations[index]));
+			}
+		}
+	}
+}
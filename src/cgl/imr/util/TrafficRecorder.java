@@ -0,0 +1,158 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends the messages of a pub/sub service to a file, and reads them back.
+ * The file starts with a magic number and the wall clock time the recording
+ * started. Each topic is written once, the first time it is used, as a
+ * definition record (0, topic id, topic). A message is written as (1 if sent
+ * or 2 if received, nanoseconds since the start, topic id, length, bytes).
+ * A file cut short by a crash is read up to its last complete record.
+ * 
+ */
+public class TrafficRecorder {
+
+	public static final int MAGIC = 0x54575231; // "TWR1"
+	private static final byte TOPIC_DEFINITION = 0;
+
+	private DataOutputStream dout;
+	private long startNanos = System.nanoTime();
+	private Map<String, Integer> topicIds = new HashMap<String, Integer>();
+
+	public TrafficRecorder(File file) throws IOException {
+		dout = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 64 * 1024));
+		dout.writeInt(MAGIC);
+		dout.writeLong(System.currentTimeMillis());
+	}
+
+	public synchronized void record(byte direction, String topic,
+			byte[] message) throws IOException {
+		long nanos = System.nanoTime() - startNanos;
+		Integer topicId = topicIds.get(topic);
+		if (topicId == null) {
+			topicId = topicIds.size();
+			topicIds.put(topic, topicId);
+			dout.writeByte(TOPIC_DEFINITION);
+			dout.writeInt(topicId);
+			dout.writeUTF(topic);
+		}
+		dout.writeByte(direction);
+		dout.writeLong(nanos);
+		dout.writeInt(topicId);
+		dout.writeInt(message.length);
+		dout.write(message);
+	}
+
+	public synchronized void close() throws IOException {
+		dout.close();
+	}
+
+	/**
+	 * Reads all the complete records of a recording.
+	 */
+	public static List<TrafficRecord> read(File file) throws IOException {
+		List<TrafficRecord> records = new ArrayList<TrafficRecord>();
+		Map<Integer, String> topics = new HashMap<Integer, String>();
+		DataInputStream din = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (din.readInt() != MAGIC) {
+				throw new IOException(file + " is not a traffic recording.");
+			}
+			din.readLong();
+			while (true) {
+				byte kind;
+				try {
+					kind = din.readByte();
+				} catch (EOFException e) {
+					break;
+				}
+				try {
+					if (kind == TOPIC_DEFINITION) {
+						int topicId = din.readInt();
+						topics.put(topicId, din.readUTF());
+					} else {
+						long nanos = din.readLong();
+						String topic = topics.get(din.readInt());
+						byte[] message = new byte[din.readInt()];
+						din.readFully(message);
+						records.add(new TrafficRecord(kind, nanos, topic,
+								message));
+					}
+				} catch (EOFException e) {
+					// The last record was not completely written.
+					break;
+				}
+			}
+		} finally {
+			din.close();
+		}
+		return records;
+	}
+}
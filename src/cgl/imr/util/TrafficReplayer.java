@@ -0,0 +1,157 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.util;
+
+import java.util.List;
+
+import cgl.imr.base.Subscribable;
+import cgl.imr.base.TopicSubscribable;
+
+/**
+ * Feeds the messages a process received, as recorded by a
+ * <code>TrafficRecorder</code>, into a subscriber such as a
+ * <code>DaemonWorker</code> or a <code>TwisterDriver</code>. The messages
+ * received before the window are delivered as fast as possible to bring the
+ * subscriber to the state of the recorded job (configuration, data loading,
+ * earlier iterations). The messages in the window are timed, either at the
+ * recorded pace or as fast as possible, and the ones after it are skipped.
+ * 
+ */
+public class TrafficReplayer {
+
+	private List<TrafficRecord> records;
+	private long fromNanos = 0;
+	private long toNanos = Long.MAX_VALUE;
+	private boolean realTime = true;
+
+	private long messagesReplayed;
+	private long bytesReplayed;
+	private long elapsedNanos;
+
+	public TrafficReplayer(List<TrafficRecord> records) {
+		this.records = records;
+	}
+
+	/**
+	 * Limits the timed part of the replay to the messages received between the
+	 * given offsets, in milliseconds since the recording started.
+	 */
+	public void setWindow(long fromMillis, long toMillis) {
+		this.fromNanos = fromMillis * 1000000L;
+		this.toNanos = toMillis == Long.MAX_VALUE ? Long.MAX_VALUE
+				: toMillis * 1000000L;
+	}
+
+	/**
+	 * @param realTime
+	 *            - true to keep the recorded gaps between the messages in the
+	 *            window, false to deliver them back to back.
+	 */
+	public void setRealTime(boolean realTime) {
+		this.realTime = realTime;
+	}
+
+	public void replay(Subscribable subscriber) throws InterruptedException {
+		messagesReplayed = 0;
+		bytesReplayed = 0;
+		long begin = -1;
+		for (TrafficRecord record : records) {
+			if (!record.isReceived()) {
+				continue;
+			}
+			if (record.getNanos() > toNanos) {
+				break;
+			}
+			if (record.getNanos() >= fromNanos) {
+				if (begin < 0) {
+					begin = System.nanoTime();
+				}
+				if (realTime) {
+					long wait = (record.getNanos() - fromNanos)
+							- (System.nanoTime() - begin);
+					if (wait > 0) {
+						Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+					}
+				}
+				messagesReplayed++;
+				bytesReplayed += record.getMessage().length;
+			}
+			if (subscriber instanceof TopicSubscribable) {
+				((TopicSubscribable) subscriber).onEvent(record.getTopic(),
+						record.getMessage());
+			} else {
+				subscriber.onEvent(record.getMessage());
+			}
+		}
+		elapsedNanos = begin < 0 ? 0 : System.nanoTime() - begin;
+	}
+
+	/**
+	 * @return number of messages delivered in the window by the last replay.
+	 */
+	public long getMessagesReplayed() {
+		return messagesReplayed;
+	}
+
+	public long getBytesReplayed() {
+		return bytesReplayed;
+	}
+
+	/**
+	 * @return nanoseconds from the first message of the window to the return
+	 *         of the subscriber from the last one.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.worker;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import cgl.imr.base.TwisterException;
+
+/**
+ * Holds the AllReduce messages pushed to this daemon by its peers over the
+ * daemon data port until the local AllReduce operation consumes them. A
+ * message may arrive before the local daemon has reached the corresponding
+ * step, hence the messages are kept by their keys.
+ * 
+ */
+public class AllReduceMailbox {
+
+	public static long MAX_WAIT_TIME = 600000; // milliseconds
+
+	private Map<String, byte[]> messages;
+
+	public AllReduceMailbox() {
+		this.messages = new ConcurrentHashMap<String, byte[]>();
+	}
+
+	public synchronized void put(String key, byte[] data) {
+		messages.put(key, data);
+		notifyAll();
+	}
+
+	/**
+	 * Waits till a message with the given key arrives and removes it.
+	 * 
+	 * @param key
+	 *            - message key.
+	 * @return the message.
+	 * @throws TwisterException
+	 *             if the message does not arrive within the maximum wait time.
+	 */
+	public synchronized byte[] take(String key) throws TwisterException {
+		long deadline = System.currentTimeMillis() + MAX_WAIT_TIME;
+		byte[] data = messages.remove(key);
+		while (data == null) {
+			long waitTime = deadline - System.currentTimeMillis();
+			if (waitTime <= 0) {
+				throw new TwisterException("Timed out waiting for AllReduce message "
+						+ key);
+			}
+			try {
+				wait(waitTime);
+			} catch (InterruptedException e) {
+				throw new TwisterException(e);
+			}
+			data = messages.remove(key);
+		}
+		return data;
+	}
+
+	/**
+	 * Removes the messages of a job.
+	 */
+	public synchronized void removeJob(String jobId) {
+		Iterator<String> ite = messages.keySet().iterator();
+		while (ite.hasNext()) {
+			if (ite.next().startsWith(jobId + ":")) {
+				ite.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,368 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.worker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.AllReduceTask;
+import cgl.imr.base.PubSubService;
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.TwisterConstants;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.message.AllReducePlan;
+import cgl.imr.message.TaskStatus;
+import cgl.imr.util.CustomClassLoader;
+
+/**
+ * Executes the AllReduce operation of a job at a daemon. The outputs of the
+ * local map tasks are merged first. Once all the local map tasks of an
+ * iteration have completed, the daemons exchange their partial values using
+ * recursive doubling over the daemon data ports. When the number of daemons is
+ * not a power of two, the first daemons are paired and folded before the
+ * exchange and receive the final value afterwards.
+ * 
+ * Values are always merged in the order of the daemon ranks (and the map task
+ * numbers within a daemon), so the merge operation only needs to be
+ * associative. The final value is kept by every daemon for the map tasks of
+ * the next iteration.
+ * 
+ */
+public class AllReducer {
+
+	private static Logger logger = Logger.getLogger(AllReducer.class);
+
+	private AllReduceTask allReduceTask;
+	private CustomClassLoader classLoader;
+	private ConcurrentHashMap<String, DataHolder> dataCache;
+	private int daemonNo;
+	private String jobId;
+	private AllReduceMailbox mailbox;
+	private PubSubService pubSubService;
+
+	private Map<Integer, Value> partials;
+	private int partialsIteration = -1;
+	private Value result;
+
+	public AllReducer(JobConf jobConf, CustomClassLoader classLoader,
+			int daemonNo, AllReduceMailbox mailbox,
+			PubSubService pubSubService,
+			ConcurrentHashMap<String, DataHolder> dataCache)
+			throws TwisterException {
+		this.jobId = jobConf.getJobId();
+		this.classLoader = classLoader;
+		this.daemonNo = daemonNo;
+		this.mailbox = mailbox;
+		this.pubSubService = pubSubService;
+		this.dataCache = dataCache;
+		this.partials = new TreeMap<Integer, Value>();
+		try {
+			Class<?> c = Class.forName(jobConf.getAllReduceClass(), true,
+					classLoader);
+			allReduceTask = (AllReduceTask) c.newInstance();
+			allReduceTask.configure(jobConf);
+		} catch (Exception e) {
+			throw new TwisterException("Could not instantiate the AllReduce task.",
+					e);
+		}
+	}
+
+	/**
+	 * Returns the value produced by the last AllReduce operation.
+	 */
+	public synchronized Value getResult() {
+		return result;
+	}
+
+	/**
+	 * Merges a list of values in order. Null values are ignored.
+	 */
+	public Value merge(List<Value> values) throws TwisterException {
+		Value merged = null;
+		for (Value val : values) {
+			merged = merge(merged, val);
+		}
+		return merged;
+	}
+
+	private Value merge(Value first, Value second) throws TwisterException {
+		if (first == null) {
+			return second;
+		}
+		if (second == null) {
+			return first;
+		}
+		return allReduceTask.merge(first, second);
+	}
+
+	/**
+	 * Records the output of a local map task. The AllReduce operation is
+	 * executed by the thread that delivers the last local map output of the
+	 * iteration.
+	 * 
+	 * @param mapTaskNo
+	 *            - the map task.
+	 * @param iteration
+	 *            - current iteration.
+	 * @param partial
+	 *            - merged output of the map task.
+	 * @param plan
+	 *            - the participating daemons.
+	 */
+	public void mapTaskCompleted(int mapTaskNo, int iteration, Value partial,
+			AllReducePlan plan) {
+		Value local = null;
+		int rank = plan.getRank(daemonNo);
+		synchronized (this) {
+			if (iteration != partialsIteration) {
+				partials.clear();
+				partialsIteration = iteration;
+			}
+			partials.put(mapTaskNo, partial);
+			if (partials.size() < plan.getNumMapTasks(rank)) {
+				return;
+			}
+			try {
+				Iterator<Integer> ite = partials.keySet().iterator();
+				while (ite.hasNext()) {
+					local = merge(local, partials.get(ite.next()));
+				}
+			} catch (TwisterException e) {
+				sendStatus(TwisterConstants.FAILED, 0, iteration, e);
+				return;
+			} finally {
+				partials.clear();
+			}
+		}
+
+		long beginTime = System.currentTimeMillis();
+		try {
+			Value value = allReduce(local, rank, plan, iteration);
+			synchronized (this) {
+				result = value;
+			}
+			if (rank == 0) {
+				dataCache.put(TwisterConstants.ALL_REDUCE_RESULT_KEY + jobId,
+						new DataHolder(serialize(value), Integer.MAX_VALUE));
+			}
+			sendStatus(TwisterConstants.SUCCESS, System.currentTimeMillis()
+					- beginTime, iteration, null);
+		} catch (Exception e) {
+			logger.error("AllReduce failed at daemon " + daemonNo, e);
+			sendStatus(TwisterConstants.FAILED, System.currentTimeMillis()
+					- beginTime, iteration, e);
+		}
+	}
+
+	/**
+	 * Recursive doubling AllReduce among the participating daemons.
+	 */
+	private Value allReduce(Value value, int rank, AllReducePlan plan,
+			int iteration) throws TwisterException, SerializationException {
+		int size = plan.getNumParticipants();
+		int pof2 = Integer.highestOneBit(size);
+		int rem = size - pof2;
+		String keyBase = jobId + ":" + iteration + ":";
+
+		// Fold the first 2*rem ranks pairwise so that pof2 ranks remain.
+		int newRank;
+		if (rank < 2 * rem) {
+			if (rank % 2 == 0) {
+				value = merge(value, receive(keyBase + "fold"));
+				newRank = rank / 2;
+			} else {
+				send(plan, rank - 1, keyBase + "fold", value);
+				newRank = -1;
+			}
+		} else {
+			newRank = rank - rem;
+		}
+
+		if (newRank != -1) {
+			for (int mask = 1; mask < pof2; mask <<= 1) {
+				int newPartner = newRank ^ mask;
+				int partner = (newPartner < rem) ? newPartner * 2 : newPartner
+						+ rem;
+				send(plan, partner, keyBase + mask, value);
+				Value other = receive(keyBase + mask);
+				if (newPartner < newRank) {
+					value = merge(other, value);
+				} else {
+					value = merge(value, other);
+				}
+			}
+		}
+
+		// Hand the final value to the ranks folded at the beginning.
+		if (rank < 2 * rem) {
+			if (rank % 2 == 0) {
+				send(plan, rank + 1, keyBase + "result", value);
+			} else {
+				value = receive(keyBase + "result");
+			}
+		}
+		return value;
+	}
+
+	private Value receive(String key) throws TwisterException,
+			SerializationException {
+		return deserialize(mailbox.take(key));
+	}
+
+	/**
+	 * Pushes a value to the data port of the daemon with the given rank.
+	 */
+	private void send(AllReducePlan plan, int rank, String key, Value value)
+			throws TwisterException {
+		try {
+			byte[] data = serialize(value);
+			Socket sock = new Socket();
+			sock.connect(new InetSocketAddress(InetAddress.getByName(plan
+					.getHost(rank)), plan.getPort(rank)), 20000);
+			OutputStream out = sock.getOutputStream();
+			out.write((TwisterConstants.ALL_REDUCE_CMD + key + "\n").getBytes());
+			out.write(data);
+			out.flush();
+			sock.shutdownOutput();
+			sock.close();
+		} catch (Exception e) {
+			throw new TwisterException("Could not send the AllReduce message "
+					+ key + " to daemon " + plan.getDaemonNo(rank), e);
+		}
+	}
+
+	private byte[] serialize(Value value) throws SerializationException {
+		ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(baOutputStream);
+		try {
+			dout.writeBoolean(value != null);
+			if (value != null) {
+				byte[] data = value.getClass().getName().getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+				data = value.getBytes();
+				dout.writeInt(data.length);
+				dout.write(data);
+			}
+			dout.flush();
+			dout.close();
+		} catch (IOException ioe) {
+			throw new SerializationException(ioe);
+		}
+		return baOutputStream.toByteArray();
+	}
+
+	private Value deserialize(byte[] bytes) throws SerializationException {
+		DataInputStream din = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		try {
+			if (!din.readBoolean()) {
+				return null;
+			}
+			byte[] data = new byte[din.readInt()];
+			din.readFully(data);
+			Class<?> c = Class.forName(new String(data), true, classLoader);
+			data = new byte[din.readInt()];
+			din.readFully(data);
+			Value value = (Value) c.newInstance();
+			value.fromBytes(data);
+			return value;
+		} catch (Exception e) {
+			throw new SerializationException(e);
+		}
+	}
+
+	private void sendStatus(byte statusType, long time, int iteration,
+			Exception e) {
+		TaskStatus status = new TaskStatus(TwisterConstants.ALL_REDUCE_TASK,
+				statusType, daemonNo, time, iteration);
+		status.setDaemonNo(daemonNo);
+		if (e != null) {
+			status.setExceptionString(e.getMessage());
+		}
+		try {
+			pubSubService.send(TwisterConstants.RESPONSE_TOPIC_BASE + "/"
+					+ jobId, status.getBytes());
+		} catch (Exception ex) {
+			logger.error("Could not send the AllReduce status.", ex);
+		}
+	}
+
+	/**
+	 * Removes the state kept for the job.
+	 */
+	public void close() {
+		dataCache.remove(TwisterConstants.ALL_REDUCE_RESULT_KEY + jobId);
+		mailbox.removeJob(jobId);
+		synchronized (this) {
+			result = null;
+			partials.clear();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.worker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cgl.imr.util.HistogramSnapshot;
+import cgl.imr.util.LatencyHistogram;
+import cgl.imr.util.MessageMetrics;
+
+/**
+ * Counters, gauges and latency histograms of a daemon, exposed through JMX.
+ * The gauges read the state of the <code>DaemonWorker</code> when they are
+ * queried, so the daemon only pays for the counters.
+ * 
+ */
+public class DaemonMetrics implements DaemonMetricsMXBean {
+
+	private DaemonWorker worker;
+	private int daemonNo;
+	private ConcurrentHashMap<String, DataHolder> dataCache;
+	private ThreadPoolExecutor taskExecutor;
+	private ResponseTrackingPubSubService pubSubService;
+
+	private MessageMetrics messages = new MessageMetrics();
+	private LatencyHistogram mapTaskDurations = new LatencyHistogram();
+	private LatencyHistogram reduceTaskDurations = new LatencyHistogram();
+	private AtomicLong bytesServed = new AtomicLong();
+
+	public DaemonMetrics(DaemonWorker worker, int daemonNo,
+			ConcurrentHashMap<String, DataHolder> dataCache,
+			ThreadPoolExecutor taskExecutor,
+			ResponseTrackingPubSubService pubSubService) {
+		this.worker = worker;
+		this.daemonNo = daemonNo;
+		this.dataCache = dataCache;
+		this.taskExecutor = taskExecutor;
+		this.pubSubService = pubSubService;
+	}
+
+	public MessageMetrics getMessages() {
+		return messages;
+	}
+
+	public void addBytesServed(long bytes) {
+		bytesServed.addAndGet(bytes);
+	}
+
+	/**
+	 * Wraps a map task so that its duration is recorded.
+	 */
+	public Runnable timeMapTask(Runnable task) {
+		return timed(task, mapTaskDurations);
+	}
+
+	public Runnable timeReduceTask(Runnable task) {
+		return timed(task, reduceTaskDurations);
+	}
+
+	private static Runnable timed(final Runnable task,
+			final LatencyHistogram durations) {
+		return new Runnable() {
+			public void run() {
+				long begin = System.nanoTime();
+				try {
+					task.run();
+				} finally {
+					durations.record(System.nanoTime() - begin);
+				}
+			}
+		};
+	}
+
+	public int getDaemonNo() {
+		return daemonNo;
+	}
+
+	public int getDataCacheEntries() {
+		return dataCache.size();
+	}
+
+	public long getDataCacheBytes() {
+		if (dataCache instanceof DataCache) {
+			return ((DataCache) dataCache).getNumBytes();
+		}
+		return -1;
+	}
+
+	public long getDataCacheHits() {
+		if (dataCache instanceof DataCache) {
+			return ((DataCache) dataCache).getHits();
+		}
+		return -1;
+	}
+
+	public long getDataCacheMisses() {
+		if (dataCache instanceof DataCache) {
+			return ((DataCache) dataCache).getMisses();
+		}
+		return -1;
+	}
+
+	public Map<String, Integer> getMemCacheEntries() {
+		return MemCache.getInstance().getNumEntries();
+	}
+
+	public int getTaskQueueDepth() {
+		return taskExecutor.getQueue().size();
+	}
+
+	public int getActiveTaskThreads() {
+		return taskExecutor.getActiveCount();
+	}
+
+	public long getCompletedTasks() {
+		return taskExecutor.getCompletedTaskCount();
+	}
+
+	public int getActiveMappers() {
+		return worker.getNumMappers();
+	}
+
+	public int getActiveReducers() {
+		return worker.getNumReducers();
+	}
+
+	public long getBytesIn() {
+		return messages.getBytesIn();
+	}
+
+	public long getBytesOut() {
+		return pubSubService.getBytesSent();
+	}
+
+	public long getBytesServed() {
+		return bytesServed.get();
+	}
+
+	public Map<String, Long> getMessagesHandled() {
+		return messages.getCounts();
+	}
+
+	public Map<String, HistogramSnapshot> getMessageLatencies() {
+		return messages.getLatencies();
+	}
+
+	public HistogramSnapshot getMapTaskDurations() {
+		return mapTaskDurations.getSnapshot();
+	}
+
+	public HistogramSnapshot getReduceTaskDurations() {
+		return reduceTaskDurations.getSnapshot();
+	}
+}
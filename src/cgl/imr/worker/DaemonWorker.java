@@ -54,6 +54,7 @@ package cgl.imr.worker;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
@@ -66,8 +67,10 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.management.ObjectName;
 
 import org.apache.log4j.Logger;
 
@@ -81,10 +84,13 @@ import cgl.imr.base.TwisterConstants.EntityType;
 import cgl.imr.base.impl.JobConf;
 import cgl.imr.base.impl.PubSubFactory;
 import cgl.imr.config.TwisterConfigurations;
+import cgl.imr.message.CombineInput;
+import cgl.imr.message.CombinerRequest;
 import cgl.imr.message.DirListRequest;
 import cgl.imr.message.DirListResponse;
 import cgl.imr.message.EndJobRequest;
 import cgl.imr.message.MapTaskRequest;
+import cgl.imr.message.MapperRemoval;
 import cgl.imr.message.MapperRequest;
 import cgl.imr.message.MemCacheClean;
 import cgl.imr.message.MemCacheInput;
@@ -92,9 +98,12 @@ import cgl.imr.message.NewJobRequest;
 import cgl.imr.message.ReduceInput;
 import cgl.imr.message.ReducerRequest;
 import cgl.imr.message.StartReduceMessage;
+import cgl.imr.message.TraceData;
 import cgl.imr.message.WorkerResponse;
 import cgl.imr.types.IntKey;
 import cgl.imr.util.CustomClassLoader;
+import cgl.imr.util.MBeanRegistrar;
+import cgl.imr.util.Tracer;
 import cgl.imr.util.JarClassLoaderException;
 
 /**
@@ -108,25 +117,35 @@ import cgl.imr.util.JarClassLoaderException;
  */
 public class DaemonWorker implements Subscribable {
 
-	private static ConcurrentMap<String, CustomClassLoader> classLoaders = new ConcurrentHashMap<String, CustomClassLoader>();
 	private static MemCache memCache = MemCache.getInstance();
 	private static Logger logger = Logger.getLogger(DaemonWorker.class);
 
-	public static CustomClassLoader getClassLoader(String jobId) {
-		return classLoaders.get(jobId);
-	}
+	// Class loaders of the jobs running at this daemon. Kept per daemon since
+	// several daemons may run in one process.
+	private ConcurrentMap<String, CustomClassLoader> classLoaders = new ConcurrentHashMap<String, CustomClassLoader>();
 
 	private TwisterConfigurations config;
 	private String daemonCommTopic;
 	private int daemonNo;
 	private ConcurrentMap<String, ConcurrentMap<Integer, Mapper>> mappers;
 	private PubSubService pubSubService;
+	private ResponseTrackingPubSubService responseTracker;
 	private ConcurrentMap<String, ConcurrentMap<String, ConcurrentLinkedQueue<Reducer>>> reducers;
 	private ConcurrentMap<String, ConcurrentMap<String, ConcurrentLinkedQueue<Reducer>>> bcastReducers;
 	ConcurrentHashMap<String, DataHolder> dataCache;
 	private int daemonPort;
+	private ConcurrentMap<String, AllReducer> allReducers;
+	private AllReduceMailbox allReduceMailbox;
+	// Intermediate combiners of the combine trees, keyed by their topics.
+	private ConcurrentMap<String, IntermediateCombiner> combiners;
 
-	private Executor taskExecutor = null;
+	private ThreadPoolExecutor taskExecutor = null;
+	private DaemonMetrics metrics;
+	private ObjectName metricsName;
+	// Tracers of the jobs that trace their tasks.
+	private ConcurrentMap<String, Tracer> tracers = new ConcurrentHashMap<String, Tracer>();
+	// Stack samplers of the jobs that profile their tasks.
+	private ConcurrentMap<String, StackSampler> samplers = new ConcurrentHashMap<String, StackSampler>();
 	
 	// ZBJ: this is for managing some threads for handling onEvent
 	private ConcurrentMap<String, ConcurrentLinkedQueue<Thread>> onEventTasks;
@@ -156,13 +175,15 @@ public class DaemonWorker implements Subscribable {
 				+ daemonNo;
 
 		try {
-			this.pubSubService = PubSubFactory.getPubSubService(config,
-					EntityType.DAEMON, daemonNo);
+			this.responseTracker = new ResponseTrackingPubSubService(
+					PubSubFactory.getPubSubService(config, EntityType.DAEMON,
+							daemonNo));
+			this.pubSubService = responseTracker;
 			this.pubSubService.setSubscriber(this);
 			this.pubSubService.subscribe(daemonCommTopic);
 			this.pubSubService
 					.subscribe(TwisterConstants.CLEINT_TO_WORKER_BCAST);
-			notifer=new StatusNotifier(pubSubService,daemonNo,hostIP);
+			notifer=new StatusNotifier(responseTracker,daemonNo,hostIP,classLoaders.keySet());
 			notifer.start();
 		} catch (PubSubException e) {
 			if (this.pubSubService != null) {
@@ -183,8 +204,17 @@ public class DaemonWorker implements Subscribable {
 		this.mappers = new ConcurrentHashMap<String, ConcurrentMap<Integer, Mapper>>();
 		this.reducers = new ConcurrentHashMap<String, ConcurrentMap<String, ConcurrentLinkedQueue<Reducer>>>();
 		bcastReducers=new ConcurrentHashMap<String, ConcurrentMap<String,ConcurrentLinkedQueue<Reducer>>>();
+		allReducers = new ConcurrentHashMap<String, AllReducer>();
+		allReduceMailbox = new AllReduceMailbox();
+		combiners = new ConcurrentHashMap<String, IntermediateCombiner>();
 		
-		taskExecutor = Executors.newFixedThreadPool(numMapWorkers);
+		taskExecutor = (ThreadPoolExecutor) Executors
+				.newFixedThreadPool(numMapWorkers);
+		metrics = new DaemonMetrics(this, daemonNo, dataCache, taskExecutor,
+				responseTracker);
+		metricsName = MBeanRegistrar.register(metrics,
+				"type=TwisterDaemon,daemonNo=" + daemonNo);
+		notifer.setMetrics(metrics);
 		
 		onEventTasks = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Thread>>();
 		
@@ -209,6 +239,7 @@ public class DaemonWorker implements Subscribable {
 		listRequest.fromBytes(msg);
 		File[] files = null;
 		List<String> selectedFiles = new ArrayList<String>();
+		List<Long> fileSizes = new ArrayList<Long>();
 		File dir = new File(listRequest.getDirectry());
 		if (!dir.exists()) {
 			logger.warn("Requested directory: " + dir.getName()
@@ -230,11 +261,12 @@ public class DaemonWorker implements Subscribable {
 				for (File file : files) {
 					if (file.getName().contains(listRequest.getFileFilter())) {
 						selectedFiles.add(file.getAbsolutePath());
+						fileSizes.add(file.length());
 					}
 				}
 			}
 			DirListResponse response = new DirListResponse(selectedFiles,
-					daemonNo, hostIP);
+					fileSizes, daemonNo, hostIP);
 			this.pubSubService.send(listRequest.getResponseTopic(), response
 					.getBytes());
 		}
@@ -260,7 +292,8 @@ public class DaemonWorker implements Subscribable {
 				*/
 				
 				//ZBJ: there is a little repeat here
-				MapperRequest mapperRequest = new MapperRequest(request);
+				MapperRequest mapperRequest = new MapperRequest(request,
+						classLoaders);
 				JobConf jobConf = mapperRequest.getJobConf();
 				
 				// Create the response object.
@@ -269,9 +302,22 @@ public class DaemonWorker implements Subscribable {
 
 				CustomClassLoader classLoader = classLoaders.get(jobConf
 						.getJobId());
+				if (classLoader != null && mapperRequest.isReattach()
+						&& isMapperConfigured(jobConf.getJobId(), mapperRequest)) {
+					// Keep the mapper configured before the driver failed.
+					pubSubService.send(mapperRequest.getResponseTopic(),
+							response.getBytes());
+					request = null;
+					return;
+				}
 				if (classLoader != null) {
 					Mapper exec = new Mapper(mapperRequest, pubSubService,
 							classLoader, dataCache, daemonPort, hostIP);
+					exec.setDaemonNo(daemonNo);
+					exec.setSampler(samplers.get(jobConf.getJobId()));
+					if (jobConf.isHasAllReduceClass()) {
+						exec.setAllReducer(getAllReducer(jobConf, classLoader));
+					}
 					
 					//ZBJ: synchronize the processing of MapperRequest, since it is concurrent now
 					synchronized (mappers) {
@@ -317,6 +363,46 @@ public class DaemonWorker implements Subscribable {
 		}
 	}
 	
+	private boolean isMapperConfigured(String jobId,
+			MapperRequest mapperRequest) {
+		ConcurrentMap<Integer, Mapper> mapperMap = mappers.get(jobId);
+		if (mapperMap == null) {
+			return false;
+		}
+		Mapper mapper = mapperMap.get(mapperRequest.getMapTaskNo());
+		return mapper != null
+				&& mapper.isConfiguredWith(mapperRequest.getMapConf());
+	}
+
+	/**
+	 * Returns the AllReducer of the job, creating it on first use. All the
+	 * mappers of a job at this daemon share the same AllReducer.
+	 */
+	private AllReducer getAllReducer(JobConf jobConf,
+			CustomClassLoader classLoader) throws TwisterException {
+		synchronized (allReducers) {
+			AllReducer allReducer = allReducers.get(jobConf.getJobId());
+			if (allReducer == null) {
+				allReducer = new AllReducer(jobConf, classLoader, daemonNo,
+						allReduceMailbox, pubSubService, dataCache);
+				allReducers.put(jobConf.getJobId(), allReducer);
+			}
+			return allReducer;
+		}
+	}
+
+	/**
+	 * Stores an AllReduce message pushed by a peer daemon to the data port.
+	 * 
+	 * @param key
+	 *            - message key.
+	 * @param data
+	 *            - serialized value.
+	 */
+	public void handleAllReduceData(String key, byte[] data) {
+		allReduceMailbox.put(key, data);
+	}
+
 	/**
 	 * Creates a Mapper to this particular map task. The mappers are stored
 	 * (cached) till the termination of that particular MapReduce computation.
@@ -331,8 +417,10 @@ public class DaemonWorker implements Subscribable {
 	public void handleMapperRequest(byte[] request) throws TwisterException,
 			PubSubException, SerializationException {
 		
-		MapperRequest mapperRequest = new MapperRequest(request);
+		MapperRequest mapperRequest = new MapperRequest(request, classLoaders);
 		JobConf jobConf = mapperRequest.getJobConf();
+		startTracing(jobConf);
+		startProfiling(jobConf);
 		
 		// ZBJ: create a thread to handle mapper request
 		// since it could take long time to load the file in mapper configuration
@@ -406,6 +494,7 @@ public class DaemonWorker implements Subscribable {
 		// System.out.println("begin handling MapReduceTermination, Daemon "
 		// + daemonNo);
 		
+		long receiveTime = System.nanoTime();
 		EndJobRequest endIterations = new EndJobRequest();
 		endIterations.fromBytes(request);
 		String jobId = endIterations.getJobId();
@@ -436,6 +525,113 @@ public class DaemonWorker implements Subscribable {
 			mappers.remove(jobId);
 		}
 
+		AllReducer allReducer = allReducers.remove(jobId);
+		if (allReducer != null) {
+			allReducer.close();
+		}
+
+		removeReducersAndCombiners(jobId);
+		deleteCleanupDirs(endIterations.getCleanupDirs());
+
+		// Remove the class loader.
+		CustomClassLoader classLoader = classLoaders.get(jobId);
+		if (classLoader != null) {
+			classLoader.close();
+			classLoaders.remove(jobId);
+			classLoader = null;
+		} else {
+			logger.warn("Termination request received for invalid jobId.");
+		}
+
+		// Remove memCahce objects if any.
+		memCache.remove(jobId);
+		responseTracker.removeJob(jobId);
+
+		// The trace reaches the driver before the response.
+		StackSampler sampler = samplers.remove(jobId);
+		if (sampler != null) {
+			sampler.close();
+		}
+		Tracer tracer = tracers.remove(jobId);
+		if (tracer != null) {
+			TraceData traceData = new TraceData(jobId, daemonNo, receiveTime,
+					tracer.getEvents());
+			this.pubSubService.send(endIterations.getResponseTopic(),
+					traceData.getBytes());
+		}
+
+		// Send a response message ...
+		WorkerResponse response = new WorkerResponse(daemonNo, hostIP);
+		// Client expects the daemonNo to be added to the refId.
+		response.setRefMessageId(endIterations.getRefMessageId() + daemonNo);
+		this.pubSubService.send(endIterations.getResponseTopic(), response
+				.getBytes());
+
+		Runtime.getRuntime().gc();
+		
+		// ZBJ: output test
+		// System.out.println("finish handling MapReduceTermination, Daemon " +
+		// daemonNo);
+	}
+
+	/**
+	 * Deletes the given directories of the <code>data_dir</code>, such as the
+	 * reduce outputs of a job. Directories outside the <code>data_dir</code>
+	 * are ignored.
+	 * 
+	 * @param dirs
+	 *            - directories relative to the <code>data_dir</code>.
+	 */
+	private void deleteCleanupDirs(List<String> dirs) {
+		try {
+			String dataDir = new File(config.getLocalDataDir())
+					.getCanonicalPath();
+			for (String dir : dirs) {
+				File file = new File(dataDir, dir).getCanonicalFile();
+				if (!file.getPath().startsWith(dataDir + File.separator)) {
+					logger.warn("Not deleting " + file
+							+ " as it is not inside the data directory.");
+					continue;
+				}
+				deleteRecursively(file);
+			}
+		} catch (IOException e) {
+			logger.error("Could not delete the directories of the job.", e);
+		}
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Terminates the reducers and the intermediate combiners of a job and
+	 * unsubscribes them from their topics.
+	 * 
+	 * @param jobId
+	 * @throws TwisterException
+	 * @throws PubSubException
+	 */
+	private void removeReducersAndCombiners(String jobId)
+			throws TwisterException, PubSubException {
+		Iterator<IntermediateCombiner> combinerIte = combiners.values()
+				.iterator();
+		IntermediateCombiner combiner = null;
+		while (combinerIte.hasNext()) {
+			combiner = combinerIte.next();
+			if (combiner.getJobId().equals(jobId)) {
+				this.pubSubService.unsubscribe(combiner.getCombineTopic());
+				combiner.close();
+				combinerIte.remove();
+			}
+		}
+
 		Map<String, ConcurrentLinkedQueue<Reducer>> reduceExecutorMap = this.reducers.get(jobId);
 		String reduceTopic = null;	
 		Reducer reducer = null;
@@ -469,33 +665,6 @@ public class DaemonWorker implements Subscribable {
 			bcastReducers.remove(jobId);
 			reduceExecutorMap = null;
 		}
-		
-
-		// Remove the class loader.
-		CustomClassLoader classLoader = classLoaders.get(jobId);
-		if (classLoader != null) {
-			classLoader.close();
-			classLoaders.remove(jobId);
-			classLoader = null;
-		} else {
-			logger.warn("Termination request received for invalid jobId.");
-		}
-
-		// Remove memCahce objects if any.
-		memCache.remove(jobId);
-
-		// Send a response message ...
-		WorkerResponse response = new WorkerResponse(daemonNo, hostIP);
-		// Client expects the daemonNo to be added to the refId.
-		response.setRefMessageId(endIterations.getRefMessageId() + daemonNo);
-		this.pubSubService.send(endIterations.getResponseTopic(), response
-				.getBytes());
-
-		Runtime.getRuntime().gc();
-		
-		// ZBJ: output test
-		// System.out.println("finish handling MapReduceTermination, Daemon " +
-		// daemonNo);
 	}
 
 	/**
@@ -510,7 +679,7 @@ public class DaemonWorker implements Subscribable {
 	public void handleMapTask(byte[] request) throws TwisterException,
 			SerializationException {
 		
-		MapTaskRequest mapRequest = new MapTaskRequest(request);
+		MapTaskRequest mapRequest = new MapTaskRequest(request, classLoaders);
 		ConcurrentMap<Integer, Mapper> mapperMap = mappers.get(mapRequest
 				.getJobId());
 		Mapper exec = mapperMap.get(mapRequest.getMapTaskNo());
@@ -518,7 +687,15 @@ public class DaemonWorker implements Subscribable {
 
 		if (exec != null) {
 			exec.setCurrentRequest(mapRequest);
-			taskExecutor.execute(exec);
+			Runnable task = exec;
+			Tracer tracer = tracers.get(mapRequest.getJobId());
+			if (tracer != null) {
+				tracer.instant("map-request", mapRequest.getMapTaskNo(),
+						mapRequest.getIteration());
+				task = tracer.wrap(exec, "map", mapRequest.getMapTaskNo(),
+						mapRequest.getIteration());
+			}
+			taskExecutor.execute(metrics.timeMapTask(task));
 		} else {
 			logger
 					.error("No mapper is registered for this map task " + mapRequest.getMapTaskNo() + ". @ the daemon no: "
@@ -544,14 +721,28 @@ public class DaemonWorker implements Subscribable {
 
 		// Client expects the daemonNo to be added to the refId.
 		response.setRefMessageId(newJobRequest.getRefMessageId() + daemonNo);
+		response.setResources(Runtime.getRuntime().availableProcessors(),
+				Runtime.getRuntime().maxMemory());
 
 		CustomClassLoader classLoader = null;
-		try {
-			classLoader = new CustomClassLoader();
-			classLoaders.put(newJobRequest.getJobId(), classLoader);
-		} catch (JarClassLoaderException e) {
-			response.setExceptionString("Could not initiate the class loader.");
-			logger.error(e);
+		if (newJobRequest.isResume()
+				&& classLoaders.containsKey(newJobRequest.getJobId())) {
+			// A driver resuming the job reattaches to its mappers, which need
+			// the same class loader. The reducers of the failed driver are
+			// replaced.
+			try {
+				removeReducersAndCombiners(newJobRequest.getJobId());
+			} catch (TwisterException e) {
+				logger.error(e);
+			}
+		} else {
+			try {
+				classLoader = new CustomClassLoader();
+				classLoaders.put(newJobRequest.getJobId(), classLoader);
+			} catch (JarClassLoaderException e) {
+				response.setExceptionString("Could not initiate the class loader.");
+				logger.error(e);
+			}
 		}
 
 		this.pubSubService.send(newJobRequest.getResponseTopic(), response
@@ -571,7 +762,12 @@ public class DaemonWorker implements Subscribable {
 
 	private void handleReduceInput(byte[] msg) throws TwisterException,
 			SerializationException {
-		ReduceInput reduceInput = new ReduceInput(msg);		
+		ReduceInput reduceInput = new ReduceInput(msg, classLoaders);		
+		Tracer tracer = tracers.get(reduceInput.getJobId());
+		if (tracer != null) {
+			tracer.instant("reduce-input", reduceInput.getMapTaskNo(),
+					reduceInput.getIteration());
+		}
 		Map<String, ConcurrentLinkedQueue<Reducer>> rwMap = this.reducers.get(reduceInput.getJobId());
 		boolean reduceRequestHandled=false;
 		if (rwMap == null) {
@@ -630,10 +826,13 @@ public class DaemonWorker implements Subscribable {
 	public void handleReducerRequest(byte[] request) throws TwisterException,
 			PubSubException, SerializationException {
 		//redCount = 0;
-		ReducerRequest reduceRequest = new ReducerRequest(request);
+		ReducerRequest reduceRequest = new ReducerRequest(request,
+				classLoaders);
 		WorkerResponse response = new WorkerResponse(daemonNo, hostIP);
 		response.setRefMessageId(reduceRequest.getRefMessageId());
 		JobConf jobConf=reduceRequest.getJobConf();
+		startTracing(jobConf);
+		startProfiling(jobConf);
 		try {
 			CustomClassLoader classLoader = classLoaders.get(reduceRequest
 					.getJobConf().getJobId());
@@ -641,6 +840,9 @@ public class DaemonWorker implements Subscribable {
 			if (classLoader != null) {
 				Reducer reduceExecutor = new Reducer(this.pubSubService,
 						reduceRequest, classLoader,dataCache,daemonPort,hostIP);
+				reduceExecutor.setSampler(samplers.get(jobConf.getJobId()));
+				reduceExecutor.setOutputLocation(daemonNo, config
+						.getLocalDataDir());
 				ConcurrentMap<String, ConcurrentLinkedQueue<Reducer>> reduceExecMap = this.reducers
 						.get(jobConf.getJobId());
 				if (reduceExecMap == null) {
@@ -699,6 +901,72 @@ public class DaemonWorker implements Subscribable {
 				.getBytes());
 	}
 
+	/**
+	 * Starts an intermediate combiner of the combine tree and subscribes it to
+	 * its topic. Sends a response to the client.
+	 * 
+	 * @param request
+	 *            - A CombinerRequest.
+	 * @throws PubSubException
+	 * @throws SerializationException
+	 */
+	private void handleCombinerRequest(byte[] request)
+			throws PubSubException, SerializationException {
+		CombinerRequest combinerRequest = new CombinerRequest(request);
+		WorkerResponse response = new WorkerResponse(daemonNo, hostIP);
+		response.setRefMessageId(combinerRequest.getRefMessageId());
+		try {
+			CustomClassLoader classLoader = classLoaders.get(combinerRequest
+					.getJobConf().getJobId());
+			if (classLoader != null) {
+				IntermediateCombiner combiner = new IntermediateCombiner(
+						this.pubSubService, combinerRequest, classLoader,
+						dataCache, daemonPort, hostIP);
+				combiners.put(combinerRequest.getCombineTopic(), combiner);
+				this.pubSubService.subscribe(combinerRequest
+						.getCombineTopic());
+			} else {
+				response
+						.setExceptionString("Invalid job id. No class loader is set.");
+			}
+		} catch (TwisterException e) {
+			response.setExceptionString(e.getMessage());
+		}
+		this.pubSubService.send(combinerRequest.getResponseTopic(), response
+				.getBytes());
+	}
+
+	/**
+	 * Passes a combine input to the intermediate combiner subscribed to its
+	 * topic. The input is deserialized, fetched if it was sent indirectly, and
+	 * merged by the task executor, so that the pub/sub thread is not blocked
+	 * meanwhile.
+	 * 
+	 * @param message
+	 */
+	private void handleCombineInput(final byte[] message) {
+		taskExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					CombineInput combineInput = new CombineInput(message,
+							classLoaders);
+					IntermediateCombiner combiner = combiners.get(combineInput
+							.getCombineTopic());
+					if (combiner != null) {
+						combiner.handleCombineInput(combineInput);
+					} else {
+						logger.error("No intermediate combiner is registered for the topic "
+								+ combineInput.getCombineTopic()
+								+ " @ the daemon no: " + daemonNo);
+					}
+				} catch (Exception e) {
+					logger.error("Intermediate combine failed @ the daemon no: "
+							+ daemonNo, e);
+				}
+			}
+		});
+	}
+
 	/**
 	 * Listening method for all the incoming messages from the pub-sub broker
 	 * network.
@@ -706,6 +974,7 @@ public class DaemonWorker implements Subscribable {
 	public void onEvent(byte[] message) {
 
 		if (message != null) {
+			long beginTime = System.nanoTime();
 			try {
 				switch (message[0]) {
 				case TwisterConstants.DIR_LIST_REQ:
@@ -735,9 +1004,18 @@ public class DaemonWorker implements Subscribable {
 				case TwisterConstants.MEMCACHE_CLEAN:
 					handleMemCacheClean(message);
 					break;					
+				case TwisterConstants.MAPPER_REMOVAL:
+					handleMapperRemoval(message);
+					break;
 				case TwisterConstants.START_REDUCE:
 					handleStartReduce(message);
 					break;
+				case TwisterConstants.COMBINER_REQUEST:
+					handleCombinerRequest(message);
+					break;
+				case TwisterConstants.COMBINE_INPUT:
+					handleCombineInput(message);
+					break;
 				default:
 					logger
 							.error("Invalid message received by the DaemonWorker.");
@@ -745,12 +1023,77 @@ public class DaemonWorker implements Subscribable {
 			} catch (Exception e) {
 				logger.error(e.getMessage(), e);
 			}
+			metrics.getMessages().record(message,
+					System.nanoTime() - beginTime);
+		}
+	}
+
+	public DaemonMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Starts recording the events of a job if it traces its tasks.
+	 */
+	private void startTracing(JobConf jobConf) {
+		if (jobConf.isTracing() && !tracers.containsKey(jobConf.getJobId())) {
+			tracers.putIfAbsent(jobConf.getJobId(), new Tracer());
+		}
+	}
+
+	/**
+	 * Starts sampling the stacks of the tasks of a job if it is profiled.
+	 */
+	private void startProfiling(JobConf jobConf) {
+		if (jobConf.isProfiling() && !samplers.containsKey(jobConf.getJobId())) {
+			StackSampler sampler = new StackSampler(jobConf
+					.getProfileInterval());
+			if (samplers.putIfAbsent(jobConf.getJobId(), sampler) == null) {
+				sampler.start();
+			}
+		}
+	}
+
+	private Runnable trace(Tracer tracer, Reducer reducer) {
+		if (tracer == null) {
+			return reducer;
+		}
+		return tracer.wrap(reducer, "reduce", reducer.getReducerNo(), reducer
+				.getIteration());
+	}
+
+	int getNumMappers() {
+		int numMappers = 0;
+		for (ConcurrentMap<Integer, Mapper> mapperMap : mappers.values()) {
+			numMappers += mapperMap.size();
 		}
+		return numMappers;
+	}
+
+	int getNumReducers() {
+		int numReducers = 0;
+		for (ConcurrentMap<String, ConcurrentLinkedQueue<Reducer>> reducerMap : reducers
+				.values()) {
+			for (ConcurrentLinkedQueue<Reducer> queue : reducerMap.values()) {
+				numReducers += queue.size();
+			}
+		}
+		for (ConcurrentMap<String, ConcurrentLinkedQueue<Reducer>> reducerMap : bcastReducers
+				.values()) {
+			for (ConcurrentLinkedQueue<Reducer> queue : reducerMap.values()) {
+				numReducers += queue.size();
+			}
+		}
+		return numReducers;
 	}
 
 	private void handleStartReduce(byte[] message)
 			throws SerializationException {
 		StartReduceMessage msg = new StartReduceMessage(message);
+		Tracer tracer = tracers.get(msg.getJobId());
+		if (tracer != null) {
+			tracer.instant("start-reduce", -1, msg.getIteration());
+		}
 		ConcurrentMap<String, ConcurrentLinkedQueue<Reducer>> reduceExecMap = this.reducers
 				.get(msg.getJobId());
 		if (reduceExecMap != null) {
@@ -768,19 +1111,31 @@ public class DaemonWorker implements Subscribable {
 				Iterator<Reducer> reduceIterator=reducers.iterator();
 				while (reduceIterator.hasNext()) {
 					reducer=reduceIterator.next();
+					// A start reduce message repeated after a fault recovery
+					// only starts the reducers still in its iteration.
+					int reducerIteration = reducer.getIteration();
+					if (msg.getIteration() >= 0
+							&& reducerIteration != msg.getIteration()) {
+						continue;
+					}
 					reducerNo = reducer.getReducerNo();
-					int numExpectedInputs = msg
-							.getNumReduceInputsExpected(reducerNo);
 					int totalSleeps = 0;
-					if (reducer.getNumReduceInputsReceived() == numExpectedInputs) {					
-						taskExecutor.execute(reducer);
+					long waitBegin = System.nanoTime();
+					if (reducer.isAllInputsReceived(msg)) {
+						if (reducer.markStarted(msg)) {
+							taskExecutor.execute(metrics.timeReduceTask(trace(
+									tracer, reducer)));
+						}
 					} else {
 						int sleep = INITIAL_WAIT_TIME;
 						int sleepCount = 1;
 						while (!(allReceived || timeOut)) {
-							if (reducer.getNumReduceInputsReceived() == numExpectedInputs) {
+							if (reducer.isAllInputsReceived(msg)) {
 								allReceived = true;
 								break;
+							} else if (reducer.getIteration() != reducerIteration) {
+								// Started by another start reduce message.
+								break;
 							} else {
 								try {
 									Thread.sleep(sleep);
@@ -808,8 +1163,15 @@ public class DaemonWorker implements Subscribable {
 								}
 							}
 						}
-						if (allReceived) {
-							taskExecutor.execute(reducer);							
+						if (allReceived && reducer.markStarted(msg)) {
+							reducer.addWaitTime(System.nanoTime() - waitBegin);
+							if (tracer != null) {
+								tracer.span("wait-inputs", waitBegin, System
+										.nanoTime(), reducerNo,
+										reducerIteration);
+							}
+							taskExecutor.execute(metrics.timeReduceTask(trace(
+									tracer, reducer)));							
 						}
 						if (timeOut) {
 							logger
@@ -836,6 +1198,26 @@ public class DaemonWorker implements Subscribable {
 		memCache.remove(cleanRequest.getJobId(), cleanRequest.getKey());
 	}
 
+	/**
+	 * Removes the mapper of a map task moved to another daemon, so that the
+	 * map task and its data can be garbage collected.
+	 * 
+	 * @param message
+	 * @throws SerializationException
+	 * @throws TwisterException
+	 */
+	private void handleMapperRemoval(byte[] message)
+			throws SerializationException, TwisterException {
+		MapperRemoval removal = new MapperRemoval(message);
+		ConcurrentMap<Integer, Mapper> mapperMap = mappers.get(removal
+				.getJobId());
+		Mapper mapper = (mapperMap == null) ? null : mapperMap.remove(removal
+				.getMapTaskNo());
+		if (mapper != null) {
+			mapper.close();
+		}
+	}
+
 	/**
 	 * Adds a Value type data object to memcache.
 	 * 
@@ -845,7 +1227,7 @@ public class DaemonWorker implements Subscribable {
 	 */
 	private void handleMemCacheInput(byte[] message)
 			throws SerializationException, PubSubException {
-		MemCacheInput input = new MemCacheInput(message);
+		MemCacheInput input = new MemCacheInput(message, classLoaders);
 		memCache.add(input.getJobId(), input.getKey(), input.getValue());
 		WorkerResponse response = new WorkerResponse(daemonNo, hostIP);
 		// Client expects the daemonNo to be added to the refId.
@@ -864,6 +1246,10 @@ public class DaemonWorker implements Subscribable {
 		} catch (InterruptedException e) {
 			throw new TwisterException(e);
 		}
+		MBeanRegistrar.unregister(metricsName);
+		for (StackSampler sampler : samplers.values()) {
+			sampler.close();
+		}
 		try {
 			this.notifer.stopNotifer();
 			this.pubSubService.close();			
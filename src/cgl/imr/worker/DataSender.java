@@ -1,11 +1,14 @@
 package cgl.imr.worker;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
 import java.util.concurrent.ConcurrentHashMap;
 
+import cgl.imr.base.TwisterConstants;
+
 public class DataSender implements Runnable {
 
 	private Socket sock ;
@@ -18,19 +21,49 @@ public class DataSender implements Runnable {
 		this.worker = worker;
 	}
 
+	/**
+	 * Reads the command line without buffering beyond it, since the data of an
+	 * AllReduce message follows the command in the same stream.
+	 */
+	private String readCommand(InputStream in) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != -1 && b != '\n') {
+			bout.write(b);
+		}
+		if (b == -1 && bout.size() == 0) {
+			return null;
+		}
+		String cmd = bout.toString();
+		return cmd.endsWith("\r") ? cmd.substring(0, cmd.length() - 1) : cmd;
+	}
+
+	private byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		byte[] buff = new byte[65536];
+		int len;
+		while ((len = in.read(buff)) > 0) {
+			bout.write(buff, 0, len);
+		}
+		return bout.toByteArray();
+	}
+
 	public void run() {
 		try {
 			
-			BufferedReader sockReader = new BufferedReader(
-					new InputStreamReader(sock.getInputStream()));
+			InputStream sockReader = sock.getInputStream();
 			String cmd = null;
-			if((cmd = sockReader.readLine()) != null) {
+			if((cmd = readCommand(sockReader)) != null) {
 				//System.out.println("Datasender cmd: " + cmd);
 				if (cmd.equals("quit")) {
 					worker.termintate();
 					//this.daemonWorker.termintate();
 					//break;
 					System.exit(0);
+				}else if (cmd.startsWith(TwisterConstants.ALL_REDUCE_CMD)) {
+					worker.handleAllReduceData(cmd
+							.substring(TwisterConstants.ALL_REDUCE_CMD.length()),
+							readAll(sockReader));
 				}else{
 					DataOutputStream dout = new DataOutputStream(sock.getOutputStream());					
 					DataHolder holder = dataCache.get(cmd);
@@ -42,6 +75,7 @@ public class DataSender implements Runnable {
 						//System.out.println("Wrting data #################### "+data.length);
 						dout.flush();
 						dout.close();
+						worker.getMetrics().addBytesServed(data.length);
 						holder.decrementDownloadCount();
 						if(holder.getDowloadCount()<=0)
 						{
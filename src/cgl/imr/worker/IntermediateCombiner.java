@@ -0,0 +1,241 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.worker;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.doomdark.uuid.UUIDGenerator;
+
+import cgl.imr.base.AssociativeCombiner;
+import cgl.imr.base.Key;
+import cgl.imr.base.PubSubException;
+import cgl.imr.base.PubSubService;
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.TwisterConstants;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+import cgl.imr.message.CombineInput;
+import cgl.imr.message.CombinerRequest;
+import cgl.imr.types.StringValue;
+import cgl.imr.util.CustomClassLoader;
+
+/**
+ * A node of the combine tree. Receives the combine inputs of a group of
+ * reducers (or lower level combiners), merges them using the
+ * <code>AssociativeCombiner</code> of the job and forwards the result as a
+ * single combine input to the next level or to the client.
+ * 
+ * The inputs are merged in the order of their senders, so that the merge
+ * operation only needs to be associative.
+ * 
+ */
+public class IntermediateCombiner {
+
+	private static Logger logger = Logger.getLogger(IntermediateCombiner.class);
+
+	private AssociativeCombiner combiner;
+	private CombinerRequest request;
+	private PubSubService pubsubService;
+	private ConcurrentHashMap<String, DataHolder> dataCache;
+	private int daemonPort;
+	private String hostIP;
+
+	// Inputs received so far, per iteration and sender.
+	private Map<Integer, Map<Integer, CombineInput>> inputs;
+	// Class loader of the job, used to read the inputs fetched from the
+	// daemons of the senders.
+	private Map<String, CustomClassLoader> classLoaders;
+
+	public IntermediateCombiner(PubSubService pubsubService,
+			CombinerRequest request, CustomClassLoader classLoader,
+			ConcurrentHashMap<String, DataHolder> dataCache, int daemonPort,
+			String hostIP) throws TwisterException {
+		this.pubsubService = pubsubService;
+		this.request = request;
+		this.dataCache = dataCache;
+		this.daemonPort = daemonPort;
+		this.hostIP = hostIP;
+		this.inputs = new HashMap<Integer, Map<Integer, CombineInput>>();
+		this.classLoaders = Collections.singletonMap(request.getJobConf()
+				.getJobId(), classLoader);
+		try {
+			Class<?> c = classLoader.loadClass(request.getJobConf()
+					.getCombinerClass());
+			combiner = (AssociativeCombiner) c.newInstance();
+			combiner.configure(request.getJobConf());
+		} catch (Exception e) {
+			throw new TwisterException(
+					"Could not instantiate the intermediate combiner.", e);
+		}
+	}
+
+	public String getJobId() {
+		return request.getJobConf().getJobId();
+	}
+
+	public String getCombineTopic() {
+		return request.getCombineTopic();
+	}
+
+	/**
+	 * Adds a combine input. Once all the inputs of the iteration are
+	 * available, they are merged and sent to the sink.
+	 * 
+	 * @param combineInput
+	 * @throws TwisterException
+	 * @throws SerializationException
+	 * @throws PubSubException
+	 */
+	public void handleCombineInput(CombineInput combineInput)
+			throws TwisterException, SerializationException, PubSubException {
+		if (!combineInput.isHasData()) {
+			combineInput = getCombineInputFromRemoteHost(combineInput);
+		}
+		int iteration = combineInput.getIteration();
+		Map<Integer, CombineInput> received;
+		synchronized (this) {
+			received = inputs.get(iteration);
+			if (received == null) {
+				received = new TreeMap<Integer, CombineInput>();
+				inputs.put(iteration, received);
+			}
+			received.put(combineInput.getReducerNo(), combineInput);
+			if (received.size() < request.getNumInputs()) {
+				return;
+			}
+			inputs.remove(iteration);
+		}
+
+		Map<Key, Value> merged = null;
+		int oldestMapIteration = iteration;
+		Iterator<CombineInput> ite = received.values().iterator();
+		while (ite.hasNext()) {
+			CombineInput input = ite.next();
+			oldestMapIteration = Math.min(oldestMapIteration, input
+					.getOldestMapIteration());
+			if (merged == null) {
+				merged = input.getOutputs();
+			} else {
+				merged = combiner.merge(merged, input.getOutputs());
+			}
+		}
+
+		CombineInput output = new CombineInput(getJobId(), request
+				.getSinkTopic(), iteration, request.getCombinerNo());
+		output.setOldestMapIteration(oldestMapIteration);
+		Iterator<Key> keys = merged.keySet().iterator();
+		Key key;
+		while (keys.hasNext()) {
+			key = keys.next();
+			output.addKeyValue(key, merged.get(key));
+		}
+		output = copyDataToCacheIfLarge(output);
+		pubsubService.send(request.getSinkTopic(), output.getBytes());
+	}
+
+	private CombineInput getCombineInputFromRemoteHost(CombineInput input)
+			throws TwisterException, SerializationException {
+		StringValue memKey = (StringValue) input.getOutputs().get(
+				TwisterConstants.fixed_key_R2C);
+		String[] parts = memKey.toString().split(":");
+		byte[] data = null;
+		if (parts[0].trim().equals(hostIP)) {
+			DataHolder holder = dataCache.get(parts[2]);
+			if (holder != null) {
+				data = holder.getData();
+				holder.decrementDownloadCount();
+				if (holder.getDowloadCount() <= 0) {
+					dataCache.remove(parts[2]);
+				}
+			}
+		}
+		if (data == null) {
+			data = Reducer.getDataFromServer(parts[0], Integer
+					.parseInt(parts[1]), parts[2]);
+		}
+		return new CombineInput(data, classLoaders);
+	}
+
+	private CombineInput copyDataToCacheIfLarge(CombineInput input)
+			throws SerializationException {
+		byte[] inputData = input.getBytes();
+		if (inputData.length >= TwisterConstants.indirect_transfer_threashold) {
+			String cacheKey = UUIDGenerator.getInstance()
+					.generateTimeBasedUUID().toString();
+			this.dataCache.put(cacheKey, new DataHolder(inputData, 1));
+			input.getOutputs().clear();
+			input.addKeyValue(TwisterConstants.fixed_key_R2C, new StringValue(
+					hostIP + ":" + daemonPort + ":" + cacheKey));
+			input.setNoHasData();
+		}
+		return input;
+	}
+
+	/**
+	 * Discards the inputs of incomplete iterations.
+	 */
+	public synchronized void close() {
+		if (!inputs.isEmpty()) {
+			logger.warn("Intermediate combiner " + request.getCombinerNo()
+					+ " discarding inputs of " + inputs.size()
+					+ " incomplete iterations.");
+		}
+		inputs.clear();
+	}
+}
@@ -65,18 +65,22 @@ import org.doomdark.uuid.UUIDGenerator;
 import cgl.imr.base.Key;
 import cgl.imr.base.MapOutputCollector;
 import cgl.imr.base.MapTask;
+import cgl.imr.base.PubSubException;
 import cgl.imr.base.PubSubService;
 import cgl.imr.base.ReducerSelector;
 import cgl.imr.base.SerializationException;
 import cgl.imr.base.TwisterConstants;
 import cgl.imr.base.TwisterException;
 import cgl.imr.base.Value;
+import cgl.imr.base.impl.AllReduceOutputCollector;
 import cgl.imr.base.impl.JobConf;
 import cgl.imr.base.impl.MapOutputCollectorImpl;
 import cgl.imr.base.impl.MapperConf;
+import cgl.imr.data.file.FileData;
 import cgl.imr.message.MapTaskRequest;
 import cgl.imr.message.MapperRequest;
 import cgl.imr.message.ReduceInput;
+import cgl.imr.message.TaskMetrics;
 import cgl.imr.message.TaskStatus;
 import cgl.imr.types.StringKey;
 import cgl.imr.types.StringValue;
@@ -108,6 +112,12 @@ public class Mapper implements Runnable {
 	private PubSubService pubsubService;
 	private int daemonPort;
 	private String hostIP;
+	private AllReducer allReducer;
+	// Data partition the mapper was configured with, if any.
+	private String dataFile;
+	private int daemonNo = -1;
+	// Samples the stacks of the map task if the job is profiled.
+	private StackSampler sampler;
 
 	ConcurrentHashMap<String, DataHolder> dataCache;
 
@@ -124,6 +134,11 @@ public class Mapper implements Runnable {
 		// this.iteration= mapperRequest.getIteration();
 		this.jobConf = mapperRequest.getJobConf();
 		MapperConf mapperConf = mapperRequest.getMapConf();
+		if (mapperConf.isHasDataPartition()
+				&& mapperConf.getDataPartition() instanceof FileData) {
+			this.dataFile = ((FileData) mapperConf.getDataPartition())
+					.getFileName();
+		}
 		Class<?> c;
 		String className;
 		try {
@@ -142,6 +157,26 @@ public class Mapper implements Runnable {
 		}
 	}
 
+	/**
+	 * Checks whether this mapper was configured with the data partition of
+	 * the given configuration.
+	 */
+	public boolean isConfiguredWith(MapperConf mapperConf) {
+		return dataFile != null
+				&& mapperConf.isHasDataPartition()
+				&& mapperConf.getDataPartition() instanceof FileData
+				&& dataFile.equals(((FileData) mapperConf.getDataPartition())
+						.getFileName());
+	}
+
+	public void setDaemonNo(int daemonNo) {
+		this.daemonNo = daemonNo;
+	}
+
+	public void setSampler(StackSampler sampler) {
+		this.sampler = sampler;
+	}
+
 	public MapTaskRequest getCurrentRequest() {
 		return currentRequest;
 	}
@@ -172,6 +207,7 @@ public class Mapper implements Runnable {
 	public void run() {
 		long beginTime = 0;
 		int iteration = 0;
+		StackSampler.Sample sample = null;
 		try {
 			if (currentRequest == null) {
 				throw new TwisterException("No map request to execute.");
@@ -187,7 +223,9 @@ public class Mapper implements Runnable {
 			// MapOutputCollector collector= new
 			// MapOutputCollectorImpl(reducerSelector, iteration);
 			MapOutputCollector collector;
-			if (jobConf.isRowBCastSupported()) {
+			if (allReducer != null) {
+				collector = new AllReduceOutputCollector();
+			} else if (jobConf.isRowBCastSupported()) {
 				collector = new MapOutputCollectorImpl(reducerSelector,
 						iteration, jobConf.getRowBCastTopic(), jobConf
 								.getSqrtReducers());
@@ -196,15 +234,35 @@ public class Mapper implements Runnable {
 						iteration);
 			}
 
+			TaskMetrics metrics = new TaskMetrics();
+			if (sampler != null) {
+				sample = sampler.begin(mapTask.getClass().getName());
+			}
+			long computeBegin = System.nanoTime();
 			beginTime = System.currentTimeMillis();
-			Map<Key, Value> keyValueMap = currentRequest.getKeyValues();
-			Iterator<Key> ite = keyValueMap.keySet().iterator();
-			Key key;
-			while (ite.hasNext()) {
-				key = ite.next();
-				mapTask.map(collector, key, keyValueMap.get(key));
+			if (currentRequest.isUseAllReduceResult()) {
+				// The input is the value of the previous AllReduce operation
+				// kept at this daemon.
+				mapTask.map(collector, new StringKey(jobConf.getJobId()
+						+ mapTaskNo), allReducer.getResult());
+			} else {
+				Map<Key, Value> keyValueMap = currentRequest.getKeyValues();
+				Iterator<Key> ite = keyValueMap.keySet().iterator();
+				Key key;
+				while (ite.hasNext()) {
+					key = ite.next();
+					mapTask.map(collector, key, keyValueMap.get(key));
+				}
+			}
+			Value allReduceInput = null;
+			if (allReducer != null) {
+				allReduceInput = allReducer
+						.merge(((AllReduceOutputCollector) collector)
+								.getValues());
 			}
 			long endTime = System.currentTimeMillis();
+			metrics.addTime(TaskMetrics.COMPUTE, System.nanoTime()
+					- computeBegin);
 			// if(currentRequest.getMapTaskNo()==0){
 			// System.out.println("MAP TASK 0 TOOK "+((double)(endTime -
 			// beginTime))/1000+" Seconds.");
@@ -212,6 +270,7 @@ public class Mapper implements Runnable {
 			TaskStatus status = new TaskStatus(TwisterConstants.MAP_TASK,
 					TwisterConstants.SUCCESS, mapTaskNo, (endTime - beginTime),
 					iteration);
+			status.setDaemonNo(daemonNo);
 
 			status.setReduceInputMap(collector.getReduceInputMap());
 
@@ -224,27 +283,37 @@ public class Mapper implements Runnable {
 					// System.out.println("Sending :"+mapTaskNo+
 					// "  to "+input.getSink());
 					// One map output goes to one reducer
-					ReduceInput newInput = copyDataToCacheIfLargeAndGetReduceInput(
-							input, 1);
-					this.pubsubService.send(newInput.getSink(), newInput
-							.getBytes());
+					input.setMapTaskNo(mapTaskNo);
+					publishReduceInput(input, 1, metrics);
 				}
 
 				inputList = collector.getBCastReduceInputs();
 				for (ReduceInput input : inputList) {
 					// System.out.println("BCasting :"+mapTaskNo+
 					// "  to "+input.getSink());
-					ReduceInput newInput = copyDataToCacheIfLargeAndGetReduceInput(
-							input, jobConf.getSqrtReducers());
-					this.pubsubService.send(newInput.getSink(), newInput
-							.getBytes());
+					input.setMapTaskNo(mapTaskNo);
+					publishReduceInput(input, jobConf.getSqrtReducers(),
+							metrics);
 				}
 			}
+			status.setMetrics(metrics);
+			if (sample != null) {
+				status.setProfile(sampler.end(sample));
+				sample = null;
+			}
 			this.pubsubService.send(TwisterConstants.RESPONSE_TOPIC_BASE + "/"
 					+ jobConf.getJobId(), status.getBytes());
 
+			if (allReducer != null) {
+				allReducer.mapTaskCompleted(mapTaskNo, iteration,
+						allReduceInput, currentRequest.getAllReducePlan());
+			}
+
 		} catch (Exception e) {
 			e.printStackTrace();
+			if (sample != null) {
+				sampler.end(sample);
+			}
 			synchronized (this) {
 				this.hasException = true;
 				this.exception = e;
@@ -255,6 +324,7 @@ public class Mapper implements Runnable {
 					TwisterConstants.FAILED, mapTaskNo, (System
 							.currentTimeMillis() - beginTime), iteration);
 			status.setExceptionString(e.getMessage());
+			status.setDaemonNo(daemonNo);
 			try {
 				this.pubsubService.send(TwisterConstants.RESPONSE_TOPIC_BASE
 						+ "/" + jobConf.getJobId(), status.getBytes());
@@ -264,13 +334,32 @@ public class Mapper implements Runnable {
 		}
 	}
 
+	/**
+	 * Serializes a map output and publishes it to its reducer, measuring the
+	 * time spent in each step.
+	 */
+	private void publishReduceInput(ReduceInput input, int numReceivers,
+			TaskMetrics metrics) throws SerializationException,
+			PubSubException {
+		long serializeBegin = System.nanoTime();
+		ReduceInput newInput = copyDataToCacheIfLargeAndGetReduceInput(input,
+				numReceivers, metrics);
+		byte[] bytes = newInput.getBytes();
+		long publishBegin = System.nanoTime();
+		metrics.addTime(TaskMetrics.SERIALIZE, publishBegin - serializeBegin);
+		this.pubsubService.send(newInput.getSink(), bytes);
+		metrics.addTime(TaskMetrics.PUBLISH, System.nanoTime() - publishBegin);
+		metrics.addBytes(TaskMetrics.BYTES_PUBLISHED, bytes.length);
+	}
+
 	private ReduceInput copyDataToCacheIfLargeAndGetReduceInput(
-			ReduceInput input, int numReceivers) {
+			ReduceInput input, int numReceivers, TaskMetrics metrics) {
 		try {
 			byte[] inputData = input.getBytes();
 			if (inputData.length < TwisterConstants.indirect_transfer_threashold) {
 				return input;
 			} else {
+				metrics.addBytes(TaskMetrics.BYTES_CACHED, inputData.length);
 				String cacheKey = UUIDGenerator.getInstance()
 						.generateTimeBasedUUID().toString();
 				cgl.imr.types.StringValue tmpVal = new StringValue(hostIP + ":"
@@ -288,6 +377,10 @@ public class Mapper implements Runnable {
 		return input;
 	}
 
+	public void setAllReducer(AllReducer allReducer) {
+		this.allReducer = allReducer;
+	}
+
 	public void setCurrentRequest(MapTaskRequest currentRequest) {
 		this.currentRequest = currentRequest;
 	}
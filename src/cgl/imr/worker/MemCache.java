@@ -52,6 +52,8 @@
 
 package cgl.imr.worker;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -101,4 +103,16 @@ public class MemCache {
 		cache.remove(jobId);
 		// System.out.println("REMOVED MEMCACHE OBJECT");
 	}
+
+	/**
+	 * Returns the number of objects cached for each job.
+	 */
+	public Map<String, Integer> getNumEntries() {
+		Map<String, Integer> numEntries = new HashMap<String, Integer>();
+		for (Map.Entry<String, ConcurrentHashMap<String, Value>> entry : cache
+				.entrySet()) {
+			numEntries.put(entry.getKey(), entry.getValue().size());
+		}
+		return numEntries;
+	}
 }
@@ -55,6 +55,7 @@ package cgl.imr.worker;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.InetAddress;
@@ -62,9 +63,12 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
@@ -78,10 +82,13 @@ import cgl.imr.base.SerializationException;
 import cgl.imr.base.TwisterConstants;
 import cgl.imr.base.TwisterException;
 import cgl.imr.base.Value;
+import cgl.imr.base.impl.FileReduceOutputCollector;
 import cgl.imr.base.impl.ReduceOutputCollectorImpl;
 import cgl.imr.message.CombineInput;
 import cgl.imr.message.ReduceInput;
 import cgl.imr.message.ReducerRequest;
+import cgl.imr.message.StartReduceMessage;
+import cgl.imr.message.TaskMetrics;
 import cgl.imr.message.TaskStatus;
 import cgl.imr.types.IntKey;
 import cgl.imr.types.StringKey;
@@ -108,9 +115,37 @@ public class Reducer implements Runnable {
 	private ReducerRequest request;
 	private int reducerNo;
 	private int iteration;
+	// Recent outputs of each map task keyed by their iteration, used in the
+	// stale synchronous mode.
+	private Map<Integer, TreeMap<Integer, ReduceInput>> versionedInputs;
+	private int maxVersionsPerMapTask;
+	// Iteration of the output of each map task to reduce, chosen by the
+	// client in the start reduce message.
+	private Map<Integer, Integer> selectedVersions;
+	// Oldest map output iteration used by the current reduce phase.
+	private int oldestMapIteration;
+	// Map tasks whose outputs were received in this iteration, used to discard
+	// the outputs of speculative or recovered map tasks.
+	private Map<Integer, Boolean> receivedMapTasks;
+	// Last iteration for which the reducer was started, so that a repeated
+	// start reduce message does not run it twice.
+	private int startedIteration = -1;
+	// Metrics of the current iteration, including the time spent receiving
+	// the inputs before the reducer runs.
+	private volatile TaskMetrics metrics = new TaskMetrics();
 	ConcurrentHashMap<String, DataHolder> dataCache;
 	int daemonPort;
 	String hostIP;
+	// Used to write the reduce outputs to local files.
+	private int daemonNo;
+	private String localDataDir;
+	// Reduce output file of the last iteration, if written to a file.
+	private File lastOutputFile;
+	// Samples the stacks of the reduce task if the job is profiled.
+	private StackSampler sampler;
+	// Class loader of the job, used to read the inputs fetched from the
+	// daemons of the map tasks.
+	private Map<String, CustomClassLoader> classLoaders;
 
 	public Reducer(PubSubService pubsubService, ReducerRequest request,
 			CustomClassLoader classLoader,ConcurrentHashMap<String, DataHolder> dataCache,int daemonPort,String hostIP) throws TwisterException {
@@ -122,9 +157,21 @@ public class Reducer implements Runnable {
 		this.request = request;
 		this.iteration = request.getIteration();
 		this.reducerNo = request.getReduceConf().getReduceTaskNo();
+		this.classLoaders = Collections.singletonMap(request.getJobConf()
+				.getJobId(), classLoader);
 
 		this.combineSink = request.getCombineTopic();
 		this.numMapTasks = request.getJobConf().getNumMapTasks();
+		if (request.getJobConf().isStaleSynchronous()) {
+			versionedInputs = new HashMap<Integer, TreeMap<Integer, ReduceInput>>();
+			// A selected version is at most the staleness bound behind the
+			// newest one, and one more version may arrive before the start.
+			maxVersionsPerMapTask = request.getJobConf().getStalenessBound() + 2;
+		}
+		if (request.getJobConf().isSpeculativeExecution()
+				|| request.getJobConf().isFaultTolerance()) {
+			receivedMapTasks = new ConcurrentHashMap<Integer, Boolean>();
+		}
 		Class<?> c;
 		try {
 			c = classLoader.loadClass(request.getJobConf().getReduceClass());
@@ -141,6 +188,19 @@ public class Reducer implements Runnable {
 		return reducerNo;
 	}
 
+	public void setSampler(StackSampler sampler) {
+		this.sampler = sampler;
+	}
+
+	/**
+	 * Sets the daemon and its data directory, used when the reduce outputs are
+	 * written to local files.
+	 */
+	public void setOutputLocation(int daemonNo, String localDataDir) {
+		this.daemonNo = daemonNo;
+		this.localDataDir = localDataDir;
+	}
+
 	private void addKeyValueToReduceInputs(Key key, Value val) {
 		List<Value> values = this.reduceInputs.get(key);
 		if (values == null) {
@@ -153,7 +213,7 @@ public class Reducer implements Runnable {
 	}
 	
 	
-	private byte[] getDataFromServer(String host, int port, String key) throws TwisterException
+	static byte[] getDataFromServer(String host, int port, String key) throws TwisterException
 	{
 		ByteArrayOutputStream bout = new ByteArrayOutputStream();
 		try {			
@@ -217,6 +277,7 @@ public class Reducer implements Runnable {
 		
 		String[] parts= memKey.toString().split(":");
 		//System.out.println(memKey);
+		long fetchBegin = System.nanoTime();
 		byte[] data=null;		
 		if(parts[0].trim().equals(hostIP))
 		{
@@ -239,7 +300,10 @@ public class Reducer implements Runnable {
 		}else{		
 			data=getDataFromServer(parts[0],Integer.parseInt(parts[1]),parts[2]);
 		}
-		return new ReduceInput(data);
+		TaskMetrics current = metrics;
+		current.addTime(TaskMetrics.FETCH, System.nanoTime() - fetchBegin);
+		current.addBytes(TaskMetrics.BYTES_FETCHED, data.length);
+		return new ReduceInput(data, classLoaders);
 		
 	}
 	
@@ -262,12 +326,24 @@ public class Reducer implements Runnable {
 		//System.out.println("Downlaod time ="+(end-begin)/1000+ " seconds.");
 		
 		// System.out.println("REDUCER recievied messages. @ "+System.currentTimeMillis());
+		if (versionedInputs != null) {
+			handleStaleReduceInput(reduceInput);
+			return;
+		}
 		if (iteration != reduceInput.getIteration()) {
-			System.out.println("Duplicate at the reducer.. iteration= "
+			logger.debug("Duplicate at the reducer.. iteration= "
 					+ iteration + " inputs =" + reduceInput.getIteration());
 			return; // This could be from a duplicate map task that could have
 			// stuck in the past. We can ignore it.
 		}
+		if (receivedMapTasks != null
+				&& receivedMapTasks.put(reduceInput.getMapTaskNo(),
+						Boolean.TRUE) != null) {
+			logger.debug("Reducer " + reducerNo
+					+ " ignoring a duplicate output of map task "
+					+ reduceInput.getMapTaskNo());
+			return;
+		}
 
 		Map<Key, List<Value>> tmpMap = reduceInput.getOutputs();
 		Iterator<Key> ite = tmpMap.keySet().iterator();
@@ -288,6 +364,56 @@ public class Reducer implements Runnable {
 			numReduceInputsReceived++;
 		}
 	}
+
+	/**
+	 * In the stale synchronous mode the reducer keeps the recent outputs of
+	 * every map task, keyed by their iteration. The
+	 * <code>StartReduceMessage</code> names the iteration of the output of
+	 * each map task to use, since a newer output may arrive before the
+	 * message does.
+	 * 
+	 * @param reduceInput
+	 */
+	private synchronized void handleStaleReduceInput(ReduceInput reduceInput) {
+		int mapTaskNo = reduceInput.getMapTaskNo();
+		TreeMap<Integer, ReduceInput> versions = versionedInputs.get(mapTaskNo);
+		if (versions == null) {
+			versions = new TreeMap<Integer, ReduceInput>();
+			versionedInputs.put(mapTaskNo, versions);
+		}
+		if (versions.put(reduceInput.getIteration(), reduceInput) != null) {
+			logger.debug("Reducer " + reducerNo
+					+ " received a duplicate input of map task " + mapTaskNo
+					+ " from iteration " + reduceInput.getIteration());
+		}
+		while (versions.size() > maxVersionsPerMapTask) {
+			versions.remove(versions.firstKey());
+		}
+		numReduceInputsReceived++;
+	}
+
+	/**
+	 * Check if the reducer holds the inputs the start reduce message asks
+	 * for. In the stale synchronous mode that is an output of every selected
+	 * map task at least as new as the selected iteration, otherwise the
+	 * number of inputs received.
+	 */
+	public synchronized boolean isAllInputsReceived(StartReduceMessage msg) {
+		Map<Integer, Integer> versions = msg.getMapIterations(reducerNo);
+		if (versionedInputs == null || versions == null) {
+			return numReduceInputsReceived == msg
+					.getNumReduceInputsExpected(reducerNo);
+		}
+		for (Map.Entry<Integer, Integer> entry : versions.entrySet()) {
+			TreeMap<Integer, ReduceInput> held = versionedInputs.get(entry
+					.getKey());
+			if (held == null || held.isEmpty()
+					|| held.lastKey() < entry.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
 	
 	
 	
@@ -296,7 +422,7 @@ public class Reducer implements Runnable {
 		ReduceInput reduceInput	=getReduceInputFromRemoteHost(reduceInputTmp);
 		
 		if (iteration != reduceInput.getIteration()) {
-			System.out.println("Duplicate at the reducer.. iteration= "
+			logger.debug("Duplicate at the reducer.. iteration= "
 					+ iteration + " inputs =" + reduceInput.getIteration());
 			return; // This could be from a duplicate map task that could have
 			// stuck in the past. We can ignore it.
@@ -336,13 +462,93 @@ public class Reducer implements Runnable {
 		return numReduceInputsReceived; 
 	}
 
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * Records the time the start reduce message waited for the inputs of
+	 * this reducer.
+	 */
+	public void addWaitTime(long nanos) {
+		metrics.addTime(TaskMetrics.WAIT, nanos);
+	}
+
+	/**
+	 * Marks the reducer as started for the current iteration.
+	 * 
+	 * @return false if it is already started for this iteration.
+	 */
+	public synchronized boolean markStarted(StartReduceMessage msg) {
+		if (startedIteration == iteration) {
+			return false;
+		}
+		startedIteration = iteration;
+		selectedVersions = msg.getMapIterations(reducerNo);
+		return true;
+	}
+
+	/**
+	 * Builds the reduce inputs from the outputs of the map tasks selected by
+	 * the start reduce message. If the selected output was already replaced,
+	 * the oldest newer one is used. Older outputs are dropped, the selected
+	 * ones are retained so that they can be reused if a map task falls behind
+	 * in the next iteration.
+	 */
+	private synchronized void collectStaleReduceInputs() {
+		reduceInputs.clear();
+		oldestMapIteration = iteration;
+		if (selectedVersions == null) {
+			return;
+		}
+		for (Map.Entry<Integer, Integer> selected : selectedVersions
+				.entrySet()) {
+			TreeMap<Integer, ReduceInput> held = versionedInputs.get(selected
+					.getKey());
+			Map.Entry<Integer, ReduceInput> version = held
+					.ceilingEntry(selected.getValue());
+			if (version.getKey() != selected.getValue().intValue()) {
+				logger.debug("Reducer " + reducerNo + " using iteration "
+						+ version.getKey() + " of map task "
+						+ selected.getKey() + " instead of "
+						+ selected.getValue());
+			}
+			held.headMap(version.getKey()).clear();
+			oldestMapIteration = Math.min(oldestMapIteration, version.getKey());
+			Map<Key, List<Value>> tmpMap = version.getValue().getOutputs();
+			Iterator<Key> ite = tmpMap.keySet().iterator();
+			while (ite.hasNext()) {
+				Key key = ite.next();
+				for (Value val : tmpMap.get(key)) {
+					addKeyValueToReduceInputs(key, val);
+				}
+			}
+		}
+	}
+
 	public void run() {
-		ReduceOutputCollector collector = new ReduceOutputCollectorImpl(
-				combineSink, iteration, reducerNo);
+		ReduceOutputCollector collector;
+		if (request.getJobConf().isReduceOutputToFiles()) {
+			collector = new FileReduceOutputCollector(request.getJobConf()
+					.getJobId(), combineSink, iteration, reducerNo, new File(
+					localDataDir, request.getJobConf().getReduceOutputDir())
+					.getAbsolutePath(), daemonNo, hostIP);
+		} else {
+			collector = new ReduceOutputCollectorImpl(request.getJobConf()
+					.getJobId(), combineSink, iteration, reducerNo);
+		}
 		long beginTime = 0;
+		StackSampler.Sample sample = null;
 		try {
+			if (sampler != null) {
+				sample = sampler.begin(reduceTask.getClass().getName());
+			}
+			if (versionedInputs != null) {
+				collectStaleReduceInputs();
+			}
 			Iterator<Key> ite = reduceInputs.keySet().iterator();
 			Key key = null;
+			long computeBegin = System.nanoTime();
 			beginTime = System.currentTimeMillis();
 			while (ite.hasNext()) {
 				key = ite.next();
@@ -350,12 +556,29 @@ public class Reducer implements Runnable {
 				reduceTask.reduce(collector, key, reduceInputs.get(key));
 			}
 			long endTime = System.currentTimeMillis();
+			TaskMetrics iterationMetrics = metrics;
+			metrics = new TaskMetrics();
+			iterationMetrics.addTime(TaskMetrics.COMPUTE, System.nanoTime()
+					- computeBegin);
 			TaskStatus status = new TaskStatus(TwisterConstants.REDUCE_TASK,
 					TwisterConstants.SUCCESS, request.getReduceConf()
 							.getReduceTaskNo(), (endTime - beginTime),
 					iteration);
+			status.setDaemonNo(daemonNo);
 
 			CombineInput combineInput = collector.getCombineInput();
+			if (collector instanceof FileReduceOutputCollector) {
+				// Only the file of the last iteration is reported to the client.
+				File outputFile = ((FileReduceOutputCollector) collector)
+						.getFile();
+				if (lastOutputFile != null && !lastOutputFile.equals(outputFile)) {
+					lastOutputFile.delete();
+				}
+				lastOutputFile = outputFile;
+			}
+			if (versionedInputs != null) {
+				combineInput.setOldestMapIteration(oldestMapIteration);
+			}
 			/**
 			 * Clean the maps and tables first for this reducer.
 			 * 
@@ -367,19 +590,40 @@ public class Reducer implements Runnable {
 			synchronized (this) {
 				numReduceInputsReceived = 0;
 			}
+			if (receivedMapTasks != null) {
+				receivedMapTasks.clear();
+			}
 			//There should be only combiner.
-			CombineInput newInput=copyDataToCacheIfLargeAndGetReduceInput(combineInput,1);
+			long serializeBegin = System.nanoTime();
+			CombineInput newInput=copyDataToCacheIfLargeAndGetReduceInput(combineInput,1,iterationMetrics);
+			byte[] combineBytes = newInput.getBytes();
+			long publishBegin = System.nanoTime();
+			iterationMetrics.addTime(TaskMetrics.SERIALIZE, publishBegin
+					- serializeBegin);
 			//pubsubService.send(combineInput.getCombineTopic(), newInput	.getBytes());
-			pubsubService.send(newInput.getCombineTopic(), newInput	.getBytes());
+			pubsubService.send(newInput.getCombineTopic(), combineBytes);
+			iterationMetrics.addTime(TaskMetrics.PUBLISH, System.nanoTime()
+					- publishBegin);
+			iterationMetrics.addBytes(TaskMetrics.BYTES_PUBLISHED,
+					combineBytes.length);
+			status.setMetrics(iterationMetrics);
+			if (sample != null) {
+				status.setProfile(sampler.end(sample));
+				sample = null;
+			}
 			pubsubService.send(TwisterConstants.RESPONSE_TOPIC_BASE + "/"
 					+ request.getJobConf().getJobId(), status.getBytes());
 
 		} catch (Exception e) {
 			e.printStackTrace();
+			if (sample != null) {
+				sampler.end(sample);
+			}
 			TaskStatus status = new TaskStatus(TwisterConstants.REDUCE_TASK,
 					TwisterConstants.FAILED, request.getReduceConf()
 							.getReduceTaskNo(),
 					(System.currentTimeMillis() - beginTime), iteration);
+			status.setDaemonNo(daemonNo);
 			logger.error(e);
 			try {
 				pubsubService.send(TwisterConstants.RESPONSE_TOPIC_BASE + "/"
@@ -413,12 +657,13 @@ public class Reducer implements Runnable {
 //	}
 	
 	private CombineInput copyDataToCacheIfLargeAndGetReduceInput(
-			CombineInput input, int numReceivers) {
+			CombineInput input, int numReceivers, TaskMetrics metrics) {
 		try {
 			byte[] inputData = input.getBytes();
 			if (inputData.length < TwisterConstants.indirect_transfer_threashold) {
 				return input;
 			} else {
+				metrics.addBytes(TaskMetrics.BYTES_CACHED, inputData.length);
 				String cacheKey = UUIDGenerator.getInstance()
 						.generateTimeBasedUUID().toString();
 				cgl.imr.types.StringValue tmpVal = new StringValue(hostIP + ":"
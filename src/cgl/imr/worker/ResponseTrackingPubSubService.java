@@ -0,0 +1,133 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.worker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cgl.imr.base.PubSubException;
+import cgl.imr.base.PubSubService;
+import cgl.imr.base.Subscribable;
+import cgl.imr.base.TwisterConstants;
+
+/**
+ * Pub/sub service of a daemon that records when a message was last sent to
+ * the driver of each job. The drivers treat any message from a daemon as a
+ * heartbeat, so the <code>StatusNotifier</code> uses these times to send
+ * status messages only when the daemon is idle. It also counts the bytes the
+ * daemon sent.
+ * 
+ */
+public class ResponseTrackingPubSubService implements PubSubService {
+
+	private PubSubService pubSubService;
+	// Response topic of a job -> time of the last message sent to it.
+	private ConcurrentHashMap<String, Long> lastSendTimes = new ConcurrentHashMap<String, Long>();
+	private AtomicLong bytesSent = new AtomicLong();
+
+	public ResponseTrackingPubSubService(PubSubService pubSubService) {
+		this.pubSubService = pubSubService;
+	}
+
+	public void close() throws PubSubException {
+		pubSubService.close();
+	}
+
+	public void send(String topic, byte[] message) throws PubSubException {
+		pubSubService.send(topic, message);
+		sent(topic);
+		bytesSent.addAndGet(message.length);
+	}
+
+	public void send(String topic, String message) throws PubSubException {
+		pubSubService.send(topic, message);
+		sent(topic);
+		bytesSent.addAndGet(message.length());
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	private void sent(String topic) {
+		if (topic.startsWith(TwisterConstants.RESPONSE_TOPIC_BASE)) {
+			lastSendTimes.put(topic, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Returns the time a message was last sent to the driver of the given
+	 * job, or zero.
+	 */
+	public long getLastSendTime(String jobId) {
+		Long time = lastSendTimes.get(TwisterConstants.RESPONSE_TOPIC_BASE
+				+ "/" + jobId);
+		return time == null ? 0 : time;
+	}
+
+	public void removeJob(String jobId) {
+		lastSendTimes.remove(TwisterConstants.RESPONSE_TOPIC_BASE + "/" + jobId);
+	}
+
+	public void setSubscriber(Subscribable callback) throws PubSubException {
+		pubSubService.setSubscriber(callback);
+	}
+
+	public void subscribe(String topic) throws PubSubException {
+		pubSubService.subscribe(topic);
+	}
+
+	public void unsubscribe(String topic) throws PubSubException {
+		pubSubService.unsubscribe(topic);
+	}
+}
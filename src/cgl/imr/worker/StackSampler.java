@@ -0,0 +1,187 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.worker;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import cgl.imr.base.TwisterConstants;
+
+/**
+ * Samples the stacks of the threads running map and reduce tasks of a job
+ * through the <code>ThreadMXBean</code>. A task registers its thread with
+ * <code>begin</code> and collects the samples taken while it ran with
+ * <code>end</code>, as collapsed stacks, i.e. the frames from the root
+ * separated by ';', rooted at the class of the task. The samples are taken
+ * at every interval regardless of the state of the thread, hence the
+ * profile shows the wall clock time, including the time blocked on I/O and
+ * locks.
+ * 
+ */
+public class StackSampler extends Thread {
+
+	private static Logger logger = Logger.getLogger(StackSampler.class);
+
+	/**
+	 * The samples of a task, taken on the thread that runs it.
+	 */
+	public static class Sample {
+		private long threadId;
+		private String root;
+		private Map<String, Integer> stacks = new HashMap<String, Integer>();
+
+		private Sample(long threadId, String root) {
+			this.threadId = threadId;
+			this.root = root;
+		}
+	}
+
+	private ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private Map<Long, Sample> samples = new ConcurrentHashMap<Long, Sample>();
+	private long interval;
+	private volatile boolean stop = false;
+
+	/**
+	 * @param interval
+	 *            - milliseconds between two samples.
+	 */
+	public StackSampler(long interval) {
+		super("twister-stack-sampler");
+		this.interval = interval;
+		setDaemon(true);
+	}
+
+	/**
+	 * Starts sampling the current thread.
+	 * 
+	 * @param root
+	 *            - name of the root frame of the stacks, e.g. the class of the
+	 *            task.
+	 */
+	public Sample begin(String root) {
+		Sample sample = new Sample(Thread.currentThread().getId(), root);
+		samples.put(sample.threadId, sample);
+		return sample;
+	}
+
+	/**
+	 * Stops sampling the thread of the sample, and returns the collapsed
+	 * stacks with their counts.
+	 */
+	public Map<String, Integer> end(Sample sample) {
+		samples.remove(sample.threadId);
+		synchronized (sample) {
+			return new HashMap<String, Integer>(sample.stacks);
+		}
+	}
+
+	public void close() {
+		stop = true;
+		interrupt();
+	}
+
+	public void run() {
+		while (!stop) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			try {
+				sampleAll();
+			} catch (RuntimeException e) {
+				logger.error("Could not sample the task threads.", e);
+			}
+		}
+	}
+
+	private void sampleAll() {
+		Sample[] active = samples.values().toArray(new Sample[0]);
+		if (active.length == 0) {
+			return;
+		}
+		long[] threadIds = new long[active.length];
+		for (int i = 0; i < active.length; i++) {
+			threadIds[i] = active[i].threadId;
+		}
+		ThreadInfo[] infos = threadBean.getThreadInfo(threadIds,
+				TwisterConstants.PROFILE_MAX_STACK_DEPTH);
+		for (int i = 0; i < active.length; i++) {
+			// The task may have ended since, then its thread may be running
+			// another task.
+			if (infos[i] == null || samples.get(threadIds[i]) != active[i]) {
+				continue;
+			}
+			String stack = collapse(active[i].root, infos[i].getStackTrace());
+			synchronized (active[i]) {
+				Integer count = active[i].stacks.get(stack);
+				active[i].stacks.put(stack, count == null ? 1 : count + 1);
+			}
+		}
+	}
+
+	private static String collapse(String root, StackTraceElement[] frames) {
+		StringBuilder stack = new StringBuilder(root);
+		for (int i = frames.length - 1; i >= 0; i--) {
+			stack.append(';').append(frames[i].getClassName()).append('.')
+					.append(frames[i].getMethodName());
+		}
+		return stack.toString();
+	}
+}
@@ -52,42 +52,98 @@
 
 package cgl.imr.worker;
 
+import java.util.Collection;
+import java.util.Iterator;
+
 import org.apache.log4j.Logger;
 
-import cgl.imr.base.PubSubService;
 import cgl.imr.message.DaemonStatusMessage;
 
+/**
+ * Publishes the status of the daemon so that the drivers know it is alive.
+ * The drivers also treat the task statuses and responses sent by the daemon
+ * as heartbeats, so a status message is sent only if some driver has not
+ * heard from the daemon for <code>DAEMON_STATUS_INTERVAL</code>, or every
+ * <code>DAEMON_TELEMETRY_INTERVAL</code> to report the resource usage of the
+ * daemon.
+ * 
+ */
 public class StatusNotifier extends Thread {
 
 	public static String DAEMON_STATUS_TOPIC = "/daemon/status/topic";
 	public static int DAEMON_STATUS_INTERVAL = 5000;
+	public static int DAEMON_STATUS_CHECK_INTERVAL = 1000;
+	// A status message carrying the telemetry is sent at least this often,
+	// even if the drivers hear from the daemon through the tasks.
+	public static int DAEMON_TELEMETRY_INTERVAL = 10000;
 	private static Logger logger = Logger.getLogger(StatusNotifier.class);
 
-	private PubSubService pubSubService;
+	private ResponseTrackingPubSubService pubSubService;
 	private int daemonNo;
 	private String hostIP;
 	private boolean stop;
+	private long lastStatusTime = 0;
+	private TelemetrySampler sampler = new TelemetrySampler();
+	private volatile DaemonMetrics metrics;
+	// Ids of the jobs running at the daemon.
+	private Collection<String> jobIds;
 
-	public StatusNotifier(PubSubService pubSubService, int daemonNo,
-			String hostIP) {
+	public StatusNotifier(ResponseTrackingPubSubService pubSubService,
+			int daemonNo, String hostIP, Collection<String> jobIds) {
 		this.daemonNo = daemonNo;
 		this.pubSubService = pubSubService;
 		this.hostIP = hostIP;
+		this.jobIds = jobIds;
+	}
+
+	/**
+	 * Checks whether the driver of every job running at the daemon received a
+	 * message from it recently.
+	 */
+	private boolean isHeardByAllDrivers(long now) {
+		if (now - lastStatusTime < DAEMON_STATUS_INTERVAL) {
+			return true;
+		}
+		// The drivers also need the telemetry of the busy daemons.
+		if (now - lastStatusTime >= DAEMON_TELEMETRY_INTERVAL) {
+			return false;
+		}
+		Iterator<String> ids = jobIds.iterator();
+		if (!ids.hasNext()) {
+			return false;
+		}
+		while (ids.hasNext()) {
+			if (now - pubSubService.getLastSendTime(ids.next()) >= DAEMON_STATUS_INTERVAL) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	public void run() {
+		long now;
 		while (!stop) {
-			DaemonStatusMessage status = new DaemonStatusMessage(daemonNo, hostIP);
 			try {
-				pubSubService.send(DAEMON_STATUS_TOPIC, status.getBytes());
-				//System.out.println("Sending system status " + daemonNo);
-				Thread.sleep(DAEMON_STATUS_INTERVAL);
+				now = System.currentTimeMillis();
+				if (!isHeardByAllDrivers(now)) {
+					DaemonStatusMessage status = new DaemonStatusMessage(
+							daemonNo, hostIP);
+					status.setTelemetry(sampler.sample(metrics));
+					pubSubService.send(DAEMON_STATUS_TOPIC, status.getBytes());
+					lastStatusTime = now;
+					//System.out.println("Sending system status " + daemonNo);
+				}
+				Thread.sleep(DAEMON_STATUS_CHECK_INTERVAL);
 			} catch (Exception e) {
 				logger.error(e);
 			}
 		}
 	}
 
+	public void setMetrics(DaemonMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	public void stopNotifer() {
 		stop = true;
 	}
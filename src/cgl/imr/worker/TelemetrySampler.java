@@ -0,0 +1,136 @@
+/*
+ * Software License, Version 1.0
+ *
+ *  Copyright 2003 The Trustees of Indiana University.  All rights reserved.
+ *
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1) All redistributions of source code must retain the above copyright notice,
+ *  the list of authors in the original source code, this list of conditions and
+ *  the disclaimer listed in this license;
+ * 2) All redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the disclaimer listed in this license in
+ *  the documentation and/or other materials provided with the distribution;
+ * 3) Any documentation included with all redistributions must include the
+ *  following acknowledgement:
+ *
+ * "This product includes software developed by the Community Grids Lab. For
+ *  further information contact the Community Grids Lab at
+ *  http://communitygrids.iu.edu/."
+ *
+ *  Alternatively, this acknowledgement may appear in the software itself, and
+ *  wherever such third-party acknowledgments normally appear.
+ *
+ * 4) The name Indiana University or Community Grids Lab or Twister,
+ *  shall not be used to endorse or promote products derived from this software
+ *  without prior written permission from Indiana University.  For written
+ *  permission, please contact the Advanced Research and Technology Institute
+ *  ("ARTI") at 351 West 10th Street, Indianapolis, Indiana 46202.
+ * 5) Products derived from this software may not be called Twister,
+ *  nor may Indiana University or Community Grids Lab or Twister appear
+ *  in their name, without prior written permission of ARTI.
+ *
+ *
+ *  Indiana University provides no reassurances that the source code provided
+ *  does not infringe the patent or any other intellectual property rights of
+ *  any other entity.  Indiana University disclaims any liability to any
+ *  recipient for claims brought by any other entity based on infringement of
+ *  intellectual property rights or otherwise.
+ *
+ * LICENSEE UNDERSTANDS THAT SOFTWARE IS PROVIDED "AS IS" FOR WHICH NO
+ * WARRANTIES AS TO CAPABILITIES OR ACCURACY ARE MADE. INDIANA UNIVERSITY GIVES
+ * NO WARRANTIES AND MAKES NO REPRESENTATION THAT SOFTWARE IS FREE OF
+ * INFRINGEMENT OF THIRD PARTY PATENT, COPYRIGHT, OR OTHER PROPRIETARY RIGHTS.
+ * INDIANA UNIVERSITY MAKES NO WARRANTIES THAT SOFTWARE IS FREE FROM "BUGS",
+ * "VIRUSES", "TROJAN HORSES", "TRAP DOORS", "WORMS", OR OTHER HARMFUL CODE.
+ * LICENSEE ASSUMES THE ENTIRE RISK AS TO THE PERFORMANCE OF SOFTWARE AND/OR
+ * ASSOCIATED MATERIALS, AND TO THE PERFORMANCE AND VALIDITY OF INFORMATION
+ * GENERATED USING SOFTWARE.
+ */
+
+package cgl.imr.worker;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+
+import cgl.imr.message.DaemonTelemetry;
+
+/**
+ * Samples the resource usage of the daemon through the platform MXBeans. The
+ * garbage collection and the CPU time are reported as the deltas since the
+ * previous sample. The CPU time of the process is read from the HotSpot
+ * extension of the operating system MXBean when it is available.
+ * 
+ */
+public class TelemetrySampler {
+
+	private OperatingSystemMXBean osBean = ManagementFactory
+			.getOperatingSystemMXBean();
+	private long lastSampleTime = System.nanoTime();
+	private long lastGcCount = getGcCount();
+	private long lastGcTime = getGcTime();
+	private long lastCpuTime = getProcessCpuTime();
+
+	/**
+	 * @param metrics
+	 *            - metrics of the daemon, for the data cache and the task
+	 *            queue, or null if they are not yet available.
+	 */
+	public synchronized DaemonTelemetry sample(DaemonMetrics metrics) {
+		long now = System.nanoTime();
+		long gcCount = getGcCount();
+		long gcTime = getGcTime();
+		long cpuTime = getProcessCpuTime();
+		long interval = now - lastSampleTime;
+
+		double cpuLoad = -1;
+		if (cpuTime >= 0 && lastCpuTime >= 0 && interval > 0) {
+			cpuLoad = Math.min(1.0, (cpuTime - lastCpuTime)
+					/ (double) interval / osBean.getAvailableProcessors());
+		}
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean()
+				.getHeapMemoryUsage();
+		DaemonTelemetry telemetry = new DaemonTelemetry(heap.getUsed(), heap
+				.getMax(), gcCount - lastGcCount, gcTime - lastGcTime,
+				interval / 1000000, cpuLoad, ManagementFactory
+						.getThreadMXBean().getThreadCount(),
+				metrics == null ? 0 : metrics.getDataCacheBytes(),
+				metrics == null ? 0 : metrics.getTaskQueueDepth());
+
+		lastSampleTime = now;
+		lastGcCount = gcCount;
+		lastGcTime = gcTime;
+		lastCpuTime = cpuTime;
+		return telemetry;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			count += Math.max(gc.getCollectionCount(), 0);
+		}
+		return count;
+	}
+
+	private static long getGcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			time += Math.max(gc.getCollectionTime(), 0);
+		}
+		return time;
+	}
+
+	private long getProcessCpuTime() {
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) osBean)
+					.getProcessCpuTime();
+		}
+		return -1;
+	}
+}
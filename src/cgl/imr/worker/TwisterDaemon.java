@@ -104,7 +104,7 @@ public class TwisterDaemon {
 		super();
 
 		taskExecutor = Executors.newCachedThreadPool();
-		dataCache = new ConcurrentHashMap<String, DataHolder>();
+		dataCache = new DataCache();
 		this.daemonNo = daemonNo;
 		try {
 			TwisterConfigurations configs = TwisterConfigurations.getInstance();